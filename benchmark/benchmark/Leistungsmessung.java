@@ -0,0 +1,180 @@
+package benchmark;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Einfache Leistungsmessung ohne externe Abhaengigkeiten. Jeder Messfall wird
+ * zunaechst aufgewaermt, bis der JIT-Compiler ihn uebersetzt hat, danach wird
+ * die Zeit pro Operation in mehreren Durchgaengen gemessen. Die Ergebnisse
+ * werden als CSV ausgegeben (eine Zeile pro Messfall), damit sie
+ * maschinell verglichen werden koennen:
+ * 
+ * <pre>
+ * fall;parameter;ns_pro_operation;standardabweichung;minimum;operationen
+ * </pre>
+ * 
+ * @author Manuel Weber
+ */
+public class Leistungsmessung {
+
+	/**
+	 * Kopfzeile der CSV-Ausgabe
+	 */
+	public static final String KOPFZEILE = "fall;parameter;ns_pro_operation;standardabweichung;minimum;operationen";
+
+	/**
+	 * Dauer des Aufwaermens pro Messfall in ns
+	 */
+	private long aufwaermdauer = 2000000000L;
+
+	/**
+	 * Angestrebte Dauer eines Messdurchgangs in ns
+	 */
+	private long durchgangsdauer = 200000000L;
+
+	/**
+	 * Anzahl der Messdurchgaenge pro Messfall
+	 */
+	private int durchgaenge = 10;
+
+	private final List<Messfall> faelle = new ArrayList<Messfall>();
+
+	/**
+	 * Summe aller Ergebnisse, damit die Operationen nicht wegoptimiert werden
+	 */
+	private double senke = 0;
+
+	public void hinzufuegen(Messfall fall) {
+		faelle.add(fall);
+	}
+
+	/**
+	 * Fuehrt alle Messfaelle aus, deren Name mit einem der Filter beginnt
+	 * (alle, falls keine Filter angegeben sind), und schreibt die Ergebnisse
+	 * nach ausgabe.
+	 * 
+	 * @param filter
+	 * @param ausgabe
+	 * @throws Exception
+	 */
+	public void ausfuehren(List<String> filter, PrintWriter ausgabe)
+			throws Exception {
+		ausgabe.println(KOPFZEILE);
+		for (Messfall fall : faelle) {
+			if (passt(fall, filter)) {
+				ausgabe.println(messen(fall));
+				ausgabe.flush();
+			}
+		}
+		if (senke == 42) {
+			System.err.println(); // verhindert das Wegoptimieren der Senke
+		}
+	}
+
+	private boolean passt(Messfall fall, List<String> filter) {
+		if (filter.isEmpty()) {
+			return true;
+		}
+		for (String f : filter) {
+			if (fall.getName().startsWith(f)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Misst einen einzelnen Messfall
+	 * 
+	 * @return CSV-Zeile mit dem Ergebnis
+	 */
+	private String messen(Messfall fall) throws Exception {
+		fall.vorbereiten();
+
+		// Aufwaermen und dabei die Anzahl pro Durchgang bestimmen
+		int anzahl = 1;
+		long ende = System.nanoTime() + aufwaermdauer;
+		while (System.nanoTime() < ende) {
+			long start = System.nanoTime();
+			senke += fall.ausfuehren(anzahl);
+			long dauer = System.nanoTime() - start;
+			if (dauer < durchgangsdauer && anzahl < Integer.MAX_VALUE / 2) {
+				anzahl *= 2;
+			}
+		}
+
+		double[] nsProOperation = new double[durchgaenge];
+		for (int i = 0; i < durchgaenge; i++) {
+			long start = System.nanoTime();
+			senke += fall.ausfuehren(anzahl);
+			nsProOperation[i] = (double) (System.nanoTime() - start) / anzahl;
+		}
+
+		double summe = 0;
+		double minimum = Double.MAX_VALUE;
+		for (double wert : nsProOperation) {
+			summe += wert;
+			minimum = Math.min(minimum, wert);
+		}
+		double mittel = summe / durchgaenge;
+		double quadrate = 0;
+		for (double wert : nsProOperation) {
+			quadrate += (wert - mittel) * (wert - mittel);
+		}
+		double standardabweichung = Math.sqrt(quadrate / (durchgaenge - 1));
+
+		return String.format(Locale.ROOT, "%s;%s;%.3f;%.3f;%.3f;%d",
+				fall.getName(), fall.getParameter(), mittel,
+				standardabweichung, minimum, (long) anzahl * durchgaenge);
+	}
+
+	/**
+	 * Wertet die Kommandozeile aus und fuehrt die Messfaelle aus. Erkannte
+	 * Argumente: "-o datei" (CSV-Ausgabe in eine Datei statt auf die
+	 * Konsole), "-schnell" (kurze Messung zur Kontrolle), alle weiteren
+	 * Argumente sind Namensfilter.
+	 * 
+	 * @param args
+	 * @throws Exception
+	 */
+	public void starten(String[] args) throws Exception {
+		List<String> filter = new ArrayList<String>();
+		String datei = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-o") && i + 1 < args.length) {
+				datei = args[++i];
+			} else if (args[i].equals("-schnell")) {
+				aufwaermdauer = 200000000L;
+				durchgangsdauer = 20000000L;
+				durchgaenge = 3;
+			} else {
+				filter.add(args[i]);
+			}
+		}
+		PrintWriter ausgabe;
+		if (datei != null) {
+			ausgabe = new PrintWriter(new OutputStreamWriter(
+					new FileOutputStream(datei), "UTF-8"));
+		} else {
+			ausgabe = new PrintWriter(new OutputStreamWriter(
+					System.out, "UTF-8"));
+		}
+		try {
+			ausfuehren(filter, ausgabe);
+		} catch (IOException e) {
+			System.err.println("Ergebnisse konnten nicht geschrieben werden: "
+					+ e.getMessage());
+		} finally {
+			ausgabe.flush();
+			if (datei != null) {
+				ausgabe.close();
+			}
+		}
+	}
+}
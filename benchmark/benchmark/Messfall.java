@@ -0,0 +1,51 @@
+package benchmark;
+
+/**
+ * Ein einzelner Fall, dessen Laufzeit von der Leistungsmessung bestimmt wird.
+ * 
+ * @author Manuel Weber
+ */
+public abstract class Messfall {
+
+	private final String name;
+	private final String parameter;
+
+	/**
+	 * @param name
+	 *            Name des Falls (z.B. "Saeulendiagramm.punktAnhaengen")
+	 * @param parameter
+	 *            Parameter des Falls (z.B. Anzahl der Impulse), darf leer sein
+	 */
+	protected Messfall(String name, String parameter) {
+		this.name = name;
+		this.parameter = parameter;
+	}
+
+	/**
+	 * Wird einmal vor dem Aufwaermen aufgerufen (z.B. zum Erzeugen der
+	 * Testdaten). Die Zeit geht nicht in die Messung ein.
+	 * 
+	 * @throws Exception
+	 */
+	protected void vorbereiten() throws Exception {
+	}
+
+	/**
+	 * Fuehrt die gemessene Operation mehrmals hintereinander aus.
+	 * 
+	 * @param anzahl
+	 *            Anzahl der Ausfuehrungen
+	 * @return beliebiges Ergebnis der Operationen, das die Leistungsmessung
+	 *         verwertet, damit sie nicht wegoptimiert werden
+	 * @throws Exception
+	 */
+	protected abstract double ausfuehren(int anzahl) throws Exception;
+
+	public String getName() {
+		return name;
+	}
+
+	public String getParameter() {
+		return parameter;
+	}
+}
@@ -0,0 +1,240 @@
+package datenverarbeitung;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.jfree.chart.labels.CategoryToolTipGenerator;
+import org.jfree.ui.RectangleEdge;
+
+import benchmark.Leistungsmessung;
+import benchmark.Messfall;
+import datenaufnahme.Messreihe;
+import datenaufnahme.MessstandSimulator;
+
+/**
+ * Leistungsmessung der zeitkritischen Stellen der Datenverarbeitung. Liegt im
+ * Paket datenverarbeitung, um auch geschuetzte Methoden (z.B. die
+ * Achsenbeschriftung) direkt messen zu koennen.
+ *
+ * Aufruf: java datenverarbeitung.DatenverarbeitungBenchmark [-schnell] [-o
+ * ergebnis.csv] [Filter...]
+ *
+ * @author Manuel Weber
+ */
+public class DatenverarbeitungBenchmark {
+
+	/**
+	 * Anzahl der Datenreihen, mit denen die Diagramme gefuellt werden
+	 */
+	private static final int DATENREIHEN = 5;
+
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		Leistungsmessung messung = new Leistungsmessung();
+
+		messung.hinzufuegen(new Messfall("Saeulendiagramm.punktAnhaengen",
+				"sofort") {
+			private Saeulendiagramm diagramm;
+
+			@Override
+			protected void vorbereiten() {
+				diagramm = new Saeulendiagramm();
+				diagramm.setBildrate(0);
+				diagramm.naechteDatenreihe(synthetischeMessreihe(1000));
+			}
+
+			@Override
+			protected double ausfuehren(int anzahl) {
+				for (int i = 0; i < anzahl; i++) {
+					diagramm.punktAnhaengen(i % 126 + 1, i);
+				}
+				return diagramm.getDataset().getColumnCount();
+			}
+		});
+
+		messung.hinzufuegen(new Messfall("Saeulendiagramm.punktAnhaengen",
+				"gepuffert") {
+			private Saeulendiagramm diagramm;
+
+			@Override
+			protected void vorbereiten() {
+				diagramm = new Saeulendiagramm();
+				diagramm.naechteDatenreihe(synthetischeMessreihe(1000));
+			}
+
+			@Override
+			protected double ausfuehren(int anzahl) {
+				for (int i = 0; i < anzahl; i++) {
+					diagramm.punktAnhaengen(i % 126 + 1, i);
+				}
+				return anzahl;
+			}
+		});
+
+		messung.hinzufuegen(new Messfall(
+				"Saeulendiagramm.fahrstufenBereichEinschraenken", DATENREIHEN
+						+ " Datenreihen") {
+			private Saeulendiagramm diagramm;
+
+			@Override
+			protected void vorbereiten() {
+				diagramm = gefuelltesDiagramm();
+			}
+
+			@Override
+			protected double ausfuehren(int anzahl) {
+				for (int i = 0; i < anzahl; i++) {
+					diagramm.fahrstufenBereichEinschraenken((i & 1) == 0,
+							(i & 1) == 0 ? 100 - i % 50 : -100 + i % 50);
+				}
+				return diagramm.getDataset().getColumnCount();
+			}
+		});
+
+		messung.hinzufuegen(new Messfall(
+				"SaeulendiagrammRenderer.generateToolTip", DATENREIHEN
+						+ " Datenreihen") {
+			private Saeulendiagramm diagramm;
+			private CategoryToolTipGenerator generator;
+
+			@Override
+			protected void vorbereiten() {
+				diagramm = gefuelltesDiagramm();
+				generator = diagramm.getChart().getCategoryPlot().getRenderer()
+						.getBaseToolTipGenerator();
+			}
+
+			@Override
+			protected double ausfuehren(int anzahl) {
+				FahrstufenDataset dataset = diagramm.getDataset();
+				int spalten = dataset.getColumnCount();
+				double laenge = 0;
+				for (int i = 0; i < anzahl; i++) {
+					laenge += generator.generateToolTip(dataset, i
+							% DATENREIHEN, i % spalten).length();
+				}
+				return laenge;
+			}
+		});
+
+		messung.hinzufuegen(new Messfall(
+				"SelektiveCategoryAxis.createLabel", "") {
+			private Saeulendiagramm.SelektiveCategoryAxis achse;
+			private Graphics2D g2;
+
+			@Override
+			protected void vorbereiten() {
+				Saeulendiagramm diagramm = gefuelltesDiagramm();
+				achse = (Saeulendiagramm.SelektiveCategoryAxis) diagramm
+						.getChart().getCategoryPlot().getDomainAxis();
+				g2 = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB)
+						.createGraphics();
+			}
+
+			@Override
+			protected double ausfuehren(int anzahl) {
+				double zeilen = 0;
+				for (int i = 0; i < anzahl; i++) {
+					zeilen += achse.createLabel(
+							Integer.valueOf(i % 253 - Messreihe.MAX_FAHRSTUFE),
+							20f, RectangleEdge.BOTTOM, g2).getLines().size();
+				}
+				return zeilen;
+			}
+		});
+
+		messung.hinzufuegen(new Messfall("Einheit.konvertieren", "") {
+			@Override
+			protected double ausfuehren(int anzahl) {
+				double summe = 0;
+				for (int i = 0; i < anzahl; i++) {
+					summe += Einheit.KILOMETER.konvertieren(i);
+				}
+				return summe;
+			}
+		});
+
+		messung.hinzufuegen(new Messfall("Einheit.konvertieren", "Array 4096") {
+			private final double[] werte = new double[4096];
+			private final double[] ergebnis = new double[4096];
+
+			@Override
+			protected void vorbereiten() {
+				for (int i = 0; i < werte.length; i++) {
+					werte[i] = i;
+				}
+			}
+
+			@Override
+			protected double ausfuehren(int anzahl) {
+				// eine Umrechnung pro Operation wie im skalaren Fall, der Rest
+				// unter 4096 wird mit einem kuerzeren Bereich umgerechnet
+				double summe = 0;
+				for (int i = 0; i < anzahl; i += werte.length) {
+					int laenge = Math.min(werte.length, anzahl - i);
+					Einheit.KILOMETER.konvertieren(werte, ergebnis, 0, laenge);
+					summe += ergebnis[laenge - 1];
+				}
+				return summe;
+			}
+		});
+
+		for (int impulse = 1000; impulse <= 10000000; impulse *= 10) {
+			final int n = impulse;
+			messung.hinzufuegen(new Messfall("Plotter.plotten", n + " Impulse") {
+				private Messreihe messreihe;
+				private Saeulendiagramm diagramm;
+
+				@Override
+				protected void vorbereiten() {
+					messreihe = synthetischeMessreihe(n);
+					diagramm = new Saeulendiagramm();
+					diagramm.setBildrate(0);
+				}
+
+				@Override
+				protected double ausfuehren(int anzahl) {
+					for (int i = 0; i < anzahl; i++) {
+						diagramm.leeren();
+						Plotter.plotten(messreihe, diagramm);
+					}
+					return diagramm.getDataset().getColumnCount();
+				}
+			});
+		}
+
+		messung.starten(args);
+		System.exit(0); // Swing-Timer der Diagramme beenden
+	}
+
+	/**
+	 * Erzeugt eine Messreihe ueber die Fahrstufen 1 bis 126 mit insgesamt
+	 * etwa impulse Impulsen
+	 */
+	private static Messreihe synthetischeMessreihe(int impulse) {
+		Messreihe messreihe = new Messreihe("Benchmark", 1,
+				Messreihe.MAX_FAHRSTUFE, 0, true, 1.96, 4);
+		MessstandSimulator simulator = new MessstandSimulator(
+				MessstandSimulator.lineareKennlinie(200), 1.96, 4, 1);
+		simulator.setRauschen(0.02);
+		simulator.erzeugen(messreihe,
+				Math.max(1, impulse / Messreihe.MAX_FAHRSTUFE));
+		return messreihe;
+	}
+
+	/**
+	 * @return Diagramm mit DATENREIHEN vollstaendigen Datenreihen
+	 */
+	private static Saeulendiagramm gefuelltesDiagramm() {
+		Saeulendiagramm diagramm = new Saeulendiagramm();
+		diagramm.setBildrate(0);
+		diagramm.setEinheiten(Einheit.ZENTIMETER, Einheit.SEKUNDE);
+		for (int reihe = 0; reihe < DATENREIHEN; reihe++) {
+			diagramm.naechteDatenreihe(synthetischeMessreihe(10000));
+			for (int fs = -Messreihe.MAX_FAHRSTUFE; fs <= Messreihe.MAX_FAHRSTUFE; fs++) {
+				diagramm.punktAnhaengen(fs, Math.abs(fs) * (reihe + 1), 0.5);
+			}
+		}
+		return diagramm;
+	}
+}
@@ -2,8 +2,16 @@ package controller;
 
 import java.awt.Color;
 import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Observable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 
 import datenverarbeitung.DiagrammRendererFactory;
@@ -12,24 +20,40 @@ import datenverarbeitung.Einheit;
 /**
  * Verwaltet diverse Programmeinstellungen. Diese werden beim Setzen
  * benutzerspezifisch in der Registry gesichert und Observer werden informiert.
+ *
+ * Gelesen werden die Einstellungen aus einem unveraenderlichen Schnappschuss,
+ * der nach jeder Aenderung neu veroeffentlicht wird. Messung, Plotter und
+ * Diagramme koennen so ohne Sperren einen in sich stimmigen Stand lesen.
+ * Mehrere zusammengehoerige Aenderungen (z.B. aus dem Einstellungsdialog)
+ * koennen mit aendern() als ein Schnappschuss veroeffentlicht werden.
+ *
+ * Die Registry wird nicht bei jedem Setzen beschrieben. Geaenderte Werte
+ * werden gesammelt und von einem Hintergrundthread nach kurzer Verzoegerung
+ * gemeinsam geschrieben, spaetestens beim Beenden des Programms.
  * 
  * @author Manuel Weber
  */
 public class Einstellungen extends Observable {
 
 	// Singleton-Pattern ---------------------------------------------
-	private static Einstellungen singletonInstanz;
+	private static class Halter {
+		private static final Einstellungen INSTANZ = new Einstellungen();
+	}
 
 	public static Einstellungen getEinstellungen() {
-
-		if (singletonInstanz == null) {
-			singletonInstanz = new Einstellungen();
-		}
-		return singletonInstanz;
+		return Halter.INSTANZ;
 	}
 
 	private Einstellungen() {
 		laden();
+		schnappschuss = new Schnappschuss(this);
+		Runtime.getRuntime().addShutdownHook(
+				new Thread("Einstellungen speichern") {
+					@Override
+					public void run() {
+						speichern();
+					}
+				});
 	}
 
 	// ---------------------------------------------------------------
@@ -41,6 +65,59 @@ public class Einstellungen extends Observable {
 	private final Preferences registry = Preferences.userRoot()
 			.node("SOFTWARE").node("VisTrain");
 
+	/**
+	 * Verzoegerung, mit der geaenderte Werte in die Registry geschrieben
+	 * werden (in Millisekunden)
+	 */
+	private static final long SCHREIBVERZOEGERUNG = 500;
+
+	/**
+	 * Noch nicht in die Registry geschriebene Werte (Zugriff nur mit der
+	 * Sperre des Objekts)
+	 */
+	private final Map<String, Object> ausstehendeWerte = new LinkedHashMap<String, Object>();
+
+	/**
+	 * Wahrheitswert, ob das Schreiben der ausstehenden Werte bereits geplant
+	 * ist
+	 */
+	private boolean schreibenGeplant = false;
+
+	/**
+	 * Sorgt dafuer, dass die Werte in der Reihenfolge ihrer Aenderung in der
+	 * Registry landen
+	 */
+	private final Object schreibSperre = new Object();
+
+	private final ScheduledExecutorService schreiber = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Einstellungen schreiben");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	private final Runnable speichernAufgabe = new Runnable() {
+		@Override
+		public void run() {
+			speichern();
+		}
+	};
+
+	/**
+	 * Aktuell gueltiger Stand der Einstellungen
+	 */
+	private volatile Schnappschuss schnappschuss;
+
+	/**
+	 * Verschachtelungstiefe laufender aendern()-Aufrufe
+	 */
+	private int aenderungstiefe = 0;
+
+	// Arbeitsstand (Zugriff nur mit der Sperre des Objekts) ---------
+
 	/**
 	 * Umfang des Messrades in cm
 	 */
@@ -74,6 +151,12 @@ public class Einstellungen extends Observable {
 	 */
 	private boolean autoConnect;
 
+	/**
+	 * Zuletzt erfolgreich verwendeter Anschluss je Geraet (Cache der
+	 * Registry, gehoert nicht zum Schnappschuss)
+	 */
+	private final Map<String, String> anschluesse = new HashMap<String, String>();
+
 	/**
 	 * Wahrheitswert, ob die im Messungsmenue angegebene Messdauer als
 	 * Gesamtdauer fuer die Messung oder als Dauer pro Fahrstufe aufgefasst
@@ -137,7 +220,8 @@ public class Einstellungen extends Observable {
 		vorbereitungszeitProFS = registry
 				.getLong("Vorbereitungszeit pro FS", 0);
 		massstab = registry.getDouble("Massstab", 1);
-		setWegeinheit(Einheit.getEinheit(registry.get("Wegeinheit", "cm")));
+		wegeinheit = massstabAnwenden(Einheit.getEinheit(registry.get(
+				"Wegeinheit", "cm")));
 		zeiteinheit = Einheit.getEinheit(registry.get("Zeiteinheit", "s"));
 		xyRendererTyp = DiagrammRendererFactory.RendererTyp.valueOf(registry
 				.get("xyRendererTyp", "SplineRenderer"));
@@ -148,47 +232,181 @@ public class Einstellungen extends Observable {
 		}
 	}
 
+	/**
+	 * Fuehrt mehrere Aenderungen aus und veroeffentlicht sie gemeinsam als
+	 * einen Schnappschuss. Observer werden erst danach informiert.
+	 * 
+	 * @param aenderungen
+	 *            ruft die gewuenschten Setter auf
+	 */
+	public void aendern(Runnable aenderungen) {
+		synchronized (this) {
+			aenderungstiefe++;
+			try {
+				aenderungen.run();
+			} finally {
+				aenderungstiefe--;
+				veroeffentlichen();
+			}
+		}
+		benachrichtigen();
+	}
+
+	/**
+	 * Veroeffentlicht den Arbeitsstand als neuen Schnappschuss (ausser
+	 * waehrend aendern()). Nur mit der Sperre des Objekts aufrufen.
+	 */
+	private void veroeffentlichen() {
+		if (aenderungstiefe == 0) {
+			schnappschuss = new Schnappschuss(this);
+		}
+	}
+
+	/**
+	 * Informiert die Observer, sofern der Aufrufer nicht innerhalb von
+	 * aendern() die Sperre haelt
+	 */
+	private void benachrichtigen() {
+		if (!Thread.holdsLock(this)) {
+			notifyObservers();
+		}
+	}
+
+	/**
+	 * Merkt einen Wert zum Schreiben in die Registry vor. Nur mit der Sperre
+	 * des Objekts aufrufen.
+	 */
+	private void merken(String schluessel, Object wert) {
+		ausstehendeWerte.put(schluessel, wert);
+		if (!schreibenGeplant) {
+			schreibenGeplant = true;
+			schreiber.schedule(speichernAufgabe, SCHREIBVERZOEGERUNG,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Schreibt alle ausstehenden Werte sofort in die Registry
+	 */
+	public void speichern() {
+		synchronized (schreibSperre) {
+			Map<String, Object> werte;
+			synchronized (this) {
+				if (ausstehendeWerte.isEmpty()) {
+					return;
+				}
+				werte = new LinkedHashMap<String, Object>(ausstehendeWerte);
+				ausstehendeWerte.clear();
+				schreibenGeplant = false;
+			}
+			for (Map.Entry<String, Object> eintrag : werte.entrySet()) {
+				String schluessel = eintrag.getKey();
+				Object wert = eintrag.getValue();
+				if (wert instanceof Double) {
+					registry.putDouble(schluessel, (Double) wert);
+				} else if (wert instanceof Integer) {
+					registry.putInt(schluessel, (Integer) wert);
+				} else if (wert instanceof Long) {
+					registry.putLong(schluessel, (Long) wert);
+				} else if (wert instanceof Boolean) {
+					registry.putBoolean(schluessel, (Boolean) wert);
+				} else {
+					registry.put(schluessel, String.valueOf(wert));
+				}
+			}
+			try {
+				registry.flush();
+			} catch (BackingStoreException e) {
+				System.err.println("Einstellungen konnten nicht gespeichert werden: "
+						+ e.getMessage());
+			}
+		}
+	}
+
 	/* Setter - Methoden (setzen auch in der Registry) */
 
 	public void setMessradumfang(double messradumfang) {
-		this.messradumfang = messradumfang;
-		registry.putDouble("Messradumfang", messradumfang);
+		synchronized (this) {
+			this.messradumfang = messradumfang;
+			merken("Messradumfang", messradumfang);
+			setChanged();
+			veroeffentlichen();
+		}
+		benachrichtigen();
 	}
 
-	public void setMarkierungen(int markierungen) {
+	public synchronized void setMarkierungen(int markierungen) {
 		this.markierungen = markierungen;
-		registry.putInt("Markierungen", markierungen);
+		merken("Markierungen", markierungen);
+		veroeffentlichen();
 	}
 
-	public void setKompressionsfaktor(int kompressionsfaktor) {
+	public synchronized void setKompressionsfaktor(int kompressionsfaktor) {
 		this.kompressionsfaktor = kompressionsfaktor;
-		registry.putInt("Kompressionsfaktor", kompressionsfaktor);
+		merken("Kompressionsfaktor", kompressionsfaktor);
+		veroeffentlichen();
 	}
 
-	public void setDiagrammFarbe(int datenreiheNr, Color farbe) {
+	public synchronized void setDiagrammFarbe(int datenreiheNr, Color farbe) {
 		diagrammFarben[datenreiheNr] = farbe.getRGB();
-		registry.putInt("DiagrammFarbe" + datenreiheNr,
-				diagrammFarben[datenreiheNr]);
+		merken("DiagrammFarbe" + datenreiheNr, diagrammFarben[datenreiheNr]);
+		veroeffentlichen();
 	}
 
-	public void setAutoConnect(boolean autoConnect) {
+	public synchronized void setAutoConnect(boolean autoConnect) {
 		this.autoConnect = autoConnect;
-		registry.putBoolean("autoConnect", autoConnect);
+		merken("autoConnect", autoConnect);
+		veroeffentlichen();
 	}
 
-	public void setMessdauerProFS(boolean messdauerProFS) {
+	/**
+	 * Merkt sich den Anschluss, an dem ein Geraet zuletzt gefunden wurde. Der
+	 * Wert gehoert nicht zum Schnappschuss, Observer werden nicht informiert.
+	 * 
+	 * @param geraet
+	 *            z.B. "Zentrale" oder "Messstand"
+	 * @param anschluss
+	 *            Name der Schnittstelle
+	 */
+	public synchronized void setAnschluss(String geraet, String anschluss) {
+		if (anschluss.equals(anschluesse.put(geraet, anschluss))) {
+			return;
+		}
+		merken("Anschluss " + geraet, anschluss);
+	}
+
+	/**
+	 * @param geraet
+	 * @return Anschluss, an dem das Geraet zuletzt gefunden wurde, oder null
+	 */
+	public synchronized String getAnschluss(String geraet) {
+		String anschluss = anschluesse.get(geraet);
+		if (anschluss == null) {
+			anschluss = registry.get("Anschluss " + geraet, null);
+			if (anschluss != null) {
+				anschluesse.put(geraet, anschluss);
+			}
+		}
+		return anschluss;
+	}
+
+	public synchronized void setMessdauerProFS(boolean messdauerProFS) {
 		this.messdauerProFS = messdauerProFS;
-		registry.putBoolean("messdauerProFS", messdauerProFS);
+		merken("messdauerProFS", messdauerProFS);
+		veroeffentlichen();
 	}
 
-	public void setVorbereitungszeit(long vorbereitungszeit) {
+	public synchronized void setVorbereitungszeit(long vorbereitungszeit) {
 		this.vorbereitungszeit = vorbereitungszeit;
-		registry.putLong("Vorbereitungszeit", vorbereitungszeit);
+		merken("Vorbereitungszeit", vorbereitungszeit);
+		veroeffentlichen();
 	}
 
-	public void setVorbereitungszeitProFS(long vorbereitungszeitProFS) {
+	public synchronized void setVorbereitungszeitProFS(
+			long vorbereitungszeitProFS) {
 		this.vorbereitungszeitProFS = vorbereitungszeitProFS;
-		registry.putLong("Vorbereitungszeit pro FS", vorbereitungszeitProFS);
+		merken("Vorbereitungszeit pro FS", vorbereitungszeitProFS);
+		veroeffentlichen();
 	}
 
 	/**
@@ -197,16 +415,32 @@ public class Einstellungen extends Observable {
 	 * @param wegeinheit
 	 */
 	public void setWegeinheit(Einheit wegeinheit) {
-		this.wegeinheit = new Einheit(wegeinheit.toString(),
+		synchronized (this) {
+			this.wegeinheit = massstabAnwenden(wegeinheit);
+			merken("Wegeinheit", wegeinheit.toString());
+			setChanged();
+			veroeffentlichen();
+		}
+		benachrichtigen();
+	}
+
+	/**
+	 * @return Einheit, deren Umrechnungskoeffizient um den Massstab ergaenzt
+	 *         ist
+	 */
+	private Einheit massstabAnwenden(Einheit wegeinheit) {
+		return new Einheit(wegeinheit.toString(),
 				wegeinheit.getUmrechnungskoeffizient() / massstab);
-		registry.put("Wegeinheit", wegeinheit.toString());
 	}
 
 	public void setZeiteinheit(Einheit zeiteinheit) {
-		this.zeiteinheit = zeiteinheit;
-		registry.put("Zeiteinheit", zeiteinheit.toString());
-		setChanged();
-		notifyObservers();
+		synchronized (this) {
+			this.zeiteinheit = zeiteinheit;
+			merken("Zeiteinheit", zeiteinheit.toString());
+			setChanged();
+			veroeffentlichen();
+		}
+		benachrichtigen();
 	}
 
 	/**
@@ -215,72 +449,181 @@ public class Einstellungen extends Observable {
 	 * @param massstab
 	 */
 	public void setMassstab(double massstab) {
-		this.massstab = massstab;
-		registry.putDouble("Massstab", massstab);
-		setWegeinheit(Einheit.getEinheit(wegeinheit.toString()));
+		synchronized (this) {
+			this.massstab = massstab;
+			merken("Massstab", massstab);
+			setWegeinheit(Einheit.getEinheit(wegeinheit.toString()));
+		}
+		benachrichtigen();
 	}
 
-	public void setXyRendererTyp(
+	public synchronized void setXyRendererTyp(
 			DiagrammRendererFactory.RendererTyp xyRendererTyp) {
 		this.xyRendererTyp = xyRendererTyp;
-		registry.put("xyRendererTyp", xyRendererTyp.toString());
+		merken("xyRendererTyp", xyRendererTyp.toString());
+		veroeffentlichen();
 	}
 
-	/* Getter - Methoden */
+	/* Getter - Methoden (lesen aus dem aktuellen Schnappschuss) */
+
+	/**
+	 * @return aktuell gueltiger, unveraenderlicher Stand aller Einstellungen.
+	 *         Wer mehrere zusammengehoerige Werte braucht (z.B. Einheiten und
+	 *         Messeinheit), sollte sie aus demselben Schnappschuss lesen.
+	 */
+	public Schnappschuss getSchnappschuss() {
+		return schnappschuss;
+	}
 
 	/**
 	 * @return Laenge einer gemessenen Einheit in cm (Messradumfang geteilt
 	 *         durch die Anzahl Markierungen)
 	 */
 	public double getMesseinheit() {
-		return Double.valueOf(messradumfang) / Double.valueOf(markierungen);
+		return schnappschuss.getMesseinheit();
 	}
 
 	public double getMessradumfang() {
-		return messradumfang;
+		return schnappschuss.getMessradumfang();
 	}
 
 	public int getMarkierungen() {
-		return markierungen;
+		return schnappschuss.getMarkierungen();
 	}
 
+	/**
+	 * @deprecated Das st/vt-Diagramm wird mit dem MinMaxAusduenner passend
+	 *             zur Diagrammbreite ausgeduennt, ein fester Faktor ist nicht
+	 *             mehr noetig.
+	 */
+	@Deprecated
 	public int getKompressionsfaktor() {
-		return kompressionsfaktor;
+		return schnappschuss.kompressionsfaktor;
 	}
 
 	public Color getDiagrammFarbe(int datenreiheNr) {
-		return new Color(Integer.valueOf(diagrammFarben[datenreiheNr]));
+		return schnappschuss.getDiagrammFarbe(datenreiheNr);
 	}
 
 	public boolean isAutoConnect() {
-		return autoConnect;
+		return schnappschuss.isAutoConnect();
 	}
 
 	public boolean isMessdauerProFS() {
-		return messdauerProFS;
+		return schnappschuss.isMessdauerProFS();
 	}
 
 	public long getVorbereitungszeit() {
-		return vorbereitungszeit;
+		return schnappschuss.getVorbereitungszeit();
 	}
 
 	public Einheit getWegeinheit() {
-		return wegeinheit;
+		return schnappschuss.getWegeinheit();
 	}
 
 	public Einheit getZeiteinheit() {
-		return zeiteinheit;
+		return schnappschuss.getZeiteinheit();
 	}
 
 	public DiagrammRendererFactory.RendererTyp getXyRendererTyp() {
-		return xyRendererTyp;
+		return schnappschuss.getXyRendererTyp();
 	}
 
 	public double getMassstab() {
-		return massstab;
+		return schnappschuss.getMassstab();
 	}
 
 	public long getVorbereitungszeitProFS() {
-		return vorbereitungszeitProFS;
+		return schnappschuss.getVorbereitungszeitProFS();
+	}
+
+	/**
+	 * Unveraenderlicher Stand aller Einstellungen zu einem Zeitpunkt
+	 */
+	public static final class Schnappschuss {
+
+		private final double messradumfang;
+		private final int markierungen;
+		private final int kompressionsfaktor;
+		private final int[] diagrammFarben;
+		private final boolean autoConnect;
+		private final boolean messdauerProFS;
+		private final long vorbereitungszeit;
+		private final long vorbereitungszeitProFS;
+		private final Einheit wegeinheit;
+		private final Einheit zeiteinheit;
+		private final double massstab;
+		private final DiagrammRendererFactory.RendererTyp xyRendererTyp;
+
+		/**
+		 * Uebernimmt den Arbeitsstand (nur mit der Sperre der Einstellungen
+		 * aufrufen)
+		 */
+		private Schnappschuss(Einstellungen e) {
+			messradumfang = e.messradumfang;
+			markierungen = e.markierungen;
+			kompressionsfaktor = e.kompressionsfaktor;
+			diagrammFarben = e.diagrammFarben.clone();
+			autoConnect = e.autoConnect;
+			messdauerProFS = e.messdauerProFS;
+			vorbereitungszeit = e.vorbereitungszeit;
+			vorbereitungszeitProFS = e.vorbereitungszeitProFS;
+			wegeinheit = e.wegeinheit;
+			zeiteinheit = e.zeiteinheit;
+			massstab = e.massstab;
+			xyRendererTyp = e.xyRendererTyp;
+		}
+
+		/**
+		 * @return Laenge einer gemessenen Einheit in cm (Messradumfang geteilt
+		 *         durch die Anzahl Markierungen)
+		 */
+		public double getMesseinheit() {
+			return messradumfang / markierungen;
+		}
+
+		public double getMessradumfang() {
+			return messradumfang;
+		}
+
+		public int getMarkierungen() {
+			return markierungen;
+		}
+
+		public Color getDiagrammFarbe(int datenreiheNr) {
+			return new Color(diagrammFarben[datenreiheNr]);
+		}
+
+		public boolean isAutoConnect() {
+			return autoConnect;
+		}
+
+		public boolean isMessdauerProFS() {
+			return messdauerProFS;
+		}
+
+		public long getVorbereitungszeit() {
+			return vorbereitungszeit;
+		}
+
+		public long getVorbereitungszeitProFS() {
+			return vorbereitungszeitProFS;
+		}
+
+		public Einheit getWegeinheit() {
+			return wegeinheit;
+		}
+
+		public Einheit getZeiteinheit() {
+			return zeiteinheit;
+		}
+
+		public double getMassstab() {
+			return massstab;
+		}
+
+		public DiagrammRendererFactory.RendererTyp getXyRendererTyp() {
+			return xyRendererTyp;
+		}
 	}
 }
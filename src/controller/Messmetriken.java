@@ -0,0 +1,353 @@
+package controller;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import datenaufnahme.Zeithistogramm;
+
+/**
+ * Sammelt Laufzeitmetriken von Messung, Plotter und Saeulendiagramm:
+ * Impulsrate, Latenz vom Impuls bis zum Eintrag ins Diagramm, Fuellstand des
+ * Impulspuffers, vom Puffer abgewiesene und beim Entprellen verworfene
+ * Impulse, Ueberlastphasen sowie Anzahl und Dauer der Neuzeichnungen.
+ * 
+ * Das Erfassen kostet nur einen atomaren Zaehler bzw. einen Eintrag in ein
+ * Zeithistogramm und ist damit auch fuer die Messschleife geeignet. Die Werte
+ * werden als MBean (VisTrain:type=Messmetriken) veroeffentlicht und alle zehn
+ * Sekunden als Zusammenfassung protokolliert, sofern sich etwas getan hat.
+ * Die Zeithistogramme beginnen dabei jeweils von vorne.
+ * 
+ * @author Manuel Weber
+ */
+public class Messmetriken implements MessmetrikenMBean {
+
+	// Singleton-Pattern ---------------------------------------------
+	private static class Halter {
+		private static final Messmetriken INSTANZ = new Messmetriken();
+	}
+
+	public static Messmetriken getMessmetriken() {
+		return Halter.INSTANZ;
+	}
+
+	private Messmetriken() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			server.registerMBean(this, new ObjectName(NAME));
+		} catch (JMException e) {
+			LOG.warning("Messmetriken konnten nicht registriert werden: "
+					+ e.getMessage());
+		}
+		ScheduledExecutorService zeitgeber = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "Messmetriken");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		zeitgeber.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				intervallAbschliessen();
+			}
+		}, INTERVALL, INTERVALL, TimeUnit.SECONDS);
+	}
+
+	// ---------------------------------------------------------------
+
+	/**
+	 * Name, unter dem die MBean registriert wird
+	 */
+	public static final String NAME = "VisTrain:type=Messmetriken";
+
+	/**
+	 * Laenge eines Intervalls (in Sekunden)
+	 */
+	private static final long INTERVALL = 10;
+
+	private static final Logger LOG = Logger.getLogger("VisTrain.Messmetriken");
+
+	private final AtomicLong impulse = new AtomicLong();
+	private final AtomicLong abgewieseneImpulse = new AtomicLong();
+	private final AtomicLong entprellteImpulse = new AtomicLong();
+	private final AtomicLong neuzeichnungen = new AtomicLong();
+
+	/**
+	 * Anzahl der momentan ueberlasteten Plotter und Anzahl der bisherigen
+	 * Ueberlastphasen
+	 */
+	private final AtomicInteger ueberlastAktiv = new AtomicInteger();
+	private final AtomicLong ueberlastphasen = new AtomicLong();
+
+	private volatile int pufferfuellstand = 0;
+	private final AtomicInteger maxPufferfuellstand = new AtomicInteger();
+
+	/**
+	 * Histogramme des laufenden Intervalls. Sie werden zu Beginn jedes
+	 * Intervalls ersetzt, ein Wert der gerade noch im alten landet, geht
+	 * also hoechstens fuer die Anzeige verloren.
+	 */
+	private volatile Zeithistogramm latenz = new Zeithistogramm();
+	private volatile Zeithistogramm stapelverzoegerung = new Zeithistogramm();
+	private volatile Zeithistogramm zeichendauer = new Zeithistogramm();
+
+	/**
+	 * Histogramme des zuletzt abgeschlossenen Intervalls
+	 */
+	private volatile Zeithistogramm letzteLatenz = new Zeithistogramm();
+	private volatile Zeithistogramm letzteStapelverzoegerung = new Zeithistogramm();
+	private volatile Zeithistogramm letzteZeichendauer = new Zeithistogramm();
+
+	private volatile double impulsrate = 0;
+
+	/**
+	 * Zaehlerstaende am Ende des letzten Intervalls (nur im Zeitgeber-Thread)
+	 */
+	private long letzteImpulse = 0;
+	private long letzteNeuzeichnungen = 0;
+	private long letzterAbschluss = System.nanoTime();
+
+	// Erfassen -------------------------------------------------------
+
+	/**
+	 * Zaehlt einen aufgenommenen Impuls
+	 */
+	public void impulsAufgenommen() {
+		impulse.incrementAndGet();
+	}
+
+	/**
+	 * Zaehlt einen Impuls, den der volle Impulspuffer abgewiesen hat (der
+	 * Plotter holt ihn aus der Messreihe nach)
+	 */
+	public void impulsAbgewiesen() {
+		abgewieseneImpulse.incrementAndGet();
+	}
+
+	/**
+	 * Zaehlt einen Statuswechsel, den die Messung als Prellen verworfen hat,
+	 * weil er zu kurz nach dem letzten Impuls kam
+	 */
+	public void impulsEntprellt() {
+		entprellteImpulse.incrementAndGet();
+	}
+
+	/**
+	 * Meldet, dass ein Plotter in den Ueberlastbetrieb wechselt oder ihn
+	 * verlaesst
+	 * 
+	 * @param aktiv
+	 */
+	public void ueberlastGeaendert(boolean aktiv) {
+		if (aktiv) {
+			ueberlastAktiv.incrementAndGet();
+			ueberlastphasen.incrementAndGet();
+			LOG.warning("Ueberlast: Anzeige wird ausgeduennt");
+		} else {
+			ueberlastAktiv.decrementAndGet();
+			LOG.info("Ueberlast beendet");
+		}
+	}
+
+	/**
+	 * Haelt den Fuellstand eines Impulspuffers fest
+	 * 
+	 * @param fuellstand
+	 *            Anzahl der wartenden Impulse
+	 */
+	public void pufferfuellstandErfassen(int fuellstand) {
+		pufferfuellstand = fuellstand;
+		int max;
+		while (fuellstand > (max = maxPufferfuellstand.get())) {
+			if (maxPufferfuellstand.compareAndSet(max, fuellstand)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Erfasst die Zeit von der Aufnahme eines Impulses bis zur Uebergabe des
+	 * daraus berechneten Punktes an das Diagramm
+	 * 
+	 * @param nanos
+	 */
+	public void latenzErfassen(long nanos) {
+		erfassen(latenz, nanos);
+	}
+
+	/**
+	 * Erfasst die Zeit, die ein Punkt im Stapel des Diagramms auf den Eintrag
+	 * ins Dataset gewartet hat
+	 * 
+	 * @param nanos
+	 */
+	public void stapelverzoegerungErfassen(long nanos) {
+		erfassen(stapelverzoegerung, nanos);
+	}
+
+	/**
+	 * Zaehlt eine Neuzeichnung eines Diagramms und erfasst ihre Dauer
+	 * 
+	 * @param nanos
+	 */
+	public void neuzeichnungErfassen(long nanos) {
+		neuzeichnungen.incrementAndGet();
+		erfassen(zeichendauer, nanos);
+	}
+
+	/**
+	 * Die Histogramme erlauben nur einen schreibenden Thread, mehrere
+	 * Messungen oder Diagramme werden daher ueber die Sperre des Histogramms
+	 * nacheinander erfasst
+	 */
+	private static void erfassen(Zeithistogramm histogramm, long nanos) {
+		synchronized (histogramm) {
+			histogramm.erfassen(nanos);
+		}
+	}
+
+	/**
+	 * Beginnt neue Histogramme, berechnet die Impulsrate des abgelaufenen
+	 * Intervalls und protokolliert die Zusammenfassung
+	 */
+	private void intervallAbschliessen() {
+		long jetzt = System.nanoTime();
+		long n = impulse.get();
+		long z = neuzeichnungen.get();
+		impulsrate = (n - letzteImpulse) * 1e9 / (jetzt - letzterAbschluss);
+		boolean aktiv = n != letzteImpulse || z != letzteNeuzeichnungen;
+		letzteImpulse = n;
+		letzteNeuzeichnungen = z;
+		letzterAbschluss = jetzt;
+
+		letzteLatenz = latenz;
+		letzteStapelverzoegerung = stapelverzoegerung;
+		letzteZeichendauer = zeichendauer;
+		latenz = new Zeithistogramm();
+		stapelverzoegerung = new Zeithistogramm();
+		zeichendauer = new Zeithistogramm();
+
+		if (aktiv) {
+			LOG.info(getZusammenfassung());
+		}
+	}
+
+	// MBean ---------------------------------------------------------
+
+	@Override
+	public long getImpulse() {
+		return impulse.get();
+	}
+
+	@Override
+	public double getImpulsrate() {
+		return impulsrate;
+	}
+
+	@Override
+	public long getAbgewieseneImpulse() {
+		return abgewieseneImpulse.get();
+	}
+
+	@Override
+	public long getEntprellteImpulse() {
+		return entprellteImpulse.get();
+	}
+
+	@Override
+	public int getUeberlastAktiv() {
+		return ueberlastAktiv.get();
+	}
+
+	@Override
+	public long getUeberlastphasen() {
+		return ueberlastphasen.get();
+	}
+
+	@Override
+	public int getPufferfuellstand() {
+		return pufferfuellstand;
+	}
+
+	@Override
+	public int getMaxPufferfuellstand() {
+		return maxPufferfuellstand.get();
+	}
+
+	@Override
+	public long getLatenzMittelwert() {
+		return (long) letzteLatenz.getMittelwert();
+	}
+
+	@Override
+	public long getLatenz99Quantil() {
+		return letzteLatenz.getQuantil(0.99);
+	}
+
+	@Override
+	public long getLatenzMaximum() {
+		return letzteLatenz.getMaximum();
+	}
+
+	@Override
+	public long getStapelverzoegerung99Quantil() {
+		return letzteStapelverzoegerung.getQuantil(0.99);
+	}
+
+	@Override
+	public long getNeuzeichnungen() {
+		return neuzeichnungen.get();
+	}
+
+	@Override
+	public long getZeichendauerMittelwert() {
+		return (long) letzteZeichendauer.getMittelwert();
+	}
+
+	@Override
+	public long getZeichendauer99Quantil() {
+		return letzteZeichendauer.getQuantil(0.99);
+	}
+
+	@Override
+	public long getZeichendauerMaximum() {
+		return letzteZeichendauer.getMaximum();
+	}
+
+	@Override
+	public String getZusammenfassung() {
+		return String.format(
+				"%.1f Impulse/s (%d gesamt, %d nachgeholt, %d entprellt), "
+						+ "Puffer %d (max. %d), "
+						+ "%d Ueberlastphasen; Latenz: %s; Stapel: %s; "
+						+ "%d Neuzeichnungen, Dauer: %s",
+				impulsrate, impulse.get(), abgewieseneImpulse.get(),
+				entprellteImpulse.get(), pufferfuellstand, maxPufferfuellstand.get(),
+				ueberlastphasen.get(), letzteLatenz,
+				letzteStapelverzoegerung, neuzeichnungen.get(),
+				letzteZeichendauer);
+	}
+
+	@Override
+	public void zuruecksetzen() {
+		abgewieseneImpulse.set(0);
+		entprellteImpulse.set(0);
+		ueberlastphasen.set(0);
+		maxPufferfuellstand.set(0);
+		letzteLatenz = new Zeithistogramm();
+		letzteStapelverzoegerung = new Zeithistogramm();
+		letzteZeichendauer = new Zeithistogramm();
+	}
+}
@@ -0,0 +1,46 @@
+package controller;
+
+/**
+ * Verwaltungsschnittstelle der Messmetriken (z.B. fuer JConsole). Zeitwerte
+ * in Nanosekunden beziehen sich auf das zuletzt abgeschlossene Intervall.
+ * 
+ * @author Manuel Weber
+ */
+public interface MessmetrikenMBean {
+
+	long getImpulse();
+
+	double getImpulsrate();
+
+	long getAbgewieseneImpulse();
+
+	long getEntprellteImpulse();
+
+	int getUeberlastAktiv();
+
+	long getUeberlastphasen();
+
+	int getPufferfuellstand();
+
+	int getMaxPufferfuellstand();
+
+	long getLatenzMittelwert();
+
+	long getLatenz99Quantil();
+
+	long getLatenzMaximum();
+
+	long getStapelverzoegerung99Quantil();
+
+	long getNeuzeichnungen();
+
+	long getZeichendauerMittelwert();
+
+	long getZeichendauer99Quantil();
+
+	long getZeichendauerMaximum();
+
+	String getZusammenfassung();
+
+	void zuruecksetzen();
+}
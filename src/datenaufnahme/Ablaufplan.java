@@ -0,0 +1,181 @@
+package datenaufnahme;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import controller.Einstellungen;
+
+/**
+ * Vorab berechneter Zeitplan einer Messung: wann welche Fahrstufe gesetzt und
+ * wann die Messwertaufnahme ausgesetzt bzw. fortgesetzt wird. Die Zeitpunkte
+ * sind Abstaende in Nanosekunden zum Start des Ablaufs und werden von der
+ * Ablaufsteuerung auf absolute Termine umgerechnet, Verzoegerungen einzelner
+ * Schritte summieren sich also nicht auf.
+ *
+ * Die Fahrstufen werden von Fahrstufe0 bis Fahrstufe1 in Einerschritten
+ * durchlaufen, Fahrstufe 0 (Stillstand) wird uebersprungen. Zu Beginn faehrt
+ * die Lok die Vorbereitungszeit lang ohne Messwertaufnahme an. Ist die
+ * Messdauer als Dauer pro Fahrstufe eingestellt, gilt sie fuer jede Fahrstufe,
+ * sonst wird sie gleichmaessig auf alle Fahrstufen verteilt. Bei nicht
+ * gleichmaessiger Beschleunigung setzt die Messwertaufnahme nach jedem
+ * Fahrstufenwechsel fuer die Vorbereitungszeit pro Fahrstufe aus, damit die
+ * Lok die neue Geschwindigkeit erreichen kann.
+ *
+ * @author Manuel Weber
+ */
+public class Ablaufplan {
+
+	public enum Art {
+		/**
+		 * Fahrstufe setzen
+		 */
+		FAHRSTUFE,
+		/**
+		 * Messwertaufnahme aussetzen
+		 */
+		AUSSETZEN,
+		/**
+		 * Messwertaufnahme fortsetzen
+		 */
+		MESSEN,
+		/**
+		 * Lok anhalten und Messung beenden
+		 */
+		ENDE
+	}
+
+	private final long[] zeitpunkte;
+	private final Art[] arten;
+	private final int[] fahrstufen;
+	private final int anzahl;
+
+	private Ablaufplan(long[] zeitpunkte, Art[] arten, int[] fahrstufen,
+			int anzahl) {
+		this.zeitpunkte = zeitpunkte;
+		this.arten = arten;
+		this.fahrstufen = fahrstufen;
+		this.anzahl = anzahl;
+	}
+
+	/**
+	 * Berechnet den Ablauf einer Messung
+	 *
+	 * @param messreihe
+	 *            Vorgaben der Messung
+	 * @param einstellungen
+	 *            Vorbereitungszeiten und Auslegung der Messdauer
+	 * @return Ablaufplan
+	 */
+	public static Ablaufplan kompilieren(Messreihe messreihe,
+			Einstellungen.Schnappschuss einstellungen) {
+		int fs0 = messreihe.getFahrstufe0();
+		int fs1 = messreihe.getFahrstufe1();
+		int schritt = fs1 >= fs0 ? 1 : -1;
+		int[] stufen = new int[Math.abs(fs1 - fs0) + 1];
+		int n = 0;
+		for (int fs = fs0;; fs += schritt) {
+			if (fs != 0) {
+				stufen[n++] = fs;
+			}
+			if (fs == fs1) {
+				break;
+			}
+		}
+
+		long dauer = TimeUnit.MILLISECONDS.toNanos(messreihe.getMessdauer());
+		long dauerProFS = einstellungen.isMessdauerProFS() || n == 0 ? dauer
+				: dauer / n;
+		long vorbereitung = TimeUnit.MILLISECONDS.toNanos(einstellungen
+				.getVorbereitungszeit());
+		long vorbereitungProFS = messreihe.isGleichmaessigBeschleunigt() ? 0
+				: TimeUnit.MILLISECONDS.toNanos(einstellungen
+						.getVorbereitungszeitProFS());
+
+		// hoechstens 3 Ereignisse pro Fahrstufe plus Anfang und Ende
+		int kapazitaet = 3 * n + 4;
+		long[] zeitpunkte = new long[kapazitaet];
+		Art[] arten = new Art[kapazitaet];
+		int[] fahrstufen = new int[kapazitaet];
+		int e = 0;
+
+		long t = 0;
+		for (int i = 0; i < n; i++) {
+			long pause = i == 0 ? vorbereitung : vorbereitungProFS;
+			if (pause > 0 || i == 0) {
+				// erst aussetzen, damit kein Impuls der neuen Fahrstufe in
+				// die Messung geraet
+				zeitpunkte[e] = t;
+				arten[e++] = Art.AUSSETZEN;
+			}
+			zeitpunkte[e] = t;
+			arten[e] = Art.FAHRSTUFE;
+			fahrstufen[e++] = stufen[i];
+			if (pause > 0 || i == 0) {
+				t += pause;
+				zeitpunkte[e] = t;
+				arten[e++] = Art.MESSEN;
+			}
+			t += dauerProFS;
+		}
+		zeitpunkte[e] = t;
+		arten[e++] = Art.ENDE;
+		return new Ablaufplan(zeitpunkte, arten, fahrstufen, e);
+	}
+
+	/**
+	 * @return Anzahl der Ereignisse
+	 */
+	public int getAnzahl() {
+		return anzahl;
+	}
+
+	/**
+	 * @param i
+	 *            Index des Ereignisses
+	 * @return Abstand zum Start des Ablaufs in Nanosekunden
+	 */
+	public long getZeitpunkt(int i) {
+		return zeitpunkte[i];
+	}
+
+	public Art getArt(int i) {
+		return arten[i];
+	}
+
+	/**
+	 * @param i
+	 *            Index des Ereignisses
+	 * @return zu setzende Fahrstufe (nur bei Art.FAHRSTUFE)
+	 */
+	public int getFahrstufe(int i) {
+		return fahrstufen[i];
+	}
+
+	/**
+	 * @return Dauer des gesamten Ablaufs in Nanosekunden
+	 */
+	public long getGesamtdauer() {
+		return anzahl == 0 ? 0 : zeitpunkte[anzahl - 1];
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < anzahl; i++) {
+			text.append(TimeUnit.NANOSECONDS.toMillis(zeitpunkte[i]))
+					.append(" ms: ").append(arten[i]);
+			if (arten[i] == Art.FAHRSTUFE) {
+				text.append(' ').append(fahrstufen[i]);
+			}
+			text.append('\n');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @return Kopie der Zeitpunkte aller Ereignisse
+	 */
+	public long[] getZeitpunkte() {
+		return Arrays.copyOf(zeitpunkte, anzahl);
+	}
+}
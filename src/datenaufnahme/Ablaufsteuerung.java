@@ -0,0 +1,188 @@
+package datenaufnahme;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Fuehrt einen Ablaufplan auf einem Zeitrad aus. Beim Start werden alle
+ * Ereignisse auf einmal zu absoluten Terminen eingeplant (Startzeitpunkt plus
+ * Abstand laut Plan). Ein verspaetetes Ereignis verschiebt die folgenden also
+ * nicht, ein Durchlauf ueber alle 126 Fahrstufen endet so puenktlich wie ein
+ * einzelner Schritt.
+ *
+ * Die Ereignisse werden im Thread des Zeitrades an alle Empfaenger gemeldet,
+ * z.B. an die Messung und die Loksteuerung. Die Verspaetung jedes Ereignisses
+ * gegenueber seinem Termin wird in einem Zeithistogramm festgehalten.
+ *
+ * @author Manuel Weber
+ */
+public class Ablaufsteuerung {
+
+	/**
+	 * Wird ueber die Ereignisse des Ablaufs informiert (im Thread des
+	 * Zeitrades, sollte also nicht lange blockieren)
+	 */
+	public interface Empfaenger {
+
+		void fahrstufeSetzen(int fahrstufe);
+
+		/**
+		 * @param ausgesetzt
+		 *            true = Messwertaufnahme aussetzen, false = fortsetzen
+		 */
+		void aufnahmeAussetzen(boolean ausgesetzt);
+
+		/**
+		 * Der Ablauf ist beendet oder wurde abgebrochen, die Lok soll
+		 * anhalten. Wird genau einmal gemeldet.
+		 */
+		void ablaufBeendet();
+	}
+
+	/**
+	 * Gemeinsames Zeitrad aller Ablaufsteuerungen (Takt 1 ms, eine Umdrehung
+	 * dauert etwa eine Sekunde)
+	 */
+	private static class Halter {
+		private static final Zeitrad ZEITRAD = new Zeitrad(1,
+				TimeUnit.MILLISECONDS, 1024);
+	}
+
+	private final Ablaufplan plan;
+	private final Zeitrad zeitrad;
+
+	private final List<Empfaenger> empfaenger = new CopyOnWriteArrayList<Empfaenger>();
+
+	private Zeitrad.Auftrag[] auftraege;
+
+	/**
+	 * Verspaetungen der Ereignisse (nur im Thread des Zeitrades erfasst)
+	 */
+	private final Zeithistogramm verspaetung = new Zeithistogramm();
+
+	private volatile long start = 0;
+
+	private final AtomicBoolean beendet = new AtomicBoolean();
+
+	/**
+	 * @param plan
+	 */
+	public Ablaufsteuerung(Ablaufplan plan) {
+		this(plan, Halter.ZEITRAD);
+	}
+
+	/**
+	 * @param plan
+	 * @param zeitrad
+	 *            Zeitrad, auf dem der Ablauf ausgefuehrt wird
+	 */
+	public Ablaufsteuerung(Ablaufplan plan, Zeitrad zeitrad) {
+		this.plan = plan;
+		this.zeitrad = zeitrad;
+	}
+
+	public void empfaengerHinzufuegen(Empfaenger empfaenger) {
+		this.empfaenger.add(empfaenger);
+	}
+
+	/**
+	 * Plant alle Ereignisse ab jetzt ein
+	 */
+	public synchronized void starten() {
+		if (auftraege != null) {
+			throw new IllegalStateException("Ablauf wurde bereits gestartet");
+		}
+		int n = plan.getAnzahl();
+		auftraege = new Zeitrad.Auftrag[n];
+		long beginn = System.nanoTime();
+		start = beginn;
+		for (int i = 0; i < n; i++) {
+			final int ereignis = i;
+			final long termin = beginn + plan.getZeitpunkt(i);
+			auftraege[i] = zeitrad.planen(termin, new Runnable() {
+				@Override
+				public void run() {
+					verspaetung.erfassen(System.nanoTime() - termin);
+					melden(ereignis);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Bricht alle noch ausstehenden Ereignisse ab. Ist der Ablauf noch nicht
+	 * beendet, erhalten die Empfaenger stattdessen sofort ablaufBeendet(),
+	 * damit die Lok anhaelt.
+	 */
+	public void abbrechen() {
+		synchronized (this) {
+			if (auftraege != null) {
+				for (Zeitrad.Auftrag auftrag : auftraege) {
+					auftrag.abbrechen();
+				}
+			}
+		}
+		beenden();
+	}
+
+	/**
+	 * Meldet das Ende des Ablaufs, falls es noch nicht gemeldet wurde
+	 */
+	private void beenden() {
+		if (beendet.compareAndSet(false, true)) {
+			for (Empfaenger e : empfaenger) {
+				e.ablaufBeendet();
+			}
+		}
+	}
+
+	private void melden(int i) {
+		switch (plan.getArt(i)) {
+		case FAHRSTUFE:
+			for (Empfaenger e : empfaenger) {
+				e.fahrstufeSetzen(plan.getFahrstufe(i));
+			}
+			break;
+		case AUSSETZEN:
+			for (Empfaenger e : empfaenger) {
+				e.aufnahmeAussetzen(true);
+			}
+			break;
+		case MESSEN:
+			for (Empfaenger e : empfaenger) {
+				e.aufnahmeAussetzen(false);
+			}
+			break;
+		case ENDE:
+			beenden();
+			break;
+		}
+	}
+
+	/**
+	 * @return Wahrheitswert, ob der Ablauf beendet oder abgebrochen ist
+	 */
+	public boolean isBeendet() {
+		return beendet.get();
+	}
+
+	/**
+	 * @return Startzeitpunkt (System.nanoTime(), 0 = noch nicht gestartet)
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	public Ablaufplan getPlan() {
+		return plan;
+	}
+
+	/**
+	 * @return Verspaetungen der bisher ausgefuehrten Ereignisse
+	 */
+	public Zeithistogramm getVerspaetung() {
+		return verspaetung;
+	}
+}
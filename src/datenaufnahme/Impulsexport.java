@@ -0,0 +1,303 @@
+package datenaufnahme;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Exportiert die Impulse einer Messreihe als CSV oder in einem einfachen
+ * Binaerformat zur Auswertung in anderen Programmen.
+ *
+ * Die Werte werden direkt aus den Spalten der Messreihe in einen
+ * wiederverwendeten Direktpuffer kodiert und von dort in den FileChannel
+ * geschrieben. Pro Zeile entstehen weder Strings noch Formatobjekte, der
+ * Speicherbedarf ist also unabhaengig von der Anzahl der Impulse.
+ *
+ * Ein Export kann schon waehrend der Aufnahme begonnen werden: jeder Aufruf
+ * von fortsetzen() haengt die seit dem letzten Aufruf hinzugekommenen
+ * Impulse an. Da das Schreiben etwas dauern kann, sollte es nicht im
+ * Event-Dispatch-Thread laufen.
+ *
+ * CSV (Semikolon, Punkt als Dezimaltrenner):
+ *
+ * <pre>
+ * impuls;zeit_ns;fahrstufe;vorwaerts
+ * </pre>
+ *
+ * Binaer (little-endian): Kennung "VTIR", Formatversion (int), danach 12 Byte
+ * pro Impuls: Zeitstempel in ns (long), Fahrstufe (short), Fahrtrichtung
+ * (short, 1 = vorwaerts).
+ *
+ * @author Manuel Weber
+ */
+public class Impulsexport implements Closeable {
+
+	public enum Format {
+		CSV, BINAER
+	}
+
+	/**
+	 * Kennung am Anfang einer binaeren Exportdatei ("VTIR")
+	 */
+	private static final int KENNUNG = 0x52495456;
+
+	private static final int VERSION = 1;
+
+	private static final int PUFFERGROESSE = 256 * 1024;
+
+	/**
+	 * Mindestens freier Platz im Puffer vor jeder Zeile
+	 */
+	private static final int MAX_ZEILENLAENGE = 128;
+
+	private static final byte[] CSV_KOPF = "impuls;zeit_ns;fahrstufe;vorwaerts\n"
+			.getBytes();
+	private static final byte[] CSV_KOPF_FAHRSTUFEN = "fahrstufe;impulse;umdrehungen;dauer_ns;geschwindigkeit_cm_s\n"
+			.getBytes();
+
+	private final Messreihe messreihe;
+
+	private final Format format;
+
+	private final RandomAccessFile datei;
+
+	private final FileChannel kanal;
+
+	private final ByteBuffer puffer = ByteBuffer.allocateDirect(PUFFERGROESSE)
+			.order(ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * Arbeitsspeicher fuer die Ziffern einer Zahl
+	 */
+	private final byte[] ziffern = new byte[20];
+
+	/**
+	 * Anzahl der bereits exportierten Impulse
+	 */
+	private int exportiert = 0;
+
+	/**
+	 * Legt die Exportdatei an (eine vorhandene wird ueberschrieben) und
+	 * schreibt den Kopf
+	 *
+	 * @param messreihe
+	 * @param ziel
+	 * @param format
+	 * @throws IOException
+	 */
+	public Impulsexport(Messreihe messreihe, File ziel, Format format)
+			throws IOException {
+		this.messreihe = messreihe;
+		this.format = format;
+		this.datei = new RandomAccessFile(ziel, "rw");
+		this.kanal = datei.getChannel();
+		try {
+			datei.setLength(0);
+			if (format == Format.CSV) {
+				puffer.put(CSV_KOPF);
+			} else {
+				puffer.putInt(KENNUNG).putInt(VERSION);
+			}
+		} catch (IOException e) {
+			datei.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Exportiert eine Messreihe vollstaendig
+	 *
+	 * @param messreihe
+	 * @param ziel
+	 * @param format
+	 * @throws IOException
+	 */
+	public static void exportieren(Messreihe messreihe, File ziel,
+			Format format) throws IOException {
+		Impulsexport export = new Impulsexport(messreihe, ziel, format);
+		try {
+			export.fortsetzen();
+		} finally {
+			export.close();
+		}
+	}
+
+	/**
+	 * Schreibt alle Impulse, die seit dem letzten Aufruf hinzugekommen sind
+	 *
+	 * @return Anzahl der geschriebenen Impulse
+	 * @throws IOException
+	 */
+	public int fortsetzen() throws IOException {
+		int n = messreihe.getAnzahlImpulse();
+		int von = exportiert;
+		for (int i = von; i < n; i++) {
+			if (puffer.remaining() < MAX_ZEILENLAENGE) {
+				leeren();
+			}
+			long t = messreihe.getZeitstempel(i);
+			int fs = messreihe.getFahrstufe(i);
+			boolean vorwaerts = messreihe.isVorwaerts(i);
+			if (format == Format.CSV) {
+				ganzzahlSchreiben(i);
+				puffer.put((byte) ';');
+				ganzzahlSchreiben(t);
+				puffer.put((byte) ';');
+				ganzzahlSchreiben(fs);
+				puffer.put((byte) ';');
+				puffer.put((byte) (vorwaerts ? '1' : '0'));
+				puffer.put((byte) '\n');
+			} else {
+				puffer.putLong(t);
+				puffer.putShort((short) fs);
+				puffer.putShort((short) (vorwaerts ? 1 : 0));
+			}
+		}
+		exportiert = n;
+		leeren();
+		return n - von;
+	}
+
+	/**
+	 * Exportiert pro Fahrstufe die Anzahl der Impulse und Umdrehungen, die
+	 * Messdauer und die daraus mit dem Messrad der Messreihe berechnete
+	 * mittlere Geschwindigkeit als CSV
+	 *
+	 * @param messreihe
+	 * @param ziel
+	 * @throws IOException
+	 */
+	public static void fahrstufenExportieren(Messreihe messreihe, File ziel)
+			throws IOException {
+		// Dauer und Anzahl der Impulsabstaende pro Fahrstufe
+		long[] dauer = new long[Messreihe.ANZAHL_FAHRSTUFEN];
+		int[] abstaende = new int[Messreihe.ANZAHL_FAHRSTUFEN];
+		int n = messreihe.getAnzahlImpulse();
+		for (int i = 1; i < n; i++) {
+			int fs = messreihe.getFahrstufe(i);
+			if (fs == messreihe.getFahrstufe(i - 1)) {
+				dauer[fs + Messreihe.MAX_FAHRSTUFE] += messreihe
+						.getZeitstempel(i) - messreihe.getZeitstempel(i - 1);
+				abstaende[fs + Messreihe.MAX_FAHRSTUFE]++;
+			}
+		}
+		double messeinheit = messreihe.getMessradumfang()
+				/ messreihe.getMarkierungen();
+
+		Impulsexport export = new Impulsexport(messreihe, ziel, Format.CSV);
+		try {
+			ByteBuffer puffer = export.puffer;
+			puffer.clear(); // Fahrstufenkopf statt des Impulskopfs
+			puffer.put(CSV_KOPF_FAHRSTUFEN);
+			for (int fs = -Messreihe.MAX_FAHRSTUFE; fs <= Messreihe.MAX_FAHRSTUFE; fs++) {
+				int impulse = messreihe.getAnzahlImpulse(fs);
+				if (impulse == 0) {
+					continue;
+				}
+				int i = fs + Messreihe.MAX_FAHRSTUFE;
+				export.ganzzahlSchreiben(fs);
+				puffer.put((byte) ';');
+				export.ganzzahlSchreiben(impulse);
+				puffer.put((byte) ';');
+				export.ganzzahlSchreiben(messreihe.getAnzahlUmdrehungen(fs));
+				puffer.put((byte) ';');
+				export.ganzzahlSchreiben(dauer[i]);
+				puffer.put((byte) ';');
+				if (dauer[i] > 0) {
+					export.dezimalSchreiben(abstaende[i] * messeinheit * 1e9
+							/ dauer[i], 4);
+				}
+				puffer.put((byte) '\n');
+			}
+			export.leeren();
+		} finally {
+			export.close();
+		}
+	}
+
+	/**
+	 * @return Anzahl der bereits exportierten Impulse
+	 */
+	public int getExportiert() {
+		return exportiert;
+	}
+
+	/**
+	 * Schreibt ausstehende Daten und schliesst die Datei
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			leeren();
+			kanal.force(false);
+		} finally {
+			datei.close();
+		}
+	}
+
+	/**
+	 * Schreibt den Inhalt des Puffers in den Kanal und leert ihn
+	 */
+	private void leeren() throws IOException {
+		puffer.flip();
+		while (puffer.hasRemaining()) {
+			kanal.write(puffer);
+		}
+		puffer.clear();
+	}
+
+	/**
+	 * Kodiert eine Ganzzahl als ASCII-Ziffern in den Puffer
+	 */
+	private void ganzzahlSchreiben(long wert) {
+		if (wert < 0) {
+			puffer.put((byte) '-');
+			if (wert == Long.MIN_VALUE) {
+				// -Long.MIN_VALUE ist nicht darstellbar
+				ganzzahlSchreiben(-(wert / 10));
+				puffer.put((byte) ('0' + -(wert % 10)));
+				return;
+			}
+			wert = -wert;
+		}
+		int stellen = 0;
+		do {
+			ziffern[stellen++] = (byte) ('0' + wert % 10);
+			wert /= 10;
+		} while (wert != 0);
+		while (stellen > 0) {
+			puffer.put(ziffern[--stellen]);
+		}
+	}
+
+	/**
+	 * Kodiert eine Dezimalzahl mit fester Anzahl an Nachkommastellen
+	 * (kaufmaennisch gerundet) in den Puffer
+	 */
+	private void dezimalSchreiben(double wert, int nachkommastellen) {
+		if (Double.isNaN(wert) || Double.isInfinite(wert)) {
+			return; // leeres Feld
+		}
+		long faktor = 1;
+		for (int i = 0; i < nachkommastellen; i++) {
+			faktor *= 10;
+		}
+		long skaliert = Math.round(Math.abs(wert) * faktor);
+		if (wert < 0 && skaliert != 0) {
+			puffer.put((byte) '-');
+		}
+		ganzzahlSchreiben(skaliert / faktor);
+		if (nachkommastellen > 0) {
+			puffer.put((byte) '.');
+			long rest = skaliert % faktor;
+			for (long stelle = faktor / 10; stelle > 0; stelle /= 10) {
+				puffer.put((byte) ('0' + rest / stelle));
+				rest %= stelle;
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package datenaufnahme;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Beschraenkter Ringpuffer zur Uebergabe von Impulsen von genau einem
+ * erzeugenden Thread (der Messung) an genau einen verbrauchenden Thread (den
+ * Plotter). Die Impulse liegen in primitiven Arrays, sodass im laufenden
+ * Betrieb keine Objekte erzeugt werden. Ein wartender Verbraucher wird beim
+ * Eintreffen eines Impulses geweckt und entnimmt dann alle vorliegenden
+ * Impulse auf einmal.
+ *
+ * Jeder angebotene Impuls erhaelt eine laufende Nummer, auch wenn er wegen
+ * eines vollen Puffers abgewiesen wird. Der Verbraucher erkennt an Spruengen
+ * der Nummer, dass Impulse fehlen, und kann sie aus einer anderen Quelle
+ * (z.B. der Messreihe) nachholen.
+ *
+ * @author Manuel Weber
+ */
+public class Impulspuffer {
+
+	/**
+	 * Empfaenger der Impulse beim Abarbeiten des Puffers
+	 */
+	public interface Verbraucher {
+
+		/**
+		 * @param nummer
+		 *            laufende Nummer des Impulses (abgewiesene Impulse werden
+		 *            mitgezaehlt)
+		 * @param zeitstempel
+		 *            in Nanosekunden seit Messbeginn
+		 * @param fahrstufe
+		 */
+		void impuls(int nummer, long zeitstempel, int fahrstufe);
+	}
+
+	private final long[] zeitstempel;
+	private final short[] fahrstufen;
+	private final int[] nummern;
+	private final int maske;
+
+	/**
+	 * Anzahl der insgesamt angebotenen Impulse, also Nummer des naechsten
+	 * Impulses (nur vom Erzeuger verwendet)
+	 */
+	private int angeboten = 0;
+
+	/**
+	 * Anzahl der insgesamt eingestellten Impulse (nur vom Erzeuger
+	 * geschrieben)
+	 */
+	private final AtomicLong schreibposition = new AtomicLong();
+
+	/**
+	 * Anzahl der insgesamt entnommenen Impulse (nur vom Verbraucher
+	 * geschrieben)
+	 */
+	private final AtomicLong leseposition = new AtomicLong();
+
+	/**
+	 * Zuletzt vom Erzeuger gelesene Leseposition, damit nicht bei jedem Impuls
+	 * auf die Variable des Verbrauchers zugegriffen werden muss
+	 */
+	private long lesepositionErzeuger = 0;
+
+	/**
+	 * Thread der gerade auf Impulse wartet (oder null)
+	 */
+	private volatile Thread wartender;
+
+	/**
+	 * @param kapazitaet
+	 *            maximale Anzahl gepufferter Impulse (wird auf eine
+	 *            Zweierpotenz aufgerundet)
+	 */
+	public Impulspuffer(int kapazitaet) {
+		int groesse = Integer.highestOneBit(Math.max(2, kapazitaet - 1)) << 1;
+		zeitstempel = new long[groesse];
+		fahrstufen = new short[groesse];
+		nummern = new int[groesse];
+		maske = groesse - 1;
+	}
+
+	/**
+	 * Stellt einen Impuls in den Puffer ein und weckt einen wartenden
+	 * Verbraucher. Blockiert nie.
+	 *
+	 * @param zeit
+	 *            Zeitstempel in Nanosekunden seit Messbeginn
+	 * @param fahrstufe
+	 * @return false, falls der Puffer voll ist und der Impuls nicht
+	 *         eingestellt wurde
+	 */
+	public boolean anbieten(long zeit, int fahrstufe) {
+		int nummer = angeboten++;
+		long position = schreibposition.get();
+		if (position - lesepositionErzeuger > maske) {
+			lesepositionErzeuger = leseposition.get();
+			if (position - lesepositionErzeuger > maske) {
+				return false;
+			}
+		}
+		int index = (int) position & maske;
+		zeitstempel[index] = zeit;
+		fahrstufen[index] = (short) fahrstufe;
+		nummern[index] = nummer;
+		// volatile Schreiben, damit die folgende Abfrage des Wartenden nicht
+		// vorgezogen wird
+		schreibposition.set(position + 1);
+
+		Thread verbraucher = wartender;
+		if (verbraucher != null) {
+			LockSupport.unpark(verbraucher);
+		}
+		return true;
+	}
+
+	/**
+	 * Uebergibt bis zu max vorliegende Impulse in ihrer Reihenfolge an den
+	 * Verbraucher und gibt die Plaetze danach auf einmal frei. Darf nur vom
+	 * verbrauchenden Thread aufgerufen werden.
+	 *
+	 * @param verbraucher
+	 * @param max
+	 * @return Anzahl der abgearbeiteten Impulse
+	 */
+	public int abarbeiten(Verbraucher verbraucher, int max) {
+		long position = leseposition.get();
+		int anzahl = (int) Math.min(schreibposition.get() - position, max);
+		for (int i = 0; i < anzahl; i++) {
+			int index = (int) (position + i) & maske;
+			verbraucher.impuls(nummern[index], zeitstempel[index],
+					fahrstufen[index]);
+		}
+		leseposition.lazySet(position + anzahl);
+		return anzahl;
+	}
+
+	/**
+	 * Wartet bis Impulse vorliegen, die Wartezeit abgelaufen ist oder der
+	 * Thread unterbrochen wird. Darf nur vom verbrauchenden Thread aufgerufen
+	 * werden.
+	 *
+	 * @param zeit
+	 *            maximale Wartezeit
+	 * @param einheit
+	 * @return Wahrheitswert, ob Impulse vorliegen
+	 * @throws InterruptedException
+	 */
+	public boolean warten(long zeit, TimeUnit einheit)
+			throws InterruptedException {
+		if (!isLeer()) {
+			return true;
+		}
+		long ende = System.nanoTime() + einheit.toNanos(zeit);
+		wartender = Thread.currentThread();
+		try {
+			long rest;
+			while (isLeer() && (rest = ende - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(this, rest);
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+			}
+		} finally {
+			wartender = null;
+		}
+		return !isLeer();
+	}
+
+	/**
+	 * @return Wahrheitswert, ob keine Impulse im Puffer liegen
+	 */
+	public boolean isLeer() {
+		return schreibposition.get() == leseposition.get();
+	}
+
+	/**
+	 * Darf nur vom verbrauchenden Thread aufgerufen werden.
+	 *
+	 * @return Zeitstempel des aeltesten gepufferten Impulses (in
+	 *         Nanosekunden seit Messbeginn) oder Long.MIN_VALUE, falls der
+	 *         Puffer leer ist
+	 */
+	public long getAeltesterZeitstempel() {
+		long position = leseposition.get();
+		if (schreibposition.get() == position) {
+			return Long.MIN_VALUE;
+		}
+		return zeitstempel[(int) position & maske];
+	}
+
+	/**
+	 * @return Anzahl der momentan gepufferten Impulse
+	 */
+	public int getFuellstand() {
+		return (int) (schreibposition.get() - leseposition.get());
+	}
+
+	/**
+	 * @return maximale Anzahl gepufferter Impulse
+	 */
+	public int getKapazitaet() {
+		return maske + 1;
+	}
+}
@@ -0,0 +1,23 @@
+package datenaufnahme;
+
+import java.io.IOException;
+
+/**
+ * Quelle der Messradimpulse (z.B. der Messstand). Jede Markierung, die am
+ * Sensor vorbeilaeuft, aendert den gelesenen Status.
+ * 
+ * @author Manuel Weber
+ */
+public interface Impulsquelle {
+
+	/**
+	 * Liest den aktuellen Status des Messrades. Die Methode sollte nicht
+	 * laenger als noetig blockieren, da der Zeitstempel eines Impulses erst
+	 * nach dem Lesen vergeben wird.
+	 * 
+	 * @return Status, der sich mit jedem Impuls aendert
+	 * @throws IOException
+	 *             bei einem Verbindungsfehler
+	 */
+	int statusLesen() throws IOException;
+}
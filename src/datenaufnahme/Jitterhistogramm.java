@@ -0,0 +1,16 @@
+package datenaufnahme;
+
+/**
+ * Histogramm der Zeitabstaende (in Nanosekunden) zwischen zwei Abfragen des
+ * Messrades. Der Abstand vor einem Impuls gibt an, wie ungenau dessen
+ * Zeitstempel hoechstens ist.
+ * 
+ * @author Manuel Weber
+ */
+public class Jitterhistogramm extends Zeithistogramm {
+
+	@Override
+	public String toString() {
+		return "Abfrageabstand: " + super.toString();
+	}
+}
@@ -0,0 +1,247 @@
+package datenaufnahme;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import loksteuerung.TrainNotFoundException;
+import controller.Einstellungen;
+import datenverarbeitung.Saeulendiagramm;
+
+/**
+ * Fuehrt mehrere unabhaengige Messungen gleichzeitig durch, z.B. an mehreren
+ * Rollenpruefstaenden, die an denselben Rechner angeschlossen sind. Jede
+ * Sitzung hat ihre eigene Impulsquelle, ihr eigenes Saeulendiagramm und
+ * einen eigenen Schnappschuss der Einstellungen. Aendert der Benutzer
+ * waehrenddessen die Einstellungen, wirkt sich das erst auf die naechste
+ * Sitzung aus.
+ * 
+ * Stellt die Laufzeitumgebung virtuelle Threads zur Verfuegung (ab Java 21),
+ * laufen Messung, Plotter und Bewegungsablauf jeder Sitzung auf virtuellen
+ * Threads, sonst wie bisher auf eigenen Threads. Fuer viele gleichzeitige
+ * Sitzungen empfiehlt sich die Wartestrategie PARK, damit nicht jede Sitzung
+ * einen Prozessorkern belegt.
+ * 
+ * @author Manuel Weber
+ */
+public class Messplaner {
+
+	/**
+	 * Eine laufende oder abgeschlossene Messung des Messplaners
+	 */
+	public static final class Sitzung {
+
+		private final String name;
+		private final Messung messung;
+		private final Saeulendiagramm diagramm;
+		private final Einstellungen.Schnappschuss einstellungen;
+
+		/**
+		 * Thread, der die Messung ausfuehrt
+		 */
+		private Thread thread;
+
+		private Sitzung(String name, Messung messung,
+				Saeulendiagramm diagramm,
+				Einstellungen.Schnappschuss einstellungen) {
+			this.name = name;
+			this.messung = messung;
+			this.diagramm = diagramm;
+			this.einstellungen = einstellungen;
+		}
+
+		/**
+		 * Beendet die Messung. Plotter und Bewegungsablauf werden von der
+		 * Messung selbst beendet.
+		 */
+		public void beenden() {
+			messung.interrupt();
+			if (thread != messung) {
+				thread.interrupt();
+			}
+		}
+
+		/**
+		 * Wartet hoechstens die angegebene Zeit auf das Ende der Messung
+		 * 
+		 * @param millis
+		 * @return Wahrheitswert, ob die Messung beendet ist
+		 * @throws InterruptedException
+		 */
+		public boolean abwarten(long millis) throws InterruptedException {
+			thread.join(millis);
+			return !thread.isAlive();
+		}
+
+		public boolean isAktiv() {
+			return thread.isAlive();
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public Messung getMessung() {
+			return messung;
+		}
+
+		public Messreihe getMessreihe() {
+			return messung.getMessreihe();
+		}
+
+		public Saeulendiagramm getDiagramm() {
+			return diagramm;
+		}
+
+		public Einstellungen.Schnappschuss getEinstellungen() {
+			return einstellungen;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * Erzeugt virtuelle Threads oder null, falls es keine gibt
+	 */
+	private final ThreadFactory threadFabrik = virtuelleThreadFabrik();
+
+	private final List<Sitzung> sitzungen = new CopyOnWriteArrayList<Sitzung>();
+
+	/**
+	 * Startet eine Messung mit einem neuen Saeulendiagramm und den aktuellen
+	 * Einstellungen
+	 * 
+	 * @param name
+	 *            Bezeichnung der Sitzung (z.B. des Messstands)
+	 * @param messreihe
+	 *            Vorgaben der Messung, nimmt die Messwerte auf
+	 * @param impulsquelle
+	 *            Messstand der Sitzung
+	 * @return gestartete Sitzung
+	 * @throws TrainNotFoundException
+	 */
+	public Sitzung starten(String name, Messreihe messreihe,
+			Impulsquelle impulsquelle) throws TrainNotFoundException {
+		Einstellungen.Schnappschuss einstellungen = Einstellungen
+				.getEinstellungen().getSchnappschuss();
+		Saeulendiagramm diagramm = new Saeulendiagramm();
+		diagramm.setEinheiten(einstellungen.getWegeinheit(),
+				einstellungen.getZeiteinheit());
+		return starten(name, messreihe, impulsquelle, diagramm,
+				einstellungen, Wartestrategie.PARK);
+	}
+
+	/**
+	 * Startet eine Messung
+	 * 
+	 * @param name
+	 *            Bezeichnung der Sitzung (z.B. des Messstands)
+	 * @param messreihe
+	 *            Vorgaben der Messung, nimmt die Messwerte auf
+	 * @param impulsquelle
+	 *            Messstand der Sitzung
+	 * @param diagramm
+	 *            Diagramm, in das die Sitzung plottet
+	 * @param einstellungen
+	 *            Einstellungen der Sitzung
+	 * @param wartestrategie
+	 *            Wartestrategie zwischen zwei Abfragen der Impulsquelle
+	 * @return gestartete Sitzung
+	 * @throws TrainNotFoundException
+	 */
+	public Sitzung starten(String name, Messreihe messreihe,
+			Impulsquelle impulsquelle, Saeulendiagramm diagramm,
+			Einstellungen.Schnappschuss einstellungen,
+			Wartestrategie wartestrategie) throws TrainNotFoundException {
+		Messung messung = new Messung(messreihe, diagramm, einstellungen);
+		messung.setImpulsquelle(impulsquelle);
+		messung.setWartestrategie(wartestrategie);
+		messung.setName("Messung " + name);
+		Sitzung sitzung = new Sitzung(name, messung, diagramm, einstellungen);
+		if (threadFabrik != null) {
+			messung.setThreadFabrik(threadFabrik);
+			sitzung.thread = threadFabrik.newThread(messung);
+		} else {
+			sitzung.thread = messung;
+		}
+		sitzungen.add(sitzung);
+		sitzung.thread.start();
+		return sitzung;
+	}
+
+	/**
+	 * @return alle gestarteten Sitzungen
+	 */
+	public List<Sitzung> getSitzungen() {
+		return new ArrayList<Sitzung>(sitzungen);
+	}
+
+	/**
+	 * Entfernt beendete Sitzungen
+	 */
+	public void aufraeumen() {
+		for (Sitzung sitzung : sitzungen) {
+			if (!sitzung.isAktiv()) {
+				sitzungen.remove(sitzung);
+			}
+		}
+	}
+
+	/**
+	 * Beendet alle Sitzungen und wartet hoechstens die angegebene Zeit, bis
+	 * sie beendet sind
+	 * 
+	 * @param zeit
+	 * @param einheit
+	 * @return Wahrheitswert, ob alle Sitzungen beendet sind
+	 * @throws InterruptedException
+	 */
+	public boolean alleBeenden(long zeit, TimeUnit einheit)
+			throws InterruptedException {
+		for (Sitzung sitzung : sitzungen) {
+			sitzung.beenden();
+		}
+		long ende = System.nanoTime() + einheit.toNanos(zeit);
+		for (Sitzung sitzung : sitzungen) {
+			long rest = TimeUnit.NANOSECONDS
+					.toMillis(ende - System.nanoTime());
+			if (!sitzung.abwarten(Math.max(rest, 1))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return Wahrheitswert, ob die Sitzungen auf virtuellen Threads laufen
+	 */
+	public boolean isVirtuell() {
+		return threadFabrik != null;
+	}
+
+	/**
+	 * Erzeugt per Reflection Thread.ofVirtual().name("Messsitzung-",
+	 * 0).factory(), damit das Programm auch auf aelteren Java-Versionen
+	 * laeuft
+	 * 
+	 * @return ThreadFactory fuer virtuelle Threads oder null
+	 */
+	private static ThreadFactory virtuelleThreadFabrik() {
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			Object virtuell = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method name = builder.getMethod("name", String.class, long.class);
+			virtuell = name.invoke(virtuell, "Messsitzung-", 0L);
+			return (ThreadFactory) builder.getMethod("factory").invoke(
+					virtuell);
+		} catch (Exception e) {
+			return null; // vor Java 21
+		}
+	}
+}
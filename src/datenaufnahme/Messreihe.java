@@ -1,14 +1,291 @@
 package datenaufnahme;
 
-import java.io.Serializable;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
 
 /**
- * Datenstruktur zur Kapselung der Daten einzelner Messungen.
- * 
+ * Datenstruktur zur Kapselung der Daten einzelner Messungen. Neben den
+ * Vorgaben fuer die Messung (Lok, Fahrstufenbereich, Dauer) werden die
+ * aufgenommenen Impulse spaltenweise in primitiven Arrays gespeichert, die bei
+ * Bedarf wachsen. Zusaetzlich wird fuer jede Fahrstufe die Anzahl der Impulse
+ * mitgezaehlt.
+ *
+ * Impulse werden nur von einem Thread (der Messung) angehaengt. Andere Threads
+ * (z.B. der Plotter) duerfen alle Impulse mit einem Index kleiner als
+ * getAnzahlImpulse() lesen.
+ *
+ * Aus einer Datei geladene Messreihen (siehe MessreihenDatei) sind
+ * schreibgeschuetzt und lesen die Impulse direkt aus dem in den Speicher
+ * abgebildeten Dateiinhalt.
+ *
  * @author Manuel Weber
  */
-public class Messreihe implements Serializable {
+public class Messreihe {
 
-	private static final long serialVersionUID = 1L;
+	/**
+	 * Hoechste Fahrstufe (die niedrigste ist -MAX_FAHRSTUFE)
+	 */
+	public static final int MAX_FAHRSTUFE = 126;
 
+	/**
+	 * Anzahl der moeglichen Fahrstufen von -126 bis 126 (inklusive 0)
+	 */
+	public static final int ANZAHL_FAHRSTUFEN = 2 * MAX_FAHRSTUFE + 1;
+
+	/**
+	 * Anfangskapazitaet der Impulsspalten
+	 */
+	private static final int ANFANGSKAPAZITAET = 1024;
+
+	// Vorgaben und Metadaten ----------------------------------------
+
+	private String lokname;
+	private int fahrstufe0;
+	private int fahrstufe1;
+	private boolean gleichmaessigBeschleunigt;
+
+	/**
+	 * Zeitpunkt des Messbeginns (Millisekunden seit 1970)
+	 */
+	private long startzeitpunkt;
+
+	/**
+	 * Dauer der Messung in Millisekunden
+	 */
+	private long messdauer;
+
+	/**
+	 * Umfang des Messrades in cm zum Zeitpunkt der Messung
+	 */
+	private double messradumfang;
+
+	/**
+	 * Anzahl der Markierungen auf dem Messrad zum Zeitpunkt der Messung
+	 */
+	private int markierungen;
+
+	// Impulsspalten -------------------------------------------------
+
+	/**
+	 * Zeitstempel der Impulse in Nanosekunden seit Messbeginn
+	 */
+	private long[] zeitstempel = new long[ANFANGSKAPAZITAET];
+
+	/**
+	 * Fahrstufe, in der der jeweilige Impuls aufgenommen wurde
+	 */
+	private short[] fahrstufen = new short[ANFANGSKAPAZITAET];
+
+	/**
+	 * Fahrtrichtung der Impulse als Bitfeld (gesetztes Bit = vorwaerts)
+	 */
+	private long[] richtungen = new long[ANFANGSKAPAZITAET / 64];
+
+	/**
+	 * Anzahl der gespeicherten Impulse. Wird erst nach dem Schreiben der
+	 * Spalten erhoeht, damit lesende Threads nur vollstaendige Impulse sehen.
+	 */
+	private volatile int anzahlImpulse = 0;
+
+	/**
+	 * Anzahl der Impulse pro Fahrstufe (Index = Fahrstufe + MAX_FAHRSTUFE)
+	 */
+	private final int[] impulseProFahrstufe = new int[ANZAHL_FAHRSTUFEN];
+
+	/**
+	 * Impulsspalten einer archivierten Messreihe (null waehrend der Aufnahme)
+	 */
+	private LongBuffer zeitstempelArchiv;
+	private ShortBuffer fahrstufenArchiv;
+	private LongBuffer richtungenArchiv;
+
+	public Messreihe(String lokname, int fahrstufe0, int fahrstufe1,
+			long messdauer, boolean gleichmaessigBeschleunigt,
+			double messradumfang, int markierungen) {
+		this.lokname = lokname;
+		this.fahrstufe0 = fahrstufe0;
+		this.fahrstufe1 = fahrstufe1;
+		this.messdauer = messdauer;
+		this.gleichmaessigBeschleunigt = gleichmaessigBeschleunigt;
+		this.messradumfang = messradumfang;
+		this.markierungen = markierungen;
+	}
+
+	/**
+	 * Haengt einen Impuls an die Messreihe an. Darf nur vom messenden Thread
+	 * aufgerufen werden.
+	 *
+	 * @param zeit
+	 *            Zeitstempel in Nanosekunden seit Messbeginn
+	 * @param fahrstufe
+	 *            Fahrstufe in der der Impuls aufgenommen wurde
+	 * @param vorwaerts
+	 *            Wahrheitswert, ob sich das Messrad vorwaerts gedreht hat
+	 */
+	public void impulsHinzufuegen(long zeit, int fahrstufe, boolean vorwaerts) {
+		if (zeitstempelArchiv != null) {
+			throw new IllegalStateException(
+					"Archivierte Messreihen koennen nicht veraendert werden");
+		}
+		int i = anzahlImpulse;
+		if (i == zeitstempel.length) {
+			vergroessern();
+		}
+		zeitstempel[i] = zeit;
+		fahrstufen[i] = (short) fahrstufe;
+		if (vorwaerts) {
+			richtungen[i >>> 6] |= 1L << i;
+		}
+		impulseProFahrstufe[fahrstufe + MAX_FAHRSTUFE]++;
+		anzahlImpulse = i + 1;
+	}
+
+	/**
+	 * Vergroessert die Impulsspalten um die Haelfte
+	 */
+	private void vergroessern() {
+		int kapazitaet = zeitstempel.length + (zeitstempel.length >> 1);
+		zeitstempel = Arrays.copyOf(zeitstempel, kapazitaet);
+		fahrstufen = Arrays.copyOf(fahrstufen, kapazitaet);
+		richtungen = Arrays.copyOf(richtungen, (kapazitaet + 63) >>> 6);
+	}
+
+	/**
+	 * Ordnet der Messreihe die Spalten einer Archivdatei zu. Danach koennen
+	 * keine Impulse mehr angehaengt werden.
+	 *
+	 * @param anzahl
+	 *            Anzahl der Impulse in den Spalten
+	 * @param impulse
+	 *            Impulse pro Fahrstufe (Index = Fahrstufe + MAX_FAHRSTUFE)
+	 */
+	void archivZuordnen(int anzahl, int[] impulse, LongBuffer zeitstempel,
+			ShortBuffer fahrstufen, LongBuffer richtungen) {
+		System.arraycopy(impulse, 0, impulseProFahrstufe, 0,
+				ANZAHL_FAHRSTUFEN);
+		this.zeitstempel = null;
+		this.fahrstufen = null;
+		this.richtungen = null;
+		this.zeitstempelArchiv = zeitstempel;
+		this.fahrstufenArchiv = fahrstufen;
+		this.richtungenArchiv = richtungen;
+		this.anzahlImpulse = anzahl;
+	}
+
+	/**
+	 * @return Wahrheitswert, ob die Messreihe aus einer Archivdatei stammt
+	 */
+	public boolean isArchiviert() {
+		return zeitstempelArchiv != null;
+	}
+
+	/**
+	 * @return Anzahl der bisher gespeicherten Impulse
+	 */
+	public int getAnzahlImpulse() {
+		return anzahlImpulse;
+	}
+
+	/**
+	 * @param i
+	 *            Index des Impulses
+	 * @return Zeitstempel des Impulses in Nanosekunden seit Messbeginn
+	 */
+	public long getZeitstempel(int i) {
+		if (zeitstempelArchiv != null) {
+			return zeitstempelArchiv.get(i);
+		}
+		return zeitstempel[i];
+	}
+
+	/**
+	 * @param i
+	 *            Index des Impulses
+	 * @return Fahrstufe in der der Impuls aufgenommen wurde
+	 */
+	public int getFahrstufe(int i) {
+		if (fahrstufenArchiv != null) {
+			return fahrstufenArchiv.get(i);
+		}
+		return fahrstufen[i];
+	}
+
+	/**
+	 * @param i
+	 *            Index des Impulses
+	 * @return Wahrheitswert, ob sich das Messrad vorwaerts gedreht hat
+	 */
+	public boolean isVorwaerts(int i) {
+		if (richtungenArchiv != null) {
+			return (richtungenArchiv.get(i >>> 6) & (1L << i)) != 0;
+		}
+		return (richtungen[i >>> 6] & (1L << i)) != 0;
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return Anzahl der in der Fahrstufe aufgenommenen Impulse
+	 */
+	public int getAnzahlImpulse(int fahrstufe) {
+		return impulseProFahrstufe[fahrstufe + MAX_FAHRSTUFE];
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return Anzahl der vollstaendigen Messradumdrehungen in der Fahrstufe
+	 */
+	public int getAnzahlUmdrehungen(int fahrstufe) {
+		return getAnzahlImpulse(fahrstufe) / markierungen;
+	}
+
+	// Getter und Setter der Metadaten
+
+	public String getLokname() {
+		return lokname;
+	}
+
+	public int getFahrstufe0() {
+		return fahrstufe0;
+	}
+
+	public int getFahrstufe1() {
+		return fahrstufe1;
+	}
+
+	public boolean isGleichmaessigBeschleunigt() {
+		return gleichmaessigBeschleunigt;
+	}
+
+	public long getStartzeitpunkt() {
+		return startzeitpunkt;
+	}
+
+	public void setStartzeitpunkt(long startzeitpunkt) {
+		this.startzeitpunkt = startzeitpunkt;
+	}
+
+	public long getMessdauer() {
+		return messdauer;
+	}
+
+	public void setMessdauer(long messdauer) {
+		this.messdauer = messdauer;
+	}
+
+	public double getMessradumfang() {
+		return messradumfang;
+	}
+
+	public int getMarkierungen() {
+		return markierungen;
+	}
+
+	/**
+	 * @return Laenge einer gemessenen Einheit in cm (Messradumfang geteilt
+	 *         durch die Anzahl Markierungen)
+	 */
+	public double getMesseinheit() {
+		return messradumfang / markierungen;
+	}
 }
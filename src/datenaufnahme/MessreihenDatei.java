@@ -0,0 +1,275 @@
+package datenaufnahme;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Liest und schreibt Messreihen in einem versionierten, spaltenorientierten
+ * Binaerformat. Beim Lesen wird die Datei mit FileChannel.map in den Speicher
+ * abgebildet, die Impulse werden also erst beim Zugriff von der Platte geladen.
+ *
+ * Aufbau einer Datei (alle Zahlen little-endian):
+ *
+ * <pre>
+ * Offset  Laenge  Inhalt
+ *      0       4  Kennung "VTMR"
+ *      4       2  Formatversion
+ *      6       2  Laenge des Loknamens in Bytes
+ *      8      64  Lokname (UTF-8, mit Nullen aufgefuellt)
+ *     72       4  Fahrstufe0
+ *     76       4  Fahrstufe1
+ *     80       4  Flags (Bit 0: gleichmaessig beschleunigt)
+ *     84       4  Markierungen
+ *     88       8  Startzeitpunkt (ms seit 1970)
+ *     96       8  Messdauer (ms)
+ *    104       8  Messradumfang (cm)
+ *    112       4  Anzahl Impulse n
+ *    116      12  reserviert
+ *    128    1012  Impulse pro Fahrstufe (253 int, Fahrstufe -126 bis 126)
+ *   1144     8*n  Zeitstempel (long, ns seit Messbeginn)
+ *      .     2*n  Fahrstufen (short, auf 8 Byte aufgefuellt)
+ *      .  8*ceil(n/64) Fahrtrichtungen (Bitfeld)
+ * </pre>
+ *
+ * @author Manuel Weber
+ */
+public class MessreihenDatei {
+
+	/**
+	 * Kennung am Dateianfang ("VTMR")
+	 */
+	private static final int KENNUNG = 0x524D5456;
+
+	/**
+	 * Aktuelle Version des Dateiformats
+	 */
+	public static final short VERSION = 1;
+
+	/**
+	 * Dateiendung von Messreihendateien
+	 */
+	public static final String ENDUNG = ".vtm";
+
+	private static final int LOKNAME_OFFSET = 8;
+	static final int LOKNAME_LAENGE = 64;
+	private static final int KOPF_LAENGE = 128;
+
+	/**
+	 * Beginn der ersten Spalte (Kopf und Zaehler, auf 8 Byte ausgerichtet)
+	 */
+	private static final int SPALTEN_OFFSET = ausrichten(KOPF_LAENGE
+			+ Messreihe.ANZAHL_FAHRSTUFEN * 4);
+
+	/**
+	 * Groesse des Puffers, ueber den die Spalten geschrieben werden
+	 */
+	private static final int PUFFERGROESSE = 64 * 1024;
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private MessreihenDatei() {
+	}
+
+	/**
+	 * Schreibt eine Messreihe in eine Datei. Eine vorhandene Datei wird
+	 * ueberschrieben.
+	 *
+	 * @param messreihe
+	 * @param datei
+	 * @throws IOException
+	 */
+	public static void schreiben(Messreihe messreihe, File datei)
+			throws IOException {
+		int n = messreihe.getAnzahlImpulse();
+		RandomAccessFile raf = new RandomAccessFile(datei, "rw");
+		try {
+			raf.setLength(0);
+			FileChannel kanal = raf.getChannel();
+			ByteBuffer puffer = ByteBuffer.allocateDirect(PUFFERGROESSE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+
+			// Kopf
+			byte[] lokname = loknameKodieren(messreihe.getLokname());
+			puffer.putInt(KENNUNG);
+			puffer.putShort(VERSION);
+			puffer.putShort((short) lokname.length);
+			puffer.put(lokname);
+			puffer.position(LOKNAME_OFFSET + LOKNAME_LAENGE);
+			puffer.putInt(messreihe.getFahrstufe0());
+			puffer.putInt(messreihe.getFahrstufe1());
+			puffer.putInt(messreihe.isGleichmaessigBeschleunigt() ? 1 : 0);
+			puffer.putInt(messreihe.getMarkierungen());
+			puffer.putLong(messreihe.getStartzeitpunkt());
+			puffer.putLong(messreihe.getMessdauer());
+			puffer.putDouble(messreihe.getMessradumfang());
+			puffer.putInt(n);
+			puffer.position(KOPF_LAENGE);
+			for (int fs = -Messreihe.MAX_FAHRSTUFE; fs <= Messreihe.MAX_FAHRSTUFE; fs++) {
+				puffer.putInt(messreihe.getAnzahlImpulse(fs));
+			}
+			puffer.position(SPALTEN_OFFSET);
+
+			// Zeitstempel
+			for (int i = 0; i < n; i++) {
+				if (puffer.remaining() < 8) {
+					leeren(kanal, puffer);
+				}
+				puffer.putLong(messreihe.getZeitstempel(i));
+			}
+			// Fahrstufen
+			for (int i = 0; i < n; i++) {
+				if (puffer.remaining() < 2) {
+					leeren(kanal, puffer);
+				}
+				puffer.putShort((short) messreihe.getFahrstufe(i));
+			}
+			for (int i = 2 * n; i < ausrichten(2 * n); i++) {
+				if (!puffer.hasRemaining()) {
+					leeren(kanal, puffer);
+				}
+				puffer.put((byte) 0);
+			}
+			// Fahrtrichtungen
+			for (int block = 0; block < (n + 63) >>> 6; block++) {
+				long bits = 0;
+				for (int i = block << 6; i < Math.min(n, (block + 1) << 6); i++) {
+					if (messreihe.isVorwaerts(i)) {
+						bits |= 1L << i;
+					}
+				}
+				if (puffer.remaining() < 8) {
+					leeren(kanal, puffer);
+				}
+				puffer.putLong(bits);
+			}
+			leeren(kanal, puffer);
+			kanal.force(false);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Oeffnet eine Messreihendatei. Die Metadaten werden sofort gelesen, die
+	 * Impulsspalten der zurueckgegebenen (schreibgeschuetzten) Messreihe
+	 * verweisen direkt in die abgebildete Datei.
+	 *
+	 * @param datei
+	 * @return die Messreihe der Datei
+	 * @throws IOException
+	 *             falls die Datei nicht gelesen werden kann oder kein
+	 *             gueltiges Format hat
+	 */
+	public static Messreihe lesen(File datei) throws IOException {
+		MappedByteBuffer abbild;
+		RandomAccessFile raf = new RandomAccessFile(datei, "r");
+		try {
+			abbild = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+					raf.length());
+		} finally {
+			raf.close(); // die Abbildung bleibt auch ohne Kanal gueltig
+		}
+		abbild.order(ByteOrder.LITTLE_ENDIAN);
+
+		if (abbild.limit() < SPALTEN_OFFSET || abbild.getInt(0) != KENNUNG) {
+			throw new IOException(datei + " ist keine Messreihendatei");
+		}
+		short version = abbild.getShort(4);
+		if (version != VERSION) {
+			throw new IOException("Nicht unterstuetzte Version " + version
+					+ " in " + datei);
+		}
+		int loknamenlaenge = abbild.getShort(6);
+		if (loknamenlaenge < 0 || loknamenlaenge > LOKNAME_LAENGE) {
+			throw new IOException("Ungueltige Laenge des Loknamens "
+					+ loknamenlaenge + " in " + datei);
+		}
+		byte[] lokname = new byte[loknamenlaenge];
+		abbild.position(LOKNAME_OFFSET);
+		abbild.get(lokname);
+
+		if (abbild.getInt(84) < 1) {
+			throw new IOException("Ungueltige Anzahl Markierungen "
+					+ abbild.getInt(84) + " in " + datei);
+		}
+
+		int n = abbild.getInt(112);
+		// 8 Byte Zeitstempel und 2 Byte Fahrstufe pro Impuls, ohne Ueberlauf
+		if (n < 0 || n > (abbild.limit() - SPALTEN_OFFSET) / 10) {
+			throw new IOException(datei + " ist unvollstaendig");
+		}
+		int fahrstufenOffset = SPALTEN_OFFSET + 8 * n;
+		int richtungenOffset = fahrstufenOffset + ausrichten(2 * n);
+		int ende = richtungenOffset + 8 * ((n + 63) >>> 6);
+		if (n < 0 || abbild.limit() < ende) {
+			throw new IOException(datei + " ist unvollstaendig");
+		}
+
+		Messreihe messreihe = new Messreihe(new String(lokname, UTF8),
+				abbild.getInt(72), abbild.getInt(76), abbild.getLong(96),
+				(abbild.getInt(80) & 1) != 0, abbild.getDouble(104),
+				abbild.getInt(84));
+		messreihe.setStartzeitpunkt(abbild.getLong(88));
+
+		int[] impulse = new int[Messreihe.ANZAHL_FAHRSTUFEN];
+		for (int i = 0; i < impulse.length; i++) {
+			impulse[i] = abbild.getInt(KOPF_LAENGE + 4 * i);
+		}
+		messreihe.archivZuordnen(n, impulse,
+				spalte(abbild, SPALTEN_OFFSET, 8 * n).asLongBuffer(),
+				spalte(abbild, fahrstufenOffset, 2 * n).asShortBuffer(),
+				spalte(abbild, richtungenOffset, ende - richtungenOffset)
+						.asLongBuffer());
+		return messreihe;
+	}
+
+	/**
+	 * @return Ausschnitt des Abbilds ab offset mit der angegebenen Laenge
+	 */
+	private static ByteBuffer spalte(ByteBuffer abbild, int offset, int laenge) {
+		ByteBuffer kopie = abbild.duplicate();
+		kopie.limit(offset + laenge).position(offset);
+		return kopie.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Schreibt den Inhalt des Puffers in den Kanal und leert ihn
+	 */
+	private static void leeren(FileChannel kanal, ByteBuffer puffer)
+			throws IOException {
+		puffer.flip();
+		while (puffer.hasRemaining()) {
+			kanal.write(puffer);
+		}
+		puffer.clear();
+	}
+
+	/**
+	 * Kodiert den Loknamen in UTF-8 und kuerzt ihn bei Bedarf auf die
+	 * Feldlaenge
+	 */
+	static byte[] loknameKodieren(String lokname) {
+		if (lokname == null) {
+			return new byte[0];
+		}
+		byte[] bytes = lokname.getBytes(UTF8);
+		while (bytes.length > LOKNAME_LAENGE) {
+			lokname = lokname.substring(0, lokname.length() - 1);
+			bytes = lokname.getBytes(UTF8);
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return laenge auf ein Vielfaches von 8 aufgerundet
+	 */
+	private static int ausrichten(int laenge) {
+		return (laenge + 7) & ~7;
+	}
+}
@@ -0,0 +1,691 @@
+package datenaufnahme;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Archiv abgeschlossener Messreihen in einem Verzeichnis. Jede Messreihe liegt
+ * in einer eigenen Messreihendatei, zusaetzlich fuehrt das Archiv eine
+ * Indexdatei mit den Metadaten aller Messreihen in Saetzen fester Laenge.
+ *
+ * Beim Oeffnen wird nur die Indexdatei gelesen. Daraus werden im Speicher
+ * Indizes ueber Lokname, Startzeitpunkt und abgedeckte Fahrstufen aufgebaut,
+ * sodass Abfragen wie "alle Messungen von Lok X im letzten Monat ueber
+ * Fahrstufe 1 bis 28" ohne Zugriff auf die Messreihendateien beantwortet
+ * werden. Fehlt die Indexdatei, ist sie beschaedigt oder passt sie nicht zu
+ * den Dateien im Verzeichnis (Anzahl, Groesse oder Aenderungszeit einer
+ * Datei), wird sie aus den Koepfen der Messreihendateien neu erstellt.
+ *
+ * Aufbau der Indexdatei (alle Zahlen little-endian):
+ *
+ * <pre>
+ * Kopf (16 Byte): Kennung "VTMI", Version (short), reserviert (short),
+ *                 Anzahl Saetze (int), reserviert (int)
+ * Satz (128 Byte):
+ * Offset  Laenge  Inhalt
+ *      0       8  Nummer der Messreihe (Dateiname ohne Endung)
+ *      8       8  Startzeitpunkt (ms seit 1970)
+ *     16       8  Messdauer (ms)
+ *     24       4  Fahrstufe0
+ *     28       4  Fahrstufe1
+ *     32       2  niedrigste Fahrstufe mit Impulsen
+ *     34       2  hoechste Fahrstufe mit Impulsen
+ *     36       4  Anzahl Impulse
+ *     40       2  Laenge des Loknamens in Bytes
+ *     42      64  Lokname (UTF-8)
+ *    106       8  Groesse der Messreihendatei (Byte)
+ *    114       8  Aenderungszeit der Messreihendatei (ms seit 1970)
+ *    122       6  reserviert
+ * </pre>
+ *
+ * @author Manuel Weber
+ */
+public class Messreihenarchiv {
+
+	/**
+	 * Kennung am Anfang der Indexdatei ("VTMI")
+	 */
+	private static final int KENNUNG = 0x494D5456;
+
+	private static final short VERSION = 2;
+
+	/**
+	 * Name der Indexdatei im Archivverzeichnis
+	 */
+	public static final String INDEXDATEI = "index.vti";
+
+	private static final int KOPF_LAENGE = 16;
+	private static final int SATZ_LAENGE = 128;
+
+	private static final int OFFSET = Messreihe.MAX_FAHRSTUFE;
+
+	private final File verzeichnis;
+
+	private final File indexdatei;
+
+	// Saetze als Spalten (Index = Satznummer) ------------------------
+	private int anzahl = 0;
+	private long[] nummern = new long[64];
+	private long[] startzeitpunkte = new long[64];
+	private long[] messdauern = new long[64];
+	private int[] fahrstufen0 = new int[64];
+	private int[] fahrstufen1 = new int[64];
+	private short[] minFahrstufen = new short[64];
+	private short[] maxFahrstufen = new short[64];
+	private int[] impulse = new int[64];
+	private String[] loknamen = new String[64];
+	private long[] dateigroessen = new long[64];
+	private long[] aenderungszeiten = new long[64];
+
+	/**
+	 * Nummer der naechsten archivierten Messreihe
+	 */
+	private long naechsteNummer = 1;
+
+	// Indizes --------------------------------------------------------
+
+	/**
+	 * Saetze pro Lokname (ohne Beachtung der Gross- und Kleinschreibung)
+	 */
+	private final Map<String, Trefferliste> nachLokname = new HashMap<String, Trefferliste>();
+
+	/**
+	 * Satznummern aufsteigend nach Startzeitpunkt sortiert
+	 */
+	private int[] nachZeit = new int[64];
+
+	/**
+	 * Pro Fahrstufe ein Bitfeld der Saetze, deren Fahrstufenbereich die
+	 * Fahrstufe enthaelt
+	 */
+	private final long[][] nachFahrstufe = new long[Messreihe.ANZAHL_FAHRSTUFEN][1];
+
+	/**
+	 * Oeffnet ein Archiv. Das Verzeichnis wird bei Bedarf angelegt.
+	 *
+	 * @param verzeichnis
+	 * @throws IOException
+	 */
+	public Messreihenarchiv(File verzeichnis) throws IOException {
+		if (!verzeichnis.isDirectory() && !verzeichnis.mkdirs()) {
+			throw new IOException(verzeichnis
+					+ " kann nicht angelegt werden");
+		}
+		this.verzeichnis = verzeichnis;
+		this.indexdatei = new File(verzeichnis, INDEXDATEI);
+		if (!indexLesen() || !isAktuell()) {
+			indexErstellen();
+		}
+	}
+
+	/**
+	 * Legt eine Messreihe im Archiv ab
+	 *
+	 * @param messreihe
+	 * @return Eintrag der Messreihe im Archiv
+	 * @throws IOException
+	 */
+	public synchronized Eintrag archivieren(Messreihe messreihe)
+			throws IOException {
+		long nummer = naechsteNummer;
+		File datei = datei(nummer);
+		MessreihenDatei.schreiben(messreihe, datei);
+		int satz = satzHinzufuegen(nummer, datei, messreihe);
+		satzSchreiben(satz);
+		return eintrag(satz);
+	}
+
+	/**
+	 * Sucht Messreihen
+	 *
+	 * @param lokname
+	 *            Name der Lok (ohne Beachtung der Gross- und Kleinschreibung,
+	 *            null = alle Loks)
+	 * @param von
+	 *            fruehester Startzeitpunkt in ms (Long.MIN_VALUE = keine
+	 *            Grenze)
+	 * @param bis
+	 *            spaetester Startzeitpunkt in ms (Long.MAX_VALUE = keine
+	 *            Grenze)
+	 * @param fahrstufeVon
+	 *            niedrigste Fahrstufe, die gemessen sein muss
+	 * @param fahrstufeBis
+	 *            hoechste Fahrstufe, die gemessen sein muss (kleiner als
+	 *            fahrstufeVon = keine Einschraenkung der Fahrstufen)
+	 * @return passende Eintraege aufsteigend nach Startzeitpunkt
+	 * @throws IllegalArgumentException
+	 *             falls eine der Fahrstufen ausserhalb von -MAX_FAHRSTUFE bis
+	 *             MAX_FAHRSTUFE liegt
+	 */
+	public synchronized List<Eintrag> suchen(String lokname, long von,
+			long bis, int fahrstufeVon, int fahrstufeBis) {
+		int ersterZeitindex = zeitindex(von);
+		int letzterZeitindex = bis == Long.MAX_VALUE ? anzahl : zeitindex(bis + 1);
+		long[] fahrstufenBits = null;
+		if (fahrstufeVon <= fahrstufeBis) {
+			if (Math.abs(fahrstufeVon) > Messreihe.MAX_FAHRSTUFE
+					|| Math.abs(fahrstufeBis) > Messreihe.MAX_FAHRSTUFE) {
+				throw new IllegalArgumentException("Fahrstufen " + fahrstufeVon
+						+ " bis " + fahrstufeBis + " ausserhalb von +-"
+						+ Messreihe.MAX_FAHRSTUFE);
+			}
+			long[] a = nachFahrstufe[fahrstufeVon + OFFSET];
+			long[] b = nachFahrstufe[fahrstufeBis + OFFSET];
+			fahrstufenBits = new long[Math.min(a.length, b.length)];
+			for (int i = 0; i < fahrstufenBits.length; i++) {
+				fahrstufenBits[i] = a[i] & b[i];
+			}
+		}
+
+		List<Eintrag> treffer = new ArrayList<Eintrag>();
+		if (lokname != null) {
+			Trefferliste liste = nachLokname.get(schluessel(lokname));
+			if (liste == null) {
+				return treffer;
+			}
+			// die Liste ist nach Satznummern sortiert, daher nachtraeglich
+			// nach Zeit sortieren
+			int[] saetze = new int[liste.anzahl];
+			int n = 0;
+			for (int i = 0; i < liste.anzahl; i++) {
+				int satz = liste.saetze[i];
+				long t = startzeitpunkte[satz];
+				if (t >= von && t <= bis && passt(fahrstufenBits, satz)) {
+					saetze[n++] = satz;
+				}
+			}
+			for (int i = ersterZeitindex; i < letzterZeitindex && n > 0; i++) {
+				int satz = nachZeit[i];
+				if (Arrays.binarySearch(saetze, 0, n, satz) >= 0) {
+					treffer.add(eintrag(satz));
+				}
+			}
+			return treffer;
+		}
+		for (int i = ersterZeitindex; i < letzterZeitindex; i++) {
+			int satz = nachZeit[i];
+			if (passt(fahrstufenBits, satz)) {
+				treffer.add(eintrag(satz));
+			}
+		}
+		return treffer;
+	}
+
+	/**
+	 * @return alle Messreihen einer Lok aufsteigend nach Startzeitpunkt
+	 */
+	public List<Eintrag> suchen(String lokname) {
+		return suchen(lokname, Long.MIN_VALUE, Long.MAX_VALUE, 0, -1);
+	}
+
+	/**
+	 * @return Anzahl der archivierten Messreihen
+	 */
+	public synchronized int getAnzahl() {
+		return anzahl;
+	}
+
+	/**
+	 * @return alle bekannten Loknamen
+	 */
+	public synchronized List<String> getLoknamen() {
+		List<String> namen = new ArrayList<String>(nachLokname.size());
+		for (Trefferliste liste : nachLokname.values()) {
+			namen.add(loknamen[liste.saetze[0]]);
+		}
+		return namen;
+	}
+
+	public File getVerzeichnis() {
+		return verzeichnis;
+	}
+
+	private static boolean passt(long[] fahrstufenBits, int satz) {
+		if (fahrstufenBits == null) {
+			return true;
+		}
+		int wort = satz >>> 6;
+		return wort < fahrstufenBits.length
+				&& (fahrstufenBits[wort] & (1L << satz)) != 0;
+	}
+
+	/**
+	 * @return erste Position in nachZeit mit einem Startzeitpunkt >= t
+	 */
+	private int zeitindex(long t) {
+		int links = 0, rechts = anzahl;
+		while (links < rechts) {
+			int mitte = (links + rechts) >>> 1;
+			if (startzeitpunkte[nachZeit[mitte]] < t) {
+				links = mitte + 1;
+			} else {
+				rechts = mitte;
+			}
+		}
+		return links;
+	}
+
+	private Eintrag eintrag(int satz) {
+		return new Eintrag(datei(nummern[satz]), loknamen[satz],
+				startzeitpunkte[satz], messdauern[satz], fahrstufen0[satz],
+				fahrstufen1[satz], minFahrstufen[satz], maxFahrstufen[satz],
+				impulse[satz]);
+	}
+
+	private File datei(long nummer) {
+		return new File(verzeichnis, String.format("%08d", nummer)
+				+ MessreihenDatei.ENDUNG);
+	}
+
+	private static String schluessel(String lokname) {
+		return lokname.trim().toLowerCase(Locale.GERMAN);
+	}
+
+	// Saetze und Indizes ---------------------------------------------
+
+	/**
+	 * Nimmt eine Messreihe in die Spalten und Indizes auf
+	 *
+	 * @return Satznummer
+	 */
+	private int satzHinzufuegen(long nummer, File datei, Messreihe messreihe) {
+		int min = Messreihe.MAX_FAHRSTUFE + 1;
+		int max = -Messreihe.MAX_FAHRSTUFE - 1;
+		for (int fs = -Messreihe.MAX_FAHRSTUFE; fs <= Messreihe.MAX_FAHRSTUFE; fs++) {
+			if (messreihe.getAnzahlImpulse(fs) > 0) {
+				min = Math.min(min, fs);
+				max = Math.max(max, fs);
+			}
+		}
+		// Lokname so kuerzen, wie er auch gespeichert wird
+		String lokname = new String(
+				MessreihenDatei.loknameKodieren(messreihe.getLokname()),
+				MessreihenDatei.UTF8);
+		return satzHinzufuegen(nummer, lokname,
+				messreihe.getStartzeitpunkt(), messreihe.getMessdauer(),
+				messreihe.getFahrstufe0(), messreihe.getFahrstufe1(),
+				(short) min, (short) max, messreihe.getAnzahlImpulse(),
+				datei.length(), datei.lastModified());
+	}
+
+	private int satzHinzufuegen(long nummer, String lokname,
+			long startzeitpunkt, long messdauer, int fahrstufe0,
+			int fahrstufe1, short minFahrstufe, short maxFahrstufe,
+			int anzahlImpulse, long dateigroesse, long aenderungszeit) {
+		if (anzahl == nummern.length) {
+			int laenge = 2 * anzahl;
+			nummern = Arrays.copyOf(nummern, laenge);
+			startzeitpunkte = Arrays.copyOf(startzeitpunkte, laenge);
+			messdauern = Arrays.copyOf(messdauern, laenge);
+			fahrstufen0 = Arrays.copyOf(fahrstufen0, laenge);
+			fahrstufen1 = Arrays.copyOf(fahrstufen1, laenge);
+			minFahrstufen = Arrays.copyOf(minFahrstufen, laenge);
+			maxFahrstufen = Arrays.copyOf(maxFahrstufen, laenge);
+			impulse = Arrays.copyOf(impulse, laenge);
+			loknamen = Arrays.copyOf(loknamen, laenge);
+			dateigroessen = Arrays.copyOf(dateigroessen, laenge);
+			aenderungszeiten = Arrays.copyOf(aenderungszeiten, laenge);
+			nachZeit = Arrays.copyOf(nachZeit, laenge);
+		}
+		int satz = anzahl;
+		nummern[satz] = nummer;
+		startzeitpunkte[satz] = startzeitpunkt;
+		messdauern[satz] = messdauer;
+		fahrstufen0[satz] = fahrstufe0;
+		fahrstufen1[satz] = fahrstufe1;
+		minFahrstufen[satz] = minFahrstufe;
+		maxFahrstufen[satz] = maxFahrstufe;
+		impulse[satz] = anzahlImpulse;
+		loknamen[satz] = lokname;
+		dateigroessen[satz] = dateigroesse;
+		aenderungszeiten[satz] = aenderungszeit;
+		naechsteNummer = Math.max(naechsteNummer, nummer + 1);
+
+		// Lokname
+		String schluessel = schluessel(lokname);
+		Trefferliste liste = nachLokname.get(schluessel);
+		if (liste == null) {
+			liste = new Trefferliste();
+			nachLokname.put(schluessel, liste);
+		}
+		liste.hinzufuegen(satz);
+
+		// Startzeitpunkt (meist wird hinten angehaengt)
+		int pos = zeitindex(startzeitpunkt + 1);
+		System.arraycopy(nachZeit, pos, nachZeit, pos + 1, anzahl - pos);
+		nachZeit[pos] = satz;
+
+		// Fahrstufen
+		int wort = satz >>> 6;
+		for (int fs = minFahrstufe; fs <= maxFahrstufe; fs++) {
+			long[] bits = nachFahrstufe[fs + OFFSET];
+			if (wort >= bits.length) {
+				bits = Arrays.copyOf(bits, Math.max(wort + 1, 2 * bits.length));
+				nachFahrstufe[fs + OFFSET] = bits;
+			}
+			bits[wort] |= 1L << satz;
+		}
+
+		anzahl++;
+		return satz;
+	}
+
+	// Indexdatei -----------------------------------------------------
+
+	/**
+	 * Liest die Indexdatei. Jeder Satz wird geprueft, bevor er aufgenommen
+	 * wird; eine beschaedigte oder unlesbare Indexdatei fuehrt nur zum
+	 * Neuerstellen, nie zu einem Fehler beim Oeffnen des Archivs.
+	 *
+	 * @return Wahrheitswert, ob eine gueltige Indexdatei gelesen wurde
+	 */
+	private boolean indexLesen() {
+		if (!indexdatei.isFile()) {
+			return false;
+		}
+		try {
+			return saetzeLesen();
+		} catch (IOException e) {
+			return false;
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+
+	private boolean saetzeLesen() throws IOException {
+		// nicht abbilden, da die Datei sonst (unter Windows) nicht ersetzt
+		// werden koennte
+		byte[] inhalt;
+		RandomAccessFile raf = new RandomAccessFile(indexdatei, "r");
+		try {
+			if (raf.length() < KOPF_LAENGE || raf.length() > Integer.MAX_VALUE) {
+				return false;
+			}
+			inhalt = new byte[(int) raf.length()];
+			raf.readFully(inhalt);
+		} finally {
+			raf.close();
+		}
+		ByteBuffer puffer = ByteBuffer.wrap(inhalt).order(
+				ByteOrder.LITTLE_ENDIAN);
+		int saetze = puffer.getInt(8);
+		if (puffer.getInt(0) != KENNUNG || puffer.getShort(4) != VERSION
+				|| saetze < 0
+				|| puffer.limit() < KOPF_LAENGE + (long) saetze * SATZ_LAENGE) {
+			return false;
+		}
+		byte[] name = new byte[MessreihenDatei.LOKNAME_LAENGE];
+		for (int i = 0; i < saetze; i++) {
+			int o = KOPF_LAENGE + i * SATZ_LAENGE;
+			long nummer = puffer.getLong(o);
+			int laenge = puffer.getShort(o + 40);
+			short min = puffer.getShort(o + 32);
+			short max = puffer.getShort(o + 34);
+			int anzahlImpulse = puffer.getInt(o + 36);
+			if (nummer <= 0 || laenge < 0 || laenge > name.length
+					|| anzahlImpulse < 0 || min <= max
+					&& (min < -Messreihe.MAX_FAHRSTUFE
+							|| max > Messreihe.MAX_FAHRSTUFE)) {
+				return false;
+			}
+			puffer.position(o + 42);
+			puffer.get(name, 0, laenge);
+			satzHinzufuegen(nummer, new String(name, 0, laenge,
+					MessreihenDatei.UTF8), puffer.getLong(o + 8),
+					puffer.getLong(o + 16), puffer.getInt(o + 24),
+					puffer.getInt(o + 28), min, max, anzahlImpulse,
+					puffer.getLong(o + 106), puffer.getLong(o + 114));
+		}
+		return true;
+	}
+
+	/**
+	 * @return Wahrheitswert, ob der gelesene Index genau die Dateien im
+	 *         Verzeichnis in unveraendertem Zustand beschreibt
+	 */
+	private boolean isAktuell() {
+		if (anzahl != messreihendateien().length) {
+			return false;
+		}
+		for (int satz = 0; satz < anzahl; satz++) {
+			File datei = datei(nummern[satz]);
+			if (datei.length() != dateigroessen[satz]
+					|| datei.lastModified() != aenderungszeiten[satz]) {
+				return false; // ersetzt, geloescht oder veraendert
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Erstellt die Indexdatei neu aus den Koepfen aller Messreihendateien.
+	 * Die neue Datei ersetzt die alte erst, wenn sie vollstaendig ist.
+	 */
+	private void indexErstellen() throws IOException {
+		anzahl = 0;
+		naechsteNummer = 1;
+		nachLokname.clear();
+		for (long[] bits : nachFahrstufe) {
+			Arrays.fill(bits, 0);
+		}
+		File[] dateien = messreihendateien();
+		Arrays.sort(dateien);
+		for (File datei : dateien) {
+			String name = datei.getName();
+			long nummer = Long.parseLong(name.substring(0, name.length()
+					- MessreihenDatei.ENDUNG.length()));
+			try {
+				// liest nur den Kopf, die Impulse bleiben auf der Platte
+				satzHinzufuegen(nummer, datei, MessreihenDatei.lesen(datei));
+			} catch (IOException e) {
+				System.err.println("Messreihe " + datei
+						+ " wird nicht ins Archiv aufgenommen: "
+						+ e.getMessage());
+			}
+		}
+
+		File neu = new File(verzeichnis, INDEXDATEI + ".neu");
+		RandomAccessFile raf = new RandomAccessFile(neu, "rw");
+		try {
+			raf.setLength(0);
+			FileChannel kanal = raf.getChannel();
+			ByteBuffer kopf = ByteBuffer.allocate(KOPF_LAENGE).order(
+					ByteOrder.LITTLE_ENDIAN);
+			kopf.putInt(KENNUNG).putShort(VERSION).putShort((short) 0)
+					.putInt(anzahl).putInt(0).flip();
+			schreibenAn(kanal, kopf, 0);
+			for (int satz = 0; satz < anzahl; satz++) {
+				schreibenAn(kanal, satz(satz), KOPF_LAENGE + (long) satz
+						* SATZ_LAENGE);
+			}
+			kanal.force(false);
+		} finally {
+			raf.close();
+		}
+		// atomar ersetzen, damit nie ein halber oder gar kein Index vorliegt
+		Files.move(neu.toPath(), indexdatei.toPath(),
+				StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Haengt einen Satz an die Indexdatei an und erhoeht danach die Anzahl im
+	 * Kopf. Bricht das Schreiben ab, bleibt der Satz unberuecksichtigt und
+	 * der Index wird beim naechsten Oeffnen neu erstellt.
+	 */
+	private void satzSchreiben(int satz) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(indexdatei, "rw");
+		try {
+			FileChannel kanal = raf.getChannel();
+			schreibenAn(kanal, satz(satz), KOPF_LAENGE + (long) satz
+					* SATZ_LAENGE);
+			kanal.force(false);
+			ByteBuffer zaehler = ByteBuffer.allocate(4)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			zaehler.putInt(satz + 1).flip();
+			schreibenAn(kanal, zaehler, 8);
+			kanal.force(false);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private ByteBuffer satz(int satz) {
+		ByteBuffer puffer = ByteBuffer.allocate(SATZ_LAENGE).order(
+				ByteOrder.LITTLE_ENDIAN);
+		byte[] name = MessreihenDatei.loknameKodieren(loknamen[satz]);
+		puffer.putLong(nummern[satz]);
+		puffer.putLong(startzeitpunkte[satz]);
+		puffer.putLong(messdauern[satz]);
+		puffer.putInt(fahrstufen0[satz]);
+		puffer.putInt(fahrstufen1[satz]);
+		puffer.putShort(minFahrstufen[satz]);
+		puffer.putShort(maxFahrstufen[satz]);
+		puffer.putInt(impulse[satz]);
+		puffer.putShort((short) name.length);
+		puffer.put(name);
+		puffer.putLong(106, dateigroessen[satz]);
+		puffer.putLong(114, aenderungszeiten[satz]);
+		puffer.clear();
+		return puffer;
+	}
+
+	private static void schreibenAn(FileChannel kanal, ByteBuffer puffer,
+			long position) throws IOException {
+		while (puffer.hasRemaining()) {
+			position += kanal.write(puffer, position);
+		}
+	}
+
+	/**
+	 * @return alle vom Archiv angelegten Messreihendateien (Nummer und
+	 *         Endung)
+	 */
+	private File[] messreihendateien() {
+		File[] dateien = verzeichnis.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File datei) {
+				return datei.isFile()
+						&& datei.getName().matches(
+								"\\d+\\" + MessreihenDatei.ENDUNG);
+			}
+		});
+		return dateien != null ? dateien : new File[0];
+	}
+
+	/**
+	 * Wachsende Liste von Satznummern
+	 */
+	private static class Trefferliste {
+		private int[] saetze = new int[4];
+		private int anzahl = 0;
+
+		private void hinzufuegen(int satz) {
+			if (anzahl == saetze.length) {
+				saetze = Arrays.copyOf(saetze, 2 * anzahl);
+			}
+			saetze[anzahl++] = satz;
+		}
+	}
+
+	/**
+	 * Metadaten einer archivierten Messreihe
+	 */
+	public static final class Eintrag {
+
+		private final File datei;
+		private final String lokname;
+		private final long startzeitpunkt;
+		private final long messdauer;
+		private final int fahrstufe0;
+		private final int fahrstufe1;
+		private final int minFahrstufe;
+		private final int maxFahrstufe;
+		private final int anzahlImpulse;
+
+		private Eintrag(File datei, String lokname, long startzeitpunkt,
+				long messdauer, int fahrstufe0, int fahrstufe1,
+				int minFahrstufe, int maxFahrstufe, int anzahlImpulse) {
+			this.datei = datei;
+			this.lokname = lokname;
+			this.startzeitpunkt = startzeitpunkt;
+			this.messdauer = messdauer;
+			this.fahrstufe0 = fahrstufe0;
+			this.fahrstufe1 = fahrstufe1;
+			this.minFahrstufe = minFahrstufe;
+			this.maxFahrstufe = maxFahrstufe;
+			this.anzahlImpulse = anzahlImpulse;
+		}
+
+		/**
+		 * Oeffnet die Messreihe (die Impulse werden erst beim Zugriff
+		 * gelesen)
+		 *
+		 * @return die archivierte Messreihe
+		 * @throws IOException
+		 */
+		public Messreihe laden() throws IOException {
+			return MessreihenDatei.lesen(datei);
+		}
+
+		public File getDatei() {
+			return datei;
+		}
+
+		public String getLokname() {
+			return lokname;
+		}
+
+		public long getStartzeitpunkt() {
+			return startzeitpunkt;
+		}
+
+		public long getMessdauer() {
+			return messdauer;
+		}
+
+		public int getFahrstufe0() {
+			return fahrstufe0;
+		}
+
+		public int getFahrstufe1() {
+			return fahrstufe1;
+		}
+
+		/**
+		 * @return niedrigste Fahrstufe mit Impulsen
+		 */
+		public int getMinFahrstufe() {
+			return minFahrstufe;
+		}
+
+		/**
+		 * @return hoechste Fahrstufe mit Impulsen
+		 */
+		public int getMaxFahrstufe() {
+			return maxFahrstufe;
+		}
+
+		public int getAnzahlImpulse() {
+			return anzahlImpulse;
+		}
+
+		@Override
+		public String toString() {
+			return lokname + " (" + datei.getName() + ")";
+		}
+	}
+}
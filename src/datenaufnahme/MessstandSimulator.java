@@ -0,0 +1,275 @@
+package datenaufnahme;
+
+import java.util.Random;
+
+/**
+ * Simuliert Lok und Messstand ohne angeschlossene Hardware. Die Lok faehrt mit
+ * der Geschwindigkeit, die ihrer Kennlinie fuer die gesetzte Fahrstufe
+ * entspricht, und treibt ein Messrad mit einstellbarem Umfang und
+ * Markierungen an. Wie beim echten Messstand aendert sich der gelesene Status
+ * mit jeder Markierung.
+ *
+ * Die Messung erkennt einen Impuls nur an der Aenderung des Status. Werden
+ * zwischen zwei Abfragen mehrere Impulse faellig, aendert sich der Status
+ * daher bei jeder Abfrage hoechstens einmal, die uebrigen Impulse folgen bei
+ * den naechsten Abfragen. So geht auch bei hohem Zeitraffer kein Impuls
+ * verloren; wie viele verspaetet gemeldet wurden, zeigt
+ * getVerspaeteteImpulse().
+ *
+ * Optional werden Stoerungen nachgebildet: Rauschen auf den Impulsabstaenden,
+ * ausbleibende Impulse und Doppelausloesungen. Mit einem Zeitraffer groesser 1
+ * laeuft die Simulation schneller als die Wirklichkeit, sodass Messung und
+ * Plotter mit einem Vielfachen der realen Impulsrate belastet werden koennen.
+ *
+ * @author Manuel Weber
+ */
+public class MessstandSimulator implements Impulsquelle {
+
+	/**
+	 * Abstand einer Doppelausloesung zum eigentlichen Impuls in ns
+	 */
+	private static final long DOPPELAUSLOESUNG_ABSTAND = 200000;
+
+	/**
+	 * Geschwindigkeit in cm/s pro Fahrstufe (Index = Fahrstufe +
+	 * Messreihe.MAX_FAHRSTUFE)
+	 */
+	private final double[] kennlinie;
+
+	/**
+	 * Abstand zweier Markierungen auf dem Messrad in cm
+	 */
+	private final double markierungsabstand;
+
+	/**
+	 * Faktor, um den die Simulation schneller als die Wirklichkeit laeuft
+	 */
+	private double zeitraffer = 1;
+
+	// Stoerungen
+	private double rauschen = 0;
+	private double ausfallwahrscheinlichkeit = 0;
+	private double doppelwahrscheinlichkeit = 0;
+
+	private final Random zufall;
+
+	// Zustand
+	private int fahrstufe = 0;
+	private int status = 0;
+	private long letzterImpuls;
+	private long naechsterImpuls = Long.MAX_VALUE;
+	private long doppelausloesung = Long.MAX_VALUE;
+
+	/**
+	 * Faellige, aber noch nicht gemeldete Impulse
+	 */
+	private int ausstehend = 0;
+
+	/**
+	 * Anzahl der Impulse, die erst bei einer spaeteren Abfrage als der
+	 * faelligen gemeldet wurden
+	 */
+	private long verspaetet = 0;
+
+	/**
+	 * Anteil des aktuellen Markierungsabstands, der noch zurueckzulegen ist
+	 */
+	private double restweg = 1;
+
+	/**
+	 * @param kennlinie
+	 *            Geschwindigkeit der Lok in cm/s fuer jede Fahrstufe (Index =
+	 *            Fahrstufe + Messreihe.MAX_FAHRSTUFE)
+	 * @param messradumfang
+	 *            in cm
+	 * @param markierungen
+	 *            Anzahl der Markierungen auf dem Messrad
+	 * @param startwert
+	 *            Startwert des Zufallsgenerators (gleiche Startwerte liefern
+	 *            gleiche Stoerungen)
+	 */
+	public MessstandSimulator(double[] kennlinie, double messradumfang,
+			int markierungen, long startwert) {
+		if (kennlinie.length != Messreihe.ANZAHL_FAHRSTUFEN) {
+			throw new IllegalArgumentException("Die Kennlinie muss "
+					+ Messreihe.ANZAHL_FAHRSTUFEN + " Fahrstufen umfassen");
+		}
+		this.kennlinie = kennlinie.clone();
+		this.markierungsabstand = messradumfang / markierungen;
+		this.zufall = new Random(startwert);
+		this.letzterImpuls = System.nanoTime();
+	}
+
+	/**
+	 * Erzeugt eine lineare Kennlinie (Fahrstufe 0 steht, die hoechste Fahrstufe
+	 * faehrt mit vmax, rueckwaerts symmetrisch)
+	 *
+	 * @param vmax
+	 *            in cm/s
+	 * @return Kennlinie fuer den Konstruktor
+	 */
+	public static double[] lineareKennlinie(double vmax) {
+		double[] kennlinie = new double[Messreihe.ANZAHL_FAHRSTUFEN];
+		for (int fs = -Messreihe.MAX_FAHRSTUFE; fs <= Messreihe.MAX_FAHRSTUFE; fs++) {
+			kennlinie[fs + Messreihe.MAX_FAHRSTUFE] = vmax * fs
+					/ Messreihe.MAX_FAHRSTUFE;
+		}
+		return kennlinie;
+	}
+
+	@Override
+	public synchronized int statusLesen() {
+		long jetzt = System.nanoTime();
+		int faellig = 0;
+		if (doppelausloesung <= jetzt) {
+			doppelausloesung = Long.MAX_VALUE;
+			faellig++;
+		}
+		while (naechsterImpuls <= jetzt) {
+			if (zufall.nextDouble() >= ausfallwahrscheinlichkeit) {
+				faellig++;
+				if (zufall.nextDouble() < doppelwahrscheinlichkeit) {
+					doppelausloesung = naechsterImpuls
+							+ DOPPELAUSLOESUNG_ABSTAND;
+				}
+			}
+			letzterImpuls = naechsterImpuls;
+			restweg = 1;
+			naechsterImpuls += impulsabstand(1);
+		}
+		// hoechstens eine Statusaenderung pro Abfrage
+		verspaetet += ausstehend > 0 ? faellig : Math.max(0, faellig - 1);
+		ausstehend += faellig;
+		if (ausstehend > 0) {
+			ausstehend--;
+			status++;
+		}
+		return status;
+	}
+
+	/**
+	 * Setzt die Fahrstufe der simulierten Lok. Die Geschwindigkeit aendert
+	 * sich sofort, der angefangene Markierungsabstand wird mit der neuen
+	 * Geschwindigkeit zu Ende gefahren.
+	 *
+	 * @param fahrstufe
+	 */
+	public synchronized void setFahrstufe(int fahrstufe) {
+		long jetzt = System.nanoTime();
+		if (naechsterImpuls != Long.MAX_VALUE) {
+			double gesamt = naechsterImpuls - letzterImpuls;
+			restweg = gesamt > 0 ? Math.max(0, (naechsterImpuls - jetzt)
+					/ gesamt * restweg) : 0;
+		}
+		this.fahrstufe = fahrstufe;
+		letzterImpuls = jetzt;
+		long abstand = impulsabstand(restweg);
+		naechsterImpuls = abstand == Long.MAX_VALUE ? Long.MAX_VALUE : jetzt
+				+ abstand;
+	}
+
+	/**
+	 * @param anteil
+	 *            zurueckzulegender Anteil des Markierungsabstands
+	 * @return Zeit bis zum naechsten Impuls in ns (Long.MAX_VALUE, falls die
+	 *         Lok steht)
+	 */
+	private long impulsabstand(double anteil) {
+		double v = Math.abs(kennlinie[fahrstufe + Messreihe.MAX_FAHRSTUFE])
+				* zeitraffer;
+		if (v <= 0) {
+			return Long.MAX_VALUE;
+		}
+		double sekunden = anteil * markierungsabstand / v;
+		if (rauschen > 0) {
+			sekunden *= Math.max(0.05, 1 + rauschen * zufall.nextGaussian());
+		}
+		return Math.max(1, (long) (sekunden * 1e9));
+	}
+
+	/**
+	 * Fuellt eine Messreihe ohne Echtzeitablauf mit simulierten Impulsen, z.B.
+	 * fuer Lasttests und Benchmarks. Rauschen, Ausfaelle und
+	 * Doppelausloesungen werden beruecksichtigt.
+	 *
+	 * @param messreihe
+	 *            Ziel (wird von Fahrstufe0 bis Fahrstufe1 durchlaufen)
+	 * @param impulseProFahrstufe
+	 *            Anzahl simulierter Markierungen pro Fahrstufe
+	 */
+	public synchronized void erzeugen(Messreihe messreihe,
+			int impulseProFahrstufe) {
+		int fs0 = messreihe.getFahrstufe0();
+		int fs1 = messreihe.getFahrstufe1();
+		int schritt = fs1 >= fs0 ? 1 : -1;
+		long zeit = 0;
+		for (int fs = fs0; fs != fs1 + schritt; fs += schritt) {
+			fahrstufe = fs;
+			for (int i = 0; i < impulseProFahrstufe; i++) {
+				long abstand = impulsabstand(1);
+				if (abstand == Long.MAX_VALUE) {
+					break; // Lok steht
+				}
+				zeit += abstand;
+				if (zufall.nextDouble() < ausfallwahrscheinlichkeit) {
+					continue;
+				}
+				messreihe.impulsHinzufuegen(zeit, fs, fs >= 0);
+				if (zufall.nextDouble() < doppelwahrscheinlichkeit) {
+					messreihe.impulsHinzufuegen(zeit
+							+ Math.min(abstand / 2, DOPPELAUSLOESUNG_ABSTAND),
+							fs, fs >= 0);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param zeitraffer
+	 *            Faktor, um den die Simulation schneller als die Wirklichkeit
+	 *            laeuft (z.B. 10)
+	 */
+	public synchronized void setZeitraffer(double zeitraffer) {
+		this.zeitraffer = zeitraffer;
+	}
+
+	/**
+	 * @param rauschen
+	 *            relative Standardabweichung der Impulsabstaende (z.B. 0.02)
+	 */
+	public synchronized void setRauschen(double rauschen) {
+		this.rauschen = rauschen;
+	}
+
+	/**
+	 * @param wahrscheinlichkeit
+	 *            Wahrscheinlichkeit, dass ein Impuls ausbleibt
+	 */
+	public synchronized void setAusfallwahrscheinlichkeit(
+			double wahrscheinlichkeit) {
+		this.ausfallwahrscheinlichkeit = wahrscheinlichkeit;
+	}
+
+	/**
+	 * @param wahrscheinlichkeit
+	 *            Wahrscheinlichkeit, dass eine Markierung zwei Impulse
+	 *            ausloest
+	 */
+	public synchronized void setDoppelwahrscheinlichkeit(
+			double wahrscheinlichkeit) {
+		this.doppelwahrscheinlichkeit = wahrscheinlichkeit;
+	}
+
+	public synchronized int getFahrstufe() {
+		return fahrstufe;
+	}
+
+	/**
+	 * @return Anzahl der Impulse, die nicht bei der ersten Abfrage nach ihrem
+	 *         Zeitpunkt gemeldet wurden, weil die Abfragen fuer die Impulsrate
+	 *         zu selten waren
+	 */
+	public synchronized long getVerspaeteteImpulse() {
+		return verspaetet;
+	}
+}
@@ -1,13 +1,20 @@
 package datenaufnahme;
 
 import gui.GuiAktualisieren;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import loksteuerung.Bewegungsablauf;
 import loksteuerung.RMXconnector;
 import loksteuerung.TrainNotFoundException;
 import controller.Einstellungen;
 import controller.Funktionen;
 import controller.Main;
+import controller.Messmetriken;
 import datenverarbeitung.Plotter;
+import datenverarbeitung.Saeulendiagramm;
 
 /**
  * Definiert den Messvogang, der in einem separaten Thread durchgefuehrt werden
@@ -18,6 +25,23 @@ import datenverarbeitung.Plotter;
  * zunaechst auf 1 bzw. -1 in Position gedreht. Ein interrupt beendet auch
  * Bewegungsablauf und Plotter kontrolliert.
  * 
+ * Die Impulse des Messrades werden durch wiederholtes Abfragen der
+ * Impulsquelle erkannt. Jeder Impuls erhaelt einen Zeitstempel aus
+ * System.nanoTime() (Mitte zwischen Beginn und Ende der Abfrage). Wie zwischen
+ * zwei Abfragen gewartet wird, legt die Wartestrategie fest. Die Abstaende
+ * zwischen den Abfragen werden in einem Jitterhistogramm festgehalten. Mit
+ * einer Entprellzeit werden Statuswechsel verworfen, die zu kurz nach dem
+ * letzten Impuls kommen (z.B. Prellen oder Doppelausloesungen des Sensors).
+ * 
+ * Mit einer ThreadFactory koennen Messung und Plotter statt als eigene
+ * Threads auch von anderen (z.B. virtuellen) Threads ausgefuehrt werden, siehe
+ * Messplaner. Beendet wird die Messung dann ueber den ausfuehrenden Thread.
+ * 
+ * Statt des Bewegungsablaufs kann eine Ablaufsteuerung die Messung fuehren.
+ * Sie setzt die Fahrstufen nach einem vorab berechneten Ablaufplan, setzt die
+ * Messwertaufnahme waehrend der Vorbereitungszeiten aus und beendet die
+ * Messung am Ende des Plans.
+ * 
  * @author Manuel Weber
  */
 public class Messung extends Thread {
@@ -38,6 +62,11 @@ public class Messung extends Thread {
 	 */
 	private Plotter plotter;
 
+	/**
+	 * Puffer ueber den neue Impulse an den Plotter uebergeben werden
+	 */
+	private Impulspuffer impulspuffer;
+
 	/**
 	 * Wahrheitswert, ob ein Verbindungsfehler aufgetreten ist und die
 	 * Verbindung nach Abbruch der Messung getrennt werden muss
@@ -58,17 +87,338 @@ public class Messung extends Thread {
 	private int status;
 	private int letzterStatus;
 
+	/**
+	 * Quelle der Messradimpulse
+	 */
+	private Impulsquelle impulsquelle;
+
+	/**
+	 * Art des Wartens zwischen zwei Abfragen der Impulsquelle
+	 */
+	private Wartestrategie wartestrategie = Wartestrategie.YIELD;
+
+	/**
+	 * Abfrageabstaende vor den einzelnen Impulsen (maximale Ungenauigkeit der
+	 * Zeitstempel)
+	 */
+	private final Jitterhistogramm jitter = new Jitterhistogramm();
+
+	/**
+	 * Mindestabstand zweier Impulse in ns, kuerzere Abstaende gelten als
+	 * Prellen (0 = aus)
+	 */
+	private long entprellzeit = 0;
+
+	/**
+	 * Fahrstufe, in der die Lok momentan faehrt
+	 */
+	private volatile int fahrstufe;
+
+	/**
+	 * Anzahl der Impulse, die wegen eines vollen Impulspuffers nicht direkt an
+	 * den Plotter uebergeben werden konnten (er holt sie aus der Messreihe
+	 * nach)
+	 */
+	private int abgewieseneImpulse = 0;
+
+	private final Messmetriken metriken = Messmetriken.getMessmetriken();
+
+	/**
+	 * Einstellungen, mit denen gemessen wird
+	 */
+	private final Einstellungen.Schnappschuss einstellungen;
+
+	/**
+	 * Erzeugt die Threads fuer Plotter und Bewegungsablauf (null = beide
+	 * werden selbst als Thread gestartet)
+	 */
+	private ThreadFactory threadFabrik = null;
+
+	/**
+	 * Steuert den Ablauf statt des Bewegungsablaufs (oder null)
+	 */
+	private Ablaufsteuerung ablaufsteuerung = null;
+
+	/**
+	 * Wahrheitswert, ob Impulse gerade nicht aufgenommen werden (z.B.
+	 * waehrend die Lok nach einem Fahrstufenwechsel beschleunigt)
+	 */
+	private volatile boolean aufnahmeAusgesetzt = false;
+
+	/**
+	 * Thread, der die Messung ausfuehrt
+	 */
+	private volatile Thread ausfuehrend;
+
 	public Messung(Messreihe messreihe) throws TrainNotFoundException {
+		this(messreihe, new Plotter(messreihe, null), Einstellungen
+				.getEinstellungen().getSchnappschuss());
+	}
+
+	/**
+	 * Erzeugt eine Messung, die unabhaengig vom Hauptfenster in ein eigenes
+	 * Saeulendiagramm plottet und mit festen Einstellungen arbeitet
+	 * 
+	 * @param messreihe
+	 * @param diagramm
+	 * @param einstellungen
+	 * @throws TrainNotFoundException
+	 */
+	public Messung(Messreihe messreihe, Saeulendiagramm diagramm,
+			Einstellungen.Schnappschuss einstellungen)
+			throws TrainNotFoundException {
+		this(messreihe, new Plotter(messreihe, diagramm, einstellungen),
+				einstellungen);
+	}
+
+	private Messung(Messreihe messreihe, Plotter plotter,
+			Einstellungen.Schnappschuss einstellungen)
+			throws TrainNotFoundException {
 		this.messreihe = messreihe;
+		this.einstellungen = einstellungen;
+		this.dauer = messreihe.getMessdauer();
+		this.fahrstufe = messreihe.getFahrstufe0();
 		this.bewegungsablauf = new Bewegungsablauf(messreihe.getLokname(),
 				messreihe.getFahrstufe0(), messreihe.getFahrstufe1(), dauer,
 				messreihe.isGleichmaessigBeschleunigt());
-		this.plotter = new Plotter(messreihe, null);
+		this.plotter = plotter;
+		this.impulspuffer = plotter.getImpulspuffer();
+	}
+
+	/**
+	 * Speichert einen Impuls in der Messreihe und uebergibt ihn an den
+	 * Plotter. Blockiert nie, auch wenn der Plotter nicht hinterherkommt.
+	 *
+	 * @param zeit
+	 *            Zeitstempel in Nanosekunden seit Messbeginn
+	 * @param fahrstufe
+	 * @param vorwaerts
+	 */
+	private void impulsAufnehmen(long zeit, int fahrstufe, boolean vorwaerts) {
+		messreihe.impulsHinzufuegen(zeit, fahrstufe, vorwaerts);
+		impulse++;
+		metriken.impulsAufgenommen();
+		if (!impulspuffer.anbieten(zeit, fahrstufe)) {
+			abgewieseneImpulse++;
+			metriken.impulsAbgewiesen();
+		}
 	}
 
 	@Override
 	public void run() {
+		if (impulsquelle == null) {
+			throw new IllegalStateException("Keine Impulsquelle gesetzt");
+		}
+		ausfuehrend = Thread.currentThread();
+		Thread plotterThread = starten(plotter);
+		Thread bewegungsThread = null;
+		try {
+			if (ablaufsteuerung == null) {
+				bewegungsThread = starten(bewegungsablauf);
+				Thread.sleep(einstellungen.getVorbereitungszeit());
+			} else {
+				// die Vorbereitungszeit ist Teil des Ablaufplans. Bis das erste
+				// Ereignis im naechsten Takt des Zeitrades eintrifft, wird
+				// nichts aufgenommen.
+				aufnahmeAusgesetzt = true;
+				ablaufsteuerung.starten();
+			}
+			messwerteAufnehmen();
+		} catch (InterruptedException e) {
+			// Messung wurde abgebrochen
+		} catch (IOException e) {
+			verbindungsfehler = true;
+			System.err.println("Verbindung zum Messstand unterbrochen: "
+					+ e.getMessage());
+		} finally {
+			if (bewegungsThread != null) {
+				stoppen(bewegungsablauf, bewegungsThread);
+			}
+			if (ablaufsteuerung != null) {
+				// haelt die Lok an, falls der Ablauf noch nicht beendet war;
+				// die dabei ausgeloeste Unterbrechung gilt uns selbst
+				ablaufsteuerung.abbrechen();
+				Thread.interrupted();
+			}
+			stoppen(plotter, plotterThread);
+			if (startzeit != 0) {
+				messreihe.setMessdauer(System.currentTimeMillis() - startzeit);
+			}
+		}
+	}
+
+	/**
+	 * Startet Plotter bzw. Bewegungsablauf als eigenen Thread oder mit der
+	 * ThreadFactory
+	 * 
+	 * @return ausfuehrender Thread
+	 */
+	private Thread starten(Thread thread) {
+		if (threadFabrik == null) {
+			thread.start();
+			return thread;
+		}
+		Thread ausfuehrend = threadFabrik.newThread(thread);
+		ausfuehrend.start();
+		return ausfuehrend;
+	}
+
+	/**
+	 * Unterbricht einen mit starten() gestarteten Thread. Das Thread-Objekt
+	 * selbst wird ebenfalls unterbrochen, falls es seinen eigenen Status
+	 * abfragt.
+	 */
+	private static void stoppen(Thread thread, Thread ausfuehrend) {
+		thread.interrupt();
+		if (ausfuehrend != thread) {
+			ausfuehrend.interrupt();
+		}
+	}
+
+	/**
+	 * Fragt die Impulsquelle bis zur Unterbrechung des Threads ab. Die
+	 * Messwertaufnahme beginnt mit dem ersten Impuls, er erhaelt den
+	 * Zeitstempel 0.
+	 * 
+	 * @throws IOException
+	 */
+	private void messwerteAufnehmen() throws IOException {
+		long basis = 0;
+		long letzterImpuls = 0;
+		letzterStatus = impulsquelle.statusLesen();
+		long letzteAbfrage = System.nanoTime();
+
+		while (Thread.currentThread().isInterrupted() == false) {
+			long vorher = System.nanoTime();
+			status = impulsquelle.statusLesen();
+			long nachher = System.nanoTime();
+
+			if (status != letzterStatus && !aufnahmeAusgesetzt) {
+				long zeitpunkt = vorher + ((nachher - vorher) >> 1);
+				if (startzeit != 0 && zeitpunkt - letzterImpuls < entprellzeit) {
+					metriken.impulsEntprellt();
+				} else {
+					if (startzeit == 0) {
+						basis = zeitpunkt;
+						plotter.setZeitbasis(basis);
+						startzeit = System.currentTimeMillis();
+						messreihe.setStartzeitpunkt(startzeit);
+					} else {
+						jitter.erfassen(nachher - letzteAbfrage);
+					}
+					letzterImpuls = zeitpunkt;
+					int fs = fahrstufe;
+					impulsAufnehmen(zeitpunkt - basis, fs, fs >= 0);
+				}
+			}
+			letzterStatus = status;
+			letzteAbfrage = nachher;
+			wartestrategie.warten();
+		}
+	}
+
+	/**
+	 * Teilt der Messung einen Fahrstufenwechsel mit. Alle folgenden Impulse
+	 * werden der neuen Fahrstufe zugeordnet.
+	 * 
+	 * @param fahrstufe
+	 */
+	public void setFahrstufe(int fahrstufe) {
+		this.fahrstufe = fahrstufe;
+	}
+
+	public void setImpulsquelle(Impulsquelle impulsquelle) {
+		this.impulsquelle = impulsquelle;
+	}
+
+	/**
+	 * Legt fest, wie kurz zwei Impulse hoechstens aufeinander folgen duerfen,
+	 * bevor der zweite als Prellen verworfen wird. Muss vor dem Start gesetzt
+	 * werden.
+	 * 
+	 * @param zeit
+	 *            Mindestabstand (0 = nicht entprellen)
+	 * @param einheit
+	 */
+	public void setEntprellzeit(long zeit, TimeUnit einheit) {
+		this.entprellzeit = einheit.toNanos(zeit);
+	}
+
+	public void setWartestrategie(Wartestrategie wartestrategie) {
+		this.wartestrategie = wartestrategie;
+	}
+
+	/**
+	 * Legt fest, mit welcher ThreadFactory Plotter und Bewegungsablauf
+	 * gestartet werden. Muss vor dem Start der Messung gesetzt werden.
+	 * 
+	 * @param threadFabrik
+	 *            null = als eigene Threads starten
+	 */
+	public void setThreadFabrik(ThreadFactory threadFabrik) {
+		this.threadFabrik = threadFabrik;
+	}
+
+	/**
+	 * Laesst die Messung von einer Ablaufsteuerung statt vom Bewegungsablauf
+	 * fuehren. Muss vor dem Start der Messung gesetzt werden, die
+	 * Ablaufsteuerung wird mit der Messung gestartet.
+	 * 
+	 * @param ablaufsteuerung
+	 */
+	public void setAblaufsteuerung(Ablaufsteuerung ablaufsteuerung) {
+		this.ablaufsteuerung = ablaufsteuerung;
+		ablaufsteuerung.empfaengerHinzufuegen(new Ablaufsteuerung.Empfaenger() {
+			@Override
+			public void fahrstufeSetzen(int fahrstufe) {
+				setFahrstufe(fahrstufe);
+			}
+
+			@Override
+			public void aufnahmeAussetzen(boolean ausgesetzt) {
+				setAufnahmeAusgesetzt(ausgesetzt);
+			}
+
+			@Override
+			public void ablaufBeendet() {
+				interrupt();
+				Thread thread = ausfuehrend;
+				if (thread != null) {
+					thread.interrupt();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Setzt die Messwertaufnahme aus bzw. setzt sie fort. Impulse waehrend
+	 * der Pause werden nicht gespeichert.
+	 * 
+	 * @param ausgesetzt
+	 */
+	public void setAufnahmeAusgesetzt(boolean ausgesetzt) {
+		this.aufnahmeAusgesetzt = ausgesetzt;
+	}
+
+	public boolean isAufnahmeAusgesetzt() {
+		return aufnahmeAusgesetzt;
+	}
+
+	/**
+	 * @return Messreihe, in der die Messwerte gespeichert werden
+	 */
+	public Messreihe getMessreihe() {
+		return messreihe;
+	}
+
+	/**
+	 * @return Histogramm der Abfrageabstaende vor den Impulsen
+	 */
+	public Jitterhistogramm getJitter() {
+		return jitter;
+	}
 
-	
+	public boolean isVerbindungsfehler() {
+		return verbindungsfehler;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,53 @@
+package datenaufnahme;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Legt fest, wie die Messung zwischen zwei Abfragen des Messrades wartet. Je
+ * kuerzer gewartet wird, desto genauer sind die Zeitstempel der Impulse, desto
+ * mehr Rechenzeit wird aber auch verbraucht.
+ * 
+ * @author Manuel Weber
+ */
+public enum Wartestrategie {
+
+	/**
+	 * Fragt ohne Pause erneut ab (belegt einen Prozessorkern vollstaendig)
+	 */
+	SPIN {
+		@Override
+		void warten() {
+		}
+	},
+
+	/**
+	 * Gibt den Prozessor kurz an andere Threads ab
+	 */
+	YIELD {
+		@Override
+		void warten() {
+			Thread.yield();
+		}
+	},
+
+	/**
+	 * Legt den Thread fuer PARKZEIT Nanosekunden schlafen (schont den
+	 * Prozessor, die tatsaechliche Schlafdauer haengt vom Betriebssystem ab)
+	 */
+	PARK {
+		@Override
+		void warten() {
+			LockSupport.parkNanos(PARKZEIT);
+		}
+	};
+
+	/**
+	 * Angestrebte Schlafdauer der Strategie PARK in Nanosekunden
+	 */
+	public static final long PARKZEIT = 50000;
+
+	/**
+	 * Wartet bis zur naechsten Abfrage
+	 */
+	abstract void warten();
+}
@@ -0,0 +1,99 @@
+package datenaufnahme;
+
+/**
+ * Histogramm von Zeitdauern (in Nanosekunden), z.B. Abfrageabstaende oder
+ * Latenzen. Die Klassen sind Zweierpotenzen, Klasse k enthaelt also alle
+ * Werte von 2^k bis 2^(k+1)-1 Nanosekunden.
+ * 
+ * Es darf nur ein Thread Werte erfassen, das Auslesen ist aus anderen Threads
+ * moeglich (die Werte sind dann eventuell nicht ganz aktuell).
+ * 
+ * @author Manuel Weber
+ */
+public class Zeithistogramm {
+
+	private static final int KLASSEN = 64;
+
+	private final long[] haeufigkeiten = new long[KLASSEN];
+	private volatile long anzahl = 0;
+	private volatile long maximum = 0;
+	private long summe = 0;
+
+	/**
+	 * Erfasst eine Zeitdauer
+	 * 
+	 * @param nanos
+	 */
+	public void erfassen(long nanos) {
+		if (nanos < 1) {
+			nanos = 1;
+		}
+		haeufigkeiten[63 - Long.numberOfLeadingZeros(nanos)]++;
+		summe += nanos;
+		if (nanos > maximum) {
+			maximum = nanos;
+		}
+		anzahl++;
+	}
+
+	/**
+	 * Verwirft alle erfassten Werte
+	 */
+	public void zuruecksetzen() {
+		for (int i = 0; i < KLASSEN; i++) {
+			haeufigkeiten[i] = 0;
+		}
+		summe = 0;
+		maximum = 0;
+		anzahl = 0;
+	}
+
+	/**
+	 * @param quantil
+	 *            zwischen 0 und 1 (z.B. 0.99)
+	 * @return Obergrenze der Klasse, in der das Quantil liegt (in ns)
+	 */
+	public long getQuantil(double quantil) {
+		long n = anzahl;
+		long grenze = (long) Math.ceil(quantil * n);
+		long kumuliert = 0;
+		for (int k = 0; k < KLASSEN; k++) {
+			kumuliert += haeufigkeiten[k];
+			if (kumuliert >= grenze && kumuliert > 0) {
+				return (1L << (k + 1)) - 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @param klasse
+	 * @return Anzahl der Werte in der Klasse [2^klasse, 2^(klasse+1))
+	 */
+	public long getHaeufigkeit(int klasse) {
+		return haeufigkeiten[klasse];
+	}
+
+	public long getAnzahl() {
+		return anzahl;
+	}
+
+	public long getMaximum() {
+		return maximum;
+	}
+
+	/**
+	 * @return mittlere Dauer in ns
+	 */
+	public double getMittelwert() {
+		long n = anzahl;
+		return n == 0 ? 0 : (double) summe / n;
+	}
+
+	@Override
+	public String toString() {
+		return "Mittel " + (long) getMittelwert() + " ns, 99%-Quantil < "
+				+ getQuantil(0.99) + " ns, Maximum " + getMaximum() + " ns ("
+				+ getAnzahl() + " Werte)";
+	}
+}
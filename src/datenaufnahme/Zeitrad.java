@@ -0,0 +1,300 @@
+package datenaufnahme;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed Timer Wheel: fuehrt Auftraege zu absoluten Terminen
+ * (System.nanoTime()) in einem eigenen Thread aus.
+ *
+ * Die Zeit ist in Takte fester Laenge eingeteilt, jeder Takt gehoert zu einem
+ * Fach des Rades. Ein Auftrag wird in das Fach des Taktes gelegt, in dem sein
+ * Termin liegt, und zaehlt mit, wie viele Umdrehungen er noch warten muss.
+ * Einplanen und Ausfuehren kosten damit unabhaengig von der Anzahl der
+ * Auftraege konstante Zeit.
+ *
+ * Das Ende jedes Taktes wird aus dem Startzeitpunkt und der Taktnummer
+ * berechnet, nicht aus dem vorherigen Aufwachen. Ungenauigkeiten beim Schlafen
+ * verzoegern also hoechstens den einzelnen Takt, summieren sich aber nicht
+ * auf. Ein Auftrag wird am Ende des Taktes ausgefuehrt, in den sein Termin
+ * faellt, also hoechstens eine Taktlaenge (plus Aufwachlatenz) zu spaet.
+ * Liegen keine Auftraege vor, schlaeft der Thread bis zum naechsten
+ * Einplanen.
+ *
+ * Die Auftraege werden nacheinander im Thread des Rades ausgefuehrt und
+ * sollten daher kurz sein.
+ *
+ * @author Manuel Weber
+ */
+public class Zeitrad {
+
+	/**
+	 * Eingeplanter Auftrag
+	 */
+	public static final class Auftrag {
+
+		private final Zeitrad zeitrad;
+		private final long termin;
+		private final Runnable aktion;
+		private long runden;
+		private Auftrag naechster;
+
+		/**
+		 * Fach, in dessen Liste der Auftrag liegt (-1 = in keinem, nur im
+		 * Thread des Rades)
+		 */
+		private int fach = -1;
+
+		private volatile boolean abgebrochen = false;
+
+		private Auftrag(Zeitrad zeitrad, long termin, Runnable aktion) {
+			this.zeitrad = zeitrad;
+			this.termin = termin;
+			this.aktion = aktion;
+		}
+
+		/**
+		 * Verhindert die Ausfuehrung, falls der Auftrag noch nicht
+		 * ausgefuehrt wurde. Der Auftrag wird im Thread des Rades aus seinem
+		 * Fach entfernt, ein leeres Rad schlaeft danach wieder.
+		 */
+		public void abbrechen() {
+			if (!abgebrochen) {
+				abgebrochen = true;
+				zeitrad.abgebrochene.add(this);
+				LockSupport.unpark(zeitrad.thread);
+			}
+		}
+
+		/**
+		 * @return Termin (System.nanoTime())
+		 */
+		public long getTermin() {
+			return termin;
+		}
+	}
+
+	private final long taktdauer;
+	private final int maske;
+
+	/**
+	 * Verkettete Listen der Auftraege pro Fach (nur im Thread des Rades)
+	 */
+	private final Auftrag[] anfaenge;
+	private final Auftrag[] enden;
+
+	/**
+	 * Anzahl der Auftraege im Rad (nur im Thread des Rades)
+	 */
+	private int anzahl = 0;
+
+	/**
+	 * Neu eingeplante, noch nicht einsortierte Auftraege
+	 */
+	private final ConcurrentLinkedQueue<Auftrag> neue = new ConcurrentLinkedQueue<Auftrag>();
+
+	/**
+	 * Abgebrochene, noch nicht aus ihrem Fach entfernte Auftraege
+	 */
+	private final ConcurrentLinkedQueue<Auftrag> abgebrochene = new ConcurrentLinkedQueue<Auftrag>();
+
+	private final Thread thread;
+
+	private volatile boolean gestoppt = false;
+
+	/**
+	 * Zeitpunkt, ab dem die Takte gezaehlt werden
+	 */
+	private final long start;
+
+	/**
+	 * @param taktdauer
+	 *            Laenge eines Taktes
+	 * @param einheit
+	 * @param faecher
+	 *            Anzahl der Faecher (wird auf eine Zweierpotenz aufgerundet)
+	 */
+	public Zeitrad(long taktdauer, TimeUnit einheit, int faecher) {
+		this.taktdauer = einheit.toNanos(taktdauer);
+		if (this.taktdauer <= 0) {
+			throw new IllegalArgumentException("Taktdauer muss positiv sein");
+		}
+		int groesse = Integer.highestOneBit(Math.max(2, faecher - 1)) << 1;
+		maske = groesse - 1;
+		anfaenge = new Auftrag[groesse];
+		enden = new Auftrag[groesse];
+		start = System.nanoTime();
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drehen();
+			}
+		}, "Zeitrad");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Plant einen Auftrag ein. Liegt der Termin in der Vergangenheit, wird der
+	 * Auftrag im naechsten Takt ausgefuehrt.
+	 *
+	 * @param termin
+	 *            absoluter Zeitpunkt (System.nanoTime())
+	 * @param aktion
+	 * @return Auftrag, z.B. zum Abbrechen
+	 */
+	public Auftrag planen(long termin, Runnable aktion) {
+		if (gestoppt) {
+			throw new IllegalStateException("Zeitrad ist gestoppt");
+		}
+		Auftrag auftrag = new Auftrag(this, termin, aktion);
+		neue.add(auftrag);
+		LockSupport.unpark(thread);
+		return auftrag;
+	}
+
+	/**
+	 * Beendet den Thread des Rades. Noch nicht ausgefuehrte Auftraege
+	 * verfallen.
+	 */
+	public void stoppen() {
+		gestoppt = true;
+		LockSupport.unpark(thread);
+	}
+
+	/**
+	 * @return Laenge eines Taktes in Nanosekunden
+	 */
+	public long getTaktdauer() {
+		return taktdauer;
+	}
+
+	private void drehen() {
+		long takt = 0;
+		while (!gestoppt) {
+			entfernen();
+			if (anzahl == 0 && neue.isEmpty()) {
+				LockSupport.park(this);
+				// nach dem Schlafen beim aktuellen Takt weitermachen
+				takt = Math.max(takt, (System.nanoTime() - start) / taktdauer);
+				continue;
+			}
+			long taktende = start + (takt + 1) * taktdauer;
+			long rest;
+			while ((rest = taktende - System.nanoTime()) > 0 && !gestoppt) {
+				LockSupport.parkNanos(this, rest);
+				entfernen();
+				if (anzahl == 0 && neue.isEmpty()) {
+					break; // alles abgebrochen, schlafen
+				}
+			}
+			if (rest > 0) {
+				continue;
+			}
+			einsortieren(takt);
+			ausfuehren(takt & maske, taktende);
+			takt++;
+		}
+	}
+
+	/**
+	 * Sortiert neu eingeplante Auftraege in ihr Fach ein
+	 */
+	private void einsortieren(long takt) {
+		Auftrag auftrag;
+		while ((auftrag = neue.poll()) != null) {
+			if (auftrag.abgebrochen) {
+				continue;
+			}
+			// Takt, an dessen Ende der Termin erreicht ist
+			long zieltakt = (auftrag.termin - start + taktdauer - 1)
+					/ taktdauer - 1;
+			if (zieltakt < takt) {
+				zieltakt = takt;
+			}
+			auftrag.runden = (zieltakt - takt) / (maske + 1);
+			int fach = (int) (zieltakt & maske);
+			auftrag.fach = fach;
+			if (enden[fach] == null) {
+				anfaenge[fach] = auftrag;
+			} else {
+				enden[fach].naechster = auftrag;
+			}
+			enden[fach] = auftrag;
+			anzahl++;
+		}
+	}
+
+	/**
+	 * Entfernt abgebrochene Auftraege aus ihren Faechern
+	 */
+	private void entfernen() {
+		Auftrag auftrag;
+		while ((auftrag = abgebrochene.poll()) != null) {
+			int i = auftrag.fach;
+			if (i < 0) {
+				continue; // bereits ausgefuehrt oder noch nicht einsortiert
+			}
+			Auftrag vorheriger = null;
+			for (Auftrag a = anfaenge[i]; a != null; a = a.naechster) {
+				if (a == auftrag) {
+					if (vorheriger == null) {
+						anfaenge[i] = a.naechster;
+					} else {
+						vorheriger.naechster = a.naechster;
+					}
+					if (enden[i] == a) {
+						enden[i] = vorheriger;
+					}
+					a.naechster = null;
+					a.fach = -1;
+					anzahl--;
+					break;
+				}
+				vorheriger = a;
+			}
+		}
+	}
+
+	/**
+	 * Fuehrt die faelligen Auftraege eines Fachs in ihrer Reihenfolge aus
+	 */
+	private void ausfuehren(long fach, long taktende) {
+		int i = (int) fach;
+		Auftrag vorheriger = null;
+		Auftrag auftrag = anfaenge[i];
+		while (auftrag != null) {
+			Auftrag naechster = auftrag.naechster;
+			boolean faellig = auftrag.runden <= 0
+					&& auftrag.termin <= taktende;
+			if (faellig || auftrag.abgebrochen) {
+				// aus der Liste entfernen
+				if (vorheriger == null) {
+					anfaenge[i] = naechster;
+				} else {
+					vorheriger.naechster = naechster;
+				}
+				if (enden[i] == auftrag) {
+					enden[i] = vorheriger;
+				}
+				auftrag.naechster = null;
+				auftrag.fach = -1;
+				anzahl--;
+				if (!auftrag.abgebrochen) {
+					try {
+						auftrag.aktion.run();
+					} catch (RuntimeException e) {
+						System.err.println("Fehler in geplantem Auftrag: "
+								+ e);
+					}
+				}
+			} else {
+				auftrag.runden--;
+				vorheriger = auftrag;
+			}
+			auftrag = naechster;
+		}
+	}
+}
@@ -0,0 +1,294 @@
+package datenverarbeitung;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jfree.chart.ChartUtilities;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.title.TextTitle;
+
+import controller.Einstellungen;
+import datenaufnahme.Messreihe;
+import datenaufnahme.Messreihenarchiv;
+
+/**
+ * Exportiert Geschwindigkeit-Fahrstufen-Diagramme vieler Messreihen ohne
+ * Fenster als PNG, z.B. fuer Berichte ueber mehrere Decoder. Die Diagramme
+ * werden parallel auf einem Threadpool erzeugt, jeder Thread verwendet dabei
+ * sein eigenes Saeulendiagramm wieder.
+ *
+ * Neben jedem Bild wird in einer Datei mit der Endung .pruefwert ein Pruefwert
+ * ueber Einstellungen, Bildgroesse und die Kenndaten der Messreihe abgelegt
+ * (bei archivierten Messreihen Groesse und Aenderungszeit der Datei, sonst
+ * Lokname, Zeitpunkte und Anzahl der Impulse). Stimmt er beim naechsten
+ * Export, auch in einer spaeteren Sitzung, ueberein und existiert das Bild
+ * noch, wird es nicht neu erzeugt; archivierte Messreihen werden dann nicht
+ * einmal geladen.
+ *
+ * Ohne Bildschirm muss das Programm mit -Djava.awt.headless=true gestartet
+ * werden.
+ *
+ * @author Manuel Weber
+ */
+public class Diagrammexport {
+
+	private final int breite;
+	private final int hoehe;
+
+	private final ExecutorService pool;
+
+	/**
+	 * Saeulendiagramm pro Arbeitsthread
+	 */
+	private final ThreadLocal<Saeulendiagramm> diagramme = new ThreadLocal<Saeulendiagramm>() {
+		@Override
+		protected Saeulendiagramm initialValue() {
+			Saeulendiagramm diagramm = new Saeulendiagramm();
+			diagramm.setBildrate(0); // Punkte sofort eintragen
+			return diagramm;
+		}
+	};
+
+	/**
+	 * Endung der Datei mit dem Pruefwert neben dem Bild
+	 */
+	private static final String PRUEFWERT_ENDUNG = ".pruefwert";
+
+	private final AtomicInteger uebersprungen = new AtomicInteger();
+
+	/**
+	 * Erzeugt einen Export mit einem Thread pro Prozessorkern
+	 *
+	 * @param breite
+	 *            in Pixeln
+	 * @param hoehe
+	 *            in Pixeln
+	 */
+	public Diagrammexport(int breite, int hoehe) {
+		this(breite, hoehe, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param breite
+	 *            in Pixeln
+	 * @param hoehe
+	 *            in Pixeln
+	 * @param threads
+	 *            Anzahl der Arbeitsthreads
+	 */
+	public Diagrammexport(int breite, int hoehe, int threads) {
+		this.breite = breite;
+		this.hoehe = hoehe;
+		this.pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger nummer = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Diagrammexport-"
+						+ nummer.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Exportiert das Diagramm einer Messreihe
+	 *
+	 * @param messreihe
+	 * @param ziel
+	 *            PNG-Datei
+	 * @return liefert die Bilddatei, sobald sie geschrieben ist
+	 */
+	public Future<File> exportieren(final Messreihe messreihe, final File ziel) {
+		return pool.submit(new Callable<File>() {
+			@Override
+			public File call() throws IOException {
+				Einstellungen.Schnappschuss einstellungen = Einstellungen
+						.getEinstellungen().getSchnappschuss();
+				long h = pruefwert(einstellungen);
+				h = mischen(h, String.valueOf(messreihe.getLokname())
+						.hashCode());
+				h = mischen(h, messreihe.getStartzeitpunkt());
+				h = mischen(h, messreihe.getMessdauer());
+				h = mischen(h, messreihe.getFahrstufe0());
+				h = mischen(h, messreihe.getFahrstufe1());
+				int n = messreihe.getAnzahlImpulse();
+				h = mischen(h, n);
+				// Messreihen wachsen nur am Ende
+				h = mischen(h, n > 0 ? messreihe.getZeitstempel(n - 1) : -1);
+				if (isAktuell(ziel, h)) {
+					return ziel;
+				}
+				return bildErzeugen(null, messreihe, ziel, einstellungen, h);
+			}
+		});
+	}
+
+	/**
+	 * Exportiert die Diagramme archivierter Messreihen. Die Bilder erhalten
+	 * den Namen der Messreihendatei mit der Endung .png.
+	 *
+	 * @param eintraege
+	 * @param verzeichnis
+	 *            Zielverzeichnis
+	 * @return liefert je Messreihe die Bilddatei, sobald sie geschrieben ist
+	 */
+	public List<Future<File>> exportieren(
+			List<Messreihenarchiv.Eintrag> eintraege, final File verzeichnis) {
+		List<Future<File>> ergebnisse = new ArrayList<Future<File>>(
+				eintraege.size());
+		for (final Messreihenarchiv.Eintrag eintrag : eintraege) {
+			ergebnisse.add(pool.submit(new Callable<File>() {
+				@Override
+				public File call() throws IOException {
+					File datei = eintrag.getDatei();
+					String name = datei.getName();
+					File ziel = new File(verzeichnis, name.substring(0,
+							name.lastIndexOf('.')) + ".png");
+					Einstellungen.Schnappschuss einstellungen = Einstellungen
+							.getEinstellungen().getSchnappschuss();
+					long h = pruefwert(einstellungen);
+					h = mischen(h, name.hashCode());
+					h = mischen(h, datei.length());
+					h = mischen(h, datei.lastModified());
+					if (isAktuell(ziel, h)) {
+						return ziel;
+					}
+					return bildErzeugen(eintrag, eintrag.laden(), ziel,
+							einstellungen, h);
+				}
+			}));
+		}
+		return ergebnisse;
+	}
+
+	/**
+	 * Beendet die Arbeitsthreads, nachdem alle bereits uebergebenen Exporte
+	 * abgeschlossen sind
+	 */
+	public void beenden() {
+		pool.shutdown();
+	}
+
+	/**
+	 * @return Anzahl der Bilder, die unveraendert waren und daher nicht neu
+	 *         erzeugt wurden
+	 */
+	public int getUebersprungen() {
+		return uebersprungen.get();
+	}
+
+	/**
+	 * Prueft, ob das Bild existiert und der daneben abgelegte Pruefwert mit
+	 * dem aktuellen uebereinstimmt
+	 */
+	private boolean isAktuell(File ziel, long pruefwert) {
+		File datei = pruefwertdatei(ziel);
+		if (!ziel.isFile() || !datei.isFile()) {
+			return false;
+		}
+		try {
+			String gespeichert = new String(Files.readAllBytes(datei.toPath()),
+					StandardCharsets.US_ASCII).trim();
+			if (!gespeichert.equals(Long.toHexString(pruefwert))) {
+				return false;
+			}
+		} catch (IOException e) {
+			return false;
+		}
+		uebersprungen.incrementAndGet();
+		return true;
+	}
+
+	private static File pruefwertdatei(File ziel) {
+		return new File(ziel.getParentFile(), ziel.getName()
+				+ PRUEFWERT_ENDUNG);
+	}
+
+	/**
+	 * Zeichnet das Diagramm einer Messreihe mit dem Saeulendiagramm des
+	 * aktuellen Threads, schreibt es als PNG und legt den Pruefwert daneben
+	 * ab
+	 */
+	private File bildErzeugen(Messreihenarchiv.Eintrag eintrag,
+			Messreihe messreihe, File ziel,
+			Einstellungen.Schnappschuss einstellungen, long pruefwert)
+			throws IOException {
+		Saeulendiagramm diagramm = diagramme.get();
+		diagramm.leeren();
+		diagramm.setEinheiten(einstellungen.getWegeinheit(),
+				einstellungen.getZeiteinheit());
+		if (eintrag != null) {
+			// vorhandene Neuauswertung bevorzugen
+			Plotter.plotten(eintrag, messreihe, diagramm, einstellungen);
+		} else {
+			Plotter.plotten(messreihe, diagramm, einstellungen);
+		}
+		JFreeChart chart = diagramm.getChart();
+		chart.clearSubtitles();
+		chart.addSubtitle(new TextTitle(messreihe.getLokname()
+				+ ", "
+				+ DateFormat.getDateTimeInstance(DateFormat.MEDIUM,
+						DateFormat.SHORT).format(
+						new Date(messreihe.getStartzeitpunkt()))));
+
+		File temp = new File(ziel.getParentFile(), ziel.getName() + ".tmp");
+		OutputStream aus = new BufferedOutputStream(new FileOutputStream(temp));
+		try {
+			ChartUtilities.writeChartAsPNG(aus, chart, breite, hoehe);
+		} finally {
+			aus.close();
+		}
+		Files.move(temp.toPath(), ziel.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		// erst nach dem Bild schreiben, damit ein abgebrochener Export nie als
+		// aktuell gilt
+		Files.write(pruefwertdatei(ziel).toPath(), Long.toHexString(pruefwert)
+				.getBytes(StandardCharsets.US_ASCII));
+		return ziel;
+	}
+
+	/**
+	 * Beginnt einen Pruefwert (FNV-1a, 64 Bit) ueber Bildgroesse und
+	 * Einstellungen; die Kenndaten der Messreihe werden mit mischen()
+	 * angehaengt
+	 */
+	private long pruefwert(Einstellungen.Schnappschuss einstellungen) {
+		long h = 0xcbf29ce484222325L;
+		h = mischen(h, breite);
+		h = mischen(h, hoehe);
+		h = mischen(h, Double.doubleToLongBits(einstellungen.getMesseinheit()));
+		h = mischen(h, einstellungen.getMarkierungen());
+		h = mischen(h, Double.doubleToLongBits(einstellungen.getWegeinheit()
+				.getUmrechnungskoeffizient()));
+		h = mischen(h, Double.doubleToLongBits(einstellungen.getZeiteinheit()
+				.getUmrechnungskoeffizient()));
+		h = mischen(h, einstellungen.getZeiteinheit().toString().hashCode());
+		return h;
+	}
+
+	private static long mischen(long h, long wert) {
+		for (int i = 0; i < 8; i++) {
+			h ^= (wert >>> (8 * i)) & 0xff;
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+}
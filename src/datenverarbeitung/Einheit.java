@@ -1,5 +1,8 @@
 package datenverarbeitung;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -7,6 +10,12 @@ import java.util.Map;
  * Ermoeglicht die Umrechnung von Werten aus den Standardeinheiten (Sekunde und
  * Zentimeter). Auf vordefinierte Einheitsobjekte kann statisch zugegriffen
  * werden.
+ *
+ * Ganze Spalten (z.B. einer st- bzw. vt-Kurve) werden mit den Array-Varianten
+ * umgerechnet. Deren Schleifen multiplizieren nur mit einem vorab berechneten
+ * Faktor. Ist das Modul jdk.incubator.vector geladen (Java 16 oder neuer mit
+ * --add-modules jdk.incubator.vector), rechnen sie mit dessen Vektoren,
+ * sonst skalar, was der JIT-Compiler meist selbst vektorisiert.
  * 
  * @author Manuel Weber
  */
@@ -38,16 +47,22 @@ public class Einheit {
 	/**
 	 * Abkuerzung der Einheit
 	 */
-	private String abkuerzung;
+	private final String abkuerzung;
 
 	/**
 	 * Koeffizient, durch den die Standardeinheit geteilt werden muss
 	 */
-	private double umrechnungskoeffizient;
+	private final double umrechnungskoeffizient;
+
+	/**
+	 * Kehrwert des Umrechnungskoeffizienten (Umrechnung per Multiplikation)
+	 */
+	private final double kehrwert;
 
 	public Einheit(String abkuerzung, double umrechnungskoeffizient) {
 		this.abkuerzung = abkuerzung;
 		this.umrechnungskoeffizient = umrechnungskoeffizient;
+		this.kehrwert = 1 / umrechnungskoeffizient;
 	}
 
 	@Override
@@ -63,7 +78,25 @@ public class Einheit {
 	 * @return wert in der jeweiligen Einheit
 	 */
 	public double konvertieren(double ausgangswert) {
-		return ausgangswert / umrechnungskoeffizient;
+		return ausgangswert * kehrwert;
+	}
+
+	/**
+	 * Konvertiert einen Bereich von Werten aus der Standardeinheit in die
+	 * eigene Einheit. Quelle und Ziel duerfen dasselbe Array sein.
+	 * 
+	 * @param quelle
+	 *            Werte in cm bzw. s
+	 * @param ziel
+	 *            nimmt die Werte in der jeweiligen Einheit auf
+	 * @param von
+	 *            erster Index (in Quelle und Ziel)
+	 * @param laenge
+	 *            Anzahl der Werte
+	 */
+	public void konvertieren(double[] quelle, double[] ziel, int von,
+			int laenge) {
+		multiplizieren(quelle, ziel, von, laenge, kehrwert);
 	}
 
 	/**
@@ -77,6 +110,124 @@ public class Einheit {
 		return ausgangswert * umrechnungskoeffizient;
 	}
 
+	/**
+	 * Konvertiert einen Bereich von Werten in der Einheit zurueck in die
+	 * Standardeinheit. Quelle und Ziel duerfen dasselbe Array sein.
+	 * 
+	 * @param quelle
+	 *            Werte in der Einheit des Objekts
+	 * @param ziel
+	 *            nimmt die Werte in Standardeinheit auf
+	 * @param von
+	 *            erster Index (in Quelle und Ziel)
+	 * @param laenge
+	 *            Anzahl der Werte
+	 */
+	public void rueckKonvertieren(double[] quelle, double[] ziel, int von,
+			int laenge) {
+		multiplizieren(quelle, ziel, von, laenge, umrechnungskoeffizient);
+	}
+
+	/**
+	 * Rechnet Einheiten um, z.B. von km/h nach cm/s
+	 * 
+	 * @param quelle
+	 *            Werte in der Einheit des Objekts
+	 * @param ziel
+	 *            nimmt die Werte in der Zieleinheit auf
+	 * @param von
+	 *            erster Index (in Quelle und Ziel)
+	 * @param laenge
+	 *            Anzahl der Werte
+	 * @param zieleinheit
+	 */
+	public void umrechnen(double[] quelle, double[] ziel, int von, int laenge,
+			Einheit zieleinheit) {
+		multiplizieren(quelle, ziel, von, laenge, umrechnungskoeffizient
+				* zieleinheit.kehrwert);
+	}
+
+	/**
+	 * Berechnet Geschwindigkeiten aus Wegen und Zeiten in Standardeinheit und
+	 * rechnet sie in einem Schritt in die Geschwindigkeitseinheit
+	 * wegeinheit/zeiteinheit um
+	 * 
+	 * @param weg
+	 *            zurueckgelegte Wege in cm
+	 * @param zeit
+	 *            dafuer benoetigte Zeiten in s
+	 * @param v
+	 *            nimmt die Geschwindigkeiten auf (darf weg oder zeit sein)
+	 * @param von
+	 *            erster Index (in allen Arrays)
+	 * @param laenge
+	 *            Anzahl der Werte
+	 * @param wegeinheit
+	 * @param zeiteinheit
+	 */
+	public static void geschwindigkeitBerechnen(double[] weg, double[] zeit,
+			double[] v, int von, int laenge, Einheit wegeinheit,
+			Einheit zeiteinheit) {
+		bereichPruefen(weg, von, laenge);
+		bereichPruefen(zeit, von, laenge);
+		bereichPruefen(v, von, laenge);
+		// (weg / kw) / (zeit / kz) = weg * (kz / kw) / zeit
+		double faktor = zeiteinheit.umrechnungskoeffizient * wegeinheit.kehrwert;
+		int bis = von + laenge;
+		int i = von;
+		if (Vektoren.BREITE > 1) {
+			int vektorBis = bis - laenge % Vektoren.BREITE;
+			try {
+				for (; i < vektorBis; i += Vektoren.BREITE) {
+					Object w = Vektoren.LADEN.invokeExact(weg, i);
+					Object t = Vektoren.LADEN.invokeExact(zeit, i);
+					w = Vektoren.MULTIPLIZIEREN.invokeExact(w, faktor);
+					w = Vektoren.DIVIDIEREN.invokeExact(w, t);
+					Vektoren.SPEICHERN.invokeExact(w, v, i);
+				}
+			} catch (Throwable e) {
+				throw Vektoren.weiterreichen(e);
+			}
+		}
+		for (; i < bis; i++) {
+			v[i] = faktor * weg[i] / zeit[i];
+		}
+	}
+
+	private static void multiplizieren(double[] quelle, double[] ziel,
+			int von, int laenge, double faktor) {
+		bereichPruefen(quelle, von, laenge);
+		bereichPruefen(ziel, von, laenge);
+		int bis = von + laenge;
+		int i = von;
+		if (Vektoren.BREITE > 1) {
+			int vektorBis = bis - laenge % Vektoren.BREITE;
+			try {
+				for (; i < vektorBis; i += Vektoren.BREITE) {
+					Object v = Vektoren.LADEN.invokeExact(quelle, i);
+					v = Vektoren.MULTIPLIZIEREN.invokeExact(v, faktor);
+					Vektoren.SPEICHERN.invokeExact(v, ziel, i);
+				}
+			} catch (Throwable e) {
+				throw Vektoren.weiterreichen(e);
+			}
+		}
+		for (; i < bis; i++) {
+			ziel[i] = quelle[i] * faktor;
+		}
+	}
+
+	/**
+	 * Prueft die Grenzen vorab, damit die Schleifen ohne Grenzpruefung
+	 * auskommen
+	 */
+	private static void bereichPruefen(double[] werte, int von, int laenge) {
+		if (von < 0 || laenge < 0 || von > werte.length - laenge) {
+			throw new ArrayIndexOutOfBoundsException("Bereich " + von + " bis "
+					+ (von + laenge) + " ausserhalb von 0 bis " + werte.length);
+		}
+	}
+
 	/**
 	 * @param abkuerzung
 	 * @return die passende Einheit zu einer Abkuerzung
@@ -88,4 +239,102 @@ public class Einheit {
 	public double getUmrechnungskoeffizient() {
 		return umrechnungskoeffizient;
 	}
+
+	/**
+	 * Zugriff auf DoubleVector aus jdk.incubator.vector ueber Method-Handles,
+	 * damit das Programm auch ohne das Modul uebersetzt und laeuft. Die
+	 * Handles sind Konstanten, der JIT-Compiler behandelt ihre Aufrufe wie
+	 * direkte Aufrufe der Vector API. Die Rechenschritte sind dieselben wie in
+	 * den skalaren Schleifen, die Ergebnisse also bitgleich.
+	 */
+	private static final class Vektoren {
+
+		/**
+		 * Anzahl der Werte pro Vektor (0 = Vector API nicht verfuegbar)
+		 */
+		static final int BREITE;
+
+		/**
+		 * (double[], int)Object: DoubleVector.fromArray(SPECIES_PREFERRED, ..)
+		 */
+		static final MethodHandle LADEN;
+
+		/**
+		 * (Object, double)Object: DoubleVector.mul(double)
+		 */
+		static final MethodHandle MULTIPLIZIEREN;
+
+		/**
+		 * (Object, Object)Object: DoubleVector.div(Vector)
+		 */
+		static final MethodHandle DIVIDIEREN;
+
+		/**
+		 * (Object, double[], int)void: DoubleVector.intoArray(double[], int)
+		 */
+		static final MethodHandle SPEICHERN;
+
+		static {
+			int breite = 0;
+			MethodHandle laden = null;
+			MethodHandle multiplizieren = null;
+			MethodHandle dividieren = null;
+			MethodHandle speichern = null;
+			try {
+				Class<?> vektor = Class
+						.forName("jdk.incubator.vector.DoubleVector");
+				Class<?> allgemein = Class
+						.forName("jdk.incubator.vector.Vector");
+				Class<?> art = Class
+						.forName("jdk.incubator.vector.VectorSpecies");
+				Object species = vektor.getField("SPECIES_PREFERRED").get(
+						null);
+				MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+				laden = MethodHandles.insertArguments(
+						lookup.findStatic(vektor, "fromArray", MethodType
+								.methodType(vektor, art, double[].class,
+										int.class)), 0, species).asType(
+						MethodType.methodType(Object.class, double[].class,
+								int.class));
+				multiplizieren = lookup.findVirtual(vektor, "mul",
+						MethodType.methodType(vektor, double.class)).asType(
+						MethodType.methodType(Object.class, Object.class,
+								double.class));
+				dividieren = lookup.findVirtual(vektor, "div",
+						MethodType.methodType(vektor, allgemein)).asType(
+						MethodType.methodType(Object.class, Object.class,
+								Object.class));
+				speichern = lookup.findVirtual(vektor, "intoArray",
+						MethodType.methodType(void.class, double[].class,
+								int.class)).asType(
+						MethodType.methodType(void.class, Object.class,
+								double[].class, int.class));
+				breite = ((Integer) art.getMethod("length").invoke(species))
+						.intValue();
+			} catch (Exception e) {
+				breite = 0; // vor Java 16 oder Modul nicht geladen
+			} catch (LinkageError e) {
+				breite = 0;
+			}
+			BREITE = breite;
+			LADEN = laden;
+			MULTIPLIZIEREN = multiplizieren;
+			DIVIDIEREN = dividieren;
+			SPEICHERN = speichern;
+		}
+
+		/**
+		 * Die Handles werfen nur, was die Vector API selbst wirft (die
+		 * Grenzen sind vorab geprueft)
+		 */
+		static RuntimeException weiterreichen(Throwable e) {
+			if (e instanceof RuntimeException) {
+				return (RuntimeException) e;
+			}
+			if (e instanceof Error) {
+				throw (Error) e;
+			}
+			return new IllegalStateException(e);
+		}
+	}
 }
@@ -0,0 +1,434 @@
+package datenverarbeitung;
+
+import java.util.Arrays;
+
+import datenaufnahme.Messreihe;
+
+/**
+ * Modell der Fahrkurve einer Lok: ein Ausgleichspolynom der Geschwindigkeit
+ * ueber der Fahrstufe, getrennt fuer Vorwaerts- und Rueckwaertsfahrt.
+ *
+ * Pro Fahrstufe zaehlt nur der zuletzt gemeldete Wert, ein neuer Wert ersetzt
+ * den alten (wie im Saeulendiagramm). Das Polynom wird ueber die
+ * Normalgleichungen bestimmt, deren Summen bei jedem Wert in O(Grad)
+ * nachgefuehrt werden. Gerechnet wird mit der auf [0, 1] skalierten Fahrstufe,
+ * damit das Gleichungssystem gut konditioniert bleibt. Geloest wird erst, wenn
+ * die Kurve abgefragt wird, und nur falls sich seitdem etwas geaendert hat.
+ *
+ * Mit angleichen() laesst sich fuer eine Lok berechnen, welche ihrer
+ * Fahrstufen die Geschwindigkeiten einer anderen Lok erreichen, z.B. um die
+ * Geschwindigkeitstabellen zweier Decoder aufeinander abzustimmen. Beide
+ * Kurven muessen dafuer in derselben Einheit vorliegen. Ausserhalb des
+ * gemessenen Fahrstufenbereichs ist die Kurve nur eine grobe Schaetzung.
+ *
+ * Alle Methoden sind synchronisiert, die Kurve kann also vom Plotter
+ * gefuellt und gleichzeitig aus der Oberflaeche abgefragt werden.
+ *
+ * @author Manuel Weber
+ */
+public class Fahrkurve {
+
+	/**
+	 * Standardmaessiger Grad des Polynoms
+	 */
+	public static final int STANDARD_GRAD = 3;
+
+	/**
+	 * Groesster unterstuetzter Grad (darueber werden die Normalgleichungen
+	 * zu schlecht konditioniert)
+	 */
+	public static final int MAX_GRAD = 6;
+
+	private static final int OFFSET = Messreihe.MAX_FAHRSTUFE;
+
+	/**
+	 * Relative Groesse, unter der ein Pivotelement als 0 gilt
+	 */
+	private static final double TOLERANZ = 1e-9;
+
+	/**
+	 * Zuletzt gemeldete Geschwindigkeit pro Fahrstufe (NaN = keine)
+	 */
+	private final double[] werte = new double[Messreihe.ANZAHL_FAHRSTUFEN];
+
+	private final Ausgleichspolynom vorwaerts;
+	private final Ausgleichspolynom rueckwaerts;
+
+	public Fahrkurve() {
+		this(STANDARD_GRAD);
+	}
+
+	/**
+	 * @param grad
+	 *            Grad des Polynoms (1 bis MAX_GRAD)
+	 */
+	public Fahrkurve(int grad) {
+		if (grad < 1 || grad > MAX_GRAD) {
+			throw new IllegalArgumentException("Grad muss zwischen 1 und "
+					+ MAX_GRAD + " liegen: " + grad);
+		}
+		Arrays.fill(werte, Double.NaN);
+		vorwaerts = new Ausgleichspolynom(grad);
+		rueckwaerts = new Ausgleichspolynom(grad);
+	}
+
+	/**
+	 * Setzt die Geschwindigkeit einer Fahrstufe und ersetzt einen vorherigen
+	 * Wert. Fahrstufe 0 wird ignoriert.
+	 *
+	 * @param fahrstufe
+	 * @param v
+	 *            Geschwindigkeit (NaN = Wert entfernen)
+	 */
+	public synchronized void setWert(int fahrstufe, double v) {
+		if (fahrstufe == 0) {
+			return;
+		}
+		Ausgleichspolynom polynom = polynom(fahrstufe);
+		double x = skalieren(fahrstufe);
+		double alt = werte[fahrstufe + OFFSET];
+		if (!Double.isNaN(alt)) {
+			polynom.hinzufuegen(x, alt, -1);
+		}
+		werte[fahrstufe + OFFSET] = v;
+		if (!Double.isNaN(v)) {
+			polynom.hinzufuegen(x, v, 1);
+		}
+	}
+
+	/**
+	 * Uebernimmt die Werte eines Saeulendiagramms (z.B. einer abgeschlossenen
+	 * Messreihe)
+	 *
+	 * @param dataset
+	 * @param reihe
+	 *            Datenreihe des Datasets
+	 */
+	public synchronized void uebernehmen(FahrstufenDataset dataset, int reihe) {
+		for (int fs = -Messreihe.MAX_FAHRSTUFE; fs <= Messreihe.MAX_FAHRSTUFE; fs++) {
+			double v = dataset.getWert(reihe, fs);
+			if (!Double.isNaN(v)) {
+				setWert(fs, v);
+			}
+		}
+	}
+
+	/**
+	 * Verwirft alle Werte
+	 */
+	public synchronized void leeren() {
+		Arrays.fill(werte, Double.NaN);
+		vorwaerts.leeren();
+		rueckwaerts.leeren();
+	}
+
+	/**
+	 * @param fahrstufe
+	 *            auch Zwischenwerte sind erlaubt (negativ = rueckwaerts)
+	 * @return Geschwindigkeit laut Modell (NaN, falls fuer die Fahrtrichtung
+	 *         keine Werte vorliegen)
+	 */
+	public synchronized double getGeschwindigkeit(double fahrstufe) {
+		return polynom(fahrstufe).auswerten(skalieren(fahrstufe));
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return zuletzt gemeldete Geschwindigkeit der Fahrstufe oder NaN
+	 */
+	public synchronized double getWert(int fahrstufe) {
+		return werte[fahrstufe + OFFSET];
+	}
+
+	/**
+	 * @param vorwaertsrichtung
+	 * @return Anzahl der Fahrstufen mit Wert in der Fahrtrichtung
+	 */
+	public synchronized int getAnzahl(boolean vorwaertsrichtung) {
+		return (vorwaertsrichtung ? vorwaerts : rueckwaerts).anzahl;
+	}
+
+	/**
+	 * @param vorwaertsrichtung
+	 * @return Standardabweichung der Werte um die Kurve (NaN, falls es nicht
+	 *         mehr Werte als Koeffizienten gibt)
+	 */
+	public synchronized double getStreuung(boolean vorwaertsrichtung) {
+		return (vorwaertsrichtung ? vorwaerts : rueckwaerts).streuung();
+	}
+
+	/**
+	 * @param vorwaertsrichtung
+	 * @return Koeffizienten des Polynoms in der auf [0, 1] skalierten
+	 *         Fahrstufe (x = |Fahrstufe| / MAX_FAHRSTUFE), beginnend beim
+	 *         konstanten Glied
+	 */
+	public synchronized double[] getKoeffizienten(boolean vorwaertsrichtung) {
+		Ausgleichspolynom polynom = vorwaertsrichtung ? vorwaerts : rueckwaerts;
+		polynom.loesen();
+		return polynom.koeffizienten.clone();
+	}
+
+	/**
+	 * Berechnet, welche Fahrstufen dieser Lok die Geschwindigkeiten einer
+	 * Referenzlok erreichen. Die Referenzlok wird dafuer an gleichmaessig
+	 * verteilten Stufen ausgewertet (z.B. 28 Stufen fuer die
+	 * Geschwindigkeitstabelle eines Decoders).
+	 *
+	 * @param referenz
+	 *            Fahrkurve der Lok, an die angeglichen wird
+	 * @param stufen
+	 *            Anzahl der Stufen der Tabelle
+	 * @param vorwaertsrichtung
+	 * @return Fahrstufe dieser Lok (mit Nachkommastellen) fuer jede Stufe 1
+	 *         bis stufen (Index = Stufe - 1). Ist eine Geschwindigkeit nicht
+	 *         erreichbar, wird auf 0 bzw. MAX_FAHRSTUFE begrenzt.
+	 */
+	public double[] angleichen(Fahrkurve referenz, int stufen,
+			boolean vorwaertsrichtung) {
+		double richtung = vorwaertsrichtung ? 1 : -1;
+		double[] ziel = new double[stufen];
+		for (int i = 0; i < stufen; i++) {
+			double fs = (i + 1) * (double) Messreihe.MAX_FAHRSTUFE / stufen;
+			ziel[i] = referenz.getGeschwindigkeit(richtung * fs);
+		}
+		double[] tabelle = new double[stufen];
+		synchronized (this) {
+			Ausgleichspolynom polynom = vorwaertsrichtung ? vorwaerts
+					: rueckwaerts;
+			for (int i = 0; i < stufen; i++) {
+				tabelle[i] = polynom.umkehren(ziel[i]) * Messreihe.MAX_FAHRSTUFE;
+			}
+		}
+		return tabelle;
+	}
+
+	/**
+	 * Rechnet die Fahrstufen einer angeglichenen Tabelle linear in ganzzahlige
+	 * Tabellenwerte (z.B. 0 bis 255 fuer die Geschwindigkeitstabelle eines
+	 * Decoders) um
+	 *
+	 * @param tabelle
+	 *            Ergebnis von angleichen()
+	 * @param maximum
+	 *            Tabellenwert der hoechsten Fahrstufe
+	 * @return Tabellenwerte, nie fallend
+	 */
+	public static int[] tabellenwerte(double[] tabelle, int maximum) {
+		int[] werte = new int[tabelle.length];
+		int vorheriger = 0;
+		for (int i = 0; i < tabelle.length; i++) {
+			int wert = (int) Math.round(tabelle[i] * maximum
+					/ Messreihe.MAX_FAHRSTUFE);
+			vorheriger = Math.max(vorheriger, Math.min(wert, maximum));
+			werte[i] = vorheriger;
+		}
+		return werte;
+	}
+
+	private Ausgleichspolynom polynom(double fahrstufe) {
+		return fahrstufe >= 0 ? vorwaerts : rueckwaerts;
+	}
+
+	private static double skalieren(double fahrstufe) {
+		return Math.abs(fahrstufe) / Messreihe.MAX_FAHRSTUFE;
+	}
+
+	/**
+	 * Polynom nach der Methode der kleinsten Quadrate, dessen Stuetzwerte
+	 * einzeln hinzugefuegt und entfernt werden koennen
+	 */
+	private static final class Ausgleichspolynom {
+
+		private final int grad;
+
+		/**
+		 * Summen von x^k (k = 0 bis 2 * grad)
+		 */
+		private final double[] potenzsummen;
+
+		/**
+		 * Summen von x^k * v (k = 0 bis grad)
+		 */
+		private final double[] momente;
+
+		private double quadratsumme = 0;
+
+		private int anzahl = 0;
+
+		/**
+		 * Koeffizienten der letzten Loesung (nicht belegte sind 0)
+		 */
+		private final double[] koeffizienten;
+
+		private boolean veraltet = false;
+
+		/**
+		 * Arbeitsspeicher fuer das Gleichungssystem
+		 */
+		private final double[][] matrix;
+
+		private Ausgleichspolynom(int grad) {
+			this.grad = grad;
+			potenzsummen = new double[2 * grad + 1];
+			momente = new double[grad + 1];
+			koeffizienten = new double[grad + 1];
+			matrix = new double[grad + 1][grad + 2];
+		}
+
+		/**
+		 * @param gewicht
+		 *            1 zum Hinzufuegen, -1 zum Entfernen
+		 */
+		private void hinzufuegen(double x, double v, int gewicht) {
+			double potenz = gewicht;
+			for (int k = 0; k < potenzsummen.length; k++) {
+				potenzsummen[k] += potenz;
+				if (k <= grad) {
+					momente[k] += potenz * v;
+				}
+				potenz *= x;
+			}
+			quadratsumme += gewicht * v * v;
+			anzahl += gewicht;
+			veraltet = true;
+		}
+
+		private void leeren() {
+			Arrays.fill(potenzsummen, 0);
+			Arrays.fill(momente, 0);
+			Arrays.fill(koeffizienten, 0);
+			quadratsumme = 0;
+			anzahl = 0;
+			veraltet = false;
+		}
+
+		/**
+		 * Loest die Normalgleichungen per Gauss-Elimination mit
+		 * Spaltenpivotsuche. Bei wenigen Werten oder (fast) singulaerem System
+		 * wird der Grad verringert und das System neu aufgestellt.
+		 */
+		private void loesen() {
+			if (!veraltet) {
+				return;
+			}
+			veraltet = false;
+			Arrays.fill(koeffizienten, 0);
+			for (int n = Math.min(grad, anzahl - 1) + 1; n > 0; n--) {
+				if (eliminieren(n)) {
+					for (int i = n - 1; i >= 0; i--) {
+						double summe = matrix[i][n];
+						for (int j = i + 1; j < n; j++) {
+							summe -= matrix[i][j] * koeffizienten[j];
+						}
+						koeffizienten[i] = summe / matrix[i][i];
+					}
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Stellt die Normalgleichungen fuer n Koeffizienten auf (rechte Seite
+		 * in Spalte n) und bringt sie auf obere Dreiecksform
+		 *
+		 * @return false, falls das System (fast) singulaer ist
+		 */
+		private boolean eliminieren(int n) {
+			for (int i = 0; i < n; i++) {
+				for (int j = 0; j < n; j++) {
+					matrix[i][j] = potenzsummen[i + j];
+				}
+				matrix[i][n] = momente[i];
+			}
+			for (int spalte = 0; spalte < n; spalte++) {
+				int pivot = spalte;
+				for (int i = spalte + 1; i < n; i++) {
+					if (Math.abs(matrix[i][spalte]) > Math
+							.abs(matrix[pivot][spalte])) {
+						pivot = i;
+					}
+				}
+				double[] zeile = matrix[pivot];
+				matrix[pivot] = matrix[spalte];
+				matrix[spalte] = zeile;
+				// relativ zur Groessenordnung der Spalte pruefen: bei kleinen
+				// Fahrstufen sind die hohen Potenzsummen winzig, ohne dass das
+				// System deshalb singulaer waere
+				if (!(Math.abs(zeile[spalte]) > TOLERANZ
+						* Math.abs(potenzsummen[2 * spalte]))) {
+					return false;
+				}
+				for (int i = spalte + 1; i < n; i++) {
+					double faktor = matrix[i][spalte] / zeile[spalte];
+					for (int j = spalte; j <= n; j++) {
+						matrix[i][j] -= faktor * zeile[j];
+					}
+				}
+			}
+			return true;
+		}
+
+		private double auswerten(double x) {
+			if (anzahl == 0) {
+				return Double.NaN;
+			}
+			loesen();
+			double v = 0;
+			for (int k = grad; k >= 0; k--) {
+				v = v * x + koeffizienten[k];
+			}
+			return v;
+		}
+
+		/**
+		 * Restquadratsumme = sum(v^2) - c * momente (fuer die Loesung der
+		 * Normalgleichungen)
+		 */
+		private double streuung() {
+			int freiheitsgrade = anzahl - grad - 1;
+			if (freiheitsgrade <= 0) {
+				return Double.NaN;
+			}
+			loesen();
+			double rest = quadratsumme;
+			for (int k = 0; k <= grad; k++) {
+				rest -= koeffizienten[k] * momente[k];
+			}
+			return Math.sqrt(Math.max(rest, 0) / freiheitsgrade);
+		}
+
+		/**
+		 * Sucht das kleinste x in [0, 1], bei dem die Kurve v erreicht
+		 *
+		 * @return x oder 0 bzw. 1, falls v nicht erreicht wird
+		 */
+		private double umkehren(double v) {
+			if (anzahl == 0 || Double.isNaN(v)) {
+				return Double.NaN;
+			}
+			if (auswerten(0) >= v) {
+				return 0;
+			}
+			// erste Fahrstufe suchen, an der die Kurve v erreicht, dann
+			// dazwischen halbieren
+			double unten = 0;
+			for (int fs = 1; fs <= Messreihe.MAX_FAHRSTUFE; fs++) {
+				double oben = (double) fs / Messreihe.MAX_FAHRSTUFE;
+				if (auswerten(oben) >= v) {
+					for (int i = 0; i < 40; i++) {
+						double mitte = (unten + oben) / 2;
+						if (auswerten(mitte) >= v) {
+							oben = mitte;
+						} else {
+							unten = mitte;
+						}
+					}
+					return oben;
+				}
+				unten = oben;
+			}
+			return 1;
+		}
+	}
+}
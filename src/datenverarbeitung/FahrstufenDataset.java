@@ -0,0 +1,347 @@
+package datenverarbeitung;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jfree.data.UnknownKeyException;
+import org.jfree.data.general.AbstractDataset;
+import org.jfree.data.statistics.StatisticalCategoryDataset;
+
+import datenaufnahme.Messreihe;
+
+/**
+ * Dataset fuer das Geschwindigkeit-Fahrstufen-Diagramm. Die Werte liegen pro
+ * Datenreihe in einem Array, das direkt ueber die Fahrstufe (plus
+ * Messreihe.MAX_FAHRSTUFE) adressiert wird. Zeilenschluessel sind die Nummern
+ * der Datenreihen, Spaltenschluessel die Fahrstufen (jeweils als Integer).
+ *
+ * Sichtbar ist immer der zusammenhaengende Bereich der belegten Fahrstufen
+ * innerhalb der Anzeigegrenzen. Das Aendern der Grenzen verschiebt daher nur
+ * die erste und letzte sichtbare Spalte, es werden keine Werte kopiert.
+ *
+ * Zu jedem Wert kann ein Fehler (die Halbbreite des Konfidenzintervalls)
+ * abgelegt werden. Er wird als Standardabweichung im Sinne des
+ * StatisticalCategoryDataset geliefert und vom Renderer als Fehlerbalken
+ * gezeichnet.
+ *
+ * @author Manuel Weber
+ */
+public class FahrstufenDataset extends AbstractDataset implements
+		StatisticalCategoryDataset {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int OFFSET = Messreihe.MAX_FAHRSTUFE;
+
+	/**
+	 * Werte pro Datenreihe und Fahrstufe (NaN = kein Wert)
+	 */
+	private double[][] werte = new double[0][];
+
+	/**
+	 * Fehler pro Datenreihe und Fahrstufe (NaN = kein Fehler)
+	 */
+	private double[][] fehler = new double[0][];
+
+	/**
+	 * Anzahl der Datenreihen
+	 */
+	private int reihen = 0;
+
+	/**
+	 * Niedrigste und hoechste Fahrstufe, fuer die ein Wert vorliegt
+	 */
+	private int minBelegt = Integer.MAX_VALUE;
+	private int maxBelegt = Integer.MIN_VALUE;
+
+	/**
+	 * Die niedrigste angezeigte Fahrstufe
+	 */
+	private int untereAnzeigeGrenze = -Messreihe.MAX_FAHRSTUFE;
+
+	/**
+	 * Die hoechste angezeigte Fahrstufe
+	 */
+	private int obereAnzeigeGrenze = Messreihe.MAX_FAHRSTUFE;
+
+	/**
+	 * Erste und letzte sichtbare Fahrstufe (leer, falls erste > letzte)
+	 */
+	private int ersteSpalte = 0;
+	private int letzteSpalte = -1;
+
+	/**
+	 * Setzt den Wert einer Datenreihe fuer eine Fahrstufe und legt die
+	 * Datenreihe bei Bedarf an.
+	 *
+	 * @param reihe
+	 *            Nummer der Datenreihe (beginnend bei 0)
+	 * @param fahrstufe
+	 * @param wert
+	 */
+	public void setWert(int reihe, int fahrstufe, double wert) {
+		setWert(reihe, fahrstufe, wert, Double.NaN);
+	}
+
+	/**
+	 * Setzt Wert und Fehler einer Datenreihe fuer eine Fahrstufe und legt die
+	 * Datenreihe bei Bedarf an.
+	 *
+	 * @param reihe
+	 *            Nummer der Datenreihe (beginnend bei 0)
+	 * @param fahrstufe
+	 * @param wert
+	 * @param fehler
+	 *            Halbbreite des Konfidenzintervalls (NaN = unbekannt)
+	 */
+	public void setWert(int reihe, int fahrstufe, double wert, double fehler) {
+		if (reihe >= werte.length) {
+			int laenge = Math.max(reihe + 1, 2 * werte.length);
+			werte = Arrays.copyOf(werte, laenge);
+			this.fehler = Arrays.copyOf(this.fehler, laenge);
+		}
+		for (; reihen <= reihe; reihen++) {
+			werte[reihen] = new double[Messreihe.ANZAHL_FAHRSTUFEN];
+			Arrays.fill(werte[reihen], Double.NaN);
+			this.fehler[reihen] = new double[Messreihe.ANZAHL_FAHRSTUFEN];
+			Arrays.fill(this.fehler[reihen], Double.NaN);
+		}
+		werte[reihe][fahrstufe + OFFSET] = wert;
+		this.fehler[reihe][fahrstufe + OFFSET] = fehler;
+		if (fahrstufe < minBelegt || fahrstufe > maxBelegt) {
+			minBelegt = Math.min(minBelegt, fahrstufe);
+			maxBelegt = Math.max(maxBelegt, fahrstufe);
+			spaltenBerechnen();
+		}
+		fireDatasetChanged();
+	}
+
+	/**
+	 * @param reihe
+	 * @param fahrstufe
+	 * @return Wert der Datenreihe fuer die Fahrstufe oder NaN
+	 */
+	public double getWert(int reihe, int fahrstufe) {
+		if (reihe >= reihen) {
+			return Double.NaN;
+		}
+		return werte[reihe][fahrstufe + OFFSET];
+	}
+
+	/**
+	 * @param reihe
+	 * @param fahrstufe
+	 * @return Fehler der Datenreihe fuer die Fahrstufe oder NaN
+	 */
+	public double getFehler(int reihe, int fahrstufe) {
+		if (reihe >= reihen) {
+			return Double.NaN;
+		}
+		return fehler[reihe][fahrstufe + OFFSET];
+	}
+
+	/**
+	 * Schraenkt den sichtbaren Fahrstufenbereich ein
+	 *
+	 * @param untereGrenze
+	 *            niedrigste angezeigte Fahrstufe
+	 * @param obereGrenze
+	 *            hoechste angezeigte Fahrstufe
+	 */
+	public void setAnzeigeBereich(int untereGrenze, int obereGrenze) {
+		untereAnzeigeGrenze = Math.max(untereGrenze, -Messreihe.MAX_FAHRSTUFE);
+		obereAnzeigeGrenze = Math.min(obereGrenze, Messreihe.MAX_FAHRSTUFE);
+		spaltenBerechnen();
+		fireDatasetChanged();
+	}
+
+	/**
+	 * Entfernt alle Datenreihen ab einer bestimmten Nummer
+	 *
+	 * @param anzahl
+	 *            Anzahl der Datenreihen, die erhalten bleiben
+	 */
+	public void reihenKuerzen(int anzahl) {
+		if (anzahl >= reihen) {
+			return;
+		}
+		for (int i = anzahl; i < reihen; i++) {
+			werte[i] = null;
+			fehler[i] = null;
+		}
+		reihen = anzahl;
+		belegungBerechnen();
+		fireDatasetChanged();
+	}
+
+	/**
+	 * Entfernt alle Werte und Datenreihen
+	 */
+	public void clear() {
+		werte = new double[0][];
+		fehler = new double[0][];
+		reihen = 0;
+		minBelegt = Integer.MAX_VALUE;
+		maxBelegt = Integer.MIN_VALUE;
+		spaltenBerechnen();
+		fireDatasetChanged();
+	}
+
+	/**
+	 * Bestimmt die niedrigste und hoechste belegte Fahrstufe der verbliebenen
+	 * Datenreihen neu
+	 */
+	private void belegungBerechnen() {
+		minBelegt = Integer.MAX_VALUE;
+		maxBelegt = Integer.MIN_VALUE;
+		for (int i = 0; i < reihen; i++) {
+			for (int j = 0; j < Messreihe.ANZAHL_FAHRSTUFEN; j++) {
+				if (!Double.isNaN(werte[i][j])) {
+					minBelegt = Math.min(minBelegt, j - OFFSET);
+					maxBelegt = Math.max(maxBelegt, j - OFFSET);
+				}
+			}
+		}
+		spaltenBerechnen();
+	}
+
+	private void spaltenBerechnen() {
+		ersteSpalte = Math.max(minBelegt, untereAnzeigeGrenze);
+		letzteSpalte = Math.min(maxBelegt, obereAnzeigeGrenze);
+		if (ersteSpalte > letzteSpalte) {
+			// nichts sichtbar (auch kein Ueberlauf in getColumnCount())
+			ersteSpalte = 0;
+			letzteSpalte = -1;
+		}
+	}
+
+	public int getUntereAnzeigeGrenze() {
+		return untereAnzeigeGrenze;
+	}
+
+	public int getObereAnzeigeGrenze() {
+		return obereAnzeigeGrenze;
+	}
+
+	// CategoryDataset -----------------------------------------------
+
+	@Override
+	public int getRowCount() {
+		return reihen;
+	}
+
+	@Override
+	public int getColumnCount() {
+		return Math.max(0, letzteSpalte - ersteSpalte + 1);
+	}
+
+	@Override
+	public Number getValue(int row, int column) {
+		double wert = werte[row][ersteSpalte + column + OFFSET];
+		return Double.isNaN(wert) ? null : Double.valueOf(wert);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Number getValue(Comparable rowKey, Comparable columnKey) {
+		int row = getRowIndex(rowKey);
+		int column = getColumnIndex(columnKey);
+		if (row < 0) {
+			throw new UnknownKeyException("Unbekannte Datenreihe: " + rowKey);
+		}
+		if (column < 0) {
+			throw new UnknownKeyException("Unbekannte Fahrstufe: " + columnKey);
+		}
+		return getValue(row, column);
+	}
+
+	// StatisticalCategoryDataset -------------------------------------
+
+	@Override
+	public Number getMeanValue(int row, int column) {
+		return getValue(row, column);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Number getMeanValue(Comparable rowKey, Comparable columnKey) {
+		return getValue(rowKey, columnKey);
+	}
+
+	@Override
+	public Number getStdDevValue(int row, int column) {
+		double wert = fehler[row][ersteSpalte + column + OFFSET];
+		return Double.isNaN(wert) ? null : Double.valueOf(wert);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Number getStdDevValue(Comparable rowKey, Comparable columnKey) {
+		int row = getRowIndex(rowKey);
+		int column = getColumnIndex(columnKey);
+		if (row < 0 || column < 0) {
+			throw new UnknownKeyException("Unbekannter Schluessel: " + rowKey
+					+ "/" + columnKey);
+		}
+		return getStdDevValue(row, column);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Comparable getRowKey(int row) {
+		return Integer.valueOf(row);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public int getRowIndex(Comparable key) {
+		if (!(key instanceof Integer)) {
+			return -1;
+		}
+		int row = ((Integer) key).intValue();
+		return row >= 0 && row < reihen ? row : -1;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public List getRowKeys() {
+		List<Integer> schluessel = new ArrayList<Integer>(reihen);
+		for (int i = 0; i < reihen; i++) {
+			schluessel.add(Integer.valueOf(i));
+		}
+		return schluessel;
+	}
+
+	/**
+	 * Die Spaltenschluessel sind Fahrstufen zwischen -126 und 126, fuer die
+	 * Integer.valueOf keine neuen Objekte erzeugt.
+	 */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public Comparable getColumnKey(int column) {
+		return Integer.valueOf(ersteSpalte + column);
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public int getColumnIndex(Comparable key) {
+		if (!(key instanceof Integer)) {
+			return -1;
+		}
+		int fahrstufe = ((Integer) key).intValue();
+		return fahrstufe >= ersteSpalte && fahrstufe <= letzteSpalte ? fahrstufe
+				- ersteSpalte
+				: -1;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public List getColumnKeys() {
+		List<Integer> schluessel = new ArrayList<Integer>(getColumnCount());
+		for (int fs = ersteSpalte; fs <= letzteSpalte; fs++) {
+			schluessel.add(Integer.valueOf(fs));
+		}
+		return schluessel;
+	}
+}
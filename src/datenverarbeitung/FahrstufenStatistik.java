@@ -0,0 +1,249 @@
+package datenverarbeitung;
+
+import java.util.Arrays;
+
+import datenaufnahme.Messreihe;
+
+/**
+ * Fortlaufende Statistik der Geschwindigkeiten pro Fahrstufe. Aus den Impulsen
+ * wird fuer jede vollstaendige Messradumdrehung eine Geschwindigkeit bestimmt.
+ * Mittelwert und Varianz werden nach Welford aktualisiert, sodass jeder Impuls
+ * in konstanter Zeit verarbeitet wird und keine Einzelwerte gespeichert werden
+ * muessen. Zusaetzlich werden Minimum, Maximum und das 95%-Konfidenzintervall
+ * des Mittelwerts bereitgestellt.
+ *
+ * @author Manuel Weber
+ */
+public class FahrstufenStatistik {
+
+	private static final int OFFSET = Messreihe.MAX_FAHRSTUFE;
+
+	/**
+	 * 97,5%-Quantile der t-Verteilung fuer 1 bis 30 Freiheitsgrade. Darueber
+	 * wird die Normalverteilung angenaehert.
+	 */
+	private static final double[] T_QUANTILE = { 12.706, 4.303, 3.182, 2.776,
+			2.571, 2.447, 2.365, 2.306, 2.262, 2.228, 2.201, 2.179, 2.160,
+			2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086, 2.080, 2.074,
+			2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042 };
+	private static final double Z_QUANTIL = 1.96;
+
+	// Statistik pro Fahrstufe (Index = Fahrstufe + MAX_FAHRSTUFE)
+	private final int[] anzahl = new int[Messreihe.ANZAHL_FAHRSTUFEN];
+	private final double[] mittelwert = new double[Messreihe.ANZAHL_FAHRSTUFEN];
+	private final double[] m2 = new double[Messreihe.ANZAHL_FAHRSTUFEN];
+	private final double[] minimum = new double[Messreihe.ANZAHL_FAHRSTUFEN];
+	private final double[] maximum = new double[Messreihe.ANZAHL_FAHRSTUFEN];
+
+	/**
+	 * Zurueckgelegter Weg pro Messradumdrehung (in der Wegeinheit)
+	 */
+	private final double wegProUmdrehung;
+
+	/**
+	 * Anzahl der Markierungen (Impulse) pro Messradumdrehung
+	 */
+	private final int markierungen;
+
+	/**
+	 * Einheit in der die Zeit in die Geschwindigkeit eingeht
+	 */
+	private final Einheit zeiteinheit;
+
+	// Zustand der laufenden Umdrehung
+	private int aktuelleFahrstufe;
+	private int impulseInFahrstufe = 0;
+	private long umdrehungsbeginn;
+
+	/**
+	 * @param wegProUmdrehung
+	 *            Weg einer Messradumdrehung in der Wegeinheit
+	 * @param markierungen
+	 *            Anzahl der Markierungen auf dem Messrad
+	 * @param zeiteinheit
+	 *            Zeiteinheit der Geschwindigkeiten
+	 */
+	public FahrstufenStatistik(double wegProUmdrehung, int markierungen,
+			Einheit zeiteinheit) {
+		this.wegProUmdrehung = wegProUmdrehung;
+		this.markierungen = markierungen;
+		this.zeiteinheit = zeiteinheit;
+		Arrays.fill(minimum, Double.POSITIVE_INFINITY);
+		Arrays.fill(maximum, Double.NEGATIVE_INFINITY);
+	}
+
+	/**
+	 * Verarbeitet einen Impuls. Mit jedem Impuls, der eine Umdrehung
+	 * abschliesst, geht eine neue Geschwindigkeit in die Statistik der
+	 * Fahrstufe ein. Umdrehungen ueber einen Fahrstufenwechsel hinweg werden
+	 * verworfen.
+	 *
+	 * @param zeitstempel
+	 *            in Nanosekunden
+	 * @param fahrstufe
+	 * @return Wahrheitswert, ob eine neue Geschwindigkeit hinzugekommen ist
+	 */
+	public boolean impuls(long zeitstempel, int fahrstufe) {
+		if (impulseInFahrstufe == 0 || fahrstufe != aktuelleFahrstufe) {
+			aktuelleFahrstufe = fahrstufe;
+			impulseInFahrstufe = 1;
+			umdrehungsbeginn = zeitstempel;
+			return false;
+		}
+		if (impulseInFahrstufe++ % markierungen != 0) {
+			return false;
+		}
+		long dauer = zeitstempel - umdrehungsbeginn;
+		umdrehungsbeginn = zeitstempel;
+		if (dauer <= 0) {
+			return false;
+		}
+		hinzufuegen(fahrstufe,
+				wegProUmdrehung / zeiteinheit.konvertieren(dauer / 1e9));
+		return true;
+	}
+
+	/**
+	 * Nimmt eine Geschwindigkeit in die Statistik einer Fahrstufe auf
+	 *
+	 * @param fahrstufe
+	 * @param v
+	 *            Geschwindigkeit
+	 */
+	public void hinzufuegen(int fahrstufe, double v) {
+		int i = fahrstufe + OFFSET;
+		int n = ++anzahl[i];
+		double delta = v - mittelwert[i];
+		mittelwert[i] += delta / n;
+		m2[i] += delta * (v - mittelwert[i]);
+		if (v < minimum[i]) {
+			minimum[i] = v;
+		}
+		if (v > maximum[i]) {
+			maximum[i] = v;
+		}
+	}
+
+	/**
+	 * Verwirft die Statistik aller Fahrstufen
+	 */
+	public void zuruecksetzen() {
+		Arrays.fill(anzahl, 0);
+		Arrays.fill(mittelwert, 0);
+		Arrays.fill(m2, 0);
+		Arrays.fill(minimum, Double.POSITIVE_INFINITY);
+		Arrays.fill(maximum, Double.NEGATIVE_INFINITY);
+		impulseInFahrstufe = 0;
+	}
+
+	/**
+	 * Uebernimmt die Statistik einer Fahrstufe aus einer gespeicherten
+	 * Auswertung (siehe Neuauswertung.lesen())
+	 *
+	 * @param fahrstufe
+	 * @param n
+	 *            Anzahl der Umdrehungen
+	 * @param mittelwert
+	 * @param konfidenzHalbbreite
+	 *            wie von getKonfidenzHalbbreite() geliefert
+	 * @param min
+	 * @param max
+	 */
+	void setzen(int fahrstufe, int n, double mittelwert,
+			double konfidenzHalbbreite, double min, double max) {
+		int i = fahrstufe + OFFSET;
+		anzahl[i] = n;
+		this.mittelwert[i] = mittelwert;
+		if (n > 1) {
+			double quantil = n - 1 <= T_QUANTILE.length ? T_QUANTILE[n - 2]
+					: Z_QUANTIL;
+			double s = konfidenzHalbbreite * Math.sqrt(n) / quantil;
+			m2[i] = s * s * (n - 1);
+		} else {
+			m2[i] = 0;
+		}
+		minimum[i] = min;
+		maximum[i] = max;
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return Anzahl der gemessenen Umdrehungen
+	 */
+	public int getAnzahl(int fahrstufe) {
+		return anzahl[fahrstufe + OFFSET];
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return mittlere Geschwindigkeit oder NaN, falls keine vorliegt
+	 */
+	public double getMittelwert(int fahrstufe) {
+		int i = fahrstufe + OFFSET;
+		return anzahl[i] > 0 ? mittelwert[i] : Double.NaN;
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return Stichproben-Standardabweichung oder NaN bei weniger als zwei
+	 *         Werten
+	 */
+	public double getStandardabweichung(int fahrstufe) {
+		int i = fahrstufe + OFFSET;
+		return anzahl[i] > 1 ? Math.sqrt(m2[i] / (anzahl[i] - 1)) : Double.NaN;
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return halbe Breite des 95%-Konfidenzintervalls des Mittelwerts oder
+	 *         NaN bei weniger als zwei Werten
+	 */
+	public double getKonfidenzHalbbreite(int fahrstufe) {
+		int n = getAnzahl(fahrstufe);
+		if (n < 2) {
+			return Double.NaN;
+		}
+		double quantil = n - 1 <= T_QUANTILE.length ? T_QUANTILE[n - 2]
+				: Z_QUANTIL;
+		return quantil * getStandardabweichung(fahrstufe) / Math.sqrt(n);
+	}
+
+	/**
+	 * Prueft, ob der Mittelwert einer Fahrstufe genau genug bestimmt ist, um
+	 * die Messung der Fahrstufe zu beenden.
+	 *
+	 * @param fahrstufe
+	 * @param relativeGenauigkeit
+	 *            maximale Halbbreite des Konfidenzintervalls relativ zum
+	 *            Mittelwert (z.B. 0.02 fuer +-2%)
+	 * @param mindestanzahl
+	 *            Mindestanzahl an Umdrehungen
+	 * @return Wahrheitswert, ob die geforderte Genauigkeit erreicht ist
+	 */
+	public boolean isGenauGenug(int fahrstufe, double relativeGenauigkeit,
+			int mindestanzahl) {
+		if (getAnzahl(fahrstufe) < Math.max(2, mindestanzahl)) {
+			return false;
+		}
+		return getKonfidenzHalbbreite(fahrstufe) <= relativeGenauigkeit
+				* Math.abs(getMittelwert(fahrstufe));
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return kleinste gemessene Geschwindigkeit oder NaN
+	 */
+	public double getMinimum(int fahrstufe) {
+		int i = fahrstufe + OFFSET;
+		return anzahl[i] > 0 ? minimum[i] : Double.NaN;
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return groesste gemessene Geschwindigkeit oder NaN
+	 */
+	public double getMaximum(int fahrstufe) {
+		int i = fahrstufe + OFFSET;
+		return anzahl[i] > 0 ? maximum[i] : Double.NaN;
+	}
+}
@@ -0,0 +1,250 @@
+package datenverarbeitung;
+
+/**
+ * Duennt eine fortlaufend wachsende Kurve (z.B. fuer das st- bzw.
+ * vt-Diagramm) so aus, dass ihre Form erhalten bleibt. Die x-Achse wird in
+ * gleich breite Abschnitte aufgeteilt, von denen jeder nur seinen kleinsten
+ * und groessten Punkt behaelt. Die Anzahl der Abschnitte richtet sich nach der
+ * Breite des Diagramms in Pixeln, sodass unabhaengig von der Messdauer
+ * hoechstens zwei Punkte pro Pixelspalte gezeichnet werden und Spitzen (z.B.
+ * beim Beschleunigen) sichtbar bleiben.
+ *
+ * Punkte werden einzeln angehaengt. Wird die Zahl der Abschnitte zu gross,
+ * wird die Abschnittsbreite verdoppelt und je zwei Abschnitte werden
+ * zusammengefasst, der Aufwand pro Punkt bleibt also im Mittel konstant.
+ *
+ * @author Manuel Weber
+ */
+public class MinMaxAusduenner {
+
+	/**
+	 * Maximale Anzahl an Abschnitten (entspricht der Zielbreite in Pixeln)
+	 */
+	private int maxAbschnitte;
+
+	/**
+	 * Breite eines Abschnitts auf der x-Achse (0 = jeder x-Wert ist ein
+	 * eigener Abschnitt)
+	 */
+	private double abschnittsbreite = 0;
+
+	/**
+	 * x-Wert des ersten Punktes (Beginn des ersten Abschnitts)
+	 */
+	private double xStart;
+
+	// Kleinster und groesster Punkt pro Abschnitt
+	private double[] minX;
+	private double[] minY;
+	private double[] maxX;
+	private double[] maxY;
+
+	/**
+	 * Nummer der Abschnitte (relativ zu xStart)
+	 */
+	private long[] abschnittsnummer;
+
+	private int anzahlAbschnitte = 0;
+
+	/**
+	 * @param zielbreite
+	 *            Breite des Diagramms in Pixeln
+	 */
+	public MinMaxAusduenner(int zielbreite) {
+		this.maxAbschnitte = Math.max(2, zielbreite);
+		anlegen(maxAbschnitte + 1);
+	}
+
+	private void anlegen(int kapazitaet) {
+		double[] altMinX = minX, altMinY = minY, altMaxX = maxX, altMaxY = maxY;
+		long[] altNummer = abschnittsnummer;
+		minX = new double[kapazitaet];
+		minY = new double[kapazitaet];
+		maxX = new double[kapazitaet];
+		maxY = new double[kapazitaet];
+		abschnittsnummer = new long[kapazitaet];
+		if (altMinX != null) {
+			System.arraycopy(altMinX, 0, minX, 0, anzahlAbschnitte);
+			System.arraycopy(altMinY, 0, minY, 0, anzahlAbschnitte);
+			System.arraycopy(altMaxX, 0, maxX, 0, anzahlAbschnitte);
+			System.arraycopy(altMaxY, 0, maxY, 0, anzahlAbschnitte);
+			System.arraycopy(altNummer, 0, abschnittsnummer, 0,
+					anzahlAbschnitte);
+		}
+	}
+
+	/**
+	 * Haengt einen Punkt an die Kurve an
+	 *
+	 * @param x
+	 *            muss mindestens so gross wie der vorherige x-Wert sein
+	 * @param y
+	 */
+	public void punktHinzufuegen(double x, double y) {
+		if (anzahlAbschnitte == 0) {
+			xStart = x;
+		}
+		int letzter = anzahlAbschnitte - 1;
+		long nummer = abschnittsbreite == 0 && letzter >= 0
+				&& x == maxX[letzter] ? abschnittsnummer[letzter] : nummer(x);
+		if (letzter >= 0 && abschnittsnummer[letzter] == nummer) {
+			if (y < minY[letzter]) {
+				minX[letzter] = x;
+				minY[letzter] = y;
+			}
+			if (y > maxY[letzter]) {
+				maxX[letzter] = x;
+				maxY[letzter] = y;
+			}
+			return;
+		}
+		if (anzahlAbschnitte == maxAbschnitte) {
+			zusammenfassen(x);
+			punktHinzufuegen(x, y);
+			return;
+		}
+		minX[anzahlAbschnitte] = x;
+		minY[anzahlAbschnitte] = y;
+		maxX[anzahlAbschnitte] = x;
+		maxY[anzahlAbschnitte] = y;
+		abschnittsnummer[anzahlAbschnitte] = nummer;
+		anzahlAbschnitte++;
+	}
+
+	/**
+	 * Legt die Breite des Diagramms fest. Wird sie verkleinert, werden die
+	 * Abschnitte sofort zusammengefasst.
+	 *
+	 * @param zielbreite
+	 *            in Pixeln
+	 */
+	public void setZielbreite(int zielbreite) {
+		maxAbschnitte = Math.max(2, zielbreite);
+		if (maxAbschnitte + 1 > minX.length) {
+			anlegen(maxAbschnitte + 1);
+		}
+		while (anzahlAbschnitte > maxAbschnitte) {
+			zusammenfassen(maxX[anzahlAbschnitte - 1]);
+		}
+	}
+
+	/**
+	 * Vergroessert die Abschnittsbreite (mindestens auf das Doppelte) und
+	 * fasst die vorhandenen Abschnitte entsprechend zusammen. Solange alle
+	 * Punkte denselben x-Wert haben, bleibt die Breite 0 und es werden nur
+	 * Abschnitte mit gleichem x-Wert zusammengefasst; die Breite ergibt sich
+	 * dann aus dem ersten abweichenden x-Wert.
+	 *
+	 * @param xNeu
+	 *            x-Wert des naechsten Punktes, fuer den noch Platz sein muss
+	 */
+	private void zusammenfassen(double xNeu) {
+		double bereich = Math.max(xNeu, maxX[anzahlAbschnitte - 1]) - xStart;
+		if (!(bereich > 0)) {
+			abschnittsbreite = 0;
+		} else {
+			abschnittsbreite = Math.max(2 * abschnittsbreite, bereich
+					/ (maxAbschnitte - 1));
+		}
+
+		int neu = 0;
+		for (int i = 0; i < anzahlAbschnitte; i++) {
+			long nummer;
+			if (abschnittsbreite == 0) {
+				// nur Abschnitte mit gleichem x-Wert zusammenfassen
+				boolean gleich = neu > 0 && minX[i] == maxX[neu - 1];
+				nummer = gleich ? abschnittsnummer[neu - 1] : neu;
+			} else {
+				nummer = nummer(Math.min(minX[i], maxX[i]));
+			}
+			if (neu > 0 && abschnittsnummer[neu - 1] == nummer) {
+				int z = neu - 1;
+				if (minY[i] < minY[z]) {
+					minX[z] = minX[i];
+					minY[z] = minY[i];
+				}
+				if (maxY[i] > maxY[z]) {
+					maxX[z] = maxX[i];
+					maxY[z] = maxY[i];
+				}
+			} else {
+				minX[neu] = minX[i];
+				minY[neu] = minY[i];
+				maxX[neu] = maxX[i];
+				maxY[neu] = maxY[i];
+				abschnittsnummer[neu] = nummer;
+				neu++;
+			}
+		}
+		anzahlAbschnitte = neu;
+	}
+
+	/**
+	 * @return Nummer des Abschnitts, in dem x liegt
+	 */
+	private long nummer(double x) {
+		if (abschnittsbreite == 0) {
+			return anzahlAbschnitte; // jeder Punkt in einem eigenen Abschnitt
+		}
+		return (long) ((x - xStart) / abschnittsbreite);
+	}
+
+	/**
+	 * @return Wahrheitswert, ob Minimum und Maximum des Abschnitts derselbe
+	 *         Punkt sind
+	 */
+	private boolean isEinzelpunkt(int abschnitt) {
+		return minX[abschnitt] == maxX[abschnitt]
+				&& minY[abschnitt] == maxY[abschnitt];
+	}
+
+	/**
+	 * Verwirft alle Punkte
+	 */
+	public void leeren() {
+		anzahlAbschnitte = 0;
+		abschnittsbreite = 0;
+	}
+
+	/**
+	 * @return Anzahl der Punkte der ausgeduennten Kurve
+	 */
+	public int getAnzahlPunkte() {
+		int anzahl = 0;
+		for (int i = 0; i < anzahlAbschnitte; i++) {
+			anzahl += isEinzelpunkt(i) ? 1 : 2;
+		}
+		return anzahl;
+	}
+
+	/**
+	 * Kopiert die ausgeduennte Kurve in der Reihenfolge der x-Werte in die
+	 * uebergebenen Arrays
+	 *
+	 * @param x
+	 *            mindestens getAnzahlPunkte() lang
+	 * @param y
+	 *            mindestens getAnzahlPunkte() lang
+	 * @return Anzahl der kopierten Punkte
+	 */
+	public int punkteKopieren(double[] x, double[] y) {
+		int n = 0;
+		for (int i = 0; i < anzahlAbschnitte; i++) {
+			if (isEinzelpunkt(i)) {
+				x[n] = minX[i];
+				y[n++] = minY[i];
+			} else if (minX[i] < maxX[i]) {
+				x[n] = minX[i];
+				y[n++] = minY[i];
+				x[n] = maxX[i];
+				y[n++] = maxY[i];
+			} else {
+				x[n] = maxX[i];
+				y[n++] = maxY[i];
+				x[n] = minX[i];
+				y[n++] = minY[i];
+			}
+		}
+		return n;
+	}
+}
@@ -0,0 +1,437 @@
+package datenverarbeitung;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import controller.Einstellungen;
+import datenaufnahme.Messreihe;
+import datenaufnahme.MessreihenDatei;
+import datenaufnahme.Messreihenarchiv;
+
+/**
+ * Wertet archivierte Messreihen mit der aktuellen Kalibrierung (Messradumfang,
+ * Massstab und Einheiten) neu aus, z.B. nachdem das Messrad neu vermessen
+ * wurde. Die Anzahl der Markierungen stammt aus der Messreihe selbst: sie
+ * beschreibt, wie viele Impulse das Messrad bei dieser Messung pro Umdrehung
+ * geliefert hat, und aendert sich durch eine neue Einstellung nicht.
+ *
+ * Die Messreihen werden per Fork/Join auf alle Prozessorkerne verteilt. Fuer
+ * jede Messreihe entsteht neben der Messreihendatei eine Auswertungsdatei mit
+ * Mittelwert, Konfidenzintervall, Minimum und Maximum der Geschwindigkeit pro
+ * Fahrstufe. Sie wird zunaechst unter einem temporaeren Namen geschrieben und
+ * dann atomar umbenannt, eine vorhandene Auswertung ist also nie halb
+ * ueberschrieben. In ihrer Kopfzeile steht die verwendete Kalibrierung;
+ * lesen() liefert die Auswertung nur, solange diese zu den aktuellen
+ * Einstellungen und zur Messreihe passt.
+ *
+ * beobachten() startet die Neuauswertung eines Archivs automatisch, sobald
+ * sich die Kalibrierung in den Einstellungen aendert.
+ *
+ * @author Manuel Weber
+ */
+public class Neuauswertung {
+
+	/**
+	 * Dateiendung der Auswertungsdateien
+	 */
+	public static final String ENDUNG = ".vta";
+
+	/**
+	 * Anzahl an Messreihen, ab der eine Teilaufgabe weiter aufgeteilt wird
+	 */
+	private static final int TEILUNGSSCHWELLE = 2;
+
+	/**
+	 * Anzahl an Impulsen, nach denen auf einen Abbruch geprueft wird
+	 */
+	private static final int ABBRUCHPRUEFUNG = 1 << 16;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Beginn der Kopfzeile mit der Kalibrierung einer Auswertungsdatei
+	 */
+	private static final String KALIBRIERUNG = "# Messradumfang=";
+
+	/**
+	 * Wird ueber den Fortschritt informiert (aus den Arbeitsthreads heraus)
+	 */
+	public interface Fortschrittsanzeige {
+		void fortschritt(int erledigt, int gesamt);
+	}
+
+	private final List<Messreihenarchiv.Eintrag> eintraege;
+
+	private final Einstellungen.Schnappschuss einstellungen;
+
+	private Fortschrittsanzeige fortschrittsanzeige;
+
+	private final AtomicInteger erledigt = new AtomicInteger();
+
+	private volatile boolean abgebrochen = false;
+
+	/**
+	 * Meldungen zu Messreihen, die nicht ausgewertet werden konnten
+	 */
+	private final List<String> fehler = Collections
+			.synchronizedList(new ArrayList<String>());
+
+	/**
+	 * @param eintraege
+	 *            auszuwertende Messreihen
+	 * @param einstellungen
+	 *            Einstellungen, mit denen ausgewertet wird
+	 */
+	public Neuauswertung(List<Messreihenarchiv.Eintrag> eintraege,
+			Einstellungen.Schnappschuss einstellungen) {
+		this.eintraege = new ArrayList<Messreihenarchiv.Eintrag>(eintraege);
+		this.einstellungen = einstellungen;
+	}
+
+	/**
+	 * Erstellt eine Neuauswertung aller Messreihen eines Archivs mit den
+	 * aktuellen Einstellungen
+	 */
+	public static Neuauswertung fuerArchiv(Messreihenarchiv archiv) {
+		return new Neuauswertung(archiv.suchen(null, Long.MIN_VALUE,
+				Long.MAX_VALUE, 0, -1), Einstellungen.getEinstellungen()
+				.getSchnappschuss());
+	}
+
+	public void setFortschrittsanzeige(Fortschrittsanzeige fortschrittsanzeige) {
+		this.fortschrittsanzeige = fortschrittsanzeige;
+	}
+
+	/**
+	 * Wertet alle Messreihen aus und kehrt zurueck, wenn alle erledigt sind
+	 * oder die Auswertung abgebrochen wurde
+	 *
+	 * @return Anzahl der erfolgreich ausgewerteten Messreihen
+	 */
+	public int ausfuehren() {
+		ForkJoinPool pool = new ForkJoinPool();
+		try {
+			pool.invoke(new Teilaufgabe(0, eintraege.size()));
+		} finally {
+			pool.shutdown();
+		}
+		return erledigt.get() - fehler.size();
+	}
+
+	/**
+	 * Bricht die Auswertung ab. Bereits geschriebene Auswertungen bleiben
+	 * erhalten.
+	 */
+	public void abbrechen() {
+		abgebrochen = true;
+	}
+
+	public boolean isAbgebrochen() {
+		return abgebrochen;
+	}
+
+	/**
+	 * @return Meldungen zu Messreihen, die nicht ausgewertet werden konnten
+	 */
+	public List<String> getFehler() {
+		synchronized (fehler) {
+			return new ArrayList<String>(fehler);
+		}
+	}
+
+	/**
+	 * @param messreihendatei
+	 * @return Auswertungsdatei, die zu einer Messreihendatei gehoert
+	 */
+	public static File auswertungsdatei(File messreihendatei) {
+		String name = messreihendatei.getName();
+		if (name.endsWith(MessreihenDatei.ENDUNG)) {
+			name = name.substring(0,
+					name.length() - MessreihenDatei.ENDUNG.length());
+		}
+		return new File(messreihendatei.getParentFile(), name + ENDUNG);
+	}
+
+	/**
+	 * Teilt den Bereich der Messreihen, bis nur noch wenige uebrig sind
+	 */
+	private class Teilaufgabe extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int von;
+		private final int bis;
+
+		private Teilaufgabe(int von, int bis) {
+			this.von = von;
+			this.bis = bis;
+		}
+
+		@Override
+		protected void compute() {
+			if (bis - von > TEILUNGSSCHWELLE) {
+				int mitte = (von + bis) >>> 1;
+				invokeAll(new Teilaufgabe(von, mitte), new Teilaufgabe(mitte,
+						bis));
+				return;
+			}
+			for (int i = von; i < bis && !abgebrochen; i++) {
+				Messreihenarchiv.Eintrag eintrag = eintraege.get(i);
+				try {
+					auswerten(eintrag);
+				} catch (IOException e) {
+					fehler.add(eintrag + ": " + e.getMessage());
+				}
+				if (abgebrochen) {
+					return; // abgebrochene Messreihe zaehlt nicht
+				}
+				int n = erledigt.incrementAndGet();
+				Fortschrittsanzeige anzeige = fortschrittsanzeige;
+				if (anzeige != null) {
+					anzeige.fortschritt(n, eintraege.size());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wertet eine Messreihe aus und schreibt ihre Auswertungsdatei
+	 */
+	private void auswerten(Messreihenarchiv.Eintrag eintrag)
+			throws IOException {
+		Messreihe messreihe = eintrag.laden();
+		FahrstufenStatistik statistik = statistik(messreihe, einstellungen);
+
+		int n = messreihe.getAnzahlImpulse();
+		for (int i = 0; i < n; i++) {
+			if ((i & (ABBRUCHPRUEFUNG - 1)) == 0 && abgebrochen) {
+				return;
+			}
+			statistik.impuls(messreihe.getZeitstempel(i),
+					messreihe.getFahrstufe(i));
+		}
+
+		StringBuilder inhalt = new StringBuilder(8192);
+		inhalt.append("# ").append(messreihe.getLokname()).append('\n');
+		inhalt.append(kalibrierung(messreihe, einstellungen)).append('\n');
+		inhalt.append("fahrstufe;mittelwert;konfidenz;minimum;maximum;umdrehungen\n");
+		for (int fs = -Messreihe.MAX_FAHRSTUFE; fs <= Messreihe.MAX_FAHRSTUFE; fs++) {
+			int umdrehungen = statistik.getAnzahl(fs);
+			if (umdrehungen == 0) {
+				continue;
+			}
+			inhalt.append(fs).append(';')
+					.append(statistik.getMittelwert(fs)).append(';')
+					.append(statistik.getKonfidenzHalbbreite(fs)).append(';')
+					.append(statistik.getMinimum(fs)).append(';')
+					.append(statistik.getMaximum(fs)).append(';')
+					.append(umdrehungen).append('\n');
+		}
+		atomarSchreiben(auswertungsdatei(eintrag.getDatei()),
+				inhalt.toString());
+	}
+
+	/**
+	 * Erzeugt die Statistik, mit der eine Messreihe ausgewertet wird: Weg pro
+	 * Umdrehung aus dem eingestellten Messradumfang (in der Wegeinheit, also
+	 * mit Massstab), Markierungen aus der Messreihe. Dieselbe Rechnung wie im
+	 * Plotter und im Impulsexport.
+	 */
+	static FahrstufenStatistik statistik(Messreihe messreihe,
+			Einstellungen.Schnappschuss einstellungen) {
+		return new FahrstufenStatistik(einstellungen.getWegeinheit()
+				.konvertieren(einstellungen.getMessradumfang()),
+				messreihe.getMarkierungen(), einstellungen.getZeiteinheit());
+	}
+
+	/**
+	 * @return Kopfzeile mit der Kalibrierung, mit der eine Messreihe
+	 *         ausgewertet wird, und den Kenndaten der Messreihe
+	 */
+	private static String kalibrierung(Messreihe messreihe,
+			Einstellungen.Schnappschuss einstellungen) {
+		return KALIBRIERUNG + einstellungen.getMessradumfang() + ";Massstab="
+				+ einstellungen.getMassstab() + ";Einheit="
+				+ einstellungen.getWegeinheit() + "/"
+				+ einstellungen.getZeiteinheit() + ";Markierungen="
+				+ messreihe.getMarkierungen() + ";Impulse="
+				+ messreihe.getAnzahlImpulse();
+	}
+
+	/**
+	 * @return Wahrheitswert, ob sich zwischen zwei Staenden der Einstellungen
+	 *         etwas geaendert hat, das die ausgewerteten Geschwindigkeiten
+	 *         beeinflusst
+	 */
+	private static boolean isKalibrierungGeaendert(
+			Einstellungen.Schnappschuss alt, Einstellungen.Schnappschuss neu) {
+		return alt.getMessradumfang() != neu.getMessradumfang()
+				|| alt.getMassstab() != neu.getMassstab()
+				|| !alt.getWegeinheit().toString()
+						.equals(neu.getWegeinheit().toString())
+				|| alt.getZeiteinheit() != neu.getZeiteinheit();
+	}
+
+	/**
+	 * Liest die Auswertungsdatei einer Messreihe
+	 *
+	 * @param messreihendatei
+	 * @param messreihe
+	 *            Inhalt der Messreihendatei
+	 * @param einstellungen
+	 *            Einstellungen, zu denen die Auswertung passen muss
+	 * @return Statistik pro Fahrstufe oder null, falls keine Auswertung
+	 *         vorliegt, sie unlesbar ist oder mit einer anderen Kalibrierung
+	 *         bzw. einem anderen Stand der Messreihe erstellt wurde
+	 */
+	public static FahrstufenStatistik lesen(File messreihendatei,
+			Messreihe messreihe, Einstellungen.Schnappschuss einstellungen) {
+		File datei = auswertungsdatei(messreihendatei);
+		if (!datei.isFile()) {
+			return null;
+		}
+		FahrstufenStatistik statistik = new FahrstufenStatistik(0,
+				messreihe.getMarkierungen(), einstellungen.getZeiteinheit());
+		try {
+			BufferedReader leser = new BufferedReader(new InputStreamReader(
+					new FileInputStream(datei), UTF8));
+			try {
+				leser.readLine(); // Lokname
+				if (!kalibrierung(messreihe, einstellungen).equals(
+						leser.readLine())) {
+					return null;
+				}
+				leser.readLine(); // Spaltenkoepfe
+				String zeile;
+				while ((zeile = leser.readLine()) != null) {
+					String[] felder = zeile.split(";");
+					statistik.setzen(Integer.parseInt(felder[0]),
+							Integer.parseInt(felder[5]),
+							Double.parseDouble(felder[1]),
+							Double.parseDouble(felder[2]),
+							Double.parseDouble(felder[3]),
+							Double.parseDouble(felder[4]));
+				}
+			} finally {
+				leser.close();
+			}
+		} catch (IOException e) {
+			return null;
+		} catch (RuntimeException e) {
+			return null; // beschaedigte Zeile
+		}
+		return statistik;
+	}
+
+	/**
+	 * Wertet die Messreihen eines Archivs im Hintergrund neu aus, sobald
+	 * sich Messradumfang, Massstab oder Einheiten in den Einstellungen
+	 * aendern. Eine noch laufende Neuauswertung wird dabei abgebrochen und mit
+	 * dem neuen Stand begonnen. Aufzurufen, wo das Archiv geoeffnet wird.
+	 *
+	 * @param archiv
+	 * @param anzeige
+	 *            wird ueber den Fortschritt informiert (darf null sein)
+	 * @return angemeldeter Beobachter (zum Abmelden mit
+	 *         Einstellungen.deleteObserver())
+	 */
+	public static Observer beobachten(final Messreihenarchiv archiv,
+			final Fortschrittsanzeige anzeige) {
+		Observer beobachter = new Observer() {
+			private final ExecutorService ausfuehrer = Executors
+					.newSingleThreadExecutor(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "Neuauswertung");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+
+			private Einstellungen.Schnappschuss stand = Einstellungen
+					.getEinstellungen().getSchnappschuss();
+
+			private Neuauswertung laufend;
+
+			@Override
+			public synchronized void update(Observable o, Object arg) {
+				Einstellungen.Schnappschuss neu = Einstellungen
+						.getEinstellungen().getSchnappschuss();
+				if (!isKalibrierungGeaendert(stand, neu)) {
+					return;
+				}
+				stand = neu;
+				if (laufend != null) {
+					laufend.abbrechen();
+				}
+				final Neuauswertung auswertung = new Neuauswertung(
+						archiv.suchen(null, Long.MIN_VALUE, Long.MAX_VALUE,
+								0, -1), neu);
+				auswertung.setFortschrittsanzeige(anzeige);
+				laufend = auswertung;
+				ausfuehrer.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (!auswertung.isAbgebrochen()) {
+							auswertung.ausfuehren();
+						}
+					}
+				});
+			}
+		};
+		Einstellungen.getEinstellungen().addObserver(beobachter);
+		return beobachter;
+	}
+
+	/**
+	 * Schreibt eine Datei unter einem temporaeren Namen und benennt sie dann
+	 * atomar um
+	 */
+	private static void atomarSchreiben(File datei, String inhalt)
+			throws IOException {
+		File temp = new File(datei.getParentFile(), datei.getName() + ".tmp");
+		FileChannel kanal = FileChannel.open(temp.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			Writer writer = new OutputStreamWriter(
+					Channels.newOutputStream(kanal), UTF8);
+			writer.write(inhalt);
+			writer.flush();
+			kanal.force(true);
+		} finally {
+			kanal.close();
+		}
+		try {
+			Files.move(temp.toPath(), datei.toPath(),
+					StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temp.toPath(), datei.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -1,88 +1,425 @@
+package datenverarbeitung;
 
+import java.util.concurrent.TimeUnit;
 
-	package datenverarbeitung;
+import controller.Einstellungen;
+import controller.Main;
+import controller.Messmetriken;
+import datenaufnahme.Impulspuffer;
+import datenaufnahme.Messreihe;
+import datenaufnahme.Messreihenarchiv;
 
-	import controller.Main;
-	import datenaufnahme.Messreihe;
+/**
+ * Diese Klasse bereitet die Messdaten auf, sodass sie im
+ * Geschwindigkeit-Fahrstufen-Diagramm geplottet werden koennen. Waehrend einer
+ * Messung werden die Impulse ueber einen Impulspuffer von der Messung
+ * uebergeben, der Plotter schlaeft bis neue Impulse eintreffen.
+ *
+ * Kommt der Plotter nicht hinterher, weist der volle Impulspuffer Impulse ab,
+ * die Messung selbst wird dadurch nie aufgehalten. Die abgewiesenen Impulse
+ * holt der Plotter anhand ihrer laufenden Nummer aus der Messreihe nach. Wird
+ * der Puffer zu voll oder die Anzeige zu spaet, schaltet der Plotter in den
+ * Ueberlastbetrieb: die laufende Fahrstufe wird seltener aktualisiert und das
+ * Diagramm zeichnet mit verringerter Bildrate, bis sich die Lage erholt hat.
+ *
+ * @author Manuel Eble
+ * @author Manuel Weber
+ */
+public class Plotter extends Thread {
 
 	/**
-	 * Diese Klasse bereitet die Messdaten auf, sodass sie im
-	 * Geschwindigkeit-Fahrstufen-Diagramm geplottet werden koennen
-	 * 
-	 * @author Manuel Eble
-	 * @author Manuel Weber
-	 */
-	public class Plotter extends Thread {
-
-		private final Messungsfenster messungsfenster;
-		private final Messreihe messreihe;
-		private Saeulendiagramm balkenDiagramm;
-		
-		private int fahrstufe = 0;
-		private double weg = 0;
-		private long zeit = 0;
-
-		private Einheit wegeinheit = Einstellungen.getEinstellungen()
-				.getWegeinheit();
-		private Einheit zeiteinheit = Einstellungen.getEinstellungen()
-				.getZeiteinheit();
-		private double messeinheit = wegeinheit.konvertieren(Einstellungen
-				.getEinstellungen().getMesseinheit());
-
-		public PlotterVFS(Messreihe messreihe, Messungsfenster messungsfenster) {
-			this.messungsfenster = messungsfenster;
-			this.messreihe = messreihe;
-			if (messungsfenster != null) {
-				this.balkenDiagramm = messungsfenster.getDiagrammtabs()
-						.getVfsDiagramm();
-			} else {
-				this.balkenDiagramm = Main.getFenster().getDiagrammTabs()
-						.getVfsDiagramm();
+	 * Wahrheitswert, ob eine abgeschlossene Messreihe (aus der Datenbank) auf
+	 * einmal geplottet wird
+	 */
+	private final boolean aufEinmal;
+	private final Messreihe messreihe;
+	private Saeulendiagramm balkenDiagramm;
+
+	private int fahrstufe = 0;
+	private double weg = 0;
+	private long zeit = 0;
+
+	/**
+	 * Maximale Anzahl an Impulsen, die pro Durchlauf aus dem Puffer entnommen
+	 * werden
+	 */
+	private static final int MAX_IMPULSE_PRO_DURCHLAUF = 4096;
+
+	/**
+	 * Puffer ueber den die Messung neue Impulse uebergibt
+	 */
+	private final Impulspuffer impulspuffer = new Impulspuffer(8192);
+
+	/**
+	 * Nimmt die Impulse aus dem Impulspuffer entgegen
+	 */
+	private final Impulspuffer.Verbraucher verbraucher = new Impulspuffer.Verbraucher() {
+		@Override
+		public void impuls(int nummer, long zeitstempel, int fahrstufe) {
+			if (nummer < naechsterImpuls) {
+				return; // bereits aus der Messreihe nachgeholt
 			}
-			balkenDiagramm.naechteDatenreihe(messreihe);
+			nachholen(nummer);
+			impulsVerarbeiten(zeitstempel, fahrstufe);
+			naechsterImpuls = nummer + 1;
 		}
+	};
 
-		@Override
-		public void run() {
+	/**
+	 * Index des naechsten zu verarbeitenden Impulses in der Messreihe
+	 */
+	private int naechsterImpuls = 0;
+
+	/**
+	 * Mindestabstand (in ns) zweier Aktualisierungen der laufenden Fahrstufe
+	 * im Ueberlastbetrieb
+	 */
+	private static final long AUSDUENNUNG = 200000000L;
 
-			while (isInterrupted() == false) {
+	private final Ueberlastregelung ueberlastregelung = new Ueberlastregelung();
 
-				messwerteVerarbeiten();
+	/**
+	 * Zeitpunkt (System.nanoTime()) der letzten Aktualisierung der laufenden
+	 * Fahrstufe
+	 */
+	private long letzteAktualisierung = 0;
+
+	/**
+	 * Modell der Fahrkurve, das mit jedem Punkt des Diagramms nachgefuehrt
+	 * wird
+	 */
+	private volatile Fahrkurve fahrkurve = new Fahrkurve();
+
+	/**
+	 * Wahrheitswert, ob noch kein Impuls verarbeitet wurde
+	 */
+	private boolean ersterImpuls = true;
+
+	/**
+	 * Zeitstempel des zuletzt verarbeiteten Impulses (in Nanosekunden)
+	 */
+	private long letzterZeitstempel;
 
-				if (messungsfenster != null) {
-					return; // Werte aus der Datenbank werden auf einmal geplottet.
-				}
+	/**
+	 * System.nanoTime() des ersten Impulses der Messung, die Zeitstempel der
+	 * Impulse beziehen sich darauf
+	 */
+	private volatile long zeitbasis;
+
+	private final Messmetriken metriken = Messmetriken.getMessmetriken();
+
+	/**
+	 * Einstellungen, mit denen die gesamte Messreihe verarbeitet wird
+	 */
+	private final Einstellungen.Schnappschuss einstellungen;
+
+	private final Einheit wegeinheit;
+	private final Einheit zeiteinheit;
+	private final double messeinheit;
+
+	/**
+	 * Statistik der Geschwindigkeiten pro Messradumdrehung (fuer die
+	 * Konfidenzintervalle im Diagramm)
+	 */
+	private final FahrstufenStatistik statistik;
+
+	public Plotter(Messreihe messreihe, Messungsfenster messungsfenster) {
+		this(messreihe, messungsfenster != null ? messungsfenster
+				.getDiagrammtabs().getVfsDiagramm() : Main.getFenster()
+				.getDiagrammTabs().getVfsDiagramm(), messungsfenster != null,
+				Einstellungen.getEinstellungen().getSchnappschuss());
+	}
+
+	/**
+	 * Erzeugt einen Plotter fuer eine laufende Messung, der in ein eigenes
+	 * Saeulendiagramm zeichnet (z.B. fuer eine von mehreren gleichzeitigen
+	 * Messsitzungen)
+	 * 
+	 * @param messreihe
+	 * @param balkenDiagramm
+	 * @param einstellungen
+	 *            Einstellungen, mit denen die Messreihe verarbeitet wird
+	 */
+	public Plotter(Messreihe messreihe, Saeulendiagramm balkenDiagramm,
+			Einstellungen.Schnappschuss einstellungen) {
+		this(messreihe, balkenDiagramm, false, einstellungen);
+	}
+
+	private Plotter(Messreihe messreihe, Saeulendiagramm balkenDiagramm,
+			boolean aufEinmal, Einstellungen.Schnappschuss einstellungen) {
+		this.messreihe = messreihe;
+		this.balkenDiagramm = balkenDiagramm;
+		this.aufEinmal = aufEinmal;
+		this.einstellungen = einstellungen;
+		this.wegeinheit = einstellungen.getWegeinheit();
+		this.zeiteinheit = einstellungen.getZeiteinheit();
+		// Markierungen der Messreihe, nicht der Einstellungen: eine
+		// archivierte Messreihe wurde evtl. mit einem anderen Messrad
+		// aufgenommen
+		this.messeinheit = wegeinheit.konvertieren(einstellungen
+				.getMessradumfang() / messreihe.getMarkierungen());
+		this.statistik = Neuauswertung.statistik(messreihe, einstellungen);
+		balkenDiagramm.naechteDatenreihe(messreihe);
+	}
+
+	/**
+	 * Plottet eine abgeschlossene Messreihe im aufrufenden Thread als neue
+	 * Datenreihe in ein Saeulendiagramm (z.B. fuer den Export ohne Fenster)
+	 * 
+	 * @param messreihe
+	 * @param balkenDiagramm
+	 */
+	public static void plotten(Messreihe messreihe,
+			Saeulendiagramm balkenDiagramm) {
+		plotten(messreihe, balkenDiagramm, Einstellungen.getEinstellungen()
+				.getSchnappschuss());
+	}
+
+	/**
+	 * Plottet eine abgeschlossene Messreihe im aufrufenden Thread mit
+	 * vorgegebenen Einstellungen (z.B. denen, ueber die ein Pruefwert
+	 * gebildet wurde)
+	 * 
+	 * @param messreihe
+	 * @param balkenDiagramm
+	 * @param einstellungen
+	 *            Einstellungen, mit denen die Messreihe verarbeitet wird
+	 */
+	public static void plotten(Messreihe messreihe,
+			Saeulendiagramm balkenDiagramm,
+			Einstellungen.Schnappschuss einstellungen) {
+		new Plotter(messreihe, balkenDiagramm, true, einstellungen).run();
+	}
 
-				try {
-					Thread.sleep(5);
-				} catch (Exception e) {
-					messwerteVerarbeiten();
-					return;
-				}
+	/**
+	 * Plottet eine archivierte Messreihe im aufrufenden Thread. Liegt eine
+	 * Neuauswertung mit passender Kalibrierung vor, werden deren Werte
+	 * eingetragen, sonst werden die Impulse verarbeitet.
+	 * 
+	 * @param eintrag
+	 *            Eintrag der Messreihe im Archiv
+	 * @param messreihe
+	 *            die geladene Messreihe des Eintrags
+	 * @param balkenDiagramm
+	 * @param einstellungen
+	 *            Einstellungen, mit denen die Messreihe verarbeitet wird
+	 */
+	public static void plotten(Messreihenarchiv.Eintrag eintrag,
+			Messreihe messreihe, Saeulendiagramm balkenDiagramm,
+			Einstellungen.Schnappschuss einstellungen) {
+		FahrstufenStatistik auswertung = Neuauswertung.lesen(
+				eintrag.getDatei(), messreihe, einstellungen);
+		Plotter plotter = new Plotter(messreihe, balkenDiagramm, true,
+				einstellungen);
+		if (auswertung == null) {
+			plotter.run();
+			return;
+		}
+		for (int fs = -Messreihe.MAX_FAHRSTUFE; fs <= Messreihe.MAX_FAHRSTUFE; fs++) {
+			if (auswertung.getAnzahl(fs) > 0) {
+				double v = auswertung.getMittelwert(fs);
+				plotter.fahrkurve.setWert(fs, v);
+				balkenDiagramm.punktAnhaengen(fs, v,
+						auswertung.getKonfidenzHalbbreite(fs));
 			}
 		}
+	}
+
+	@Override
+	public void run() {
 
-		/**
-		 * Verarbeitet neu hinzugekommene Messwerte und traegt sie ins Diagramm ein
-		 */
-		private void messwerteVerarbeiten() {
+		if (aufEinmal) {
+			// Werte aus der Datenbank werden auf einmal geplottet.
+			messwerteVerarbeiten();
+			update(); // letzte Fahrstufe
+			return;
 		}
 
-		/**
-		 * Berechnet die Geschwindigkeit der momentan betrachteten Fahrstufe und
-		 * aktualisiert das Saeulendiagramm.
-		 */
-		private void update() {
-			// der Weg ist schon konvertiert (passende Messeinheit)
-			double v = weg * 1000 / zeiteinheit.konvertieren(zeit);
+		// der Plotter kann auch von einem anderen (z.B. virtuellen) Thread
+		// ausgefuehrt werden, daher den ausfuehrenden Thread pruefen
+		while (Thread.currentThread().isInterrupted() == false) {
 			try {
-				balkenDiagramm.punktAnhaengen(fahrstufe, v);
-			} catch (Exception e) {
-				System.err
-						.println("Punkt konnte nicht ins vfs-Diagramm eingezeichnet werden: "
-								+ e.getMessage());
+				impulspuffer.warten(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				break;
 			}
+			lastPruefen();
+			impulspuffer.abarbeiten(verbraucher, MAX_IMPULSE_PRO_DURCHLAUF);
+		}
+		// restliche Impulse nach Ende der Messung, auch die zuletzt vom
+		// Puffer abgewiesenen
+		while (!impulspuffer.isLeer()) {
+			impulspuffer.abarbeiten(verbraucher, MAX_IMPULSE_PRO_DURCHLAUF);
+		}
+		nachholen(messreihe.getAnzahlImpulse());
+		update();
+		if (ueberlastregelung.isAktiv()) {
+			balkenDiagramm.setUeberlast(false);
+			metriken.ueberlastGeaendert(false);
+		}
+	}
+
+	/**
+	 * Verarbeitet die Impulse der Messreihe bis ausschliesslich bis, die der
+	 * volle Impulspuffer abgewiesen hat
+	 */
+	private void nachholen(int bis) {
+		for (int i = naechsterImpuls; i < bis; i++) {
+			impulsVerarbeiten(messreihe.getZeitstempel(i),
+					messreihe.getFahrstufe(i));
+		}
+		if (bis > naechsterImpuls) {
+			naechsterImpuls = bis;
+		}
+	}
+
+	/**
+	 * Misst Fuellstand des Impulspuffers und Latenz der Anzeige und schaltet
+	 * den Ueberlastbetrieb ein oder aus
+	 */
+	private void lastPruefen() {
+		int fuellstand = impulspuffer.getFuellstand();
+		metriken.pufferfuellstandErfassen(fuellstand);
+		long jetzt = System.nanoTime();
+		// Wartezeit des aeltesten Impulses im Puffer zuzueglich der Wartezeit
+		// im Diagramm. Die Zeitstempel werden beim Eintreffen vergeben, lange
+		// Pausen zwischen den Impulsen zaehlen also nicht als Latenz.
+		long latenz = balkenDiagramm.getStapelalter(jetzt);
+		long aeltester = impulspuffer.getAeltesterZeitstempel();
+		if (aeltester != Long.MIN_VALUE) {
+			latenz += Math.max(0, jetzt - zeitbasis - aeltester);
+		}
+		if (ueberlastregelung.pruefen(fuellstand,
+				impulspuffer.getKapazitaet(), latenz, jetzt)) {
+			balkenDiagramm.setUeberlast(ueberlastregelung.isAktiv());
+			metriken.ueberlastGeaendert(ueberlastregelung.isAktiv());
 		}
 	}
 
+	/**
+	 * Verarbeitet alle Messwerte der Messreihe und traegt sie ins Diagramm ein
+	 */
+	private void messwerteVerarbeiten() {
+		int anzahl = messreihe.getAnzahlImpulse();
+		for (int i = 0; i < anzahl; i++) {
+			impulsVerarbeiten(messreihe.getZeitstempel(i),
+					messreihe.getFahrstufe(i));
+		}
+	}
 
+	/**
+	 * Verarbeitet einen einzelnen Impuls. Bei einem Fahrstufenwechsel wird die
+	 * abgeschlossene Fahrstufe ins Diagramm eingetragen, ansonsten wird die
+	 * laufende Fahrstufe nach jeder vollstaendigen Messradumdrehung
+	 * aktualisiert.
+	 *
+	 * @param t
+	 *            Zeitstempel in Nanosekunden seit Messbeginn
+	 * @param fs
+	 *            Fahrstufe des Impulses
+	 */
+	private void impulsVerarbeiten(long t, int fs) {
+		if (ersterImpuls || fs != fahrstufe) {
+			update();
+			ersterImpuls = false;
+			fahrstufe = fs;
+			weg = 0;
+			zeit = 0;
+		} else {
+			weg += messeinheit;
+			zeit += t - letzterZeitstempel;
+		}
+		letzterZeitstempel = t;
+		if (statistik.impuls(t, fs)) {
+			if (aufEinmal) {
+				update();
+				return;
+			}
+			long jetzt = System.nanoTime();
+			// im Ueberlastbetrieb nur ausgeduennt, der Endwert der Fahrstufe
+			// wird beim Fahrstufenwechsel trotzdem eingetragen
+			if (!ueberlastregelung.isAktiv()
+					|| jetzt - letzteAktualisierung >= AUSDUENNUNG) {
+				update();
+				letzteAktualisierung = jetzt;
+			}
+			metriken.latenzErfassen(jetzt - zeitbasis - t);
+		}
+	}
+
+	/**
+	 * Teilt dem Plotter mit, auf welchen Zeitpunkt (System.nanoTime()) sich
+	 * die Zeitstempel der Impulse beziehen. Muss vor Uebergabe des ersten
+	 * Impulses gesetzt werden, sonst ist die erfasste Latenz unsinnig.
+	 * 
+	 * @param zeitbasis
+	 */
+	public void setZeitbasis(long zeitbasis) {
+		this.zeitbasis = zeitbasis;
+	}
+
+	/**
+	 * @return Puffer ueber den die Messung neue Impulse an den Plotter
+	 *         uebergibt
+	 */
+	public Impulspuffer getImpulspuffer() {
+		return impulspuffer;
+	}
+
+	/**
+	 * @return Fahrkurve, die mit jedem Punkt des Diagramms nachgefuehrt wird
+	 */
+	public Fahrkurve getFahrkurve() {
+		return fahrkurve;
+	}
+
+	/**
+	 * Legt die Fahrkurve fest, die mit jedem Punkt des Diagramms nachgefuehrt
+	 * wird, z.B. eine gemeinsame Kurve fuer alle Messreihen einer Lok. Muss
+	 * vor dem Start gesetzt werden.
+	 * 
+	 * @param fahrkurve
+	 */
+	public void setFahrkurve(Fahrkurve fahrkurve) {
+		this.fahrkurve = fahrkurve;
+	}
+
+	/**
+	 * @return Statistik der Geschwindigkeiten pro Fahrstufe, z.B. um die
+	 *         Messung einer Fahrstufe bei ausreichender Genauigkeit zu beenden
+	 */
+	public FahrstufenStatistik getStatistik() {
+		return statistik;
+	}
+
+	/**
+	 * Berechnet die Geschwindigkeit der momentan betrachteten Fahrstufe und
+	 * aktualisiert das Saeulendiagramm. Eingezeichnet wird der Mittelwert der
+	 * Umdrehungsgeschwindigkeiten, zu dem auch der Fehlerbalken gehoert; vor
+	 * der ersten vollstaendigen Umdrehung der Quotient aus Weg und Zeit ohne
+	 * Fehlerbalken.
+	 */
+	private void update() {
+		double v;
+		double fehler;
+		if (statistik.getAnzahl(fahrstufe) > 0) {
+			v = statistik.getMittelwert(fahrstufe);
+			fehler = statistik.getKonfidenzHalbbreite(fahrstufe);
+		} else if (zeit > 0) {
+			// der Weg ist schon konvertiert (passende Messeinheit), die Zeit
+			// liegt in Nanosekunden vor
+			v = weg * 1e9 / zeiteinheit.konvertieren(zeit);
+			fehler = Double.NaN;
+		} else {
+			return; // noch keine vollstaendige Messstrecke
+		}
+		fahrkurve.setWert(fahrstufe, v);
+		try {
+			balkenDiagramm.punktAnhaengen(fahrstufe, v, fehler);
+		} catch (Exception e) {
+			System.err
+					.println("Punkt konnte nicht ins vfs-Diagramm eingezeichnet werden: "
+							+ e.getMessage());
+		}
+	}
+}
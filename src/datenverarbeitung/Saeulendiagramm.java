@@ -3,21 +3,49 @@ package datenverarbeitung;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+
+import javax.swing.ButtonGroup;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JMenu;
+import javax.swing.JPopupMenu;
+import javax.swing.JRadioButtonMenuItem;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.CategoryAxis;
+import org.jfree.chart.event.ChartProgressEvent;
+import org.jfree.chart.event.ChartProgressListener;
 import org.jfree.chart.plot.PlotOrientation;
-import org.jfree.data.category.DefaultCategoryDataset;
+import org.jfree.chart.title.TextTitle;
 import org.jfree.text.TextBlock;
 import org.jfree.ui.RectangleEdge;
 import org.jfree.ui.RectangleInsets;
 
+import controller.Messmetriken;
 import datenaufnahme.Messreihe;
 
 /**
  * Diese Klasse erzeugt ein Saeulendiagramm. Sie fungiert selbst nur als
  * Wrapper. Das Diagram kann mit getChart() abgerufen werden.
+ *
+ * Im Stapelbetrieb (Bildrate groesser 0) werden neue Punkte zunaechst
+ * gepuffert und hoechstens einmal pro Bild gesammelt ins Dataset uebernommen,
+ * sodass das Diagramm nur einmal pro Bild neu gezeichnet wird.
+ *
+ * Im Vergleichsmodus werden beliebig viele Datenreihen nicht einzeln, sondern
+ * pro Fahrstufe als Minimum, Median und Maximum dargestellt. Einzelne
+ * Datenreihen koennen bei Bedarf zusaetzlich hervorgehoben werden.
+ *
+ * Meldet der Plotter Ueberlast, wird ein Hinweis unter dem Titel angezeigt
+ * und die Bildrate so weit gesenkt, dass das Zeichnen hoechstens ein Viertel
+ * der Zeit beansprucht.
  * 
  * @author Manuel Eble, Manel Weber
  */
@@ -35,50 +63,59 @@ public class Saeulendiagramm {
 	private int datenreiheNr = -1;
 
 	/**
-	 * Anzahl der im Diagramm dargestellten Fahrstufen
+	 * Den dargestellten Datenreihen zugeordnete Messreihen (waechst bei
+	 * Bedarf)
 	 */
-	private int fahrstufen = 0;
+	private Messreihe[] messreihen = new Messreihe[5];
 
-	/**
-	 * maximale Anzahl an Datenreihen die im Diagramm dargestellt werden koennen
-	 */
-	private final int maxDatenreihen = 5;
+	// Vergleichsmodus -----------------------------------------------
 
 	/**
-	 * Den dargestellten Datenreihen zugeordnete Messreihen
+	 * Datenreihen im Vergleichsmodus: Minimum, Median, Maximum und die
+	 * hervorgehobene Datenreihe
 	 */
-	private Messreihe[] messreihen = new Messreihe[maxDatenreihen];
+	public static final int VERGLEICH_MINIMUM = 0;
+	public static final int VERGLEICH_MEDIAN = 1;
+	public static final int VERGLEICH_MAXIMUM = 2;
+	public static final int VERGLEICH_HERVORGEHOBEN = 3;
 
 	/**
-	 * Chart das von der Klasse verwaltet wird
+	 * Band ueber alle Datenreihen (null = Vergleichsmodus aus)
 	 */
-	private final JFreeChart chart;
+	private Vergleichsband vergleichsband = null;
 
 	/**
-	 * Renderer fuer das Saeulendiagramm
+	 * Im Vergleichsmodus zusaetzlich angezeigte Datenreihe (-1 = keine)
 	 */
-	private SaeulendiagrammRenderer renderer;
+	private int hervorgehobeneDatenreihe = -1;
 
 	/**
-	 * Dataset das angezeigt wird
+	 * Chart das von der Klasse verwaltet wird
 	 */
-	private DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+	private final JFreeChart chart;
 
 	/**
-	 * Vollstaendiges Dataset als Backup bei Bereichseinschraenkungen der
-	 * Anzeige
+	 * Renderer fuer das Saeulendiagramm
 	 */
-	private DefaultCategoryDataset backupDataset = new DefaultCategoryDataset();
+	private SaeulendiagrammRenderer renderer;
 
 	/**
-	 * Die hoechste angezeigte Fahrstufe
+	 * Dataset das angezeigt wird. Es enthaelt alle Werte, Bereichs-
+	 * einschraenkungen der Anzeige werden im Dataset selbst umgesetzt.
 	 */
-	private int obereAnzeigeGrenze = Integer.MAX_VALUE;
+	private final FahrstufenDataset dataset = new FahrstufenDataset();
 
 	/**
-	 * Die niedrigste angezeigte Fahrstufe
+	 * Beschriftungen der Fahrstufen (Index = Fahrstufe +
+	 * Messreihe.MAX_FAHRSTUFE)
 	 */
-	private int untereAnzeigeGrenze = Integer.MIN_VALUE;
+	private static final String[] fahrstufenBeschriftungen = new String[Messreihe.ANZAHL_FAHRSTUFEN];
+	static {
+		for (int i = 0; i < fahrstufenBeschriftungen.length; i++) {
+			fahrstufenBeschriftungen[i] = String.valueOf(i
+					- Messreihe.MAX_FAHRSTUFE);
+		}
+	}
 
 	/**
 	 * Abkuerzung der Einheit der Geschiwndigkeit (Weg/Zeit)
@@ -91,6 +128,88 @@ public class Saeulendiagramm {
 	private final Font titelSchriftart = new Font("Arial", 20, 20);
 	private final Color textFarbe = Color.BLACK;
 
+	// Stapelbetrieb -------------------------------------------------
+
+	/**
+	 * Standardmaessige Anzahl an Aktualisierungen pro Sekunde
+	 */
+	public static final int STANDARD_BILDRATE = 30;
+
+	/**
+	 * Anzahl an Aktualisierungen pro Sekunde im Stapelbetrieb (0 = jeder Punkt
+	 * wird sofort eingetragen)
+	 */
+	private volatile int bildrate = 0;
+
+	/**
+	 * Taktgeber, der die gepufferten Punkte im Event-Dispatch-Thread
+	 * uebernimmt
+	 */
+	private final Timer bildtakt;
+
+	/**
+	 * Gepufferte, noch nicht eingetragene Punkte (Datenreihe, Fahrstufe,
+	 * Geschwindigkeit, Fehler). Zugriff nur mit der stapelSperre.
+	 */
+	private final Object stapelSperre = new Object();
+	private int[] ausstehendeReihen = new int[256];
+	private int[] ausstehendeX = new int[256];
+	private double[] ausstehendeY = new double[256];
+	private double[] ausstehendeFehler = new double[256];
+	private int anzahlAusstehend = 0;
+
+	/**
+	 * Zweiter Satz Arrays, gegen den die gepufferten Punkte beim Eintragen
+	 * getauscht werden, damit der Plotter waehrend des Eintragens und der
+	 * Benachrichtigung des Diagramms weiter puffern kann. Zugriff nur mit der
+	 * eintragSperre.
+	 */
+	private final Object eintragSperre = new Object();
+	private int[] eintragReihen = new int[256];
+	private int[] eintragX = new int[256];
+	private double[] eintragY = new double[256];
+	private double[] eintragFehler = new double[256];
+
+	/**
+	 * Zeitpunkt (System.nanoTime()), zu dem der erste ausstehende Punkt
+	 * gepuffert wurde
+	 */
+	private long stapelbeginn;
+
+	private final Messmetriken metriken = Messmetriken.getMessmetriken();
+
+	/**
+	 * Beginn der laufenden Neuzeichnung (System.nanoTime())
+	 */
+	private long zeichenbeginn;
+
+	/**
+	 * Gleitender Mittelwert der Dauer einer Neuzeichnung (in ns)
+	 */
+	private volatile long zeichendauer = 0;
+
+	// Ueberlast -----------------------------------------------------
+
+	/**
+	 * Anteil der Zeit, den das Zeichnen bei Ueberlast hoechstens beanspruchen
+	 * soll
+	 */
+	private static final double ZEICHENANTEIL = 0.25;
+
+	/**
+	 * Groesster Abstand zweier Bilder bei Ueberlast (in ms)
+	 */
+	private static final int MAX_BILDABSTAND = 500;
+
+	private volatile boolean ueberlast = false;
+
+	private final TextTitle ueberlastHinweis = new TextTitle(
+			"Ueberlast: Anzeige vereinfacht, es gehen keine Messwerte verloren",
+			new Font("Arial", Font.BOLD, 12), Color.RED,
+			TextTitle.DEFAULT_POSITION,
+			TextTitle.DEFAULT_HORIZONTAL_ALIGNMENT,
+			TextTitle.DEFAULT_VERTICAL_ALIGNMENT, TextTitle.DEFAULT_PADDING);
+
 	public Saeulendiagramm() {
 		chart = ChartFactory.createBarChart(
 				"Geschwindigkeit-Fahrstufen-Diagramm", // Graph Titel
@@ -115,6 +234,29 @@ public class Saeulendiagramm {
 		chart.getCategoryPlot().getRangeAxis().setTickLabelPaint(textFarbe);
 		chart.getCategoryPlot().getRangeAxis().setAutoRange(true);
 		chart.getCategoryPlot().setDomainAxis(new SelektiveCategoryAxis());
+		chart.addProgressListener(new ChartProgressListener() {
+			@Override
+			public void chartProgress(ChartProgressEvent event) {
+				if (event.getType() == ChartProgressEvent.DRAWING_STARTED) {
+					zeichenbeginn = System.nanoTime();
+				} else if (event.getType() == ChartProgressEvent.DRAWING_FINISHED) {
+					long dauer = System.nanoTime() - zeichenbeginn;
+					metriken.neuzeichnungErfassen(dauer);
+					long mittel = zeichendauer;
+					zeichendauer = mittel == 0 ? dauer : mittel
+							+ (dauer - mittel) / 8;
+				}
+			}
+		});
+
+		bildtakt = new Timer(0, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				ausstehendePunkteEintragen();
+			}
+		});
+		bildtakt.setRepeats(false);
+		setBildrate(STANDARD_BILDRATE);
 	}
 
 	/**
@@ -145,6 +287,7 @@ public class Saeulendiagramm {
 			TextBlock block = new TextBlock();
 			String label;
 			int divisor = 50; // fuer jede sovielte Fs soll es 1 Label geben
+			int fahrstufen = dataset.getColumnCount();
 
 			if (fahrstufen <= 100) {
 				divisor = 4;
@@ -155,15 +298,17 @@ public class Saeulendiagramm {
 			if (fahrstufen <= 20) {
 				divisor = 1; // bis zu 30 werden vollstaendig angezeigt
 			}
-			int fahrstufe = Integer.parseInt(category.toString());
+			int fahrstufe = ((Integer) category).intValue();
 			if (fahrstufe % divisor == 0) {
-				label = category.toString();
+				label = fahrstufenBeschriftungen[fahrstufe
+						+ Messreihe.MAX_FAHRSTUFE];
 			} else {
 				label = "";
 				// gaengige Fahrstufen trotzdem anzeigen
 				for (int fs : gaengigeFahrstufen) {
 					if ((fahrstufe == fs) || (fahrstufe == -fs)) {
-						label = category.toString();
+						label = fahrstufenBeschriftungen[fahrstufe
+								+ Messreihe.MAX_FAHRSTUFE];
 					}
 				}
 			}
@@ -174,30 +319,308 @@ public class Saeulendiagramm {
 	}
 
 	/**
-	 * Erzeugt eine neue Saeule im Diagramm
+	 * Erzeugt eine neue Saeule im Diagramm. Im Stapelbetrieb wird der Punkt
+	 * nur gepuffert und mit dem naechsten Bild eingetragen.
 	 * 
 	 * @param xWert
 	 * @param yWert
 	 */
 	public void punktAnhaengen(int xWert, double yWert) {
-		fahrstufen++;
-		backupDataset.addValue(yWert, String.valueOf(datenreiheNr + 1),
-				String.valueOf(xWert));
-		if (xWert <= obereAnzeigeGrenze && xWert >= untereAnzeigeGrenze) {
-			dataset.addValue(yWert, String.valueOf(datenreiheNr + 1),
-					String.valueOf(xWert));
+		punktAnhaengen(xWert, yWert, Double.NaN);
+	}
+
+	/**
+	 * Erzeugt eine neue Saeule mit Fehlerbalken im Diagramm
+	 * 
+	 * @param xWert
+	 * @param yWert
+	 * @param fehler
+	 *            halbe Laenge des Fehlerbalkens (NaN = kein Fehlerbalken)
+	 */
+	public void punktAnhaengen(int xWert, double yWert, double fehler) {
+		int bildrate = this.bildrate;
+		if (bildrate <= 0) {
+			punktEintragen(datenreiheNr, xWert, yWert, fehler);
+			return;
+		}
+		synchronized (stapelSperre) {
+			if (anzahlAusstehend == ausstehendeX.length) {
+				int laenge = 2 * anzahlAusstehend;
+				ausstehendeReihen = Arrays.copyOf(ausstehendeReihen, laenge);
+				ausstehendeX = Arrays.copyOf(ausstehendeX, laenge);
+				ausstehendeY = Arrays.copyOf(ausstehendeY, laenge);
+				ausstehendeFehler = Arrays.copyOf(ausstehendeFehler, laenge);
+			}
+			ausstehendeReihen[anzahlAusstehend] = datenreiheNr;
+			ausstehendeX[anzahlAusstehend] = xWert;
+			ausstehendeY[anzahlAusstehend] = yWert;
+			ausstehendeFehler[anzahlAusstehend] = fehler;
+			if (anzahlAusstehend++ == 0) {
+				stapelbeginn = System.nanoTime();
+				bildtakt.setInitialDelay(bildabstand(bildrate));
+				bildtakt.restart(); // erster Punkt dieses Bildes
+			}
+		}
+	}
+
+	/**
+	 * Traegt einen Punkt ins Dataset ein. Im Vergleichsmodus wird statt
+	 * dessen das Band der Fahrstufe aktualisiert.
+	 */
+	private void punktEintragen(int reihe, int xWert, double yWert,
+			double fehler) {
+		if (vergleichsband == null) {
+			dataset.setWert(reihe, xWert, yWert, fehler);
+			return;
+		}
+		vergleichsband.setWert(reihe, xWert, yWert);
+		dataset.setWert(VERGLEICH_MINIMUM, xWert,
+				vergleichsband.getMinimum(xWert));
+		dataset.setWert(VERGLEICH_MEDIAN, xWert,
+				vergleichsband.getMedian(xWert));
+		dataset.setWert(VERGLEICH_MAXIMUM, xWert,
+				vergleichsband.getMaximum(xWert));
+		if (reihe == hervorgehobeneDatenreihe) {
+			dataset.setWert(VERGLEICH_HERVORGEHOBEN, xWert, yWert, fehler);
+		}
+	}
+
+	/**
+	 * Uebernimmt alle gepufferten Punkte ins Dataset. Das Dataset
+	 * benachrichtigt das Diagramm dabei nur einmal am Ende. Die stapelSperre
+	 * wird nur zum Tauschen der Arrays gehalten, nicht beim Eintragen.
+	 */
+	private void ausstehendePunkteEintragen() {
+		synchronized (eintragSperre) {
+			int anzahl;
+			synchronized (stapelSperre) {
+				anzahl = anzahlAusstehend;
+				if (anzahl == 0) {
+					return;
+				}
+				metriken.stapelverzoegerungErfassen(System.nanoTime()
+						- stapelbeginn);
+				int[] reihen = eintragReihen;
+				eintragReihen = ausstehendeReihen;
+				ausstehendeReihen = reihen;
+				int[] x = eintragX;
+				eintragX = ausstehendeX;
+				ausstehendeX = x;
+				double[] y = eintragY;
+				eintragY = ausstehendeY;
+				ausstehendeY = y;
+				double[] fehler = eintragFehler;
+				eintragFehler = ausstehendeFehler;
+				ausstehendeFehler = fehler;
+				anzahlAusstehend = 0;
+			}
+			dataset.setNotify(false);
+			try {
+				for (int i = 0; i < anzahl; i++) {
+					punktEintragen(eintragReihen[i], eintragX[i], eintragY[i],
+							eintragFehler[i]);
+				}
+			} finally {
+				dataset.setNotify(true);
+			}
 		}
 	}
 
 	/**
-	 * Leert das Saeulendiagramm
+	 * @param bildrate
+	 *            Bilder pro Sekunde (groesser 0)
+	 * @return Abstand bis zum naechsten Bild in ms. Bei Ueberlast wird er so
+	 *         gewaehlt, dass das Zeichnen hoechstens den ZEICHENANTEIL der
+	 *         Zeit beansprucht.
+	 */
+	private int bildabstand(int bildrate) {
+		int abstand = 1000 / bildrate;
+		if (ueberlast) {
+			int angepasst = (int) (zeichendauer / 1e6 / ZEICHENANTEIL);
+			abstand = Math.min(Math.max(abstand, angepasst), MAX_BILDABSTAND);
+		}
+		return abstand;
+	}
+
+	/**
+	 * @param jetzt
+	 *            System.nanoTime()
+	 * @return Zeit (in ns), die der aelteste gepufferte Punkt schon auf den
+	 *         Eintrag ins Dataset wartet
+	 */
+	public long getStapelalter(long jetzt) {
+		synchronized (stapelSperre) {
+			return anzahlAusstehend == 0 ? 0 : jetzt - stapelbeginn;
+		}
+	}
+
+	/**
+	 * Schaltet den Ueberlastbetrieb ein oder aus (aus einem beliebigen
+	 * Thread). Bei Ueberlast wird die Bildrate an die gemessene Zeichendauer
+	 * angepasst und ein Hinweis angezeigt.
+	 * 
+	 * @param ueberlast
+	 */
+	public void setUeberlast(final boolean ueberlast) {
+		this.ueberlast = ueberlast;
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (ueberlast) {
+					chart.addSubtitle(ueberlastHinweis);
+				} else {
+					chart.removeSubtitle(ueberlastHinweis);
+				}
+			}
+		});
+	}
+
+	public boolean isUeberlast() {
+		return ueberlast;
+	}
+
+	/**
+	 * Legt fest, wie oft gepufferte Punkte pro Sekunde ins Diagramm
+	 * uebernommen werden. Bei 0 wird jeder Punkt sofort eingetragen.
+	 * 
+	 * @param bildrate
+	 *            Bilder pro Sekunde
+	 */
+	public void setBildrate(int bildrate) {
+		if (bildrate > 0) {
+			bildtakt.setInitialDelay(1000 / bildrate);
+		} else {
+			bildtakt.stop();
+			ausstehendePunkteEintragen();
+		}
+		this.bildrate = bildrate;
+	}
+
+	/**
+	 * Leert das Saeulendiagramm und entfernt alle Datenreihen
 	 */
 	public void leeren() {
-		dataset.clear();
-		backupDataset.clear();
+		synchronized (eintragSperre) {
+			synchronized (stapelSperre) {
+				anzahlAusstehend = 0;
+			}
+			dataset.clear();
+		}
+		if (vergleichsband != null) {
+			vergleichsband.leeren();
+		}
+		hervorgehobeneDatenreihe = -1;
+		datenreiheNr = -1;
+		Arrays.fill(messreihen, null);
 		setWarnung(false);
 	}
 
+	/**
+	 * Schaltet den Vergleichsmodus ein oder aus. Das Diagramm wird dabei
+	 * geleert.
+	 * 
+	 * @param vergleichsmodus
+	 */
+	public void setVergleichsmodus(boolean vergleichsmodus) {
+		vergleichsband = vergleichsmodus ? new Vergleichsband() : null;
+		leeren();
+		renderer.setShadowVisible(!vergleichsmodus);
+		renderer.tooltipsVerwerfen();
+	}
+
+	/**
+	 * Zeigt im Vergleichsmodus eine einzelne Datenreihe zusaetzlich zum Band
+	 * an
+	 * 
+	 * @param datenreihe
+	 *            Nummer der Datenreihe (-1 = keine)
+	 */
+	public void setHervorgehobeneDatenreihe(int datenreihe) {
+		if (vergleichsband == null) {
+			return;
+		}
+		ausstehendePunkteEintragen();
+		hervorgehobeneDatenreihe = datenreihe;
+		dataset.setNotify(false);
+		try {
+			dataset.reihenKuerzen(VERGLEICH_HERVORGEHOBEN);
+			if (datenreihe >= 0) {
+				for (int fs = -Messreihe.MAX_FAHRSTUFE; fs <= Messreihe.MAX_FAHRSTUFE; fs++) {
+					double wert = vergleichsband.getWert(datenreihe, fs);
+					if (!Double.isNaN(wert)) {
+						dataset.setWert(VERGLEICH_HERVORGEHOBEN, fs, wert);
+					}
+				}
+			}
+		} finally {
+			dataset.setNotify(true);
+		}
+	}
+
+	/**
+	 * Ergaenzt das Kontextmenue des Panels, das dieses Diagramm anzeigt, um
+	 * den Vergleichsmodus und die Auswahl der hervorgehobenen Datenreihe, z.B.
+	 * mit kontextmenueErweitern(chartPanel.getPopupMenu()). Beide Eintraege
+	 * werden beim Oeffnen des Menues an den Zustand des Diagramms angepasst.
+	 * Nur im Event-Dispatch-Thread aufrufen.
+	 * 
+	 * @param menue
+	 */
+	public void kontextmenueErweitern(JPopupMenu menue) {
+		final JCheckBoxMenuItem vergleich = new JCheckBoxMenuItem(
+				"Vergleichsmodus (leert das Diagramm)");
+		vergleich.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				setVergleichsmodus(vergleich.isSelected());
+			}
+		});
+		final JMenu hervorheben = new JMenu("Datenreihe hervorheben");
+		menue.addSeparator();
+		menue.add(vergleich);
+		menue.add(hervorheben);
+		menue.addPopupMenuListener(new PopupMenuListener() {
+			@Override
+			public void popupMenuWillBecomeVisible(PopupMenuEvent e) {
+				vergleich.setSelected(isVergleichsmodus());
+				datenreihenauswahlFuellen(hervorheben);
+			}
+
+			@Override
+			public void popupMenuWillBecomeInvisible(PopupMenuEvent e) {
+			}
+
+			@Override
+			public void popupMenuCanceled(PopupMenuEvent e) {
+			}
+		});
+	}
+
+	/**
+	 * Fuellt das Untermenue zur Auswahl der hervorgehobenen Datenreihe mit
+	 * den Datenreihen des Diagramms
+	 */
+	private void datenreihenauswahlFuellen(JMenu menue) {
+		menue.removeAll();
+		menue.setEnabled(isVergleichsmodus() && datenreiheNr >= 0);
+		ButtonGroup gruppe = new ButtonGroup();
+		for (int i = -1; i <= datenreiheNr; i++) {
+			final int datenreihe = i;
+			JRadioButtonMenuItem eintrag = new JRadioButtonMenuItem(
+					i < 0 ? "keine" : "Datenreihe " + i + ": "
+							+ messreihen[i].getLokname(),
+					i == hervorgehobeneDatenreihe);
+			eintrag.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					setHervorgehobeneDatenreihe(datenreihe);
+				}
+			});
+			gruppe.add(eintrag);
+			menue.add(eintrag);
+		}
+	}
+
 	/**
 	 * Eroeffnet eine neue Datenreihe an die die Werte bei Aufruf von
 	 * punktHinzufuegen() angehaengt werden. Schatten werden bei mehr als einer
@@ -205,6 +628,9 @@ public class Saeulendiagramm {
 	 */
 	public void naechteDatenreihe(Messreihe messreihe) {
 		datenreiheNr++;
+		if (datenreiheNr == messreihen.length) {
+			messreihen = Arrays.copyOf(messreihen, 2 * messreihen.length);
+		}
 		messreihen[datenreiheNr] = messreihe;
 		if (datenreiheNr > 0) {
 			renderer.setShadowVisible(false);
@@ -241,6 +667,7 @@ public class Saeulendiagramm {
 		this.getChart().getCategoryPlot().getDomainAxis().setLabel("Fahrstufe");
 		this.getChart().getCategoryPlot().getRangeAxis()
 				.setLabel("Geschwindigkeit in " + geschwindigkeitsEinheit);
+		renderer.tooltipsVerwerfen();
 	}
 
 	/**
@@ -256,28 +683,12 @@ public class Saeulendiagramm {
 	public void fahrstufenBereichEinschraenken(boolean isObereGrenze,
 			int fahrstufe) {
 		if (isObereGrenze) {
-			obereAnzeigeGrenze = fahrstufe;
+			dataset.setAnzeigeBereich(dataset.getUntereAnzeigeGrenze(),
+					fahrstufe);
 		} else {
-			untereAnzeigeGrenze = fahrstufe;
+			dataset.setAnzeigeBereich(fahrstufe,
+					dataset.getObereAnzeigeGrenze());
 		}
-		DefaultCategoryDataset angezeigtesDataset = new DefaultCategoryDataset();
-		for (int s = 0; s < backupDataset.getRowCount(); s++) {
-			for (int i = 0; i < backupDataset.getColumnCount(); i++) {
-				double wert = 0;
-				try {
-					wert = backupDataset.getValue(s, i).doubleValue();
-				} catch (Exception e) {
-				}
-				String fs = (String) backupDataset.getColumnKey(i);
-				if (Integer.parseInt(fs) <= obereAnzeigeGrenze
-						&& Integer.parseInt(fs) >= untereAnzeigeGrenze) {
-					angezeigtesDataset.addValue(wert, String.valueOf(s),
-							String.valueOf(fs));
-				}
-			}
-		}
-		dataset = angezeigtesDataset;
-		this.getChart().getCategoryPlot().setDataset(dataset);
 	}
 
 	/**
@@ -285,10 +696,8 @@ public class Saeulendiagramm {
 	 * fahrstufenBereichEinschraenken) auf
 	 */
 	public void bereichseinschraenkungAufheben() {
-		obereAnzeigeGrenze = Integer.MAX_VALUE;
-		untereAnzeigeGrenze = Integer.MIN_VALUE;
-		dataset = backupDataset;
-		this.getChart().getCategoryPlot().setDataset(dataset);
+		dataset.setAnzeigeBereich(-Messreihe.MAX_FAHRSTUFE,
+				Messreihe.MAX_FAHRSTUFE);
 	}
 
 	// Getter
@@ -297,6 +706,10 @@ public class Saeulendiagramm {
 		return chart;
 	}
 
+	public FahrstufenDataset getDataset() {
+		return dataset;
+	}
+
 	public Messreihe[] getMessreihen() {
 		return messreihen;
 	}
@@ -305,6 +718,21 @@ public class Saeulendiagramm {
 		return datenreiheNr;
 	}
 
+	public boolean isVergleichsmodus() {
+		return vergleichsband != null;
+	}
+
+	/**
+	 * @return Band ueber alle Datenreihen im Vergleichsmodus, sonst null
+	 */
+	public Vergleichsband getVergleichsband() {
+		return vergleichsband;
+	}
+
+	public int getHervorgehobeneDatenreihe() {
+		return hervorgehobeneDatenreihe;
+	}
+
 	public String getGeschwindigkeitsEinheit() {
 		return geschwindigkeitsEinheit;
 	}
@@ -1,38 +1,62 @@
 package datenverarbeitung;
 
+import java.awt.Color;
+import java.awt.Paint;
+import java.text.DateFormat;
+import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.Date;
 
 import org.jfree.chart.labels.CategoryToolTipGenerator;
 import org.jfree.chart.labels.StandardCategoryToolTipGenerator;
-import org.jfree.chart.renderer.category.BarRenderer;
 import org.jfree.chart.renderer.category.StandardBarPainter;
+import org.jfree.chart.renderer.category.StatisticalBarRenderer;
 import org.jfree.data.category.CategoryDataset;
+import org.jfree.data.statistics.StatisticalCategoryDataset;
 
 import controller.Einstellungen;
 import datenaufnahme.Messreihe;
 
 /**
  * Definiert wie die Saeulendiagramme gerendert werden sollen. Farben werden aus
- * den Einstellungen geladen.
+ * den Einstellungen geladen. Liegt fuer eine Saeule ein Konfidenzintervall
+ * vor, wird es als Fehlerbalken gezeichnet.
+ *
+ * Datenreihen ueber die einstellbaren Farben hinaus erhalten erzeugte Farben,
+ * deren Farbtoene sich um den goldenen Winkel unterscheiden. Im
+ * Vergleichsmodus werden Minimum und Maximum grau gezeichnet.
  * 
  * @author Manuel Weber
  */
-public class SaeulendiagrammRenderer extends BarRenderer {
+public class SaeulendiagrammRenderer extends StatisticalBarRenderer {
 
 	private static final long serialVersionUID = -3795293286984371644L;
 
 	/**
-	 * Maximale Anzahl an Kurven
+	 * Anzahl an Kurven, deren Farben in den Einstellungen festgelegt werden
 	 */
 	public final int maxKurven = 5;
 
+	/**
+	 * Abstand der Farbtoene erzeugter Farben (goldener Winkel)
+	 */
+	private static final float FARBTONABSTAND = 0.381966f;
+
 	/**
 	 * Diagramm das genrendert werden soll
 	 */
 	private final Saeulendiagramm diagramm;
 
+	/**
+	 * Tooltipgenerator mit Zwischenspeicher
+	 */
+	private final SaeulenTooltipGenerator tooltipGenerator;
+
 	public SaeulendiagrammRenderer(Saeulendiagramm diagramm) {
 		this.diagramm = diagramm;
+		tooltipGenerator = new SaeulenTooltipGenerator();
+		setBaseToolTipGenerator((CategoryToolTipGenerator) tooltipGenerator);
+		setErrorIndicatorPaint(Color.DARK_GRAY);
 		for (int i = 0; i < maxKurven; i++) {
 			// Farben
 			setSeriesPaint(i, Einstellungen.getEinstellungen()
@@ -40,67 +64,318 @@ public class SaeulendiagrammRenderer extends BarRenderer {
 			// Breite
 			setMaximumBarWidth(.20);
 			setBarPainter(new StandardBarPainter());
-			// Tooltips
-			setBaseToolTipGenerator((CategoryToolTipGenerator) new SaeulenTooltipGenerator());
 		}
 	}
 
+	/**
+	 * Liefert die Farbe einer Datenreihe. Fehlt sie, wird sie erzeugt.
+	 */
+	@Override
+	public Paint lookupSeriesPaint(int series) {
+		if (diagramm.isVergleichsmodus()) {
+			switch (series) {
+			case Saeulendiagramm.VERGLEICH_MEDIAN:
+				return getSeriesPaint(0);
+			case Saeulendiagramm.VERGLEICH_HERVORGEHOBEN:
+				return getSeriesPaint(1);
+			default:
+				return Color.LIGHT_GRAY;
+			}
+		}
+		Paint farbe = getSeriesPaint(series);
+		if (farbe == null) {
+			farbe = Color.getHSBColor((series * FARBTONABSTAND) % 1f, 0.8f,
+					0.85f);
+			setSeriesPaint(series, farbe, false);
+		}
+		return farbe;
+	}
+
+	/**
+	 * Verwirft alle zwischengespeicherten Tooltips, z.B. nachdem sich die
+	 * Einheiten oder die Datenreihen des Diagramms geaendert haben
+	 */
+	public void tooltipsVerwerfen() {
+		tooltipGenerator.verwerfen();
+	}
+
 	/**
 	 * Ein dynamischer TooltipGenerator, der die Metadaten der jeweiligen
 	 * Messreihen in den Tooltip schreibt.
+	 *
+	 * Fertige Tooltips werden pro Datenreihe und Fahrstufe zwischengespeichert,
+	 * der Metadatenblock einer Messreihe wird nur einmal pro Datenreihe
+	 * erzeugt. Zu jedem Tooltip wird der Stand der Saeule gemerkt (Wert,
+	 * Konfidenzintervall und Anzahl der Umdrehungen bzw. Messreihen), aus dem
+	 * er erzeugt wurde; weicht das Dataset davon ab, wird nur dieser Tooltip
+	 * neu erzeugt. Eine Datenreihe wird verworfen, wenn ihr eine andere
+	 * Messreihe zugeordnet wird, der ganze Zwischenspeicher nur bei einer
+	 * neuen Zeiteinheit oder ueber tooltipsVerwerfen().
 	 */
 	private class SaeulenTooltipGenerator extends
 			StandardCategoryToolTipGenerator {
 
 		private static final long serialVersionUID = -4502845754090482422L;
 
+		/**
+		 * Eigene Kopie des Zahlenformats (DecimalFormat ist nicht threadsicher)
+		 */
+		private final NumberFormat zahlenformat = (NumberFormat) Einstellungen.zahlenformat
+				.clone();
+
+		private final DateFormat datumsformat = DateFormat
+				.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM);
+
+		/**
+		 * Tooltips pro Datenreihe (Index = Fahrstufe + Messreihe.MAX_FAHRSTUFE)
+		 */
+		private String[][] tooltips = new String[0][];
+
+		/**
+		 * Stand der Saeulen, aus dem die Tooltips erzeugt wurden (gleicher
+		 * Index wie tooltips)
+		 */
+		private double[][] werte = new double[0][];
+		private double[][] intervalle = new double[0][];
+		private long[][] kennungen = new long[0][];
+		private long[][] messdauern = new long[0][];
+
+		/**
+		 * Messreihen, aus denen die Tooltips einer Datenreihe erzeugt wurden
+		 * (null im Vergleichsmodus)
+		 */
+		private Messreihe[] tooltipMessreihen = new Messreihe[0];
+
+		/**
+		 * Wahrheitswert, ob die Tooltips mit Metadatenblock erzeugt wurden
+		 * (ab der zweiten Datenreihe)
+		 */
+		private boolean mitMetadaten;
+
+		/**
+		 * Metadatenblock pro Datenreihe
+		 */
+		private String[] metadaten = new String[0];
+
+		/**
+		 * Messreihen und Messdauern, aus denen die Metadatenbloecke erzeugt
+		 * wurden
+		 */
+		private Messreihe[] metadatenMessreihen = new Messreihe[0];
+		private long[] metadatenMessdauern = new long[0];
+
+		/**
+		 * Zeiteinheit, mit der die Tooltips erzeugt wurden
+		 */
+		private Einheit zeiteinheit;
+
+		/**
+		 * Wahrheitswert, ob der Zwischenspeicher vor dem naechsten Zugriff
+		 * geleert werden muss
+		 */
+		private volatile boolean veraltet = true;
+
+		private void verwerfen() {
+			veraltet = true;
+		}
+
 		@Override
 		public String generateToolTip(CategoryDataset dataset, int row,
 				int column) {
+			Einheit aktuelleZeiteinheit = Einstellungen.getEinstellungen()
+					.getZeiteinheit();
+			if (aktuelleZeiteinheit != zeiteinheit) {
+				zeiteinheit = aktuelleZeiteinheit;
+				Arrays.fill(metadaten, null);
+				veraltet = true;
+			}
+			boolean vergleichsmodus = diagramm.isVergleichsmodus();
+			if (!vergleichsmodus
+					&& mitMetadaten != diagramm.getDatenreiheNr() > 0) {
+				mitMetadaten = !mitMetadaten;
+				veraltet = true;
+			}
+			if (veraltet) {
+				veraltet = false;
+				Arrays.fill(tooltips, null);
+			}
+			if (row >= tooltips.length) {
+				int laenge = Math.max(row + 1, 2 * tooltips.length);
+				tooltips = Arrays.copyOf(tooltips, laenge);
+				werte = Arrays.copyOf(werte, laenge);
+				intervalle = Arrays.copyOf(intervalle, laenge);
+				kennungen = Arrays.copyOf(kennungen, laenge);
+				messdauern = Arrays.copyOf(messdauern, laenge);
+				tooltipMessreihen = Arrays.copyOf(tooltipMessreihen, laenge);
+			}
+			Messreihe m = vergleichsmodus ? null : diagramm.getMessreihen()[row];
+			if (tooltips[row] == null || tooltipMessreihen[row] != m) {
+				tooltips[row] = new String[Messreihe.ANZAHL_FAHRSTUFEN];
+				werte[row] = new double[Messreihe.ANZAHL_FAHRSTUFEN];
+				intervalle[row] = new double[Messreihe.ANZAHL_FAHRSTUFEN];
+				kennungen[row] = new long[Messreihe.ANZAHL_FAHRSTUFEN];
+				messdauern[row] = new long[Messreihe.ANZAHL_FAHRSTUFEN];
+				tooltipMessreihen[row] = m;
+			}
 
+			int fahrstufe = ((Integer) dataset.getColumnKey(column)).intValue();
+			int i = fahrstufe + Messreihe.MAX_FAHRSTUFE;
+			Number wert = dataset.getValue(row, column);
+			Number intervall = ((StatisticalCategoryDataset) dataset)
+					.getStdDevValue(row, column);
+			double w = wert != null ? wert.doubleValue() : Double.NaN;
+			double ki = intervall != null ? intervall.doubleValue()
+					: Double.NaN;
+			long kennung;
+			Messreihe metadatenquelle = m;
+			if (vergleichsmodus) {
+				int reihe = metadatenreihe(row, fahrstufe);
+				kennung = (long) diagramm.getVergleichsband().getAnzahl(
+						fahrstufe) << 32 | reihe & 0xFFFFFFFFL;
+				metadatenquelle = reihe >= 0 ? diagramm.getMessreihen()[reihe]
+						: null;
+			} else {
+				kennung = m.getAnzahlUmdrehungen(fahrstufe);
+			}
+			long messdauer = metadatenquelle != null ? metadatenquelle
+					.getMessdauer() : 0;
+			String tooltip = tooltips[row][i];
+			if (tooltip == null || !gleich(werte[row][i], w)
+					|| !gleich(intervalle[row][i], ki)
+					|| kennungen[row][i] != kennung
+					|| messdauern[row][i] != messdauer) {
+				tooltip = tooltipErzeugen(dataset, row, column, fahrstufe);
+				tooltips[row][i] = tooltip;
+				werte[row][i] = w;
+				intervalle[row][i] = ki;
+				kennungen[row][i] = kennung;
+				messdauern[row][i] = messdauer;
+			}
+			return tooltip;
+		}
+
+		/**
+		 * @return Datenreihe, deren Metadaten ein Vergleichstooltip anzeigt
+		 *         (-1 = keine)
+		 */
+		private int metadatenreihe(int row, int fahrstufe) {
+			Vergleichsband band = diagramm.getVergleichsband();
+			if (row == Saeulendiagramm.VERGLEICH_MINIMUM) {
+				return band.getMinimumReihe(fahrstufe);
+			} else if (row == Saeulendiagramm.VERGLEICH_MAXIMUM) {
+				return band.getMaximumReihe(fahrstufe);
+			} else if (row == Saeulendiagramm.VERGLEICH_HERVORGEHOBEN) {
+				return diagramm.getHervorgehobeneDatenreihe();
+			}
+			return -1;
+		}
+
+		private boolean gleich(double a, double b) {
+			return Double.doubleToLongBits(a) == Double.doubleToLongBits(b);
+		}
+
+		private String tooltipErzeugen(CategoryDataset dataset, int row,
+				int column, int fahrstufe) {
+			if (diagramm.isVergleichsmodus()) {
+				return vergleichsTooltipErzeugen(dataset, row, column,
+						fahrstufe);
+			}
 			Messreihe m = diagramm.getMessreihen()[row];
+			String einheit = diagramm.getGeschwindigkeitsEinheit();
+
+			StringBuilder tooltip = new StringBuilder(256);
+			tooltip.append("<html>Fahrstufe ").append(fahrstufe)
+					.append("<br>Geschwindigkeit: ")
+					.append(zahlenformat.format(dataset.getValue(row, column)))
+					.append(' ').append(einheit);
+
+			int u = m.getAnzahlUmdrehungen(fahrstufe);
+			tooltip.append("<br>(aus ").append(u)
+					.append(u == 1 ? " Umdrehung)" : " Umdrehungen)");
+
+			Number ki = ((StatisticalCategoryDataset) dataset).getStdDevValue(
+					row, column);
+			if (ki != null) {
+				tooltip.append("<br>95%-Konfidenzintervall: &plusmn; ")
+						.append(zahlenformat.format(ki)).append(' ')
+						.append(einheit);
+			}
 
-			String lok = "<br>" + m.getLokname();
-			@SuppressWarnings("deprecation")
-			String zeitpunkt = "<br>"
-					+ new Date(m.getStartzeitpunkt()).toLocaleString();
-			String fahrstufen = "<br>Startfahrstufe: " + m.getFahrstufe0()
-					+ "<br>Endfahrstufe: " + m.getFahrstufe1();
-
-			String messdauer = "<br>Messdauer: "
-					+ String.valueOf(Einstellungen.zahlenformat
-							.format(Einstellungen.getEinstellungen()
-									.getZeiteinheit()
-									.konvertieren(m.getMessdauer() / 1000)));
-			messdauer += Einstellungen.getEinstellungen().getZeiteinheit()
-					.toString();
-
-			String messungsInfos = "<br>-----------<br>Datenreihe " + row
-					+ ": <i>" + lok + zeitpunkt + fahrstufen + messdauer +"</i>";
-
-			String u = String.valueOf(m.getAnzahlUmdrehungen(Integer
-					.parseInt((String) dataset.getColumnKey(column))));
-			if(u.equals("1"))
-				u += " Umdrehung";
-			else 
-				u += " Umdrehungen";
-			
-			String saeule = "Fahrstufe "
-					+ dataset.getColumnKey(column)
-					+ "<br>Geschwindigkeit: "
-					+ Einstellungen.zahlenformat
-							.format(dataset.getValue(row, column))
-					+ " " + diagramm.getGeschwindigkeitsEinheit()
-					+ "<br>(aus "
-					+ u
-					+")";
-
-			String tooltip = "<html>" + saeule;
 			if (diagramm.getDatenreiheNr() > 0) {
-				tooltip += messungsInfos;
+				tooltip.append(metadaten(row, m));
 			}
-			tooltip += "</html>";
-			return tooltip;
+			return tooltip.append("</html>").toString();
+		}
+
+		/**
+		 * Tooltip im Vergleichsmodus: Lage im Band und die Datenreihen, die
+		 * Minimum und Maximum liefern
+		 */
+		private String vergleichsTooltipErzeugen(CategoryDataset dataset,
+				int row, int column, int fahrstufe) {
+			Vergleichsband band = diagramm.getVergleichsband();
+			String einheit = diagramm.getGeschwindigkeitsEinheit();
+
+			StringBuilder tooltip = new StringBuilder(256);
+			tooltip.append("<html>Fahrstufe ").append(fahrstufe).append("<br>");
+			switch (row) {
+			case Saeulendiagramm.VERGLEICH_MINIMUM:
+				tooltip.append("Minimum");
+				break;
+			case Saeulendiagramm.VERGLEICH_MEDIAN:
+				tooltip.append("Median");
+				break;
+			case Saeulendiagramm.VERGLEICH_MAXIMUM:
+				tooltip.append("Maximum");
+				break;
+			default:
+				tooltip.append("Datenreihe ").append(
+						diagramm.getHervorgehobeneDatenreihe());
+			}
+			tooltip.append(": ")
+					.append(zahlenformat.format(dataset.getValue(row, column)))
+					.append(' ').append(einheit).append("<br>(aus ")
+					.append(band.getAnzahl(fahrstufe)).append(" Messreihen)");
+
+			int reihe = metadatenreihe(row, fahrstufe);
+			if (reihe >= 0) {
+				tooltip.append(metadaten(reihe, diagramm.getMessreihen()[reihe]));
+			}
+			return tooltip.append("</html>").toString();
+		}
+
+		/**
+		 * @return Metadatenblock der Messreihe einer Datenreihe (wird erzeugt,
+		 *         falls er fehlt oder sich die Messreihe geaendert hat)
+		 */
+		private String metadaten(int row, Messreihe m) {
+			if (row >= metadaten.length) {
+				int laenge = Math.max(row + 1, 2 * metadaten.length);
+				metadaten = Arrays.copyOf(metadaten, laenge);
+				metadatenMessreihen = Arrays.copyOf(metadatenMessreihen, laenge);
+				metadatenMessdauern = Arrays.copyOf(metadatenMessdauern, laenge);
+			}
+			if (metadaten[row] == null || metadatenMessreihen[row] != m
+					|| metadatenMessdauern[row] != m.getMessdauer()) {
+				metadatenMessreihen[row] = m;
+				metadatenMessdauern[row] = m.getMessdauer();
+				metadaten[row] = "<br>-----------<br>Datenreihe "
+						+ row
+						+ ": <i>"
+						+ "<br>"
+						+ m.getLokname()
+						+ "<br>"
+						+ datumsformat.format(new Date(m.getStartzeitpunkt()))
+						+ "<br>Startfahrstufe: "
+						+ m.getFahrstufe0()
+						+ "<br>Endfahrstufe: "
+						+ m.getFahrstufe1()
+						+ "<br>Messdauer: "
+						+ zahlenformat.format(zeiteinheit.konvertieren(m
+								.getMessdauer() / 1000)) + zeiteinheit.toString()
+						+ "</i>";
+			}
+			return metadaten[row];
 		}
 	}
 
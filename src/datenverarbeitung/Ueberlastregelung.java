@@ -0,0 +1,82 @@
+package datenverarbeitung;
+
+/**
+ * Entscheidet, ob die Live-Anzeige einer Messung ueberlastet ist, d.h. ob
+ * Plotter und Diagramm den eintreffenden Impulsen nicht mehr hinterherkommen.
+ * Gemessen werden der Fuellstand des Impulspuffers und die Latenz vom Impuls
+ * bis zur Anzeige.
+ *
+ * Eingeschaltet wird, sobald einer der beiden Werte seine obere Schwelle
+ * ueberschreitet. Ausgeschaltet wird erst, wenn beide Werte eine Weile
+ * unter ihren unteren Schwellen liegen, damit die Anzeige nicht flackert.
+ *
+ * @author Manuel Weber
+ */
+class Ueberlastregelung {
+
+	/**
+	 * Anteil des Impulspuffers, ab dem bzw. bis zu dem Ueberlast herrscht
+	 */
+	static final double EIN_FUELLSTAND = 0.5;
+	static final double AUS_FUELLSTAND = 0.1;
+
+	/**
+	 * Latenz (in ns), ab der bzw. bis zu der Ueberlast herrscht
+	 */
+	static final long EIN_LATENZ = 250000000L;
+	static final long AUS_LATENZ = 100000000L;
+
+	/**
+	 * Dauer (in ns), die beide Werte unter ihren unteren Schwellen liegen
+	 * muessen, bevor die Ueberlast aufgehoben wird
+	 */
+	static final long ERHOLUNGSZEIT = 1000000000L;
+
+	private boolean aktiv = false;
+
+	/**
+	 * Beginn der Phase, in der beide Werte unter ihren unteren Schwellen
+	 * liegen (0 = keine solche Phase)
+	 */
+	private long erholtSeit = 0;
+
+	/**
+	 * Bewertet eine neue Messung von Fuellstand und Latenz
+	 *
+	 * @param fuellstand
+	 *            Anzahl der wartenden Impulse
+	 * @param kapazitaet
+	 *            Kapazitaet des Impulspuffers
+	 * @param latenz
+	 *            vom Impuls bis zur Anzeige (in ns)
+	 * @param jetzt
+	 *            System.nanoTime()
+	 * @return Wahrheitswert, ob sich der Zustand geaendert hat
+	 */
+	boolean pruefen(int fuellstand, int kapazitaet, long latenz, long jetzt) {
+		if (!aktiv) {
+			if (fuellstand > EIN_FUELLSTAND * kapazitaet
+					|| latenz > EIN_LATENZ) {
+				aktiv = true;
+				erholtSeit = 0;
+				return true;
+			}
+			return false;
+		}
+		if (fuellstand > AUS_FUELLSTAND * kapazitaet || latenz > AUS_LATENZ) {
+			erholtSeit = 0;
+			return false;
+		}
+		if (erholtSeit == 0) {
+			erholtSeit = jetzt;
+		} else if (jetzt - erholtSeit >= ERHOLUNGSZEIT) {
+			aktiv = false;
+			return true;
+		}
+		return false;
+	}
+
+	boolean isAktiv() {
+		return aktiv;
+	}
+}
@@ -0,0 +1,199 @@
+package datenverarbeitung;
+
+import java.util.Arrays;
+
+import datenaufnahme.Messreihe;
+
+/**
+ * Fasst beliebig viele Datenreihen (z.B. alle Messreihen einer Lok) pro
+ * Fahrstufe zu einem Band aus Minimum, Median und Maximum zusammen.
+ *
+ * Pro Fahrstufe werden die Werte aller Datenreihen sortiert gehalten. Neue
+ * oder geaenderte Werte werden per binaerer Suche einsortiert, sodass Minimum,
+ * Median und Maximum jederzeit ohne erneutes Sortieren abgelesen werden
+ * koennen. Die Einzelwerte jeder Datenreihe bleiben erhalten und koennen bei
+ * Bedarf abgefragt werden.
+ *
+ * @author Manuel Weber
+ */
+public class Vergleichsband {
+
+	private static final int OFFSET = Messreihe.MAX_FAHRSTUFE;
+
+	/**
+	 * Sortierte Werte pro Fahrstufe (Index = Fahrstufe + MAX_FAHRSTUFE)
+	 */
+	private final double[][] sortiert = new double[Messreihe.ANZAHL_FAHRSTUFEN][];
+
+	/**
+	 * Datenreihe, zu der der jeweilige sortierte Wert gehoert
+	 */
+	private final int[][] herkunft = new int[Messreihe.ANZAHL_FAHRSTUFEN][];
+
+	/**
+	 * Anzahl der Werte pro Fahrstufe
+	 */
+	private final int[] anzahl = new int[Messreihe.ANZAHL_FAHRSTUFEN];
+
+	/**
+	 * Einzelwerte pro Datenreihe und Fahrstufe (NaN = kein Wert)
+	 */
+	private double[][] einzelwerte = new double[0][];
+
+	/**
+	 * Anzahl der Datenreihen
+	 */
+	private int reihen = 0;
+
+	/**
+	 * Setzt den Wert einer Datenreihe fuer eine Fahrstufe. Ein vorheriger
+	 * Wert derselben Datenreihe wird dabei ersetzt.
+	 *
+	 * @param reihe
+	 *            Nummer der Datenreihe (beginnend bei 0)
+	 * @param fahrstufe
+	 * @param wert
+	 */
+	public void setWert(int reihe, int fahrstufe, double wert) {
+		if (reihe >= einzelwerte.length) {
+			einzelwerte = Arrays.copyOf(einzelwerte,
+					Math.max(reihe + 1, 2 * einzelwerte.length));
+		}
+		for (; reihen <= reihe; reihen++) {
+			einzelwerte[reihen] = new double[Messreihe.ANZAHL_FAHRSTUFEN];
+			Arrays.fill(einzelwerte[reihen], Double.NaN);
+		}
+		int i = fahrstufe + OFFSET;
+		double alt = einzelwerte[reihe][i];
+		if (!Double.isNaN(alt)) {
+			entfernen(i, reihe, alt);
+		}
+		einzelwerte[reihe][i] = wert;
+		if (!Double.isNaN(wert)) {
+			einfuegen(i, reihe, wert);
+		}
+	}
+
+	private void einfuegen(int i, int reihe, double wert) {
+		int n = anzahl[i];
+		if (sortiert[i] == null) {
+			sortiert[i] = new double[16];
+			herkunft[i] = new int[16];
+		} else if (n == sortiert[i].length) {
+			sortiert[i] = Arrays.copyOf(sortiert[i], 2 * n);
+			herkunft[i] = Arrays.copyOf(herkunft[i], 2 * n);
+		}
+		int pos = Arrays.binarySearch(sortiert[i], 0, n, wert);
+		if (pos < 0) {
+			pos = -pos - 1;
+		}
+		System.arraycopy(sortiert[i], pos, sortiert[i], pos + 1, n - pos);
+		System.arraycopy(herkunft[i], pos, herkunft[i], pos + 1, n - pos);
+		sortiert[i][pos] = wert;
+		herkunft[i][pos] = reihe;
+		anzahl[i]++;
+	}
+
+	private void entfernen(int i, int reihe, double wert) {
+		int n = anzahl[i];
+		int pos = Arrays.binarySearch(sortiert[i], 0, n, wert);
+		// gleiche Werte liegen nebeneinander, die passende Datenreihe suchen
+		while (pos > 0 && sortiert[i][pos - 1] == wert) {
+			pos--;
+		}
+		while (herkunft[i][pos] != reihe) {
+			pos++;
+		}
+		System.arraycopy(sortiert[i], pos + 1, sortiert[i], pos, n - pos - 1);
+		System.arraycopy(herkunft[i], pos + 1, herkunft[i], pos, n - pos - 1);
+		anzahl[i]--;
+	}
+
+	/**
+	 * Verwirft alle Werte und Datenreihen
+	 */
+	public void leeren() {
+		Arrays.fill(anzahl, 0);
+		einzelwerte = new double[0][];
+		reihen = 0;
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return Anzahl der Datenreihen mit einem Wert fuer die Fahrstufe
+	 */
+	public int getAnzahl(int fahrstufe) {
+		return anzahl[fahrstufe + OFFSET];
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return kleinster Wert oder NaN
+	 */
+	public double getMinimum(int fahrstufe) {
+		int i = fahrstufe + OFFSET;
+		return anzahl[i] > 0 ? sortiert[i][0] : Double.NaN;
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return Median der Werte oder NaN
+	 */
+	public double getMedian(int fahrstufe) {
+		int i = fahrstufe + OFFSET;
+		int n = anzahl[i];
+		if (n == 0) {
+			return Double.NaN;
+		}
+		if (n % 2 == 1) {
+			return sortiert[i][n / 2];
+		}
+		return (sortiert[i][n / 2 - 1] + sortiert[i][n / 2]) / 2;
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return groesster Wert oder NaN
+	 */
+	public double getMaximum(int fahrstufe) {
+		int i = fahrstufe + OFFSET;
+		return anzahl[i] > 0 ? sortiert[i][anzahl[i] - 1] : Double.NaN;
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return Datenreihe mit dem kleinsten Wert oder -1
+	 */
+	public int getMinimumReihe(int fahrstufe) {
+		int i = fahrstufe + OFFSET;
+		return anzahl[i] > 0 ? herkunft[i][0] : -1;
+	}
+
+	/**
+	 * @param fahrstufe
+	 * @return Datenreihe mit dem groessten Wert oder -1
+	 */
+	public int getMaximumReihe(int fahrstufe) {
+		int i = fahrstufe + OFFSET;
+		return anzahl[i] > 0 ? herkunft[i][anzahl[i] - 1] : -1;
+	}
+
+	/**
+	 * @param reihe
+	 * @param fahrstufe
+	 * @return Einzelwert einer Datenreihe oder NaN
+	 */
+	public double getWert(int reihe, int fahrstufe) {
+		if (reihe >= reihen) {
+			return Double.NaN;
+		}
+		return einzelwerte[reihe][fahrstufe + OFFSET];
+	}
+
+	/**
+	 * @return Anzahl der Datenreihen
+	 */
+	public int getAnzahlReihen() {
+		return reihen;
+	}
+}
@@ -0,0 +1,389 @@
+package loksteuerung;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import datenaufnahme.Ablaufsteuerung;
+
+/**
+ * Asynchroner Befehlskanal zur Zentrale. Befehle werden nicht einzeln im
+ * Frage-Antwort-Wechsel gesendet, sondern gesammelt: alle Befehle, die
+ * waehrend des Sendens eines Rahmens auflaufen, gehen gemeinsam im naechsten
+ * Rahmen hinaus. Bis zu MAX_UNTERWEGS Rahmen duerfen gleichzeitig auf ihre
+ * Antwort warten, die Zentrale beantwortet sie in ihrer Reihenfolge.
+ *
+ * Wird fuer eine Lok eine Fahrstufe gesetzt, waehrend ein aelterer
+ * Fahrstufenbefehl derselben Lok noch nicht gesendet ist, wird der alte aus
+ * der Warteschlange entfernt und der neue hinten angestellt. So bleibt die
+ * Reihenfolge gegenueber Befehlen erhalten, die zwischen beiden gegeben
+ * wurden. Das Future des ersetzten Befehls liefert dann false.
+ * Funktionsbefehle werden nie ersetzt.
+ *
+ * Der Kanal arbeitet auf beliebigen Datenstroemen, z.B. denen der seriellen
+ * Schnittstelle oder einer Attrappe der Zentrale fuer Tests. Wie Befehle und
+ * Rahmen kodiert werden, legt das uebergebene Befehlsprotokoll fest; kennt es
+ * nur einen Befehl pro Rahmen, entfaellt das Sammeln, das Ersetzen und das
+ * Senden ohne Warten auf die Antwort bleiben erhalten.
+ *
+ * @author Manuel Weber
+ */
+public class Befehlskanal implements Closeable {
+
+	/**
+	 * Maximale Anzahl an Rahmen, die gleichzeitig auf ihre Antwort warten
+	 */
+	public static final int MAX_UNTERWEGS = 4;
+
+	/**
+	 * Zu sendender Befehl mit seinem Future
+	 */
+	private static final class Befehl {
+
+		private final byte[] daten;
+		private final Quittung quittung = new Quittung();
+
+		private Befehl(byte[] daten) {
+			this.daten = daten;
+		}
+	}
+
+	/**
+	 * Future eines Befehls: true = von der Zentrale bestaetigt, false = durch
+	 * einen neueren Befehl ersetzt
+	 */
+	private static final class Quittung extends FutureTask<Boolean> {
+
+		private static final Callable<Boolean> NICHTS = new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return null;
+			}
+		};
+
+		private Quittung() {
+			super(NICHTS);
+		}
+
+		private void erledigen(boolean ausgefuehrt) {
+			set(ausgefuehrt);
+		}
+
+		private void fehlschlagen(Throwable grund) {
+			setException(grund);
+		}
+	}
+
+	private final InputStream ein;
+	private final OutputStream aus;
+	private final Befehlsprotokoll protokoll;
+
+	private final Object sperre = new Object();
+
+	/**
+	 * Noch nicht gesendete Befehle. Fahrstufenbefehle haben die Lokadresse
+	 * als Schluessel (positiv), alle anderen eine fortlaufende negative
+	 * Nummer. Zugriff nur mit der Sperre.
+	 */
+	private final LinkedHashMap<Integer, Befehl> warteschlange = new LinkedHashMap<Integer, Befehl>();
+
+	private int naechsteNummer = -1;
+
+	/**
+	 * Gesendete Rahmen, die noch auf ihre Antwort warten (Zugriff nur mit
+	 * der Sperre)
+	 */
+	private final ArrayDeque<List<Befehl>> unterwegs = new ArrayDeque<List<Befehl>>();
+
+	private volatile IOException fehler = null;
+
+	private volatile boolean geschlossen = false;
+
+	private final Thread sender;
+	private final Thread empfaenger;
+
+	private long gesendeteRahmen = 0;
+	private long gesendeteBefehle = 0;
+	private long ersetzteBefehle = 0;
+
+	/**
+	 * Startet Sende- und Empfangsthread
+	 *
+	 * @param ein
+	 *            Antworten der Zentrale
+	 * @param aus
+	 *            Rahmen an die Zentrale
+	 * @param protokoll
+	 *            Kodierung der Befehle und Rahmen
+	 */
+	public Befehlskanal(InputStream ein, OutputStream aus,
+			Befehlsprotokoll protokoll) {
+		this.ein = ein;
+		this.aus = aus;
+		this.protokoll = protokoll;
+		sender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				senden();
+			}
+		}, "Befehlskanal senden");
+		empfaenger = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				empfangen();
+			}
+		}, "Befehlskanal empfangen");
+		sender.setDaemon(true);
+		empfaenger.setDaemon(true);
+		sender.start();
+		empfaenger.start();
+	}
+
+	/**
+	 * Setzt die Fahrstufe einer Lok. Ein noch nicht gesendeter
+	 * Fahrstufenbefehl derselben Lok wird ersetzt.
+	 *
+	 * @param adresse
+	 *            Lokadresse
+	 * @param fahrstufe
+	 *            negativ = rueckwaerts
+	 * @return true, sobald die Zentrale den Befehl bestaetigt hat, false, falls
+	 *         er durch einen neueren ersetzt wurde
+	 */
+	public Future<Boolean> fahrstufeSetzen(int adresse, int fahrstufe) {
+		Befehl befehl = new Befehl(protokoll.fahrstufe(adresse, fahrstufe));
+		synchronized (sperre) {
+			pruefen();
+			// nicht put() allein: das behielte den Platz des alten Befehls
+			Befehl alt = warteschlange.remove(adresse);
+			warteschlange.put(adresse, befehl);
+			if (alt != null) {
+				alt.quittung.erledigen(false);
+				ersetzteBefehle++;
+			}
+			sperre.notifyAll();
+		}
+		return befehl.quittung;
+	}
+
+	/**
+	 * Schaltet eine Funktion einer Lok
+	 *
+	 * @param adresse
+	 *            Lokadresse
+	 * @param funktion
+	 *            Nummer der Funktion (0 = Licht)
+	 * @param an
+	 * @return true, sobald die Zentrale den Befehl bestaetigt hat
+	 */
+	public Future<Boolean> funktionSetzen(int adresse, int funktion, boolean an) {
+		Befehl befehl = new Befehl(protokoll.funktion(adresse, funktion, an));
+		synchronized (sperre) {
+			pruefen();
+			warteschlange.put(naechsteNummer--, befehl);
+			sperre.notifyAll();
+		}
+		return befehl.quittung;
+	}
+
+	/**
+	 * Erzeugt einen Empfaenger, der die Fahrstufen einer Ablaufsteuerung an
+	 * eine Lok weitergibt und sie am Ende des Ablaufs anhaelt
+	 *
+	 * @param adresse
+	 *            Lokadresse
+	 * @return Empfaenger fuer Ablaufsteuerung.empfaengerHinzufuegen()
+	 */
+	public Ablaufsteuerung.Empfaenger ablaufempfaenger(final int adresse) {
+		return new Ablaufsteuerung.Empfaenger() {
+			@Override
+			public void fahrstufeSetzen(int fahrstufe) {
+				Befehlskanal.this.fahrstufeSetzen(adresse, fahrstufe);
+			}
+
+			@Override
+			public void aufnahmeAussetzen(boolean ausgesetzt) {
+			}
+
+			@Override
+			public void ablaufBeendet() {
+				Befehlskanal.this.fahrstufeSetzen(adresse, 0);
+			}
+		};
+	}
+
+	/**
+	 * Schliesst den Kanal. Nicht bestaetigte Befehle schlagen fehl.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (sperre) {
+			if (geschlossen) {
+				return;
+			}
+			geschlossen = true;
+			sperre.notifyAll();
+		}
+		try {
+			aus.close();
+		} finally {
+			ein.close();
+			abbrechen(new IOException("Befehlskanal geschlossen"));
+		}
+	}
+
+	/**
+	 * @return Anzahl der bisher gesendeten Rahmen
+	 */
+	public long getGesendeteRahmen() {
+		synchronized (sperre) {
+			return gesendeteRahmen;
+		}
+	}
+
+	/**
+	 * @return Anzahl der bisher gesendeten Befehle
+	 */
+	public long getGesendeteBefehle() {
+		synchronized (sperre) {
+			return gesendeteBefehle;
+		}
+	}
+
+	/**
+	 * @return Anzahl der Fahrstufenbefehle, die vor dem Senden durch neuere
+	 *         ersetzt wurden
+	 */
+	public long getErsetzteBefehle() {
+		synchronized (sperre) {
+			return ersetzteBefehle;
+		}
+	}
+
+	/**
+	 * Wirft den Fehler, an dem der Kanal gescheitert ist (nur mit der
+	 * Sperre)
+	 */
+	private void pruefen() {
+		if (geschlossen) {
+			throw new IllegalStateException("Befehlskanal ist geschlossen");
+		}
+		if (fehler != null) {
+			throw new IllegalStateException("Verbindung zur Zentrale gestoert",
+					fehler);
+		}
+	}
+
+	/**
+	 * Sendet die Befehle der Warteschlange, sobald ein Rahmen frei ist
+	 */
+	private void senden() {
+		List<Befehl> rahmen = new ArrayList<Befehl>();
+		try {
+			while (true) {
+				synchronized (sperre) {
+					while (!geschlossen
+							&& (warteschlange.isEmpty() || unterwegs.size() >= MAX_UNTERWEGS)) {
+						sperre.wait();
+					}
+					if (geschlossen) {
+						return;
+					}
+					// so viele Befehle wie in einen Rahmen passen
+					int laenge = 0;
+					Iterator<Map.Entry<Integer, Befehl>> it = warteschlange
+							.entrySet().iterator();
+					while (it.hasNext()) {
+						Befehl befehl = it.next().getValue();
+						if (!rahmen.isEmpty()
+								&& (rahmen.size() >= protokoll.getMaxBefehle() || laenge
+										+ befehl.daten.length > protokoll
+										.getMaxNutzdaten())) {
+							break;
+						}
+						laenge += befehl.daten.length;
+						rahmen.add(befehl);
+						it.remove();
+					}
+					unterwegs.add(rahmen);
+					gesendeteRahmen++;
+					gesendeteBefehle += rahmen.size();
+				}
+				// ausserhalb der Sperre schreiben, damit weitere Befehle
+				// auflaufen koennen
+				List<byte[]> befehle = new ArrayList<byte[]>(rahmen.size());
+				for (Befehl befehl : rahmen) {
+					befehle.add(befehl.daten);
+				}
+				aus.write(protokoll.rahmen(befehle));
+				aus.flush();
+				rahmen = new ArrayList<Befehl>();
+			}
+		} catch (InterruptedException e) {
+			// beendet
+		} catch (IOException e) {
+			abbrechen(e);
+		}
+	}
+
+	/**
+	 * Ordnet die Antworten der Zentrale den gesendeten Rahmen zu
+	 */
+	private void empfangen() {
+		try {
+			while (true) {
+				boolean ausgefuehrt = protokoll.antwortLesen(ein);
+				List<Befehl> rahmen;
+				synchronized (sperre) {
+					rahmen = unterwegs.poll();
+					sperre.notifyAll(); // Platz fuer den naechsten Rahmen
+				}
+				if (rahmen == null) {
+					throw new IOException("Unerwartete Antwort der Zentrale");
+				}
+				for (Befehl befehl : rahmen) {
+					if (ausgefuehrt) {
+						befehl.quittung.erledigen(true);
+					} else {
+						befehl.quittung.fehlschlagen(new IOException(
+								"Zentrale hat den Befehl abgelehnt"));
+					}
+				}
+			}
+		} catch (IOException e) {
+			abbrechen(e);
+		}
+	}
+
+	/**
+	 * Laesst alle offenen Befehle fehlschlagen
+	 */
+	private void abbrechen(IOException grund) {
+		List<Befehl> offen = new ArrayList<Befehl>();
+		synchronized (sperre) {
+			if (fehler == null && !geschlossen) {
+				fehler = grund;
+			}
+			offen.addAll(warteschlange.values());
+			warteschlange.clear();
+			for (List<Befehl> rahmen : unterwegs) {
+				offen.addAll(rahmen);
+			}
+			unterwegs.clear();
+			sperre.notifyAll();
+		}
+		for (Befehl befehl : offen) {
+			befehl.quittung.fehlschlagen(grund);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package loksteuerung;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Aufbau der Befehle und Rahmen auf der Leitung zur Zentrale. Der
+ * Befehlskanal sammelt, ersetzt und sendet Befehle unabhaengig davon, wie sie
+ * kodiert werden; das uebernimmt eine Implementierung dieser Schnittstelle
+ * fuer das Protokoll der jeweiligen Zentrale.
+ *
+ * Die Zentrale muss jeden Rahmen mit genau einer Antwort quittieren, und zwar
+ * in der Reihenfolge, in der die Rahmen gesendet wurden.
+ *
+ * @author Manuel Weber
+ */
+public interface Befehlsprotokoll {
+
+	/**
+	 * @param adresse
+	 *            Lokadresse
+	 * @param fahrstufe
+	 *            negativ = rueckwaerts
+	 * @return kodierter Befehl
+	 * @throws IllegalArgumentException
+	 *             bei ungueltiger Adresse oder Fahrstufe
+	 */
+	byte[] fahrstufe(int adresse, int fahrstufe);
+
+	/**
+	 * @param adresse
+	 *            Lokadresse
+	 * @param funktion
+	 *            Nummer der Funktion (0 = Licht)
+	 * @param an
+	 * @return kodierter Befehl
+	 * @throws IllegalArgumentException
+	 *             bei ungueltiger Adresse oder Funktion
+	 */
+	byte[] funktion(int adresse, int funktion, boolean an);
+
+	/**
+	 * @return maximale Anzahl Befehle pro Rahmen (1, falls das Protokoll
+	 *         keine zusammengefassten Befehle kennt)
+	 */
+	int getMaxBefehle();
+
+	/**
+	 * @return maximale Gesamtlaenge der Befehle eines Rahmens in Bytes
+	 */
+	int getMaxNutzdaten();
+
+	/**
+	 * Setzt Befehle zu einem Rahmen zusammen
+	 *
+	 * @param befehle
+	 *            hoechstens getMaxBefehle() Befehle mit zusammen hoechstens
+	 *            getMaxNutzdaten() Bytes
+	 * @return Rahmen
+	 */
+	byte[] rahmen(List<byte[]> befehle);
+
+	/**
+	 * @return Rahmen, den die Zentrale ohne Wirkung auf den Betrieb
+	 *         beantwortet (z.B. eine Statusabfrage), zur Erkennung der
+	 *         Zentrale an einem Anschluss
+	 */
+	byte[] anfrage();
+
+	/**
+	 * Liest die Antwort der Zentrale auf einen Rahmen
+	 *
+	 * @param ein
+	 * @return true = ausgefuehrt, false = von der Zentrale abgelehnt
+	 * @throws IOException
+	 *             bei einer ungueltigen Antwort oder Ende des Datenstroms
+	 */
+	boolean antwortLesen(InputStream ein) throws IOException;
+}
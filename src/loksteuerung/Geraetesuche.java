@@ -0,0 +1,393 @@
+package loksteuerung;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import controller.Einstellungen;
+
+/**
+ * Sucht die Anschluesse, an denen Geraete wie RMX-PC-Zentrale und Messstand
+ * haengen (fuer Einstellungen.autoConnect).
+ *
+ * Alle Anschluesse werden gleichzeitig geprueft, jeder in einem eigenen
+ * Thread, und jede Pruefung hat ihr eigenes Zeitlimit. Anschluesse, an denen
+ * kein Geraet antwortet, verzoegern die Suche also hoechstens um ein
+ * Zeitlimit pro Geraet, egal wie viele es davon gibt. Die Suche endet,
+ * sobald alle Geraete gefunden sind.
+ *
+ * Der Anschluss, an dem ein Geraet zuletzt gefunden wurde, wird in den
+ * Einstellungen gemerkt. Er wird als erster gestartet und dort wird zuerst
+ * nach diesem Geraet gefragt. Auf einem Anschluss laufen die Pruefungen der
+ * Geraete nacheinander, damit sich ihre Anfragen nicht vermischen.
+ *
+ * Wie ein Geraet erkannt wird, legt seine Pruefung fest. Sie erhaelt nur den
+ * Namen des Anschlusses und kann daher auch gegen Pseudo-Terminals getestet
+ * werden. Diese Klasse liefert nur die Suche selbst; die Pruefungen fuer
+ * Zentrale (pruefung() mit ihrem Befehlsprotokoll) und Messstand meldet der
+ * Programmteil an, der die Verbindungen aufbaut, und ruft dann autoConnect()
+ * auf.
+ *
+ * @author Manuel Weber
+ */
+public class Geraetesuche {
+
+	/**
+	 * Erkennt ein Geraet an einem Anschluss
+	 */
+	public interface Pruefung {
+
+		/**
+		 * Fragt das Geraet am Anschluss an. Die Methode wird nach Ablauf des
+		 * Zeitlimits unterbrochen und sollte darauf reagieren (z.B. durch
+		 * unterbrechbare Kanaele).
+		 *
+		 * @param anschluss
+		 *            Name der Schnittstelle
+		 * @return Wahrheitswert, ob das Geraet geantwortet hat
+		 * @throws IOException
+		 *             falls der Anschluss nicht geoeffnet werden kann
+		 * @throws InterruptedException
+		 *             bei Ablauf des Zeitlimits
+		 */
+		boolean pruefen(String anschluss) throws IOException,
+				InterruptedException;
+	}
+
+	/**
+	 * Zeitlimit pro Anschluss, falls nichts anderes angegeben ist (in
+	 * Millisekunden)
+	 */
+	public static final long ZEITLIMIT = 1500;
+
+	private static final boolean WINDOWS = System.getProperty("os.name", "")
+			.startsWith("Windows");
+
+	private final Map<String, Pruefung> geraete = new LinkedHashMap<String, Pruefung>();
+
+	private final long zeitlimit;
+
+	private final Einstellungen einstellungen;
+
+	/**
+	 * Suche mit Standard-Zeitlimit, die gefundenen Anschluesse werden in den
+	 * Einstellungen gemerkt
+	 */
+	public Geraetesuche() {
+		this(ZEITLIMIT, TimeUnit.MILLISECONDS, Einstellungen.getEinstellungen());
+	}
+
+	/**
+	 * @param zeitlimit
+	 *            Zeitlimit pro Anschluss
+	 * @param einheit
+	 * @param einstellungen
+	 *            Ablage der zuletzt gefundenen Anschluesse, null = keine
+	 */
+	public Geraetesuche(long zeitlimit, TimeUnit einheit,
+			Einstellungen einstellungen) {
+		this.zeitlimit = einheit.toNanos(zeitlimit);
+		this.einstellungen = einstellungen;
+	}
+
+	/**
+	 * @param name
+	 *            z.B. "Zentrale"
+	 * @param pruefung
+	 */
+	public void geraetHinzufuegen(String name, Pruefung pruefung) {
+		geraete.put(name, pruefung);
+	}
+
+	/**
+	 * Sucht die Geraete, falls in den Einstellungen autoConnect eingeschaltet
+	 * ist (z.B. beim Programmstart)
+	 *
+	 * @return gefundene Anschluesse je Geraet, leer falls autoConnect
+	 *         ausgeschaltet ist
+	 * @throws InterruptedException
+	 */
+	public Map<String, String> autoConnect() throws InterruptedException {
+		if (einstellungen == null || !einstellungen.isAutoConnect()) {
+			return new LinkedHashMap<String, String>();
+		}
+		return suchen();
+	}
+
+	/**
+	 * Sucht alle Geraete an den Anschluessen des Systems
+	 *
+	 * @return gefundene Anschluesse je Geraet (fehlende Geraete sind nicht
+	 *         enthalten)
+	 * @throws InterruptedException
+	 */
+	public Map<String, String> suchen() throws InterruptedException {
+		return suchen(anschluesse());
+	}
+
+	/**
+	 * Sucht alle Geraete an den angegebenen Anschluessen
+	 *
+	 * @param kandidaten
+	 *            Namen der Schnittstellen
+	 * @return gefundene Anschluesse je Geraet (fehlende Geraete sind nicht
+	 *         enthalten)
+	 * @throws InterruptedException
+	 */
+	public Map<String, String> suchen(Collection<String> kandidaten)
+			throws InterruptedException {
+		final Map<String, String> gefunden = new ConcurrentHashMap<String, String>();
+		if (geraete.isEmpty()) {
+			return gefunden;
+		}
+		// zuletzt verwendete Anschluesse zuerst
+		Map<String, String> letzte = new LinkedHashMap<String, String>();
+		LinkedHashSet<String> reihenfolge = new LinkedHashSet<String>();
+		for (String geraet : geraete.keySet()) {
+			String anschluss = einstellungen == null ? null : einstellungen
+					.getAnschluss(geraet);
+			if (anschluss != null && kandidaten.contains(anschluss)) {
+				letzte.put(geraet, anschluss);
+				reihenfolge.add(anschluss);
+			}
+		}
+		reihenfolge.addAll(kandidaten);
+		if (reihenfolge.isEmpty()) {
+			return gefunden;
+		}
+
+		final AtomicInteger nummer = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(
+				reihenfolge.size(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "Geraetesuche-"
+								+ nummer.getAndIncrement());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		final ScheduledExecutorService waechter = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "Geraetesuche Zeitlimit");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		final Object sperre = new Object();
+		// Anzahl beendeter Pruefungen (Zugriff nur mit der Sperre)
+		final int[] fertig = new int[1];
+		try {
+			for (final String anschluss : reihenfolge) {
+				// Geraete, die zuletzt hier gefunden wurden, zuerst fragen
+				final List<String> folge = new ArrayList<String>();
+				for (Map.Entry<String, String> e : letzte.entrySet()) {
+					if (e.getValue().equals(anschluss)) {
+						folge.add(e.getKey());
+					}
+				}
+				for (String geraet : geraete.keySet()) {
+					if (!folge.contains(geraet)) {
+						folge.add(geraet);
+					}
+				}
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							pruefen(anschluss, folge, gefunden, sperre,
+									waechter);
+						} finally {
+							synchronized (sperre) {
+								fertig[0]++;
+								sperre.notifyAll();
+							}
+						}
+					}
+				});
+			}
+			// warten, bis alle gefunden oder alle Pruefungen beendet sind
+			// (jeder Anschluss prueft hoechstens alle Geraete nacheinander)
+			long ende = System.nanoTime() + zeitlimit * geraete.size();
+			synchronized (sperre) {
+				long rest;
+				while (gefunden.size() < geraete.size()
+						&& fertig[0] < reihenfolge.size()
+						&& (rest = ende - System.nanoTime()) > 0) {
+					TimeUnit.NANOSECONDS.timedWait(sperre, rest);
+				}
+			}
+		} finally {
+			waechter.shutdownNow();
+			pool.shutdownNow();
+		}
+		if (einstellungen != null) {
+			for (Map.Entry<String, String> e : gefunden.entrySet()) {
+				einstellungen.setAnschluss(e.getKey(), e.getValue());
+			}
+		}
+		return gefunden;
+	}
+
+	/**
+	 * Fragt an einem Anschluss nacheinander die noch nicht gefundenen Geraete
+	 * an, bis eines antwortet. Jede Pruefung wird nach Ablauf des Zeitlimits
+	 * vom Waechter unterbrochen.
+	 */
+	private void pruefen(String anschluss, List<String> folge,
+			Map<String, String> gefunden, Object sperre,
+			ScheduledExecutorService waechter) {
+		final Thread thread = Thread.currentThread();
+		for (String geraet : folge) {
+			if (gefunden.containsKey(geraet) || waechter.isShutdown()) {
+				continue;
+			}
+			boolean erkannt = false;
+			ScheduledFuture<?> wecker = waechter.schedule(new Runnable() {
+				@Override
+				public void run() {
+					thread.interrupt();
+				}
+			}, zeitlimit, TimeUnit.NANOSECONDS);
+			try {
+				erkannt = geraete.get(geraet).pruefen(anschluss);
+			} catch (IOException e) {
+				// Anschluss nicht verwendbar
+				return;
+			} catch (InterruptedException e) {
+				// Zeitlimit abgelaufen, naechstes Geraet
+			} finally {
+				if (!wecker.cancel(false)) {
+					try {
+						wecker.get();
+					} catch (Exception e) {
+						// Wecker wurde bereits ausgeloest
+					}
+				}
+				Thread.interrupted();
+			}
+			if (erkannt) {
+				synchronized (sperre) {
+					if (!gefunden.containsKey(geraet)) {
+						gefunden.put(geraet, anschluss);
+					}
+					sperre.notifyAll();
+				}
+				// ein Anschluss, ein Geraet
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Oeffnet einen Anschluss als unterbrechbaren Kanal zum Lesen und
+	 * Schreiben. Unter Windows werden Namen wie COM10 ueber den
+	 * Geraetenamensraum (\\.\COM10) geoeffnet, sonst waeren sie relative
+	 * Dateipfade.
+	 *
+	 * @param anschluss
+	 * @return Kanal
+	 * @throws IOException
+	 *             falls der Anschluss nicht existiert oder belegt ist
+	 */
+	public static FileChannel oeffnen(String anschluss) throws IOException {
+		if (WINDOWS) {
+			String pfad = anschluss.startsWith("\\\\") ? anschluss : "\\\\.\\"
+					+ anschluss;
+			// RandomAccessFile reicht den Geraetenamen unveraendert an das
+			// Betriebssystem weiter, sein Kanal ist unterbrechbar
+			return new RandomAccessFile(pfad, "rw").getChannel();
+		}
+		// ohne CREATE: ein fehlender Anschluss wird nicht als Datei angelegt
+		return FileChannel.open(Paths.get(anschluss), StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * @return serielle Schnittstellen des Systems (unter Windows COM1 bis
+	 *         COM16)
+	 */
+	public static List<String> anschluesse() {
+		List<String> anschluesse = new ArrayList<String>();
+		if (WINDOWS) {
+			for (int i = 1; i <= 16; i++) {
+				anschluesse.add("COM" + i);
+			}
+			return anschluesse;
+		}
+		try {
+			DirectoryStream<Path> dev = Files.newDirectoryStream(
+					Paths.get("/dev"), "{ttyS,ttyUSB,ttyACM,cu.}*");
+			try {
+				for (Path pfad : dev) {
+					anschluesse.add(pfad.toString());
+				}
+			} finally {
+				dev.close();
+			}
+		} catch (IOException e) {
+			// keine Schnittstellen
+		}
+		return anschluesse;
+	}
+
+	/**
+	 * Erzeugt eine Pruefung, die eine Zentrale am Protokoll erkennt: sie
+	 * sendet protokoll.anfrage() und erwartet eine gueltige Antwort. Der
+	 * Anschluss wird als unterbrechbarer Kanal geoeffnet, so dass das
+	 * Zeitlimit auch ein blockiertes Lesen beendet. Die
+	 * Schnittstellenparameter (Baudrate usw.) muessen bereits eingestellt
+	 * sein.
+	 *
+	 * @param protokoll
+	 * @return Pruefung fuer geraetHinzufuegen()
+	 */
+	public static Pruefung pruefung(final Befehlsprotokoll protokoll) {
+		return new Pruefung() {
+			@Override
+			public boolean pruefen(String anschluss) throws IOException,
+					InterruptedException {
+				FileChannel kanal = oeffnen(anschluss);
+				try {
+					kanal.write(ByteBuffer.wrap(protokoll.anfrage()));
+					InputStream ein = Channels.newInputStream(kanal);
+					protokoll.antwortLesen(ein);
+					return true;
+				} catch (ClosedByInterruptException e) {
+					throw new InterruptedException("Keine Antwort von "
+							+ anschluss);
+				} catch (IOException e) {
+					// keine gueltige Antwort, also keine Zentrale
+					return false;
+				} finally {
+					kanal.close();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,105 @@
+package datenaufnahme;
+
+import static testhilfe.Pruefen.pruefen;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Prueft, dass der Impulspuffer im laufenden Betrieb keine Objekte erzeugt
+ * und abgewiesene Impulse an der laufenden Nummer erkennbar sind.
+ *
+ * @author Manuel Weber
+ */
+public class ImpulspufferTest {
+
+	private static final int IMPULSE = 1000000;
+
+	/**
+	 * Zaehlt die Impulse und merkt sich Luecken in der Nummerierung
+	 */
+	private static final class Zaehler implements Impulspuffer.Verbraucher {
+
+		private int naechsteNummer = 0;
+		private long anzahl = 0;
+		private long luecken = 0;
+		private long summe = 0;
+
+		@Override
+		public void impuls(int nummer, long zeitstempel, int fahrstufe) {
+			luecken += nummer - naechsteNummer;
+			naechsteNummer = nummer + 1;
+			anzahl++;
+			summe += zeitstempel + fahrstufe;
+		}
+	}
+
+	public static void main(String[] args) {
+		keineAllokationen();
+		abgewieseneImpulse();
+		System.out.println("ImpulspufferTest: ok");
+	}
+
+	private static void keineAllokationen() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory
+				.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			System.out.println("ImpulspufferTest: Allokationsmessung nicht "
+					+ "unterstuetzt, uebersprungen");
+			return;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		long thread = Thread.currentThread().getId();
+		Impulspuffer puffer = new Impulspuffer(1024);
+		Zaehler zaehler = new Zaehler();
+
+		// aufwaermen, bis der JIT-Compiler alles uebersetzt hat
+		for (int runde = 0; runde < 20; runde++) {
+			durchlauf(puffer, zaehler, IMPULSE / 10, runde * (IMPULSE / 10));
+		}
+		long vorher = threads.getThreadAllocatedBytes(thread);
+		durchlauf(puffer, zaehler, IMPULSE, 0);
+		long nachher = threads.getThreadAllocatedBytes(thread);
+		long bytes = nachher - vorher;
+		// die Messung selbst darf einige Bytes belegen, aber nichts pro Impuls
+		pruefen(bytes + " Bytes fuer " + IMPULSE + " Impulse erzeugt",
+				bytes <= 1024);
+		pruefen(zaehler.luecken + " Impulse verloren", zaehler.luecken == 0);
+	}
+
+	/**
+	 * Fuellt den Puffer in Stapeln von 100 Impulsen und arbeitet ihn jeweils
+	 * ab, wie Messung und Plotter im Betrieb
+	 */
+	private static void durchlauf(Impulspuffer puffer, Zaehler zaehler,
+			int impulse, long beginn) {
+		for (int i = 0; i < impulse; i += 100) {
+			for (int j = 0; j < 100; j++) {
+				puffer.anbieten(beginn + i + j, (i >> 10) % 127);
+			}
+			puffer.abarbeiten(zaehler, 4096);
+		}
+	}
+
+	/**
+	 * Ein voller Puffer weist Impulse ab, der Verbraucher sieht die Luecke
+	 */
+	private static void abgewieseneImpulse() {
+		Impulspuffer puffer = new Impulspuffer(16);
+		Zaehler zaehler = new Zaehler();
+		int abgewiesen = 0;
+		for (int i = 0; i < 40; i++) {
+			if (!puffer.anbieten(i, 1)) {
+				abgewiesen++;
+			}
+		}
+		puffer.abarbeiten(zaehler, 100);
+		pruefen("abgewiesen=" + abgewiesen + " anzahl=" + zaehler.anzahl
+				+ " luecken=" + zaehler.luecken, abgewiesen == 24
+				&& zaehler.anzahl == 16 && zaehler.luecken == 0);
+		// der naechste angenommene Impuls traegt die Nummer 40
+		puffer.anbieten(40, 1);
+		puffer.abarbeiten(zaehler, 100);
+		pruefen("Luecke nicht erkannt: " + zaehler.luecken,
+				zaehler.luecken == 24);
+	}
+}
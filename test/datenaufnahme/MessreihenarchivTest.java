@@ -0,0 +1,81 @@
+package datenaufnahme;
+
+import static testhilfe.Pruefen.pruefen;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+/**
+ * Prueft, dass ein beschaedigter oder veralteter Index beim Oeffnen des
+ * Archivs neu erstellt wird, statt zu einem Fehler zu fuehren.
+ *
+ * @author Manuel Weber
+ */
+public class MessreihenarchivTest {
+
+	private static final int KOPF_LAENGE = 16;
+	private static final int SATZ_LAENGE = 128;
+
+	public static void main(String[] args) throws IOException {
+		beschaedigterSatz(40, (short) -5); // Laenge des Loknamens
+		beschaedigterSatz(32, (short) -300); // kleinste Fahrstufe
+		beschaedigterSatz(34, (short) 300); // groesste Fahrstufe
+		ersetzteDatei();
+		System.out.println("MessreihenarchivTest: ok");
+	}
+
+	private static void beschaedigterSatz(int offset, short wert)
+			throws IOException {
+		File verzeichnis = verzeichnis();
+		Messreihenarchiv archiv = new Messreihenarchiv(verzeichnis);
+		archiv.archivieren(messreihe("BR 218", 10));
+		archiv.archivieren(messreihe("V 100", 20));
+		RandomAccessFile index = new RandomAccessFile(new File(verzeichnis,
+				Messreihenarchiv.INDEXDATEI), "rw");
+		try {
+			index.seek(KOPF_LAENGE + SATZ_LAENGE + offset);
+			index.write(wert & 0xFF);
+			index.write(wert >> 8 & 0xFF);
+		} finally {
+			index.close();
+		}
+		archiv = new Messreihenarchiv(verzeichnis);
+		pruefen("Anzahl nach beschaedigtem Satz", archiv.getAnzahl() == 2);
+		List<Messreihenarchiv.Eintrag> treffer = archiv.suchen("v 100");
+		pruefen("Satz neu erstellt", treffer.size() == 1
+				&& treffer.get(0).getMaxFahrstufe() == 20);
+	}
+
+	private static void ersetzteDatei() throws IOException {
+		File verzeichnis = verzeichnis();
+		Messreihenarchiv archiv = new Messreihenarchiv(verzeichnis);
+		File datei = archiv.archivieren(messreihe("BR 218", 10)).getDatei();
+		archiv.archivieren(messreihe("V 100", 20));
+		// gleiche Anzahl Dateien, aber eine davon mit anderem Inhalt
+		MessreihenDatei.schreiben(messreihe("Koef", 30), datei);
+		datei.setLastModified(datei.lastModified() + 2000);
+		archiv = new Messreihenarchiv(verzeichnis);
+		pruefen("Anzahl nach Ersetzen", archiv.getAnzahl() == 2);
+		pruefen("alter Eintrag entfernt", archiv.suchen("br 218").isEmpty());
+		pruefen("neuer Eintrag gefunden", archiv.suchen("koef").size() == 1);
+	}
+
+	private static Messreihe messreihe(String lokname, int fahrstufe) {
+		Messreihe messreihe = new Messreihe(lokname, 0, fahrstufe, 1000,
+				false, 10.0, 1);
+		messreihe.impulsHinzufuegen(1000000L, fahrstufe, true);
+		messreihe.impulsHinzufuegen(2000000L, fahrstufe, true);
+		return messreihe;
+	}
+
+	private static File verzeichnis() throws IOException {
+		File verzeichnis = File.createTempFile("archiv", "");
+		if (!verzeichnis.delete() || !verzeichnis.mkdir()) {
+			throw new IOException(verzeichnis + " kann nicht angelegt werden");
+		}
+		verzeichnis.deleteOnExit();
+		return verzeichnis;
+	}
+}
@@ -0,0 +1,65 @@
+package datenverarbeitung;
+
+import static testhilfe.Pruefen.pruefen;
+
+import java.util.Random;
+
+/**
+ * Prueft, dass die Array-Varianten der Umrechnung bitgleich mit der
+ * Umrechnung einzelner Werte sind, auch an Bereichsgrenzen, die nicht auf
+ * eine Vektorbreite fallen. Mit --add-modules jdk.incubator.vector gestartet
+ * prueft der Test den Pfad ueber die Vector API.
+ *
+ * @author Manuel Weber
+ */
+public class EinheitTest {
+
+	public static void main(String[] args) {
+		Random zufall = new Random(42);
+		double[] weg = new double[1000];
+		double[] zeit = new double[weg.length];
+		for (int i = 0; i < weg.length; i++) {
+			weg[i] = zufall.nextDouble() * 1000;
+			zeit[i] = 0.01 + zufall.nextDouble() * 10;
+		}
+		int[][] bereiche = { { 0, 0 }, { 0, 1 }, { 3, 7 }, { 5, 64 },
+				{ 1, 999 }, { 0, 1000 } };
+		for (int[] bereich : bereiche) {
+			int von = bereich[0];
+			int laenge = bereich[1];
+			double[] ziel = new double[weg.length];
+			Einheit.KILOMETER.konvertieren(weg, ziel, von, laenge);
+			for (int i = 0; i < ziel.length; i++) {
+				double erwartet = i >= von && i < von + laenge ? Einheit.KILOMETER
+						.konvertieren(weg[i]) : 0;
+				pruefen("konvertieren " + von + "+" + laenge + " [" + i + "]",
+						ziel[i] == erwartet);
+			}
+
+			Einheit.KILOMETER.rueckKonvertieren(ziel, ziel, von, laenge);
+			for (int i = von; i < von + laenge; i++) {
+				pruefen("rueckKonvertieren [" + i + "]",
+						ziel[i] == Einheit.KILOMETER
+								.rueckKonvertieren(Einheit.KILOMETER
+										.konvertieren(weg[i])));
+			}
+
+			double[] v = new double[weg.length];
+			Einheit.geschwindigkeitBerechnen(weg, zeit, v, von, laenge,
+					Einheit.METER, Einheit.MINUTE);
+			double faktor = Einheit.MINUTE.getUmrechnungskoeffizient()
+					* (1 / Einheit.METER.getUmrechnungskoeffizient());
+			for (int i = von; i < von + laenge; i++) {
+				pruefen("geschwindigkeitBerechnen [" + i + "]",
+						v[i] == faktor * weg[i] / zeit[i]);
+			}
+		}
+		try {
+			Einheit.METER.konvertieren(weg, weg, 990, 20);
+			throw new AssertionError("Bereich ausserhalb angenommen");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			// erwartet
+		}
+		System.out.println("EinheitTest: ok");
+	}
+}
@@ -0,0 +1,78 @@
+package datenverarbeitung;
+
+import static testhilfe.Pruefen.pruefen;
+
+/**
+ * Prueft die Fahrkurve bei wenigen und kleinen Fahrstufen, wie sie am Anfang
+ * jeder Messung vorliegen.
+ *
+ * @author Manuel Weber
+ */
+public class FahrkurveTest {
+
+	public static void main(String[] args) {
+		wenigeKleineFahrstufen();
+		einzelneFahrstufe();
+		ersetzteWerte();
+		angleichenBeiKleinenFahrstufen();
+		System.out.println("FahrkurveTest: ok");
+	}
+
+	/**
+	 * v = 2 * fs auf den Fahrstufen 1 bis 4 mit kubischem Polynom
+	 */
+	private static void wenigeKleineFahrstufen() {
+		for (int bis = 2; bis <= 6; bis++) {
+			Fahrkurve kurve = new Fahrkurve();
+			for (int fs = 1; fs <= bis; fs++) {
+				kurve.setWert(fs, 2 * fs);
+				kurve.setWert(-fs, 3 * fs);
+			}
+			for (int fs = 1; fs <= bis; fs++) {
+				pruefen("vorwaerts FS " + fs + " von " + bis, 2 * fs,
+						kurve.getGeschwindigkeit(fs));
+				pruefen("rueckwaerts FS " + fs + " von " + bis, 3 * fs,
+						kurve.getGeschwindigkeit(-fs));
+			}
+		}
+	}
+
+	private static void einzelneFahrstufe() {
+		Fahrkurve kurve = new Fahrkurve();
+		kurve.setWert(3, 6);
+		pruefen("einzelner Wert", 6, kurve.getGeschwindigkeit(3));
+	}
+
+	/**
+	 * Mehrfach ersetzte Werte duerfen das Ergebnis nicht verfaelschen
+	 */
+	private static void ersetzteWerte() {
+		Fahrkurve kurve = new Fahrkurve();
+		for (int runde = 0; runde < 50; runde++) {
+			for (int fs = 1; fs <= 4; fs++) {
+				kurve.setWert(fs, runde + fs);
+			}
+		}
+		for (int fs = 1; fs <= 4; fs++) {
+			kurve.setWert(fs, 2 * fs);
+		}
+		for (int fs = 1; fs <= 4; fs++) {
+			pruefen("ersetzt FS " + fs, 2 * fs, kurve.getGeschwindigkeit(fs));
+		}
+	}
+
+	private static void angleichenBeiKleinenFahrstufen() {
+		Fahrkurve referenz = new Fahrkurve();
+		Fahrkurve lok = new Fahrkurve();
+		for (int fs = 1; fs <= 4; fs++) {
+			referenz.setWert(fs, 2 * fs);
+			lok.setWert(fs, 4 * fs);
+		}
+		// die Lok faehrt doppelt so schnell, braucht also die halbe Stufe
+		double[] tabelle = lok.angleichen(referenz, 126, true);
+		for (int stufe = 1; stufe <= 4; stufe++) {
+			pruefen("angeglichen Stufe " + stufe, stufe / 2.0,
+					tabelle[stufe - 1]);
+		}
+	}
+}
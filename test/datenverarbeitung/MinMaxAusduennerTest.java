@@ -0,0 +1,84 @@
+package datenverarbeitung;
+
+import static testhilfe.Pruefen.pruefen;
+
+/**
+ * Prueft den MinMaxAusduenner bei Punkten mit gleichem x-Wert, wie sie bei
+ * stehender Lok oder wiederholten Zeitstempeln entstehen.
+ *
+ * @author Manuel Weber
+ */
+public class MinMaxAusduennerTest {
+
+	private static final int PUNKTE = 100000;
+
+	public static void main(String[] args) {
+		gleichesXAmAnfang(10, 20);
+		gleichesXAmAnfang(200, 1000);
+		allesGleichesX();
+		System.out.println("MinMaxAusduennerTest: ok");
+	}
+
+	/**
+	 * Mehr Punkte mit gleichem x-Wert am Anfang, als es Abschnitte gibt,
+	 * duerfen die Aufteilung der folgenden Kurve nicht verderben
+	 */
+	private static void gleichesXAmAnfang(int zielbreite, int stillstand) {
+		MinMaxAusduenner ohne = new MinMaxAusduenner(zielbreite);
+		MinMaxAusduenner mit = new MinMaxAusduenner(zielbreite);
+		for (int i = 0; i < stillstand; i++) {
+			mit.punktHinzufuegen(0, 0);
+		}
+		for (int i = 1; i <= PUNKTE; i++) {
+			double y = Math.sin(i / 500.0);
+			ohne.punktHinzufuegen(i, y);
+			mit.punktHinzufuegen(i, y);
+		}
+		int erwartet = ohne.getAnzahlPunkte();
+		int anzahl = mit.getAnzahlPunkte();
+		pruefen("Zielbreite " + zielbreite + ": " + anzahl + " statt etwa "
+				+ erwartet + " Punkte", anzahl >= erwartet - 2
+				&& anzahl <= 2 * zielbreite);
+
+		double[] x = new double[anzahl];
+		double[] y = new double[anzahl];
+		mit.punkteKopieren(x, y);
+		double min = 0, max = 0;
+		for (int i = 0; i < anzahl; i++) {
+			pruefen("x aufsteigend", i == 0 || x[i] >= x[i - 1]);
+			min = Math.min(min, y[i]);
+			max = Math.max(max, y[i]);
+		}
+		pruefen("erster Abschnitt", x[0] <= 2.0 * PUNKTE / zielbreite);
+		pruefen("letzter Abschnitt", x[anzahl - 1] >= PUNKTE - 2.0 * PUNKTE
+				/ zielbreite);
+		pruefen("Minimum erhalten", min < -0.999);
+		pruefen("Maximum erhalten", max > 0.999);
+	}
+
+	/**
+	 * Haben alle Punkte denselben x-Wert, bleiben nur Minimum und Maximum
+	 */
+	private static void allesGleichesX() {
+		MinMaxAusduenner ausduenner = new MinMaxAusduenner(10);
+		for (int i = 0; i < 1000; i++) {
+			ausduenner.punktHinzufuegen(5, i % 7);
+		}
+		pruefen("zwei Punkte", ausduenner.getAnzahlPunkte() == 2);
+		double[] x = new double[2];
+		double[] y = new double[2];
+		ausduenner.punkteKopieren(x, y);
+		pruefen("x", 5, x[0]);
+		pruefen("x", 5, x[1]);
+		pruefen("Minimum", 0, Math.min(y[0], y[1]));
+		pruefen("Maximum", 6, Math.max(y[0], y[1]));
+
+		// danach waechst die Kurve normal weiter
+		for (int i = 1; i <= 1000; i++) {
+			ausduenner.punktHinzufuegen(5 + i, i);
+		}
+		int anzahl = ausduenner.getAnzahlPunkte();
+		pruefen(anzahl + " Punkte nach dem Stillstand", anzahl >= 10
+				&& anzahl <= 20);
+	}
+}
@@ -0,0 +1,105 @@
+package datenverarbeitung;
+
+import static testhilfe.Pruefen.pruefen;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import controller.Einstellungen;
+import datenaufnahme.Messreihe;
+import datenaufnahme.Messreihenarchiv;
+
+/**
+ * Prueft, dass die Neuauswertung mit den Markierungen der Messreihe rechnet
+ * und ihre Auswertungsdatei nur bei passender Kalibrierung gelesen wird.
+ *
+ * @author Manuel Weber
+ */
+public class NeuauswertungTest {
+
+	private static final int FAHRSTUFE = 5;
+
+	/**
+	 * Abstand zweier Impulse in Nanosekunden
+	 */
+	private static final long ABSTAND = 10000000L;
+
+	public static void main(String[] args) throws IOException {
+		Einstellungen.Schnappschuss einstellungen = Einstellungen
+				.getEinstellungen().getSchnappschuss();
+		// Messrad mit 4 Markierungen, unabhaengig von der Einstellung
+		Messreihe messreihe = messreihe(einstellungen.getMessradumfang(),
+				einstellungen.getMarkierungen() == 4 ? 2 : 4, 41);
+
+		// wie im Impulsexport: Weg pro Markierung durch Impulsabstand
+		double erwartet = einstellungen.getWegeinheit().konvertieren(
+				messreihe.getMesseinheit())
+				/ einstellungen.getZeiteinheit().konvertieren(ABSTAND / 1e9);
+		FahrstufenStatistik statistik = Neuauswertung.statistik(messreihe,
+				einstellungen);
+		for (int i = 0; i < messreihe.getAnzahlImpulse(); i++) {
+			statistik.impuls(messreihe.getZeitstempel(i),
+					messreihe.getFahrstufe(i));
+		}
+		pruefen("Geschwindigkeit mit Markierungen der Messreihe", erwartet,
+				statistik.getMittelwert(FAHRSTUFE));
+
+		File verzeichnis = verzeichnis();
+		Messreihenarchiv archiv = new Messreihenarchiv(verzeichnis);
+		Messreihenarchiv.Eintrag eintrag = archiv.archivieren(messreihe);
+		Neuauswertung auswertung = new Neuauswertung(
+				Collections.singletonList(eintrag), einstellungen);
+		pruefen("ausgewertet", auswertung.ausfuehren() == 1);
+
+		FahrstufenStatistik gelesen = Neuauswertung.lesen(eintrag.getDatei(),
+				eintrag.laden(), einstellungen);
+		pruefen("Auswertung gelesen", gelesen != null);
+		pruefen("Umdrehungen gelesen", gelesen.getAnzahl(FAHRSTUFE) == statistik
+				.getAnzahl(FAHRSTUFE));
+		pruefen("Mittelwert gelesen", statistik.getMittelwert(FAHRSTUFE),
+				gelesen.getMittelwert(FAHRSTUFE));
+		pruefen("Konfidenzintervall gelesen",
+				statistik.getKonfidenzHalbbreite(FAHRSTUFE),
+				gelesen.getKonfidenzHalbbreite(FAHRSTUFE));
+
+		pruefen("andere Messreihe verworfen", Neuauswertung.lesen(
+				eintrag.getDatei(), messreihe(einstellungen.getMessradumfang(),
+						messreihe.getMarkierungen(), 45), einstellungen) == null);
+
+		File datei = Neuauswertung.auswertungsdatei(eintrag.getDatei());
+		Charset utf8 = Charset.forName("UTF-8");
+		List<String> zeilen = Files.readAllLines(datei.toPath(), utf8);
+		zeilen.set(1, zeilen.get(1).replaceFirst("Messradumfang=[^;]*",
+				"Messradumfang=-1"));
+		Files.write(datei.toPath(), zeilen, utf8);
+		pruefen("andere Kalibrierung verworfen", Neuauswertung.lesen(
+				eintrag.getDatei(), eintrag.laden(), einstellungen) == null);
+		System.out.println("NeuauswertungTest: ok");
+	}
+
+	/**
+	 * @return Messreihe mit gleichmaessigen Impulsen in einer Fahrstufe
+	 */
+	private static Messreihe messreihe(double messradumfang, int markierungen,
+			int impulse) {
+		Messreihe messreihe = new Messreihe("BR 218", FAHRSTUFE, FAHRSTUFE,
+				impulse * ABSTAND, false, messradumfang, markierungen);
+		for (int i = 0; i < impulse; i++) {
+			messreihe.impulsHinzufuegen(i * ABSTAND, FAHRSTUFE, true);
+		}
+		return messreihe;
+	}
+
+	private static File verzeichnis() throws IOException {
+		File verzeichnis = File.createTempFile("archiv", "");
+		if (!verzeichnis.delete() || !verzeichnis.mkdir()) {
+			throw new IOException(verzeichnis + " kann nicht angelegt werden");
+		}
+		verzeichnis.deleteOnExit();
+		return verzeichnis;
+	}
+}
@@ -0,0 +1,59 @@
+package datenverarbeitung;
+
+import static testhilfe.Pruefen.pruefen;
+
+import org.jfree.chart.labels.CategoryToolTipGenerator;
+
+import datenaufnahme.Messreihe;
+
+/**
+ * Prueft, dass eine Aenderung des Datasets nur die Tooltips der geaenderten
+ * Saeulen neu erzeugt.
+ *
+ * @author Manuel Weber
+ */
+public class SaeulendiagrammRendererTest {
+
+	public static void main(String[] args) {
+		Saeulendiagramm diagramm = new Saeulendiagramm();
+		diagramm.setBildrate(0); // Punkte sofort eintragen
+		CategoryToolTipGenerator generator = diagramm.getChart()
+				.getCategoryPlot().getRenderer().getBaseToolTipGenerator();
+		FahrstufenDataset dataset = diagramm.getDataset();
+
+		diagramm.naechteDatenreihe(messreihe("BR 218"));
+		diagramm.punktAnhaengen(5, 10.0);
+		diagramm.punktAnhaengen(6, 20.0);
+		String fuenf = generator.generateToolTip(dataset, 0, spalte(dataset, 5));
+		String sechs = generator.generateToolTip(dataset, 0, spalte(dataset, 6));
+
+		diagramm.punktAnhaengen(5, 12.5);
+		String fuenfNeu = generator.generateToolTip(dataset, 0,
+				spalte(dataset, 5));
+		pruefen("geaenderte Saeule neu erzeugt", !fuenfNeu.equals(fuenf));
+		pruefen("unveraenderte Saeule behalten", generator.generateToolTip(
+				dataset, 0, spalte(dataset, 6)) == sechs);
+
+		diagramm.naechteDatenreihe(messreihe("V 100"));
+		diagramm.punktAnhaengen(6, 30.0);
+		pruefen("Metadaten ab der zweiten Datenreihe", generator
+				.generateToolTip(dataset, 0, spalte(dataset, 6)).contains(
+						"BR 218"));
+
+		diagramm.leeren();
+		diagramm.naechteDatenreihe(messreihe("Koef"));
+		diagramm.punktAnhaengen(6, 20.0);
+		pruefen("neue Messreihe in derselben Datenreihe", !generator
+				.generateToolTip(dataset, 0, spalte(dataset, 6)).contains(
+						"BR 218"));
+		System.out.println("SaeulendiagrammRendererTest: ok");
+	}
+
+	private static int spalte(FahrstufenDataset dataset, int fahrstufe) {
+		return dataset.getColumnIndex(Integer.valueOf(fahrstufe));
+	}
+
+	private static Messreihe messreihe(String lokname) {
+		return new Messreihe(lokname, 0, 10, 1000, false, 10.0, 1);
+	}
+}
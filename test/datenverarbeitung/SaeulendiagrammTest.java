@@ -0,0 +1,86 @@
+package datenverarbeitung;
+
+import static testhilfe.Pruefen.pruefen;
+
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JMenu;
+import javax.swing.JPopupMenu;
+import javax.swing.SwingUtilities;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
+
+import datenaufnahme.Messreihe;
+
+/**
+ * Prueft die Eintraege fuer Vergleichsmodus und hervorgehobene Datenreihe im
+ * Kontextmenue des Saeulendiagramms.
+ *
+ * @author Manuel Weber
+ */
+public class SaeulendiagrammTest {
+
+	public static void main(String[] args) throws Exception {
+		SwingUtilities.invokeAndWait(new Runnable() {
+			@Override
+			public void run() {
+				kontextmenue();
+			}
+		});
+		System.out.println("SaeulendiagrammTest: ok");
+	}
+
+	private static void kontextmenue() {
+		Saeulendiagramm diagramm = new Saeulendiagramm();
+		diagramm.setBildrate(0); // Punkte sofort eintragen
+		JPopupMenu menue = new JPopupMenu();
+		diagramm.kontextmenueErweitern(menue);
+		JCheckBoxMenuItem vergleich = null;
+		JMenu hervorheben = null;
+		for (int i = 0; i < menue.getComponentCount(); i++) {
+			if (menue.getComponent(i) instanceof JCheckBoxMenuItem) {
+				vergleich = (JCheckBoxMenuItem) menue.getComponent(i);
+			} else if (menue.getComponent(i) instanceof JMenu) {
+				hervorheben = (JMenu) menue.getComponent(i);
+			}
+		}
+		pruefen("Eintraege vorhanden", vergleich != null && hervorheben != null);
+
+		oeffnen(menue);
+		pruefen("Auswahl ohne Vergleichsmodus gesperrt",
+				!hervorheben.isEnabled());
+		vergleich.doClick();
+		pruefen("Vergleichsmodus eingeschaltet", diagramm.isVergleichsmodus());
+
+		for (int reihe = 0; reihe < 3; reihe++) {
+			diagramm.naechteDatenreihe(new Messreihe("Lok " + reihe, 0, 10,
+					1000, false, 10.0, 1));
+			diagramm.punktAnhaengen(5, 10.0 + reihe);
+		}
+		oeffnen(menue);
+		pruefen("Auswahl im Vergleichsmodus", hervorheben.isEnabled());
+		pruefen("keine und drei Datenreihen",
+				hervorheben.getItemCount() == 4);
+		hervorheben.getItem(2).doClick(); // Datenreihe 1
+		pruefen("Datenreihe hervorgehoben",
+				diagramm.getHervorgehobeneDatenreihe() == 1);
+		pruefen("Wert der hervorgehobenen Datenreihe", 11.0, diagramm
+				.getDataset().getValue(Saeulendiagramm.VERGLEICH_HERVORGEHOBEN,
+						diagramm.getDataset().getColumnIndex(5))
+				.doubleValue());
+
+		oeffnen(menue);
+		pruefen("Auswahl markiert", hervorheben.getItem(2).isSelected());
+		vergleich.doClick();
+		pruefen("Vergleichsmodus ausgeschaltet", !diagramm.isVergleichsmodus());
+	}
+
+	/**
+	 * Meldet das Oeffnen des Menues wie beim Rechtsklick, ohne es anzuzeigen
+	 */
+	private static void oeffnen(JPopupMenu menue) {
+		PopupMenuEvent ereignis = new PopupMenuEvent(menue);
+		for (PopupMenuListener listener : menue.getPopupMenuListeners()) {
+			listener.popupMenuWillBecomeVisible(ereignis);
+		}
+	}
+}
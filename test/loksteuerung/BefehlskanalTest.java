@@ -0,0 +1,144 @@
+package loksteuerung;
+
+import static testhilfe.Pruefen.pruefen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prueft den Befehlskanal gegen die ZentraleAttrappe.
+ *
+ * @author Manuel Weber
+ */
+public class BefehlskanalTest {
+
+	public static void main(String[] args) throws Exception {
+		ersetzenUndSammeln();
+		reihenfolgeBeimErsetzen();
+		einBefehlProRahmen();
+		schliessen();
+		System.out.println("BefehlskanalTest: ok");
+	}
+
+	/**
+	 * Viele Fahrstufen fuer wenige Loks: nur die letzte je Lok kommt an, die
+	 * ersetzten liefern false, es werden nur wenige Rahmen gesendet
+	 */
+	private static void ersetzenUndSammeln() throws Exception {
+		ZentraleAttrappe zentrale = new ZentraleAttrappe();
+		zentrale.setBearbeitungszeit(20);
+		Befehlskanal kanal = zentrale.verbinden(Integer.MAX_VALUE);
+		List<Future<Boolean>> quittungen = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < 2000; i++) {
+			int adresse = 1 + i % 10;
+			quittungen.add(kanal.fahrstufeSetzen(adresse, i % 2 == 0 ? i % 127
+					: -(i % 127)));
+		}
+		Future<Boolean> licht = kanal.funktionSetzen(3, 0, true);
+		Future<Boolean> letzte = kanal.fahrstufeSetzen(5, -42);
+		pruefen("letzte Fahrstufe bestaetigt",
+				letzte.get(5, TimeUnit.SECONDS));
+		pruefen("Funktion bestaetigt", licht.get(5, TimeUnit.SECONDS));
+		int bestaetigt = 0;
+		for (Future<Boolean> quittung : quittungen) {
+			if (quittung.get(5, TimeUnit.SECONDS)) {
+				bestaetigt++;
+			}
+		}
+		long ersetzt = kanal.getErsetzteBefehle();
+		// die letzte Fahrstufe (nicht in der Liste) ist bestaetigt
+		pruefen("ersetzte liefern false", bestaetigt + 1 + ersetzt == 2001);
+		pruefen("Befehle ersetzt", ersetzt > 1000);
+		pruefen("Rahmen gesammelt", kanal.getGesendeteRahmen() < 50);
+		pruefen("Fahrstufe der Lok", zentrale.getFahrstufe(5) == -42);
+		pruefen("Funktion der Lok", zentrale.isFunktion(3, 0));
+		for (int adresse = 1; adresse <= 10; adresse++) {
+			if (adresse != 5) {
+				int i = 1990 + adresse - 1;
+				int erwartet = i % 2 == 0 ? i % 127 : -(i % 127);
+				pruefen("Fahrstufe Lok " + adresse,
+						zentrale.getFahrstufe(adresse) == erwartet);
+			}
+		}
+		kanal.close();
+	}
+
+	/**
+	 * Ein ersetzter Fahrstufenbefehl darf nicht vor einen Befehl rutschen,
+	 * der nach dem ersetzten, aber vor dem neuen gegeben wurde
+	 */
+	private static void reihenfolgeBeimErsetzen() throws Exception {
+		ZentraleAttrappe zentrale = new ZentraleAttrappe();
+		zentrale.setBearbeitungszeit(100);
+		Befehlskanal kanal = zentrale.verbinden(1);
+		// MAX_UNTERWEGS Rahmen halten den Sender auf, die folgenden Befehle
+		// warten also gemeinsam in der Warteschlange
+		for (int adresse = 1; adresse <= Befehlskanal.MAX_UNTERWEGS; adresse++) {
+			kanal.fahrstufeSetzen(adresse, 1);
+		}
+		Thread.sleep(50);
+		Future<Boolean> ersetzt = kanal.fahrstufeSetzen(5, 10);
+		Future<Boolean> licht = kanal.funktionSetzen(5, 0, true);
+		Future<Boolean> neu = kanal.fahrstufeSetzen(5, 20);
+		pruefen("Funktion bestaetigt", licht.get(5, TimeUnit.SECONDS));
+		pruefen("neue Fahrstufe bestaetigt", neu.get(5, TimeUnit.SECONDS));
+		pruefen("alte Fahrstufe ersetzt", !ersetzt.get(5, TimeUnit.SECONDS));
+		List<String> verlauf = zentrale.getVerlauf();
+		pruefen("Reihenfolge " + verlauf,
+				verlauf.indexOf("L5/0=an") >= 0
+						&& verlauf.indexOf("L5/0=an") < verlauf.indexOf("F5=20"));
+		kanal.close();
+	}
+
+	/**
+	 * Protokoll ohne zusammengefasste Befehle: jeder Rahmen traegt einen
+	 * Befehl, mehrere Rahmen sind gleichzeitig unterwegs
+	 */
+	private static void einBefehlProRahmen() throws Exception {
+		ZentraleAttrappe zentrale = new ZentraleAttrappe();
+		zentrale.setBearbeitungszeit(10);
+		Befehlskanal kanal = zentrale.verbinden(1);
+		List<Future<Boolean>> quittungen = new ArrayList<Future<Boolean>>();
+		long beginn = System.nanoTime();
+		for (int adresse = 1; adresse <= 40; adresse++) {
+			quittungen.add(kanal.fahrstufeSetzen(adresse, adresse));
+		}
+		for (Future<Boolean> quittung : quittungen) {
+			pruefen("bestaetigt", quittung.get(5, TimeUnit.SECONDS));
+		}
+		long dauer = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - beginn);
+		pruefen("ein Befehl pro Rahmen", kanal.getGesendeteRahmen() == 40);
+		pruefen("alle angekommen", zentrale.getBefehle() == 40);
+		// die Attrappe bearbeitet nacheinander, 40 * 10 ms sind die Untergrenze;
+		// im Frage-Antwort-Wechsel kaeme die Uebertragung jedes Mal hinzu
+		pruefen("Dauer " + dauer + " ms", dauer < 2000);
+		kanal.close();
+	}
+
+	/**
+	 * Offene Befehle schlagen beim Schliessen fehl
+	 */
+	private static void schliessen() throws Exception {
+		ZentraleAttrappe zentrale = new ZentraleAttrappe();
+		zentrale.setBearbeitungszeit(2000);
+		Befehlskanal kanal = zentrale.verbinden(Integer.MAX_VALUE);
+		Future<Boolean> offen = kanal.fahrstufeSetzen(7, 10);
+		Thread.sleep(100);
+		kanal.close();
+		try {
+			offen.get(1, TimeUnit.SECONDS);
+			throw new AssertionError("offener Befehl nach close() erledigt");
+		} catch (ExecutionException e) {
+			// erwartet
+		}
+		try {
+			kanal.fahrstufeSetzen(7, 0);
+			throw new AssertionError("Befehl nach close() angenommen");
+		} catch (IllegalStateException e) {
+			// erwartet
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package loksteuerung;
+
+import static testhilfe.Pruefen.pruefen;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prueft die Geraetesuche mit simulierten Anschluessen (ohne Hardware und ohne
+ * gespeicherte Einstellungen).
+ *
+ * Gegen Pseudo-Terminals laesst sich dieselbe Suche mit
+ * Geraetesuche.pruefung(new Testprotokoll(1)) pruefen, wenn am anderen Ende
+ * eine Attrappe im Testprotokoll antwortet.
+ *
+ * @author Manuel Weber
+ */
+public class GeraetesucheTest {
+
+	private static final long ZEITLIMIT = 300;
+
+	/**
+	 * Beginn und Ende der ersten Pruefung je Anschluss (System.nanoTime())
+	 */
+	private static final ConcurrentMap<String, Long> beginn = new ConcurrentHashMap<String, Long>();
+	private static final ConcurrentMap<String, Long> ende = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * Simulierter Anschluss: antwortet nur auf die Anfrage eines Geraets,
+	 * alle anderen Anfragen bleiben haengen, bis das Zeitlimit sie
+	 * unterbricht. Beginn und Ende der ersten Pruefung je Anschluss werden
+	 * festgehalten.
+	 */
+	private static Geraetesuche.Pruefung pruefung(final String geraet) {
+		return new Geraetesuche.Pruefung() {
+			@Override
+			public boolean pruefen(String anschluss) throws IOException,
+					InterruptedException {
+				boolean erste = beginn.putIfAbsent(anschluss,
+						System.nanoTime()) == null;
+				try {
+					if (anschluss.startsWith("fehlt")) {
+						throw new FileNotFoundException(anschluss);
+					}
+					if (anschluss.startsWith(geraet)) {
+						Thread.sleep(20);
+						return true;
+					}
+					Thread.sleep(Long.MAX_VALUE);
+					return false;
+				} finally {
+					if (erste) {
+						ende.put(anschluss, System.nanoTime());
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Prueft, dass die ersten Pruefungen aller Anschluesse gleichzeitig
+	 * liefen: jede hat begonnen, bevor die erste von ihnen endete. Bei einer
+	 * Suche Anschluss fuer Anschluss begaenne die naechste erst nach dem
+	 * Zeitlimit der vorigen.
+	 */
+	private static void pruefenUeberlappend(List<String> anschluesse) {
+		long spaetesterBeginn = Long.MIN_VALUE;
+		long fruehestesEnde = Long.MAX_VALUE;
+		for (String anschluss : anschluesse) {
+			Long b = beginn.get(anschluss);
+			Long e = ende.get(anschluss);
+			pruefen("Anschluss " + anschluss + " geprueft", b != null
+					&& e != null);
+			spaetesterBeginn = Math.max(spaetesterBeginn, b.longValue());
+			fruehestesEnde = Math.min(fruehestesEnde, e.longValue());
+		}
+		pruefen("Pruefungen ueberlappen", spaetesterBeginn < fruehestesEnde);
+		beginn.clear();
+		ende.clear();
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<String> anschluesse = new ArrayList<String>();
+		for (int i = 0; i < 20; i++) {
+			anschluesse.add("still" + i);
+		}
+		anschluesse.add("fehlt0");
+		// der Messstand antwortet nicht auf die Anfrage der Zentrale, die
+		// zuerst gestellt wird
+		anschluesse.add("Messstand-A");
+		anschluesse.add("Zentrale-B");
+
+		Geraetesuche suche = new Geraetesuche(ZEITLIMIT, TimeUnit.MILLISECONDS,
+				null);
+		suche.geraetHinzufuegen("Zentrale", pruefung("Zentrale"));
+		suche.geraetHinzufuegen("Messstand", pruefung("Messstand"));
+
+		Map<String, String> gefunden = suche.suchen(anschluesse);
+		pruefen("Zentrale gefunden", "Zentrale-B".equals(gefunden.get("Zentrale")));
+		pruefen("Messstand gefunden",
+				"Messstand-A".equals(gefunden.get("Messstand")));
+		// die stillen Anschluesse und der Messstand, dessen erste Anfrage
+		// (die der Zentrale) erst das Zeitlimit beendet
+		List<String> still = anschluesse.subList(0, 20);
+		List<String> haengend = new ArrayList<String>(still);
+		haengend.add("Messstand-A");
+		pruefenUeberlappend(haengend);
+
+		gefunden = suche.suchen(still);
+		pruefen("nichts gefunden", gefunden.isEmpty());
+		pruefenUeberlappend(still);
+
+		pruefen("autoConnect ohne Einstellungen",
+				suche.autoConnect().isEmpty());
+		System.out.println("GeraetesucheTest: ok");
+	}
+}
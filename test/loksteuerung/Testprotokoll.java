@@ -0,0 +1,206 @@
+package loksteuerung;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Einfaches Befehlsprotokoll fuer Tests mit der ZentraleAttrappe. Es ist
+ * nicht das Protokoll einer echten Zentrale.
+ *
+ * Ein Rahmen beginnt mit der Kennung 0x7C, gefolgt von seiner Gesamtlaenge,
+ * den Nutzdaten und einer Pruefsumme (XOR ueber alle vorherigen Bytes). Die
+ * Nutzdaten eines Befehlsrahmens bestehen aus beliebig vielen
+ * aneinandergereihten Befehlen, jeweils Befehlscode und Parameter. Die
+ * Antwort ist ein Rahmen mit einem einzelnen Statusbyte.
+ *
+ * @author Manuel Weber
+ */
+public final class Testprotokoll implements Befehlsprotokoll {
+
+	public static final int KENNUNG = 0x7C;
+
+	/**
+	 * Befehlscodes: Fahrstufe (Adresse, Fahrstufe | 0x80 bei
+	 * Rueckwaertsfahrt), Funktion (Adresse, Funktion, an)
+	 */
+	public static final int FAHRSTUFE = 0x24;
+	public static final int FUNKTION = 0x28;
+
+	/**
+	 * Status einer erfolgreichen Antwort
+	 */
+	public static final int OK = 0;
+
+	/**
+	 * Maximale Laenge der Nutzdaten eines Rahmens (die Laenge wird in einem
+	 * Byte uebertragen)
+	 */
+	public static final int MAX_NUTZDATEN = 255 - 3;
+
+	/**
+	 * Hoechste Lokadresse
+	 */
+	public static final int MAX_ADRESSE = 255;
+
+	private final int maxBefehle;
+
+	/**
+	 * @param maxBefehle
+	 *            maximale Anzahl Befehle pro Rahmen
+	 */
+	public Testprotokoll(int maxBefehle) {
+		this.maxBefehle = maxBefehle;
+	}
+
+	@Override
+	public byte[] fahrstufe(int adresse, int fahrstufe) {
+		adressePruefen(adresse);
+		int betrag = Math.abs(fahrstufe);
+		if (betrag > 126) {
+			throw new IllegalArgumentException("Ungueltige Fahrstufe: "
+					+ fahrstufe);
+		}
+		return new byte[] { FAHRSTUFE, (byte) adresse,
+				(byte) (fahrstufe < 0 ? betrag | 0x80 : betrag) };
+	}
+
+	@Override
+	public byte[] funktion(int adresse, int funktion, boolean an) {
+		adressePruefen(adresse);
+		if (funktion < 0 || funktion > 255) {
+			throw new IllegalArgumentException("Ungueltige Funktion: "
+					+ funktion);
+		}
+		return new byte[] { FUNKTION, (byte) adresse, (byte) funktion,
+				(byte) (an ? 1 : 0) };
+	}
+
+	private static void adressePruefen(int adresse) {
+		if (adresse < 1 || adresse > MAX_ADRESSE) {
+			throw new IllegalArgumentException("Ungueltige Lokadresse: "
+					+ adresse);
+		}
+	}
+
+	/**
+	 * @param befehlscode
+	 * @return Laenge eines Befehls einschliesslich Befehlscode
+	 * @throws IOException
+	 *             bei unbekanntem Befehlscode
+	 */
+	static int befehlslaenge(int befehlscode) throws IOException {
+		switch (befehlscode) {
+		case FAHRSTUFE:
+			return 3;
+		case FUNKTION:
+			return 4;
+		default:
+			throw new IOException("Unbekannter Befehl: " + befehlscode);
+		}
+	}
+
+	@Override
+	public int getMaxBefehle() {
+		return maxBefehle;
+	}
+
+	@Override
+	public int getMaxNutzdaten() {
+		return MAX_NUTZDATEN;
+	}
+
+	@Override
+	public byte[] rahmen(List<byte[]> befehle) {
+		return kodieren(befehle.toArray(new byte[befehle.size()][]));
+	}
+
+	@Override
+	public byte[] anfrage() {
+		return kodieren();
+	}
+
+	/**
+	 * Setzt Befehle zu einem Rahmen zusammen
+	 *
+	 * @param befehle
+	 *            zusammen hoechstens MAX_NUTZDATEN Bytes
+	 * @return Rahmen
+	 */
+	static byte[] kodieren(byte[]... befehle) {
+		int laenge = 3;
+		for (byte[] befehl : befehle) {
+			laenge += befehl.length;
+		}
+		if (laenge > 255) {
+			throw new IllegalArgumentException("Rahmen zu lang: " + laenge);
+		}
+		byte[] rahmen = new byte[laenge];
+		rahmen[0] = (byte) KENNUNG;
+		rahmen[1] = (byte) laenge;
+		int pos = 2;
+		for (byte[] befehl : befehle) {
+			System.arraycopy(befehl, 0, rahmen, pos, befehl.length);
+			pos += befehl.length;
+		}
+		rahmen[pos] = pruefsumme(rahmen, pos);
+		return rahmen;
+	}
+
+	/**
+	 * Liest einen Rahmen und prueft seine Pruefsumme. Bytes vor der Kennung
+	 * werden uebersprungen.
+	 *
+	 * @param ein
+	 * @return Nutzdaten
+	 * @throws IOException
+	 *             bei Pruefsummenfehler oder Ende des Datenstroms
+	 */
+	static byte[] lesen(InputStream ein) throws IOException {
+		int b;
+		while ((b = ein.read()) != KENNUNG) {
+			if (b < 0) {
+				throw new EOFException();
+			}
+		}
+		int laenge = ein.read();
+		if (laenge < 3) {
+			throw laenge < 0 ? new EOFException() : new IOException(
+					"Ungueltige Rahmenlaenge: " + laenge);
+		}
+		byte[] rahmen = new byte[laenge];
+		rahmen[0] = (byte) KENNUNG;
+		rahmen[1] = (byte) laenge;
+		for (int pos = 2; pos < laenge;) {
+			int n = ein.read(rahmen, pos, laenge - pos);
+			if (n < 0) {
+				throw new EOFException();
+			}
+			pos += n;
+		}
+		if (rahmen[laenge - 1] != pruefsumme(rahmen, laenge - 1)) {
+			throw new IOException("Pruefsummenfehler");
+		}
+		byte[] nutzdaten = new byte[laenge - 3];
+		System.arraycopy(rahmen, 2, nutzdaten, 0, nutzdaten.length);
+		return nutzdaten;
+	}
+
+	@Override
+	public boolean antwortLesen(InputStream ein) throws IOException {
+		byte[] nutzdaten = lesen(ein);
+		if (nutzdaten.length != 1) {
+			throw new IOException("Ungueltige Antwort der Zentrale");
+		}
+		return (nutzdaten[0] & 0xff) == OK;
+	}
+
+	private static byte pruefsumme(byte[] rahmen, int laenge) {
+		byte summe = 0;
+		for (int i = 0; i < laenge; i++) {
+			summe ^= rahmen[i];
+		}
+		return summe;
+	}
+}
@@ -0,0 +1,167 @@
+package loksteuerung;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stellt die Zentrale ohne angeschlossene Hardware nach, fuer Tests des
+ * Befehlskanals. Die Attrappe liest Rahmen im Testprotokoll aus einem lokalen
+ * Datenstrom, merkt sich Fahrstufen und Funktionen der Loks und bestaetigt
+ * jeden Rahmen nach einer einstellbaren Bearbeitungszeit.
+ *
+ * @author Manuel Weber
+ */
+public class ZentraleAttrappe implements Runnable {
+
+	private static final int PUFFERGROESSE = 64 * 1024;
+
+	private final InputStream ein;
+	private final OutputStream aus;
+
+	/**
+	 * Seite, die der Befehlskanal verwendet
+	 */
+	private final InputStream kanalEin;
+	private final OutputStream kanalAus;
+
+	private final int[] fahrstufen = new int[Testprotokoll.MAX_ADRESSE + 1];
+	private final long[] funktionen = new long[Testprotokoll.MAX_ADRESSE + 1];
+
+	private volatile long bearbeitungszeit = 0;
+
+	private int rahmen = 0;
+	private int befehle = 0;
+
+	/**
+	 * Ausgefuehrte Befehle in Empfangsreihenfolge, z.B. "F5=-42" oder "L3/0=an"
+	 */
+	private final List<String> verlauf = new ArrayList<String>();
+
+	private final Thread thread;
+
+	/**
+	 * Erzeugt die Attrappe und startet ihren Thread
+	 *
+	 * @throws IOException
+	 */
+	public ZentraleAttrappe() throws IOException {
+		PipedInputStream zurZentrale = new PipedInputStream(PUFFERGROESSE);
+		PipedInputStream vonZentrale = new PipedInputStream(PUFFERGROESSE);
+		kanalAus = new PipedOutputStream(zurZentrale);
+		aus = new PipedOutputStream(vonZentrale);
+		ein = zurZentrale;
+		kanalEin = vonZentrale;
+		thread = new Thread(this, "ZentraleAttrappe");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @param maxBefehle
+	 *            maximale Anzahl Befehle pro Rahmen
+	 * @return Befehlskanal, der mit der Attrappe verbunden ist
+	 */
+	public Befehlskanal verbinden(int maxBefehle) {
+		return new Befehlskanal(kanalEin, kanalAus, new Testprotokoll(
+				maxBefehle));
+	}
+
+	/**
+	 * @param millis
+	 *            Zeit, die die Bearbeitung eines Rahmens dauert
+	 */
+	public void setBearbeitungszeit(long millis) {
+		this.bearbeitungszeit = millis;
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (true) {
+				byte[] nutzdaten = Testprotokoll.lesen(ein);
+				for (int pos = 0; pos < nutzdaten.length;) {
+					int code = nutzdaten[pos] & 0xff;
+					int laenge = Testprotokoll.befehlslaenge(code);
+					ausfuehren(Arrays.copyOfRange(nutzdaten, pos, pos + laenge));
+					pos += laenge;
+				}
+				synchronized (this) {
+					rahmen++;
+				}
+				long zeit = bearbeitungszeit;
+				if (zeit > 0) {
+					Thread.sleep(zeit);
+				}
+				aus.write(Testprotokoll
+						.kodieren(new byte[] { Testprotokoll.OK }));
+				aus.flush();
+			}
+		} catch (IOException e) {
+			// Verbindung beendet
+		} catch (InterruptedException e) {
+			// beendet
+		}
+	}
+
+	private synchronized void ausfuehren(byte[] befehl) {
+		int adresse = befehl[1] & 0xff;
+		if (befehl[0] == Testprotokoll.FAHRSTUFE) {
+			int wert = befehl[2] & 0xff;
+			fahrstufen[adresse] = (wert & 0x80) != 0 ? -(wert & 0x7f) : wert;
+			verlauf.add("F" + adresse + "=" + fahrstufen[adresse]);
+		} else {
+			int funktion = befehl[2] & 0xff;
+			if (funktion < 64) {
+				if (befehl[3] != 0) {
+					funktionen[adresse] |= 1L << funktion;
+				} else {
+					funktionen[adresse] &= ~(1L << funktion);
+				}
+			}
+			verlauf.add("L" + adresse + "/" + funktion + "="
+					+ (befehl[3] != 0 ? "an" : "aus"));
+		}
+		befehle++;
+	}
+
+	public synchronized int getFahrstufe(int adresse) {
+		return fahrstufen[adresse];
+	}
+
+	/**
+	 * @param adresse
+	 * @param funktion
+	 *            0 bis 63
+	 * @return Wahrheitswert, ob die Funktion eingeschaltet ist
+	 */
+	public synchronized boolean isFunktion(int adresse, int funktion) {
+		return (funktionen[adresse] & (1L << funktion)) != 0;
+	}
+
+	/**
+	 * @return Anzahl der empfangenen Rahmen
+	 */
+	public synchronized int getRahmen() {
+		return rahmen;
+	}
+
+	/**
+	 * @return Anzahl der empfangenen Befehle
+	 */
+	public synchronized int getBefehle() {
+		return befehle;
+	}
+
+	/**
+	 * @return ausgefuehrte Befehle in Empfangsreihenfolge
+	 */
+	public synchronized List<String> getVerlauf() {
+		return new ArrayList<String>(verlauf);
+	}
+}
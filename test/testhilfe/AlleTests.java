@@ -0,0 +1,24 @@
+package testhilfe;
+
+/**
+ * Fuehrt alle Tests nacheinander aus und bricht beim ersten Fehler ab: java
+ * testhilfe.AlleTests (ohne Bildschirm mit -Djava.awt.headless=true)
+ *
+ * @author Manuel Weber
+ */
+public class AlleTests {
+
+	public static void main(String[] args) throws Exception {
+		datenaufnahme.ImpulspufferTest.main(args);
+		datenaufnahme.MessreihenarchivTest.main(args);
+		datenverarbeitung.EinheitTest.main(args);
+		datenverarbeitung.FahrkurveTest.main(args);
+		datenverarbeitung.MinMaxAusduennerTest.main(args);
+		datenverarbeitung.NeuauswertungTest.main(args);
+		datenverarbeitung.SaeulendiagrammRendererTest.main(args);
+		datenverarbeitung.SaeulendiagrammTest.main(args);
+		loksteuerung.BefehlskanalTest.main(args);
+		loksteuerung.GeraetesucheTest.main(args);
+		System.out.println("AlleTests: ok");
+	}
+}
@@ -0,0 +1,47 @@
+package testhilfe;
+
+/**
+ * Gemeinsame Pruefungen der Tests unter test/. Die Tests kommen ohne JUnit
+ * aus: jede Testklasse hat eine main-Methode, die bei einem Fehler mit einem
+ * AssertionError abbricht, und laesst sich einzeln oder ueber AlleTests
+ * starten.
+ *
+ * @author Manuel Weber
+ */
+public final class Pruefen {
+
+	private Pruefen() {
+	}
+
+	/**
+	 * @param fall
+	 *            Beschreibung fuer die Fehlermeldung
+	 * @param bedingung
+	 * @throws AssertionError
+	 *             falls die Bedingung nicht erfuellt ist
+	 */
+	public static void pruefen(String fall, boolean bedingung) {
+		if (!bedingung) {
+			throw new AssertionError(fall);
+		}
+	}
+
+	/**
+	 * Vergleicht zwei Zahlen mit einer relativen Toleranz von 1e-6 (absolut
+	 * bei Betraegen unter 1)
+	 *
+	 * @param fall
+	 *            Beschreibung fuer die Fehlermeldung
+	 * @param erwartet
+	 * @param wert
+	 * @throws AssertionError
+	 *             falls die Werte zu weit auseinander liegen
+	 */
+	public static void pruefen(String fall, double erwartet, double wert) {
+		if (!(Math.abs(erwartet - wert) <= 1e-6 * Math.max(1,
+				Math.abs(erwartet)))) {
+			throw new AssertionError(fall + ": erwartet " + erwartet
+					+ ", erhalten " + wert);
+		}
+	}
+}